@@ -0,0 +1,37 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.md
+ */
+import org.jetbrains.kotlin.gradle.dsl.JvmTarget
+
+/*
+ * JMH benchmarks of the libraries, not published. Run with
+ *
+ *     ./gradlew -PwithBenchmarks :benchmarks:jmh
+ *
+ * The gc profiler reports the allocation per operation as gc.alloc.rate.norm.
+ */
+plugins {
+    kotlin("jvm")
+    alias(libs.plugins.jmh)
+}
+
+repositories {
+    mavenLocal()
+    mavenCentral()
+}
+
+dependencies {
+    jmhImplementation(project(":openid4vci-sdjwtvc"))
+    jmhImplementation(project(":status-list"))
+    jmhImplementation(libs.bcpkix)
+    jmhImplementation(libs.kotlinx.serialization.json)
+}
+
+kotlin { compilerOptions { jvmTarget.set(JvmTarget.JVM_21) } }
+
+jmh {
+    jmhVersion.set(libs.versions.jmh)
+    profilers.add("gc")
+    resultFormat.set("JSON")
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.md
+ */
+package de.bdr.openid4vc.benchmarks
+
+import de.bdr.openid4vc.vci.data.storage.InMemoryJtiStorage
+import java.time.Instant
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicLong
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Threads
+import org.openjdk.jmh.annotations.Warmup
+
+/**
+ * Proofs checked per second by [InMemoryJtiStorage] with [THREADS] concurrent requests. Every
+ * operation presents a new jti and replays it once, as a replay attack would.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Threads(InMemoryJtiStorageBenchmark.THREADS)
+@Fork(1)
+open class InMemoryJtiStorageBenchmark {
+
+    private lateinit var storage: InMemoryJtiStorage
+    private lateinit var validUntil: Instant
+    private val counter = AtomicLong()
+
+    @Setup
+    fun setup() {
+        storage = InMemoryJtiStorage()
+        validUntil = Instant.now().plusSeconds(300)
+    }
+
+    @Benchmark
+    fun presentAndReplay(): Boolean {
+        val jti = "jti-${counter.incrementAndGet()}"
+        return storage.isUnused(jti, validUntil) && !storage.isUnused(jti, validUntil)
+    }
+
+    companion object {
+        const val THREADS = 8
+    }
+}
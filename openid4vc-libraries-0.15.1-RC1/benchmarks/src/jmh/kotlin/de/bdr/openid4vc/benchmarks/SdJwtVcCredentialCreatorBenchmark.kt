@@ -0,0 +1,151 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.md
+ */
+package de.bdr.openid4vc.benchmarks
+
+import com.nimbusds.jose.jwk.Curve
+import com.nimbusds.jose.jwk.JWK
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator
+import de.bdr.openid4vc.common.formats.sdjwtvc.SdJwtVcCredentialRequest
+import de.bdr.openid4vc.common.signing.Pkcs12Signer
+import de.bdr.openid4vc.common.signing.Signer
+import de.bdr.openid4vc.common.vci.Credential
+import de.bdr.openid4vc.vci.credentials.sdjwt.SdJwtVcCredentialConfiguration
+import de.bdr.openid4vc.vci.credentials.sdjwt.SdJwtVcCredentialCreator
+import de.bdr.openid4vc.vci.service.statuslist.StatusReference
+import eu.europa.ec.eudi.sdjwt.SdObject
+import eu.europa.ec.eudi.sdjwt.plain
+import eu.europa.ec.eudi.sdjwt.sd
+import eu.europa.ec.eudi.sdjwt.sdJwt
+import eu.europa.ec.eudi.sdjwt.structured
+import java.io.ByteArrayInputStream
+import java.io.ByteArrayOutputStream
+import java.math.BigInteger
+import java.security.KeyPairGenerator
+import java.security.KeyStore
+import java.security.spec.ECGenParameterSpec
+import java.time.Duration
+import java.time.Instant
+import java.util.Date
+import java.util.UUID
+import java.util.concurrent.TimeUnit
+import kotlinx.serialization.json.put
+import org.bouncycastle.asn1.x500.X500Name
+import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter
+import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.Threads
+import org.openjdk.jmh.annotations.Warmup
+
+/**
+ * Credentials/s of SD-JWT VC issuance with an issuer certificate chain.
+ *
+ * [sharedCreator] uses one creator for all credentials, so the SD-JWT factory, the header of the
+ * signer and the SD-JWT issuer are built once. [creatorPerCredential] builds them for every
+ * credential, as the creator did before they were shared.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(4)
+open class SdJwtVcCredentialCreatorBenchmark {
+
+    private lateinit var signer: Signer
+    private lateinit var creator: BenchmarkCreator
+    private lateinit var holderBindingKey: JWK
+
+    private val request = SdJwtVcCredentialRequest(vct = VCT)
+    private val status = StatusReference("https://status.example.com/lists/1", 42)
+
+    @Setup
+    fun setup() {
+        signer = pkcs12Signer()
+        creator = BenchmarkCreator(signer)
+        holderBindingKey = ECKeyGenerator(Curve.P_256).generate().toPublicJWK()
+    }
+
+    @Benchmark
+    fun sharedCreator(): Credential =
+        creator.create(request, UUID.randomUUID(), holderBindingKey, status)
+
+    @Benchmark
+    fun creatorPerCredential(): Credential =
+        BenchmarkCreator(signer).create(request, UUID.randomUUID(), holderBindingKey, status)
+
+    class BenchmarkCreator(signer: Signer) :
+        SdJwtVcCredentialCreator(
+            issuer = "https://issuer.example.com",
+            configuration =
+                SdJwtVcCredentialConfiguration(
+                    id = "benchmark",
+                    vct = VCT,
+                    keyBinding = true,
+                    lifetime = Duration.ofDays(14),
+                    numOfDecoysLimit = 1,
+                ),
+            signer = signer,
+        ) {
+
+        override fun createSdObject(issuanceId: UUID): SdObject = sdJwt {
+            sd {
+                put("family_name", "MUSTERMANN")
+                put("given_name", "ERIKA")
+                put("birthdate", "1964-08-12")
+                put("age_birth_year", 1964)
+            }
+            plain { put("issuing_country", "DE") }
+            structured("address") {
+                sd {
+                    put("locality", "KÖLN")
+                    put("postal_code", "51147")
+                    put("street_address", "HEIDESTRASSE 17")
+                }
+            }
+        }
+    }
+
+    private companion object {
+        const val VCT = "https://example.com/pid"
+        val PASSWORD = "benchmark".toCharArray()
+
+        /** a P-256 key with a self-signed certificate, so the header contains x5c and kid */
+        fun pkcs12Signer(): Signer {
+            val keyPairGenerator = KeyPairGenerator.getInstance("EC")
+            keyPairGenerator.initialize(ECGenParameterSpec("secp256r1"))
+            val keyPair = keyPairGenerator.generateKeyPair()
+            val name = X500Name("CN=benchmark issuer")
+            val now = Instant.now()
+            val certificate =
+                JcaX509CertificateConverter()
+                    .getCertificate(
+                        JcaX509v3CertificateBuilder(
+                                name,
+                                BigInteger.ONE,
+                                Date.from(now),
+                                Date.from(now.plus(Duration.ofDays(1))),
+                                name,
+                                keyPair.public,
+                            )
+                            .build(JcaContentSignerBuilder("SHA256withECDSA").build(keyPair.private))
+                    )
+            val keyStore = KeyStore.getInstance("pkcs12")
+            keyStore.load(null, null)
+            keyStore.setKeyEntry("issuer", keyPair.private, PASSWORD, arrayOf(certificate))
+            val bytes = ByteArrayOutputStream().also { keyStore.store(it, PASSWORD) }.toByteArray()
+            return Pkcs12Signer(ByteArrayInputStream(bytes), String(PASSWORD))
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.md
+ */
+package de.bdr.openid4vc.benchmarks
+
+import com.nimbusds.jose.jwk.Curve
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator
+import com.nimbusds.jose.util.JSONObjectUtils
+import de.bdr.openid4vc.common.signing.JwkSigner
+import de.bdr.openid4vc.common.signing.Signer
+import de.bdr.openid4vc.statuslist.StatusList
+import de.bdr.openid4vc.statuslist.StatusListToken
+import java.time.Duration
+import java.time.Instant
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import kotlin.random.Random
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Fork
+import org.openjdk.jmh.annotations.Measurement
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import org.openjdk.jmh.annotations.Warmup
+
+/**
+ * Time of one write cycle of the status list service: every list of a pool is serialized as JWT,
+ * CWT, JSON and CBOR.
+ *
+ * [compressPerFormat] compresses the list once per format and writes the lists one after another,
+ * as the service did before. [compressOnce] shares the compressed list across the formats and
+ * [compressOnceParallel] additionally signs and serializes the lists on [THREADS] threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+open class StatusListTokenBenchmark {
+
+    @Param("10", "100") var lists: Int = 0
+
+    @Param("100000") var size: Int = 0
+
+    private lateinit var signer: Signer
+    private lateinit var data: List<ByteArray>
+    private lateinit var executor: ExecutorService
+
+    @Setup
+    fun setup() {
+        signer = JwkSigner(ECKeyGenerator(Curve.P_256).generate())
+        val random = Random(42)
+        data = List(lists) { ByteArray(size / 8).also { revokeSome(it, random) } }
+        executor = Executors.newFixedThreadPool(THREADS)
+    }
+
+    @TearDown
+    fun tearDown() {
+        executor.shutdownNow()
+    }
+
+    @Benchmark
+    fun compressPerFormat(): Int =
+        data.indices.sumOf { index ->
+            val jwt = token(index).asJwt(signer).serialize().length
+            val cwt = token(index).asCwt(signer).EncodeToBytes().size
+            val json = JSONObjectUtils.toJSONString(statusList(index).toJsonObject()).length
+            val cbor = statusList(index).toCborObject().EncodeToBytes().size
+            jwt + cwt + json + cbor
+        }
+
+    @Benchmark fun compressOnce(): Int = data.indices.sumOf { write(it) }
+
+    @Benchmark
+    fun compressOnceParallel(): Int =
+        data.indices.map { index -> executor.submit<Int> { write(index) } }.sumOf { it.get() }
+
+    private fun write(index: Int): Int {
+        val token = token(index)
+        val statusList = token.statusList
+        return token.asJwt(signer).serialize().length +
+            token.asCwt(signer).EncodeToBytes().size +
+            JSONObjectUtils.toJSONString(statusList.toJsonObject()).length +
+            statusList.toCborObject().EncodeToBytes().size
+    }
+
+    private fun token(index: Int) =
+        StatusListToken(
+            statusListUri = "https://status.example.com/lists/$index",
+            issuerUri = "https://issuer.example.com",
+            issuedAt = Instant.now(),
+            statusList = statusList(index),
+            expiresAt = Instant.now().plus(Duration.ofMinutes(15)),
+            ttl = Duration.ofMinutes(10),
+        )
+
+    private fun statusList(index: Int) = StatusList(size, 1, list = data[index])
+
+    private companion object {
+        const val THREADS = 4
+
+        /** revokes about one percent of the entries */
+        fun revokeSome(list: ByteArray, random: Random) {
+            repeat(list.size * 8 / 100) {
+                val index = random.nextInt(list.size * 8)
+                list[index / 8] = (list[index / 8].toInt() or (1 shl index % 8)).toByte()
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.md
+ */
+package de.bdr.openid4vc.common.signing
+
+import de.bdr.openid4vc.common.Algorithm
+import de.bdr.openid4vc.common.signing.nimbus.DVSP256SHA256Key
+import java.security.InvalidKeyException
+import java.security.NoSuchAlgorithmException
+import java.security.interfaces.ECPrivateKey
+import java.security.interfaces.ECPublicKey
+import javax.crypto.Mac
+import javax.crypto.spec.SecretKeySpec
+
+/**
+ * Creates the DVS signers of the sending party, it can be shared by all requests.
+ *
+ * A DVS MAC depends on the key of the verifying party, so a signer is created per verifier by
+ * [forVerifier]. It only holds the MAC key derived from the ECDH shared secret and produces the
+ * same MACs as a [DVSP256SHA256HS256DelegateSigner].
+ *
+ * @param senderKey private key of the sending party
+ * @param keys the key material presented to the verifier, e.g. the certificate chain of the sender
+ */
+class DVSP256SHA256HS256SignerFactory(
+    private val senderKey: ECPrivateKey,
+    val keys: KeyMaterial,
+) {
+
+    /** @param verifierKey public key of the verifying party */
+    @Throws(NoSuchAlgorithmException::class, InvalidKeyException::class)
+    fun forVerifier(verifierKey: ECPublicKey): Signer =
+        VerifierSigner(
+            SecretKeySpec(DVSP256SHA256Key(senderKey, verifierKey).byte, MAC_ALGORITHM),
+            keys,
+        )
+
+    private class VerifierSigner(
+        private val macKey: SecretKeySpec,
+        override val keys: KeyMaterial,
+    ) : Signer {
+
+        override val algorithm: Algorithm
+            get() = Algorithm.DVS_P256_SHA256_HS256
+
+        override fun sign(data: ByteArray): ByteArray {
+            val mac = Mac.getInstance(MAC_ALGORITHM)
+            mac.init(macKey)
+            return mac.doFinal(data)
+        }
+    }
+
+    private companion object {
+        const val MAC_ALGORITHM = "HmacSHA256"
+    }
+}
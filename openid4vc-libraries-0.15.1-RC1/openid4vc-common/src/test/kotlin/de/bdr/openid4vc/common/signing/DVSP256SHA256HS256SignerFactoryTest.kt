@@ -0,0 +1,69 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.md
+ */
+package de.bdr.openid4vc.common.signing
+
+import assertk.assertThat
+import assertk.assertions.isEqualTo
+import assertk.assertions.isNotEqualTo
+import assertk.assertions.isSameInstanceAs
+import com.nimbusds.jose.jwk.Curve
+import com.nimbusds.jose.jwk.ECKey
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator
+import de.bdr.openid4vc.common.Algorithm
+import de.bdr.openid4vc.common.signing.nimbus.DVSP256SHA256HS256MacSigner
+import de.bdr.openid4vc.common.signing.nimbus.DVSP256SHA256Key
+import kotlin.random.Random
+import org.junit.jupiter.api.Test
+
+class DVSP256SHA256HS256SignerFactoryTest {
+
+    private val senderKey = ECKeyGenerator(Curve.P_256).generate()
+    private val keys = JwkKeyMaterial(senderKey.toPublicJWK())
+    private val inTest = DVSP256SHA256HS256SignerFactory(senderKey.toECPrivateKey(), keys)
+
+    @Test
+    fun `given a verifier signer when sign is invoked then the MAC equals the one of the delegate signer`() {
+        repeat(5) {
+            val verifierKey = ECKeyGenerator(Curve.P_256).generate().toECPublicKey()
+            val data = Random.nextBytes(Random.nextInt(1, 4096))
+            val delegateSigner = delegateSigner(senderKey, verifierKey)
+
+            assertThat(inTest.forVerifier(verifierKey).sign(data)).isEqualTo(delegateSigner.sign(data))
+        }
+    }
+
+    @Test
+    fun `given a verifier signer when sign is invoked repeatedly then the MAC is the same`() {
+        val verifierKey = ECKeyGenerator(Curve.P_256).generate().toECPublicKey()
+        val signer = inTest.forVerifier(verifierKey)
+        val data = Random.nextBytes(64)
+
+        assertThat(signer.sign(data)).isEqualTo(signer.sign(data))
+        assertThat(signer.sign(data)).isEqualTo(inTest.forVerifier(verifierKey).sign(data))
+    }
+
+    @Test
+    fun `given two verifiers when sign is invoked then the MACs differ`() {
+        val data = Random.nextBytes(64)
+
+        val first = inTest.forVerifier(ECKeyGenerator(Curve.P_256).generate().toECPublicKey())
+        val second = inTest.forVerifier(ECKeyGenerator(Curve.P_256).generate().toECPublicKey())
+
+        assertThat(first.sign(data)).isNotEqualTo(second.sign(data))
+    }
+
+    @Test
+    fun `given a verifier signer when algorithm and keys are retrieved then they are the ones of the factory`() {
+        val signer = inTest.forVerifier(ECKeyGenerator(Curve.P_256).generate().toECPublicKey())
+
+        assertThat(signer.algorithm).isEqualTo(Algorithm.DVS_P256_SHA256_HS256)
+        assertThat(signer.keys).isSameInstanceAs(keys)
+    }
+
+    private fun delegateSigner(senderKey: ECKey, verifierKey: java.security.interfaces.ECPublicKey) =
+        DVSP256SHA256HS256DelegateSigner(
+            DVSP256SHA256HS256MacSigner(DVSP256SHA256Key(senderKey.toECPrivateKey(), verifierKey))
+        )
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.md
+ */
+package de.bdr.openid4vc.vci.credentials.sdjwt
+
+import com.nimbusds.jose.jwk.JWK
+import de.bdr.openid4vc.common.Algorithm
+import de.bdr.openid4vc.common.formats.sdjwtvc.SdJwtVcCredentialRequest
+import de.bdr.openid4vc.common.signing.KeyMaterial
+import de.bdr.openid4vc.common.signing.Signer
+import de.bdr.openid4vc.common.vci.Credential
+import de.bdr.openid4vc.common.vci.CredentialRequest
+import de.bdr.openid4vc.vci.service.statuslist.StatusReference
+import eu.europa.ec.eudi.sdjwt.SdObject
+import java.util.UUID
+
+/**
+ * Creator of SD-JWT VCs that are signed by a signer of the request, e.g. the DVS signer for the
+ * verifier of the request created by a
+ * [de.bdr.openid4vc.common.signing.DVSP256SHA256HS256SignerFactory].
+ *
+ * Unlike [SdJwtVcCredentialCreator] it has no signer of its own, the SD-JWT factory and the header
+ * are built once from the [keys] presented by all request signers.
+ *
+ * @param keys the key material presented in the header (kid, x5c)
+ * @param algorithm the algorithm of the request signers
+ */
+abstract class RequestSignedSdJwtVcCreator(
+    issuer: String,
+    val configuration: SdJwtVcCredentialConfiguration,
+    private val keys: KeyMaterial,
+    private val algorithm: Algorithm,
+) {
+
+    private val issuance = SdJwtVcIssuance(issuer, configuration, keys)
+
+    open fun validateCredentialRequest(request: CredentialRequest): Boolean {
+        if (request !is SdJwtVcCredentialRequest) return false
+        return request.vct == configuration.vct
+    }
+
+    /**
+     * Creates a credential signed by [signer].
+     *
+     * @param signer signer of this request, it must use [algorithm] and present [keys]
+     */
+    fun create(
+        request: CredentialRequest,
+        issuanceId: UUID,
+        holderBindingKey: JWK?,
+        status: StatusReference?,
+        signer: Signer,
+    ): Credential {
+        require(signer.algorithm == algorithm) { "The signer must use the algorithm $algorithm" }
+        require(signer.keys == keys) { "The signer must present the keys of the creator" }
+
+        return issuance.issue(
+            issuance.issuer(signer),
+            createSdObject(issuanceId),
+            holderBindingKey,
+            status,
+        )
+    }
+
+    abstract fun createSdObject(issuanceId: UUID): SdObject
+}
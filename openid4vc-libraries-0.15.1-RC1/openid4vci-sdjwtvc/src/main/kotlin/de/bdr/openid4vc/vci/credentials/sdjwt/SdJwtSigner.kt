@@ -8,8 +8,7 @@ import com.nimbusds.jose.JWSHeader
 import com.nimbusds.jose.util.Base64
 import com.nimbusds.jose.util.Base64URL
 import de.bdr.openid4vc.common.signing.JwkKeyMaterial
-import de.bdr.openid4vc.common.signing.Signer
-import de.bdr.openid4vc.common.signing.SignerToJwsSignerAdapter
+import de.bdr.openid4vc.common.signing.KeyMaterial
 import de.bdr.openid4vc.common.signing.X509KeyMaterial
 import java.security.MessageDigest
 import java.time.ZoneId
@@ -18,15 +17,13 @@ import java.time.format.DateTimeFormatter
 import org.bouncycastle.asn1.x509.Certificate
 import org.bouncycastle.asn1.x509.IssuerSerial
 
-internal class SdJwtSigner(signer: Signer, private val jadesSignatures: Boolean = false) {
+internal class SdJwtSigner(keys: KeyMaterial, private val jadesSignatures: Boolean = false) {
 
     private val dateTimeFormatter = DateTimeFormatter.ofPattern("yyy-MM-dd'T'hh:mm:ss'Z'")
 
-    private val jwsSigner = SignerToJwsSignerAdapter(signer)
-
     private val certChain =
-        when (signer.keys) {
-            is X509KeyMaterial -> (signer.keys as X509KeyMaterial).certificates
+        when (keys) {
+            is X509KeyMaterial -> keys.certificates
             else -> null
         }
 
@@ -37,14 +34,14 @@ internal class SdJwtSigner(signer: Signer, private val jadesSignatures: Boolean
     private val encodedCertChain = certChain?.map { it.encoded }
 
     private val kid =
-        when (signer.keys) {
+        when (keys) {
             is X509KeyMaterial -> {
                 val cert = Certificate.getInstance(encodedCertChain!![0])
                 java.util.Base64.getEncoder()
                     .encodeToString(IssuerSerial(cert.issuer, cert.serialNumber.value).encoded)
             }
             is JwkKeyMaterial -> {
-                (signer.keys as JwkKeyMaterial).jwk.keyID
+                keys.jwk.keyID
             }
         }
 
@@ -52,9 +49,7 @@ internal class SdJwtSigner(signer: Signer, private val jadesSignatures: Boolean
         header(builder)
     }
 
-    fun header(
-        builder: JWSHeader.Builder = JWSHeader.Builder(jwsSigner.jwsAlgorithm)
-    ): JWSHeader.Builder {
+    fun header(builder: JWSHeader.Builder): JWSHeader.Builder {
 
         if (encodedCertChain != null) {
             builder.x509CertChain(encodedCertChain.map { Base64.encode(it) })
@@ -80,6 +75,4 @@ internal class SdJwtSigner(signer: Signer, private val jadesSignatures: Boolean
 
         return builder
     }
-
-    fun signer() = jwsSigner
 }
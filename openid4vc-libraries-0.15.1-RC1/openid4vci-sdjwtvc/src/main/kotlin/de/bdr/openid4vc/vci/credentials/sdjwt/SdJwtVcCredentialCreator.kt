@@ -4,7 +4,6 @@
  */
 package de.bdr.openid4vc.vci.credentials.sdjwt
 
-import com.nimbusds.jose.JOSEObjectType
 import com.nimbusds.jose.jwk.JWK
 import de.bdr.openid4vc.common.Algorithm
 import de.bdr.openid4vc.common.formats.sdjwtvc.SdJwtVcCredentialDescription
@@ -15,13 +14,17 @@ import de.bdr.openid4vc.common.vci.Credential
 import de.bdr.openid4vc.common.vci.CredentialRequest
 import de.bdr.openid4vc.vci.credentials.CredentialCreator
 import de.bdr.openid4vc.vci.service.statuslist.StatusReference
-import de.bdr.openid4vc.vci.utils.clock
 import eu.europa.ec.eudi.sdjwt.*
-import java.time.Instant
 import java.util.*
 import kotlinx.serialization.json.*
 
-/** Adapter from [SdJwtVcComplexCreator] to [CredentialCreator]. */
+/**
+ * Adapter from [SdJwtVcComplexCreator] to [CredentialCreator].
+ *
+ * The SD-JWT factory, the header of the [signer] and the SD-JWT issuer only depend on the
+ * configuration and the issuer key, they are built once and shared by all credentials. Only the
+ * claims, the holder key and the status reference are passed per credential, see [issue].
+ */
 abstract class SdJwtVcCredentialCreator(
     private val issuer: String,
     configuration: SdJwtVcCredentialConfiguration,
@@ -30,6 +33,10 @@ abstract class SdJwtVcCredentialCreator(
 
     override val configuration = configuration
 
+    private val issuance by lazy { SdJwtVcIssuance(issuer, configuration, signer.keys) }
+
+    private val sdJwtIssuer by lazy { issuance.issuer(signer) }
+
     override fun getCredentialDescription(displayMessages: Map<Locale, Map<String, Any>>?) =
         SdJwtVcCredentialDescription(
             scope = configuration.id,
@@ -112,72 +119,14 @@ abstract class SdJwtVcCredentialCreator(
         issuanceId: UUID,
         holderBindingKey: JWK?,
         status: StatusReference?,
-    ): Credential {
-
-        val sdJwtSigner = SdJwtSigner(signer, configuration.jadesSignatures)
-
-        val issuer =
-            SdJwtIssuer.nimbus(
-                sdJwtFactory =
-                    SdJwtFactory.of(
-                        hashAlgorithm = HashAlgorithm.SHA_256,
-                        fallbackMinimumDigests =
-                            if (configuration.numOfDecoysLimit < 1) null
-                            else configuration.numOfDecoysLimit,
-                    ),
-                signer = sdJwtSigner.signer(),
-                signAlgorithm = sdJwtSigner.signer().jwsAlgorithm,
-                jwsHeaderCustomization = {
-                    sdJwtSigner.customizeHeader(this)
-                    type(JOSEObjectType("vc+sd-jwt"))
-                },
-            )
-
-        val sdObject = createSdObject(issuanceId)
-
-        val sdJwtSpec = sdObject.addDefaultClaims(holderBindingKey, status)
-
-        return Credential(issuer.issue(sdJwtSpec).getOrThrow().serialize())
-    }
-
-    private fun SdObject.addDefaultClaims(
-        holderBindingKey: JWK?,
-        status: StatusReference?,
-    ): SdObject {
-
-        val iat: Long =
-            ((((this["iat"] as? SdObjectElement.Disclosable)?.disclosable
-                        as? DisclosableJsonElement.Plain)
-                    ?.value as? JsonPrimitive)
-                ?.long) ?: (Instant.now(clock).toEpochMilli() / 1000)
-
-        if (status != null) {
-            check(!this.contains("status")) {
-                "A status list is configured for credential ${configuration.id} but a status claim was already present"
-            }
-        }
-
-        val defaultClaims = sdJwt {
-            plain {
-                put("vct", configuration.vct)
-                iss(issuer)
-                iat(iat)
-                configuration.lifetime?.let { exp(iat + it.toSeconds()) }
-                if (status != null) {
-                    putJsonObject("status") {
-                        putJsonObject("status_list") {
-                            put("uri", status.uri)
-                            put("idx", status.index)
-                        }
-                    }
-                }
-            }
-            if (holderBindingKey != null) cnf(holderBindingKey)
-        }
-
-        // order is important already set values override defaultClaims
-        return defaultClaims.plus(this)
-    }
+    ): Credential = issue(createSdObject(issuanceId), holderBindingKey, status)
+
+    /**
+     * Issues a credential with the given claims, the default claims (vct, iss, iat, exp, status,
+     * cnf) are added.
+     */
+    fun issue(claims: SdObject, holderBindingKey: JWK?, status: StatusReference?): Credential =
+        issuance.issue(sdJwtIssuer, claims, holderBindingKey, status)
 
     abstract fun createSdObject(issuanceId: UUID): SdObject
 
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.md
+ */
+package de.bdr.openid4vc.vci.credentials.sdjwt
+
+import com.nimbusds.jose.JOSEObjectType
+import com.nimbusds.jose.jwk.JWK
+import com.nimbusds.jwt.SignedJWT
+import de.bdr.openid4vc.common.signing.KeyMaterial
+import de.bdr.openid4vc.common.signing.Signer
+import de.bdr.openid4vc.common.signing.SignerToJwsSignerAdapter
+import de.bdr.openid4vc.common.vci.Credential
+import de.bdr.openid4vc.vci.service.statuslist.StatusReference
+import de.bdr.openid4vc.vci.utils.clock
+import eu.europa.ec.eudi.sdjwt.*
+import java.time.Instant
+import kotlinx.serialization.json.*
+
+/**
+ * Issues the SD-JWT VCs of one configuration for [SdJwtVcCredentialCreator] and
+ * [RequestSignedSdJwtVcCreator].
+ *
+ * The SD-JWT factory and the header (kid, x5c) only depend on the configuration and the key
+ * material of the signers, they are built once and shared by all credentials.
+ */
+internal class SdJwtVcIssuance(
+    private val issuer: String,
+    private val configuration: SdJwtVcCredentialConfiguration,
+    keys: KeyMaterial,
+) {
+
+    private val sdJwtSigner = SdJwtSigner(keys, configuration.jadesSignatures)
+
+    private val sdJwtFactory =
+        SdJwtFactory.of(
+            hashAlgorithm = HashAlgorithm.SHA_256,
+            fallbackMinimumDigests =
+                if (configuration.numOfDecoysLimit < 1) null else configuration.numOfDecoysLimit,
+        )
+
+    /** The returned issuer can be shared by all credentials signed by [signer]. */
+    fun issuer(signer: Signer): SdJwtIssuer<SignedJWT> {
+        val jwsSigner = SignerToJwsSignerAdapter(signer)
+        return SdJwtIssuer.nimbus(
+            sdJwtFactory = sdJwtFactory,
+            signer = jwsSigner,
+            signAlgorithm = jwsSigner.jwsAlgorithm,
+            jwsHeaderCustomization = {
+                // evaluated per credential, a JAdES header carries the signing time
+                sdJwtSigner.customizeHeader(this)
+                type(SD_JWT_TYPE)
+            },
+        )
+    }
+
+    /**
+     * Issues a credential with the given claims, the default claims (vct, iss, iat, exp, status,
+     * cnf) are added.
+     */
+    fun issue(
+        sdJwtIssuer: SdJwtIssuer<SignedJWT>,
+        claims: SdObject,
+        holderBindingKey: JWK?,
+        status: StatusReference?,
+    ): Credential {
+        val sdJwtSpec = claims.addDefaultClaims(holderBindingKey, status)
+
+        return Credential(sdJwtIssuer.issue(sdJwtSpec).getOrThrow().serialize())
+    }
+
+    private fun SdObject.addDefaultClaims(
+        holderBindingKey: JWK?,
+        status: StatusReference?,
+    ): SdObject {
+
+        val iat: Long =
+            ((((this["iat"] as? SdObjectElement.Disclosable)?.disclosable
+                        as? DisclosableJsonElement.Plain)
+                    ?.value as? JsonPrimitive)
+                ?.long) ?: (Instant.now(clock).toEpochMilli() / 1000)
+
+        if (status != null) {
+            check(!this.contains("status")) {
+                "A status list is configured for credential ${configuration.id} but a status claim was already present"
+            }
+        }
+
+        val defaultClaims = sdJwt {
+            plain {
+                put("vct", configuration.vct)
+                iss(issuer)
+                iat(iat)
+                configuration.lifetime?.let { exp(iat + it.toSeconds()) }
+                if (status != null) {
+                    putJsonObject("status") {
+                        putJsonObject("status_list") {
+                            put("uri", status.uri)
+                            put("idx", status.index)
+                        }
+                    }
+                }
+            }
+            if (holderBindingKey != null) cnf(holderBindingKey)
+        }
+
+        // order is important already set values override defaultClaims
+        return defaultClaims.plus(this)
+    }
+
+    private companion object {
+        val SD_JWT_TYPE = JOSEObjectType("vc+sd-jwt")
+    }
+}
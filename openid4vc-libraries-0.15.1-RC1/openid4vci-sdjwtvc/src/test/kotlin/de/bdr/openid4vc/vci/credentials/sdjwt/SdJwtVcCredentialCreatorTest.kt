@@ -0,0 +1,111 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.md
+ */
+package de.bdr.openid4vc.vci.credentials.sdjwt
+
+import assertk.assertThat
+import assertk.assertions.isEqualTo
+import assertk.assertions.isNotNull
+import assertk.assertions.isTrue
+import com.nimbusds.jose.crypto.ECDSAVerifier
+import com.nimbusds.jose.jwk.Curve
+import com.nimbusds.jose.jwk.ECKey
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator
+import com.nimbusds.jwt.SignedJWT
+import de.bdr.openid4vc.common.Algorithm
+import de.bdr.openid4vc.common.formats.sdjwtvc.SdJwtVcCredentialRequest
+import de.bdr.openid4vc.common.signing.JwkKeyMaterial
+import de.bdr.openid4vc.common.signing.KeyMaterial
+import de.bdr.openid4vc.common.signing.Signer
+import de.bdr.openid4vc.common.vci.Credential
+import de.bdr.openid4vc.vci.service.statuslist.StatusReference
+import eu.europa.ec.eudi.sdjwt.SdObject
+import eu.europa.ec.eudi.sdjwt.sd
+import eu.europa.ec.eudi.sdjwt.sdJwt
+import java.security.Signature
+import java.util.UUID
+import kotlinx.serialization.json.put
+import org.junit.jupiter.api.Test
+
+class SdJwtVcCredentialCreatorTest {
+
+    private val issuerKey = ECKeyGenerator(Curve.P_256).keyID("issuer-key").generate()
+    private val holderKey = ECKeyGenerator(Curve.P_256).generate().toPublicJWK()
+    private val signer = CountingSigner(issuerKey)
+    private val inTest = TestCreator(signer)
+
+    @Test
+    fun `given claims when issue is invoked then the default claims are added and the credential is signed`() {
+        val claims = sdJwt { sd { put("given_name", "ERIKA") } }
+
+        val credential = inTest.issue(claims, holderKey, StatusReference("https://status/1", 42))
+
+        val jwt = credential.jwt()
+        assertThat(jwt.verify(ECDSAVerifier(issuerKey.toECPublicKey()))).isTrue()
+        assertThat(jwt.header.keyID).isEqualTo("issuer-key")
+        assertThat(jwt.header.type.type).isEqualTo("vc+sd-jwt")
+        val payload = jwt.jwtClaimsSet
+        assertThat(payload.getStringClaim("vct")).isEqualTo(VCT)
+        assertThat(payload.issuer).isEqualTo(ISSUER)
+        assertThat(payload.issueTime).isNotNull()
+        assertThat(payload.getJSONObjectClaim("status")["status_list"])
+            .isEqualTo(mapOf("uri" to "https://status/1", "idx" to 42L))
+        assertThat(payload.getJSONObjectClaim("cnf")["jwk"]).isEqualTo(holderKey.toJSONObject())
+    }
+
+    @Test
+    fun `given a creator when credentials are created then the issuer is built once on first use`() {
+        assertThat(signer.keysRetrieved).isEqualTo(0)
+
+        val credentials =
+            List(3) {
+                inTest.create(SdJwtVcCredentialRequest(vct = VCT), UUID.randomUUID(), holderKey, null)
+            }
+
+        assertThat(signer.keysRetrieved).isEqualTo(1)
+        credentials.forEach {
+            assertThat(it.jwt().verify(ECDSAVerifier(issuerKey.toECPublicKey()))).isTrue()
+        }
+    }
+
+    private fun Credential.jwt() = SignedJWT.parse(credential.substringBefore('~'))
+
+    private class TestCreator(signer: Signer) :
+        SdJwtVcCredentialCreator(
+            issuer = ISSUER,
+            configuration = SdJwtVcCredentialConfiguration(id = "test", vct = VCT),
+            signer = signer,
+        ) {
+
+        override fun createSdObject(issuanceId: UUID): SdObject = sdJwt {
+            sd { put("given_name", "ERIKA") }
+        }
+    }
+
+    /** Counts how often the key material is retrieved, it is only needed to build the issuer. */
+    private class CountingSigner(private val key: ECKey) : Signer {
+
+        var keysRetrieved = 0
+
+        override val algorithm = Algorithm.ES256
+
+        override val keys: KeyMaterial
+            get() {
+                keysRetrieved++
+                return JwkKeyMaterial(key.toPublicJWK())
+            }
+
+        override fun sign(data: ByteArray): ByteArray =
+            Signature.getInstance("SHA256withECDSA").run {
+                initSign(key.toECPrivateKey())
+                update(data)
+                sign()
+            }
+    }
+
+    private companion object {
+        const val ISSUER = "https://issuer.example.com"
+        const val VCT = "https://example.com/pid"
+    }
+}
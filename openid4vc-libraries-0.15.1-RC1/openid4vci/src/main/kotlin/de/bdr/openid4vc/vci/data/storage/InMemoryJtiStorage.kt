@@ -4,42 +4,91 @@
  */
 package de.bdr.openid4vc.vci.data.storage
 
-import de.bdr.openid4vc.vci.logging.Oid4VcLog
 import de.bdr.openid4vc.vci.utils.clock
+import java.time.Duration
 import java.time.Instant
-import java.util.Collections.synchronizedSet
-import java.util.PriorityQueue
 
-class InMemoryJtiStorage(private val capacity: Int = 10000) :
-    de.bdr.openid4vc.vci.data.storage.JtiStorage {
+/**
+ * Keeps the used JTI values in memory until they expire.
+ *
+ * The values are spread over [stripes] independently locked stripes, so concurrent requests
+ * rarely wait for each other. Within a stripe the values are grouped into time buckets of
+ * [bucketDuration] by their expiry, so expired values are dropped a whole bucket at a time
+ * without sorting. A value is kept until the end of its bucket, i.e. up to [bucketDuration]
+ * longer than requested.
+ *
+ * The number of stored values is only limited by their expiry, there is no capacity limit.
+ */
+class InMemoryJtiStorage(
+    stripes: Int = 64,
+    private val bucketDuration: Duration = Duration.ofSeconds(1),
+) : JtiStorage {
 
-    private val expiredQueue = PriorityQueue { a: Pair<String, Instant>, b: Pair<String, Instant> ->
-        a.second.compareTo(b.second)
+    init {
+        require(stripes > 0) { "stripes must be positive" }
+        require(!bucketDuration.isNegative && !bucketDuration.isZero) {
+            "bucketDuration must be positive"
+        }
     }
 
-    private val seen = synchronizedSet(HashSet<String>())
+    private val bucketMillis = bucketDuration.toMillis().coerceAtLeast(1)
+
+    private val stripes = Array(stripes) { Stripe() }
 
     override fun isUnused(jti: String, validUntil: Instant): Boolean {
-        synchronized(expiredQueue) {
-            removeExpired()
-            if (expiredQueue.size >= capacity) {
-                Oid4VcLog.log.warn("JTI $jti reported as used due to capacity restriction.")
+        val now = Instant.now(clock).toEpochMilli()
+        val stripe = stripes[Math.floorMod(jti.hashCode(), stripes.size)]
+        synchronized(stripe) {
+            stripe.removeExpired(Math.floorDiv(now, bucketMillis))
+            return stripe.add(jti, Math.floorDiv(validUntil.toEpochMilli(), bucketMillis) + 1)
+        }
+    }
+
+    /** Number of stored values, including expired ones not yet dropped. */
+    val size: Int
+        get() = stripes.sumOf { synchronized(it) { it.expiries.size } }
+
+    /**
+     * A bucket with index `n` holds the values expiring before `n * bucketMillis`, so it can be
+     * dropped as soon as the current bucket index reaches `n`.
+     */
+    private class Stripe {
+        val expiries = HashMap<String, Long>()
+        private val buckets = HashMap<Long, MutableList<String>>()
+        /** no bucket has a lower index */
+        private var oldestBucket = Long.MAX_VALUE
+
+        fun add(jti: String, bucket: Long): Boolean {
+            val existing = expiries[jti]
+            if (existing != null && existing >= bucket) {
                 return false
             }
-            val result = !seen.contains(jti)
-            expiredQueue.add(Pair(jti, validUntil))
-            seen.add(jti)
-            return result
+            // a replayed value with a later expiry is kept until then, the entry in the former
+            // bucket is skipped when that bucket is dropped
+            expiries[jti] = bucket
+            buckets.getOrPut(bucket) { ArrayList() }.add(jti)
+            oldestBucket = minOf(oldestBucket, bucket)
+            return existing == null
+        }
+
+        fun removeExpired(currentBucket: Long) {
+            if (oldestBucket > currentBucket) {
+                return
+            }
+            if (currentBucket - oldestBucket > buckets.size) {
+                // after a long idle time it is cheaper to look at the existing buckets only
+                buckets.keys.filter { it <= currentBucket }.forEach(::drop)
+            } else {
+                for (bucket in oldestBucket..currentBucket) {
+                    drop(bucket)
+                }
+            }
+            // all buckets up to the current one are gone, a lower bound is sufficient here
+            oldestBucket = if (buckets.isEmpty()) Long.MAX_VALUE else currentBucket + 1
         }
-    }
 
-    private fun removeExpired() {
-        val now = Instant.now(clock)
-        var next = expiredQueue.peek()
-        while (next != null && next.second.isBefore(now)) {
-            expiredQueue.poll()
-            seen.remove(next.first)
-            next = expiredQueue.peek()
+        private fun drop(bucket: Long) {
+            buckets.remove(bucket)?.forEach { jti -> expiries.remove(jti, bucket) }
         }
     }
 }
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.md
+ */
+package de.bdr.openid4vc.vci.data.storage
+
+import de.bdr.openid4vc.vci.utils.clock
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneOffset
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.Assertions.assertEquals
+import org.junit.jupiter.api.Assertions.assertFalse
+import org.junit.jupiter.api.Assertions.assertTrue
+import org.junit.jupiter.api.Test
+
+class InMemoryJtiStorageTest {
+
+    private val start = Instant.parse("2024-11-01T10:00:00Z")
+
+    @AfterEach
+    fun resetClock() {
+        clock = Clock.systemUTC()
+    }
+
+    @Test
+    fun `jti is rejected until it expires`() {
+        clock = Clock.fixed(start, ZoneOffset.UTC)
+        val storage = InMemoryJtiStorage()
+        val validUntil = start.plusSeconds(60)
+
+        assertTrue(storage.isUnused("jti", validUntil))
+        assertFalse(storage.isUnused("jti", validUntil))
+
+        clock = Clock.fixed(validUntil, ZoneOffset.UTC)
+        assertFalse(storage.isUnused("jti", validUntil))
+
+        clock = Clock.fixed(validUntil.plusSeconds(1), ZoneOffset.UTC)
+        assertTrue(storage.isUnused("jti", validUntil.plusSeconds(60)))
+    }
+
+    @Test
+    fun `replay with a later expiry extends the retention`() {
+        clock = Clock.fixed(start, ZoneOffset.UTC)
+        val storage = InMemoryJtiStorage()
+
+        assertTrue(storage.isUnused("jti", start.plusSeconds(10)))
+        assertFalse(storage.isUnused("jti", start.plusSeconds(100)))
+
+        clock = Clock.fixed(start.plusSeconds(50), ZoneOffset.UTC)
+        assertFalse(storage.isUnused("jti", start.plusSeconds(100)))
+    }
+
+    @Test
+    fun `expired values are dropped without capacity limit`() {
+        clock = Clock.fixed(start, ZoneOffset.UTC)
+        val storage = InMemoryJtiStorage(stripes = 4)
+
+        repeat(50_000) { assertTrue(storage.isUnused("jti-$it", start.plusSeconds(it % 30L))) }
+        assertEquals(50_000, storage.size)
+
+        // long idle time, every value has expired
+        clock = Clock.fixed(start.plus(Duration.ofDays(1)), ZoneOffset.UTC)
+        repeat(4) { storage.isUnused("probe-$it", start.plus(Duration.ofDays(1))) }
+        assertEquals(4, storage.size)
+    }
+
+    @Test
+    fun `concurrent replays are detected`() {
+        val storage = InMemoryJtiStorage()
+        val threads = 8
+        val proofsPerThread = 10_000
+        val validUntil = Instant.now().plusSeconds(300)
+        val unused = AtomicInteger()
+        val ready = CountDownLatch(threads)
+        val go = CountDownLatch(1)
+        val executor = Executors.newFixedThreadPool(threads)
+        try {
+            repeat(threads) { thread ->
+                executor.execute {
+                    // every jti is presented by two threads, only one of them may succeed
+                    val offset = thread / 2 * proofsPerThread
+                    ready.countDown()
+                    go.await()
+                    for (i in 0 until proofsPerThread) {
+                        if (storage.isUnused("jti-${offset + i}", validUntil)) {
+                            unused.incrementAndGet()
+                        }
+                    }
+                }
+            }
+            ready.await()
+            go.countDown()
+            executor.shutdown()
+            assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES))
+
+            assertEquals(threads / 2 * proofsPerThread, unused.get())
+            assertEquals(threads / 2 * proofsPerThread, storage.size)
+        } finally {
+            executor.shutdownNow()
+        }
+    }
+}
@@ -13,3 +13,6 @@ include(
     "openid4vci-sdjwtvc",
     "openid4vci-mdoc",
 )
+
+// JMH benchmarks, not part of the regular build
+if (providers.gradleProperty("withBenchmarks").isPresent) include("benchmarks")
@@ -4,15 +4,32 @@
  */
 package de.bdr.openid4vc.statuslist
 
+import com.github.benmanes.caffeine.cache.CacheLoader
 import com.github.benmanes.caffeine.cache.Caffeine
 import com.github.benmanes.caffeine.cache.Expiry
 import java.net.URI
 import java.net.http.HttpClient
+import java.net.http.HttpRequest
+import java.net.http.HttpResponse
 import java.time.Clock
 import java.time.Duration
 import java.time.Instant
-
-/** A status list loader that has caching capabilities. */
+import java.util.concurrent.CompletionException
+import java.util.concurrent.Executor
+import java.util.concurrent.ForkJoinPool
+
+/**
+ * A status list loader that has caching capabilities.
+ *
+ * A cached status list is valid until its ttl has passed since it was loaded or until the token
+ * expires, whichever comes first. Within [refreshAhead] before that, a `get` triggers a refresh in
+ * the background and returns the cached status list without waiting. The refresh revalidates
+ * the token with `If-None-Match` and `If-Modified-Since`, so an unchanged list is neither
+ * downloaded nor verified again.
+ *
+ * Once a status list is no longer valid, `get` waits for the refresh. If the refresh fails, the
+ * cached status list is still returned for the [staleGracePeriod].
+ */
 class CachingCapableHttpStatusListSource(
 
     /** The verifier to use to verify the status list tokens. */
@@ -39,54 +56,137 @@ class CachingCapableHttpStatusListSource(
     private val clock: Clock = Clock.systemDefaultZone(),
 
     /** The http client used to fetch the tokens. */
-    private var client: HttpClient = defaultHttpClient
+    private var client: HttpClient = defaultHttpClient,
+
+    /**
+     * How long before the end of its validity a cached status list is refreshed in the background.
+     *
+     * At most half of the validity of a status list is used for refreshing.
+     */
+    private val refreshAhead: Duration = Duration.ofSeconds(30),
+
+    /**
+     * How long a cached status list may be used after the end of its validity if it can not be
+     * refreshed, e.g. because the issuer is not reachable.
+     */
+    private val staleGracePeriod: Duration = Duration.ZERO,
+
+    /** The executor to load and refresh the status lists in the cache on. */
+    executor: Executor = ForkJoinPool.commonPool(),
 ) : StatusListSource {
 
+    init {
+        require(!refreshAhead.isNegative) { "refreshAhead must not be negative" }
+        require(!staleGracePeriod.isNegative) { "staleGracePeriod must not be negative" }
+    }
+
     private val entryExpiry =
         object : Expiry<URI, Entry> {
             override fun expireAfterCreate(key: URI, value: Entry, currentTime: Long) =
-                Duration.between(clock.instant(), value.expiresAt).toNanos()
+                value.remaining()
 
             override fun expireAfterUpdate(
                 key: URI,
                 value: Entry,
                 currentTime: Long,
                 currentDuration: Long
-            ) = Duration.between(clock.instant(), value.expiresAt).toNanos()
+            ) = value.remaining()
 
             override fun expireAfterRead(
                 key: URI,
                 value: Entry,
                 currentTime: Long,
                 currentDuration: Long
-            ) = Long.MAX_VALUE
+            ) = currentDuration
+
+            private fun Entry.remaining() =
+                Duration.between(clock.instant(), validUntil.plus(staleGracePeriod)).toNanos()
+        }
+
+    private val loader =
+        object : CacheLoader<URI, Entry> {
+            override fun load(key: URI) = loadEntry(key)
+
+            override fun reload(key: URI, oldValue: Entry) = loadEntry(key, oldValue)
         }
 
     private val cache =
         if (useCache) {
             Caffeine.newBuilder()
                 .weigher { _: URI, value: Entry -> value.size }
-                .maximumSize(maxSize)
+                .maximumWeight(maxSize)
                 .ticker(clock.ticker())
                 .expireAfter(entryExpiry)
-                .build<URI, Entry>(::loadEntry)
+                .executor(executor)
+                .buildAsync(loader)
+                .synchronous()
         } else {
             null
         }
 
-    private inner class Entry(statusListToken: StatusListToken) {
+    private inner class Entry(
+        val statusListToken: StatusListToken,
+        val eTag: String?,
+        val lastModified: String?,
+        loadedAt: Instant,
+    ) {
         val statusList = statusListToken.statusList
-        val expiresAt: Instant =
-            min(statusListToken.ttl?.let { clock.instant().plus(it) }, statusListToken.expiresAt)
+        val validUntil: Instant =
+            min(statusListToken.ttl?.let { loadedAt.plus(it) }, statusListToken.expiresAt)
+        val refreshAt: Instant =
+            if (validUntil == Instant.MAX) {
+                Instant.MAX
+            } else {
+                val validity = Duration.between(loadedAt, validUntil)
+                validUntil.minus(minOf(refreshAhead, validity.dividedBy(2)))
+            }
         val size = statusList.getList().size
+
+        /** If a 304 response would make this entry valid again. */
+        fun revalidatable(now: Instant) =
+            (eTag != null || lastModified != null) &&
+                statusListToken.expiresAt?.isAfter(now) != false
+
+        fun revalidated(now: Instant) = Entry(statusListToken, eTag, lastModified, now)
     }
 
     /** Gets a status list by URI using the cache if configured. */
     override fun get(statusListUri: URI): StatusList {
-        return if (cache != null) {
-            return cache[statusListUri].statusList
-        } else {
-            loadEntry(statusListUri).statusList
+        if (cache == null) return loadEntry(statusListUri).statusList
+        val entry = cache[statusListUri]
+        val now = clock.instant()
+        return when {
+            now.isBefore(entry.refreshAt) -> entry
+            now.isBefore(entry.validUntil) -> {
+                cache.refresh(statusListUri)
+                entry
+            }
+            else -> refreshExpired(statusListUri, entry)
+        }.statusList
+    }
+
+    /**
+     * Loads the status list from `statusListUri` unless it is cached and not due for a refresh and
+     * caches it if a cache is configured.
+     */
+    internal fun load(statusListUri: URI): StatusList {
+        cache?.getIfPresent(statusListUri)?.let {
+            if (clock.instant().isBefore(it.refreshAt)) return it.statusList
+        }
+        val entry = loadEntry(statusListUri)
+        cache?.put(statusListUri, entry)
+        return entry.statusList
+    }
+
+    private fun refreshExpired(statusListUri: URI, entry: Entry): Entry {
+        return try {
+            cache!!.refresh(statusListUri).join()
+        } catch (e: CompletionException) {
+            if (clock.instant().isBefore(entry.validUntil.plus(staleGracePeriod))) {
+                entry
+            } else {
+                throw e.cause as? RuntimeException ?: e
+            }
         }
     }
 
@@ -108,10 +208,35 @@ class CachingCapableHttpStatusListSource(
         cache?.invalidateAll() ?: error("Cache not used")
     }
 
-    private fun loadEntry(statusListUri: URI): Entry {
-        val token = StatusListToken.fetch(statusListUri, client)
+    private fun loadEntry(statusListUri: URI, previous: Entry? = null): Entry {
+        val now = clock.instant()
+        val conditional = previous?.takeIf { it.revalidatable(now) }
+        val request =
+            HttpRequest.newBuilder(statusListUri)
+                .GET()
+                .header("accept", "application/statuslist+jwt")
+                .timeout(httpTimeout)
+        conditional?.eTag?.let { request.header("if-none-match", it) }
+        conditional?.lastModified?.let { request.header("if-modified-since", it) }
+
+        val response = client.send(request.build(), HttpResponse.BodyHandlers.ofString())
+        if (conditional != null && response.statusCode() == 304) {
+            return conditional.revalidated(clock.instant())
+        }
+        if (response.statusCode() != 200) {
+            fail(
+                StatusListException.Reason.INVALID_STATUS_LIST,
+                "Received ${response.statusCode()} response when fetching $statusListUri"
+            )
+        }
+        val token = StatusListToken.parse(response.body())
         requireNotNull(token.jwt) { "Failed to fetch token as JWT" }
         token.jwt.verify(verifier.verifier(token.jwt))
-        return Entry(token)
+        return Entry(
+            token,
+            response.headers().firstValue("etag").orElse(null),
+            response.headers().firstValue("last-modified").orElse(null),
+            now,
+        )
     }
 }
@@ -6,8 +6,8 @@ package de.bdr.openid4vc.statuslist
 
 import com.nimbusds.jose.util.Base64URL
 import com.upokecenter.cbor.CBORObject
+import java.io.ByteArrayOutputStream
 import java.util.zip.Deflater
-import java.util.zip.DeflaterInputStream
 import java.util.zip.InflaterInputStream
 import kotlin.experimental.and
 import kotlin.experimental.inv
@@ -20,10 +20,22 @@ import kotlin.experimental.or
  * @param bits number of bits per entry
  * @param defaultValue default Value for new empty status list
  * @param list pre-initialized array for the status list
+ * @param compressionLevel the [Deflater] level used to compress the list
+ * @param compressionStrategy the [Deflater] strategy used to compress the list
  *
  * Either use defaultValue or list.
+ *
+ * The list is compressed once and the result is shared by [getEncoded], [toJsonObject] and
+ * [toCborObject] until the list is changed with [set].
  */
-class StatusList(size: Int, bits: Int, defaultValue: Byte? = null, list: ByteArray? = null) {
+class StatusList(
+    size: Int,
+    bits: Int,
+    defaultValue: Byte? = null,
+    list: ByteArray? = null,
+    private val compressionLevel: Int = Deflater.BEST_COMPRESSION,
+    private val compressionStrategy: Int = Deflater.DEFAULT_STRATEGY
+) {
     init {
         require(bits == 1 || bits == 2 || bits == 4 || bits == 8) {
             "The allowed values for bits are 1,2,4 and 8."
@@ -51,6 +63,9 @@ class StatusList(size: Int, bits: Int, defaultValue: Byte? = null, list: ByteArr
     // bitmask with number of bits per status set to 1
     private val mask = ((1 shl bits) - 1).toByte()
 
+    // compressed list, null if not compressed yet or changed since
+    @Volatile private var compressed: ByteArray? = null
+
     init {
         if (defaultValue != null) {
             this.list.fill(defaultValue)
@@ -98,14 +113,31 @@ class StatusList(size: Int, bits: Int, defaultValue: Byte? = null, list: ByteArr
         val oldValue = list[byteIndex] and (mask shl shift).inv()
         val newValue = value shl shift
         list[byteIndex] = oldValue or newValue
+        compressed = null
     }
 
+    /** Returns the list itself, changes to it are not reflected by already compressed forms. */
     fun getList() = list
 
-    private fun getCompressed() =
-        DeflaterInputStream(list.inputStream(), Deflater(Deflater.BEST_COMPRESSION)).use {
-            it.readBytes()
+    private fun getCompressed() = compressed ?: compress().also { compressed = it }
+
+    private fun compress(): ByteArray {
+        // the native memory of a deflater is only released by end()
+        val deflater = Deflater(compressionLevel)
+        try {
+            deflater.setStrategy(compressionStrategy)
+            deflater.setInput(list)
+            deflater.finish()
+            val result = ByteArrayOutputStream(list.size / 8 + 64)
+            val buffer = ByteArray(8192)
+            while (!deflater.finished()) {
+                result.write(buffer, 0, deflater.deflate(buffer))
+            }
+            return result.toByteArray()
+        } finally {
+            deflater.end()
         }
+    }
 
     fun getEncoded() = Base64URL.encode(getCompressed()).toString()
 
@@ -25,23 +25,51 @@ class StatusListAggregation(vararg listUris: String) : Set<String> by setOf(*lis
     /**
      * Returns a `CachingCapableHttpStatusListSource` that is prepopulated with all elements of this
      * `StatusListAggregation`.
+     *
+     * @throws StatusListException if a status list could not be loaded
      */
-    fun populatedStatusListSource(verifier: Verifier) =
-        populatedStatusListSource(CachingCapableHttpStatusListSource(verifier, useCache = true))
+    @JvmOverloads
+    fun populatedStatusListSource(verifier: Verifier, parallelism: Int = DEFAULT_PARALLELISM) =
+        populatedStatusListSource(
+            CachingCapableHttpStatusListSource(verifier, useCache = true),
+            parallelism,
+        )
 
     /**
      * Populates the given `CachingCapableHttpStatusListSource` with all elements of this
-     * `StatusListAggregation`.
+     * `StatusListAggregation`, loading up to `parallelism` status lists at once.
+     *
+     * @throws StatusListException if a status list could not be loaded, the other status lists are
+     *   loaded nevertheless
      */
-    fun populatedStatusListSource(source: CachingCapableHttpStatusListSource): StatusListSource {
-        forEach { source.get(URI.create(it)) }
+    @JvmOverloads
+    fun populatedStatusListSource(
+        source: CachingCapableHttpStatusListSource,
+        parallelism: Int = DEFAULT_PARALLELISM,
+    ): StatusListSource {
+        prefetch(source, parallelism).awaitAll()
         return source
     }
 
+    /**
+     * Starts loading all elements of this `StatusListAggregation` into the given
+     * `CachingCapableHttpStatusListSource` on up to `parallelism` threads and returns without
+     * waiting.
+     *
+     * The returned `StatusListPrefetch` reports the progress and the status lists that failed.
+     */
+    @JvmOverloads
+    fun prefetch(
+        source: CachingCapableHttpStatusListSource,
+        parallelism: Int = DEFAULT_PARALLELISM,
+    ) = StatusListPrefetch(source, this, parallelism)
+
     companion object {
 
         const val STATUS_LISTS_CLAIM = "status_lists"
 
+        const val DEFAULT_PARALLELISM = 8
+
         fun fetch(
             aggregationUri: URI,
             client: HttpClient = defaultHttpClient,
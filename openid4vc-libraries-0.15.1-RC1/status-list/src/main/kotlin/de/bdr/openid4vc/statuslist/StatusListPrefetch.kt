@@ -0,0 +1,119 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.md
+ */
+package de.bdr.openid4vc.statuslist
+
+import java.net.URI
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Progress of loading the status lists of a [StatusListAggregation] into a
+ * [CachingCapableHttpStatusListSource], see [StatusListAggregation.prefetch].
+ *
+ * The lists are loaded on up to `parallelism` threads and each list is cached as soon as it is
+ * loaded. A list that can not be loaded is recorded in [failures] and does not affect the others.
+ */
+class StatusListPrefetch
+internal constructor(
+    private val source: CachingCapableHttpStatusListSource,
+    listUris: Collection<String>,
+    parallelism: Int,
+) {
+
+    init {
+        require(parallelism > 0) { "parallelism must be > 0" }
+    }
+
+    /** The number of status lists to load. */
+    val total = listUris.size
+
+    private val loadedCount = AtomicInteger()
+
+    private val failureMap = ConcurrentHashMap<String, Throwable>()
+
+    private val started = System.nanoTime()
+
+    @Volatile private var finished: Long? = null
+
+    /** The number of status lists loaded and cached so far. */
+    val loaded: Int
+        get() = loadedCount.get()
+
+    /** The number of status lists that could not be loaded so far. */
+    val failed: Int
+        get() = failureMap.size
+
+    /** The status lists that could not be loaded so far with the cause by list uri. */
+    val failures: Map<String, Throwable>
+        get() = failureMap.toMap()
+
+    /** The time spent loading, up to now if the prefetch is not completed yet. */
+    val duration: Duration
+        get() = Duration.ofNanos((finished ?: System.nanoTime()) - started)
+
+    /** Completes with this prefetch once every status list is either loaded or failed. */
+    val completion: CompletableFuture<StatusListPrefetch>
+
+    init {
+        val executor =
+            Executors.newFixedThreadPool(minOf(parallelism, maxOf(total, 1))) { runnable ->
+                Thread(runnable, "status-list-prefetch-${threadIndex.incrementAndGet()}").apply {
+                    isDaemon = true
+                }
+            }
+        val loads =
+            listUris.map { listUri ->
+                CompletableFuture.runAsync({ load(listUri) }, executor)
+            }
+        completion =
+            CompletableFuture.allOf(*loads.toTypedArray()).thenApply {
+                finished = System.nanoTime()
+                this
+            }
+        executor.shutdown()
+    }
+
+    private fun load(listUri: String) {
+        try {
+            source.load(URI.create(listUri))
+            loadedCount.incrementAndGet()
+        } catch (e: Exception) {
+            failureMap[listUri] = e
+        }
+    }
+
+    /**
+     * Waits until every status list is either loaded or failed.
+     *
+     * @throws StatusListException if a status list could not be loaded, the causes of the other
+     *   failed status lists are added as suppressed exceptions
+     */
+    fun awaitAll(): StatusListPrefetch {
+        completion.join()
+        val causes = failureMap.values.toList()
+        if (causes.isNotEmpty()) {
+            val exception =
+                StatusListException(
+                    StatusListException.Reason.INVALID_STATUS_LIST_AGGREGATION,
+                    "Failed to load $failed of $total status lists",
+                    causes.first(),
+                )
+            causes.drop(1).forEach { exception.addSuppressed(it) }
+            throw exception
+        }
+        return this
+    }
+
+    override fun toString() =
+        "StatusListPrefetch(total=$total, loaded=$loaded, failed=$failed, duration=$duration)"
+
+    private companion object {
+        /** Numbers the prefetch threads across all prefetches, so each has a distinct name. */
+        private val threadIndex = AtomicInteger()
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.md
+ */
+package de.bdr.ssi.statuslist
+
+import com.nimbusds.jose.crypto.ECDSAVerifier
+import com.nimbusds.jose.jwk.Curve
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import de.bdr.openid4vc.common.signing.JwkSigner
+import de.bdr.openid4vc.statuslist.CachingCapableHttpStatusListSource
+import de.bdr.openid4vc.statuslist.StatusList
+import de.bdr.openid4vc.statuslist.StatusListException
+import de.bdr.openid4vc.statuslist.StatusListToken
+import de.bdr.openid4vc.statuslist.Verifier
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.net.URI
+import java.time.Clock
+import java.time.Duration
+import java.time.Instant
+import java.time.ZoneId
+import java.time.ZoneOffset
+import java.util.concurrent.CompletionException
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+
+internal class CachingCapableHttpStatusListSourceTest {
+
+    private val key = ECKeyGenerator(Curve.P_256).generate()
+    private val signer = JwkSigner(key)
+    private val verifications = AtomicInteger()
+    private val verifier = Verifier {
+        verifications.incrementAndGet()
+        ECDSAVerifier(key.toECPublicKey())
+    }
+
+    private val clock = TestClock(Instant.now())
+    private val server =
+        HttpServer.create(InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0)
+    private val executor = Executors.newCachedThreadPool()
+    private lateinit var uri: URI
+
+    /** The If-None-Match header and the response status of every request to the stub. */
+    private val requests = CopyOnWriteArrayList<Pair<String?, Int>>()
+    @Volatile private var version = 1
+    @Volatile private var available = true
+    @Volatile private var responding = CountDownLatch(0)
+
+    @BeforeEach
+    fun setUp() {
+        server.executor = executor
+        server.createContext("/lists/1", ::respond)
+        server.start()
+        uri = URI.create("http://localhost:${server.address.port}/lists/1")
+    }
+
+    @AfterEach
+    fun tearDown() {
+        responding.countDown()
+        server.stop(0)
+        executor.shutdownNow()
+    }
+
+    @Test
+    fun `cached list is served while it is refreshed in the background`() {
+        val source = source(executor)
+        assert(source.get(uri).get(0) == 0.toByte())
+
+        version = 2
+        responding = CountDownLatch(1)
+        clock.advance(Duration.ofSeconds(45))
+
+        assert(source.get(uri).get(0) == 0.toByte())
+        assert(responding.count == 1L)
+
+        responding.countDown()
+        val deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5)
+        while (source.get(uri).get(0) == 0.toByte() && System.nanoTime() < deadline) {
+            Thread.sleep(10)
+        }
+        assert(source.get(uri).get(0) == 1.toByte())
+        assert(requests.map { it.second } == listOf(200, 200))
+        assert(verifications.get() == 2)
+    }
+
+    @Test
+    fun `unchanged list is revalidated instead of downloaded`() {
+        val source = source(DIRECT)
+        source.get(uri)
+
+        clock.advance(Duration.ofSeconds(45))
+        source.get(uri)
+        clock.advance(Duration.ofSeconds(30))
+        source.get(uri)
+
+        assert(requests == listOf(null to 200, "\"1\"" to 304))
+        assert(verifications.get() == 1)
+    }
+
+    @Test
+    fun `stale list is served within the grace period if the issuer is unavailable`() {
+        val source = source(DIRECT)
+        source.get(uri)
+
+        available = false
+        clock.advance(Duration.ofSeconds(90))
+        assert(source.get(uri).get(0) == 0.toByte())
+
+        clock.advance(Duration.ofMinutes(5))
+        val exception = assertThrows<CompletionException> { source.get(uri) }
+        assert(exception.cause is StatusListException)
+    }
+
+    @Test
+    fun `expired list is loaded again before it is returned`() {
+        val source = source(DIRECT, staleGracePeriod = Duration.ZERO)
+        source.get(uri)
+
+        version = 2
+        clock.advance(Duration.ofSeconds(90))
+
+        assert(source.get(uri).get(0) == 1.toByte())
+        assert(requests.map { it.second } == listOf(200, 200))
+    }
+
+    private fun source(executor: Executor, staleGracePeriod: Duration = Duration.ofMinutes(5)) =
+        CachingCapableHttpStatusListSource(
+            verifier,
+            useCache = true,
+            clock = clock,
+            refreshAhead = Duration.ofSeconds(20),
+            staleGracePeriod = staleGracePeriod,
+            executor = executor,
+        )
+
+    private fun respond(exchange: HttpExchange) {
+        exchange.use {
+            val ifNoneMatch = it.requestHeaders.getFirst("if-none-match")
+            responding.await(5, TimeUnit.SECONDS)
+            val eTag = "\"$version\""
+            val status =
+                when {
+                    !available -> 503
+                    ifNoneMatch == eTag -> 304
+                    else -> 200
+                }
+            requests.add(ifNoneMatch to status)
+            it.responseHeaders.add("etag", eTag)
+            if (status == 200) {
+                val body = token().toByteArray()
+                it.sendResponseHeaders(200, body.size.toLong())
+                it.responseBody.write(body)
+            } else {
+                it.sendResponseHeaders(status, -1)
+            }
+        }
+    }
+
+    private fun token(): String {
+        val statusList = StatusList(16, 1)
+        if (version > 1) statusList.set(0, 1)
+        return StatusListToken(
+                uri.toString(),
+                "https://example.com",
+                Instant.now(),
+                statusList,
+                expiresAt = Instant.now().plus(Duration.ofHours(1)),
+                ttl = Duration.ofMinutes(1),
+            )
+            .asJwt(signer)
+            .serialize()
+    }
+
+    private class TestClock(@Volatile private var now: Instant) : Clock() {
+        fun advance(duration: Duration) {
+            now = now.plus(duration)
+        }
+
+        override fun instant() = now
+
+        override fun getZone(): ZoneId = ZoneOffset.UTC
+
+        override fun withZone(zone: ZoneId) = this
+    }
+
+    private companion object {
+        val DIRECT = Executor { it.run() }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.md
+ */
+package de.bdr.ssi.statuslist
+
+import com.nimbusds.jose.crypto.ECDSAVerifier
+import com.nimbusds.jose.jwk.Curve
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator
+import com.sun.net.httpserver.HttpExchange
+import com.sun.net.httpserver.HttpServer
+import de.bdr.openid4vc.common.signing.JwkSigner
+import de.bdr.openid4vc.statuslist.CachingCapableHttpStatusListSource
+import de.bdr.openid4vc.statuslist.StatusList
+import de.bdr.openid4vc.statuslist.StatusListAggregation
+import de.bdr.openid4vc.statuslist.StatusListException
+import de.bdr.openid4vc.statuslist.StatusListToken
+import java.net.InetAddress
+import java.net.InetSocketAddress
+import java.net.URI
+import java.time.Duration
+import java.time.Instant
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.junit.jupiter.api.assertThrows
+
+internal class StatusListAggregationTest {
+
+    private val key = ECKeyGenerator(Curve.P_256).generate()
+    private val signer = JwkSigner(key)
+    private val source =
+        CachingCapableHttpStatusListSource({ ECDSAVerifier(key.toECPublicKey()) }, useCache = true)
+
+    private val server =
+        HttpServer.create(InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0)
+    private val executor = Executors.newCachedThreadPool()
+    private lateinit var baseUri: String
+
+    /** The delay of the response for each list, lists without delay respond with 500. */
+    private val delays = (0 until 24).associateWith { Duration.ofMillis(100L + it % 4 * 50) }
+    private val requests = AtomicInteger()
+    private val running = AtomicInteger()
+    private val maxRunning = AtomicInteger()
+
+    @BeforeEach
+    fun setUp() {
+        server.executor = executor
+        server.createContext("/lists/", ::respond)
+        server.start()
+        baseUri = "http://localhost:${server.address.port}/lists"
+    }
+
+    @AfterEach
+    fun tearDown() {
+        server.stop(0)
+        executor.shutdownNow()
+    }
+
+    @Test
+    fun `status lists are loaded concurrently with bounded parallelism`() {
+        val aggregation = aggregation(0 until 24)
+        val sequential = delays.values.reduce(Duration::plus)
+
+        val prefetch = aggregation.prefetch(source, parallelism = 6).completion.get(10, SECONDS)
+
+        assert(prefetch.total == 24 && prefetch.loaded == 24 && prefetch.failed == 0)
+        assert(maxRunning.get() in 2..6)
+        assert(prefetch.duration < sequential)
+        aggregation.forEach { assert(source.get(URI.create(it)).get(0) == 1.toByte()) }
+        assert(requests.get() == 24)
+    }
+
+    @Test
+    fun `failed status lists do not affect the others`() {
+        val aggregation = aggregation(0 until 24 step 2, missing = 100 until 103)
+
+        val prefetch = aggregation.prefetch(source, parallelism = 4).completion.get(10, SECONDS)
+
+        assert(prefetch.loaded == 12 && prefetch.failed == 3)
+        assert(prefetch.failures.keys == (100 until 103).map { "$baseUri/$it" }.toSet())
+        assert(prefetch.failures.values.all { it is StatusListException })
+        val exception = assertThrows<StatusListException> { prefetch.awaitAll() }
+        assert(exception.reason == StatusListException.Reason.INVALID_STATUS_LIST_AGGREGATION)
+        assert(exception.suppressed.size == 2)
+    }
+
+    @Test
+    fun `progress is reported while status lists are loading`() {
+        val prefetch = aggregation(0 until 24).prefetch(source, parallelism = 2)
+
+        assert(prefetch.loaded < prefetch.total)
+        val completed = prefetch.completion.get(10, SECONDS)
+        assert(completed.loaded == 24)
+    }
+
+    @Test
+    fun `status lists are loaded on distinctly named threads`() {
+        val threadNames = ConcurrentHashMap.newKeySet<String>()
+        val source =
+            CachingCapableHttpStatusListSource(
+                {
+                    threadNames.add(Thread.currentThread().name)
+                    ECDSAVerifier(key.toECPublicKey())
+                },
+                useCache = true,
+            )
+
+        aggregation(0 until 12).populatedStatusListSource(source, parallelism = 3)
+
+        assert(threadNames.size == 3) { threadNames }
+        assert(threadNames.all { it.matches(Regex("status-list-prefetch-\\d+")) }) { threadNames }
+    }
+
+    @Test
+    fun `cached status lists are not loaded again`() {
+        val aggregation = aggregation(0 until 8)
+        aggregation.populatedStatusListSource(source, parallelism = 4)
+
+        aggregation.populatedStatusListSource(source, parallelism = 4)
+
+        assert(requests.get() == 8)
+    }
+
+    private fun aggregation(lists: IntProgression, missing: IntRange = IntRange.EMPTY) =
+        StatusListAggregation(*(lists + missing).map { "$baseUri/$it" }.toTypedArray())
+
+    private fun respond(exchange: HttpExchange) {
+        exchange.use {
+            requests.incrementAndGet()
+            maxRunning.accumulateAndGet(running.incrementAndGet(), ::maxOf)
+            try {
+                val list = it.requestURI.path.substringAfterLast('/').toInt()
+                val delay = delays[list]
+                if (delay == null) {
+                    it.sendResponseHeaders(500, -1)
+                    return
+                }
+                Thread.sleep(delay.toMillis())
+                val body = token(it.requestURI).toByteArray()
+                it.sendResponseHeaders(200, body.size.toLong())
+                it.responseBody.write(body)
+            } finally {
+                running.decrementAndGet()
+            }
+        }
+    }
+
+    private fun token(uri: URI): String {
+        val statusList = StatusList(16, 1)
+        statusList.set(0, 1)
+        return StatusListToken(
+                "$baseUri/${uri.path.substringAfterLast('/')}",
+                "https://example.com",
+                Instant.now(),
+                statusList,
+                expiresAt = Instant.now().plus(Duration.ofHours(1)),
+                ttl = Duration.ofMinutes(5),
+            )
+            .asJwt(signer)
+            .serialize()
+    }
+
+    private companion object {
+        val SECONDS = TimeUnit.SECONDS
+    }
+}
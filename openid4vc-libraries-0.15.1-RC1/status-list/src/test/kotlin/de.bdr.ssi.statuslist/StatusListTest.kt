@@ -4,7 +4,9 @@
  */
 package de.bdr.ssi.statuslist
 
+import com.nimbusds.jose.util.Base64URL
 import de.bdr.openid4vc.statuslist.StatusList
+import java.util.zip.Deflater
 import org.junit.jupiter.api.Test
 import org.junit.jupiter.api.assertThrows
 
@@ -208,4 +210,38 @@ internal class StatusListTest {
         val statusList3 = StatusList(12, 4)
         assertThrows<IllegalArgumentException> { statusList3.set(0, 16) }
     }
+
+    @Test
+    fun `compressed list is reused until the list is changed`() {
+        val statusList = StatusList(16, 1, list = byteArrayOf(0xB9.toByte(), 0xA3.toByte()))
+
+        val cbor = statusList.toCborObject()[StatusList.CBOR_LIST_CLAIM].GetByteString()
+        assert(statusList.getEncoded() == Base64URL.encode(cbor).toString())
+        assert(statusList.getEncoded() == "eNrbuRgAAhcBXQ")
+
+        statusList.set(1, 1)
+
+        assert(statusList.getEncoded() != "eNrbuRgAAhcBXQ")
+        assert(StatusList.fromEncoded(1, statusList.getEncoded()).get(1) == 1.toByte())
+    }
+
+    @Test
+    fun `status list is compressed with the given level and strategy`() {
+        val list = ByteArray(4096) { (it % 7).toByte() }
+        val stored = StatusList(32768, 1, list = list, compressionLevel = Deflater.NO_COMPRESSION)
+        val huffman =
+            StatusList(
+                32768,
+                1,
+                list = list,
+                compressionStrategy = Deflater.HUFFMAN_ONLY,
+            )
+        val best = StatusList(32768, 1, list = list)
+
+        assert(stored.getEncoded().length > huffman.getEncoded().length)
+        assert(huffman.getEncoded().length > best.getEncoded().length)
+        listOf(stored, huffman, best).forEach {
+            assert(StatusList.fromEncoded(1, it.getEncoded()).getList().contentEquals(list))
+        }
+    }
 }
@@ -0,0 +1,25 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.authorization.config;
+
+import de.bdr.openid4vc.vci.data.storage.InMemoryJtiStorage;
+import de.bdr.openid4vc.vci.data.storage.JtiStorage;
+import de.bdr.pidi.authorization.out.persistence.DpopJtiAdapter;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * With {@code pidi.authorization.jti-store=memory} the used DPoP proofs are only known to the node that received
+ * them, only usable if a single node serves all requests. The default {@code jpa} is the {@link DpopJtiAdapter}.
+ */
+@Configuration
+public class JtiStorageConfiguration {
+    @Bean
+    @ConditionalOnProperty(name = DpopJtiAdapter.PROPERTY, havingValue = "memory")
+    public JtiStorage inMemoryJtiStorage() {
+        return new InMemoryJtiStorage();
+    }
+}
@@ -67,6 +67,70 @@ public class AuthorizationConfiguration extends BaseUrlConfiguration {
 
     private int batchIssuanceMaxSize;
 
+    /**
+     * maximum number of credentials of one batch request that are built in parallel, 1 builds them sequentially
+     */
+    private int batchIssuanceParallelism = 1;
+
+    /**
+     * maximum number of credentials built in parallel for all batch requests together, 0 uses the number of
+     * processors. The request thread itself always builds credentials of its batch and is not counted.
+     */
+    private int batchIssuanceMaxConcurrentBuilds = 0;
+
+    /**
+     * build the credentials of a batch request on virtual threads
+     */
+    private boolean batchIssuanceVirtualThreads = true;
+
+    /**
+     * where the sessions are stored: jpa (database) or memory (single node only, sessions are lost on restart)
+     */
+    private String sessionStore = "jpa";
+
+    /**
+     * maximum number of sessions kept by the in-memory session store
+     */
+    private long sessionStoreMaximumSize = 100_000;
+
+    /**
+     * write the session parameters as JSON as well as binary and read the JSON first, so nodes of the previous release
+     * can share the sessions. Enable it for a rolling update from the previous release or to be able to roll back to
+     * it, and disable it once no such node is left. Otherwise the parameters are read binary and the JSON is only read
+     * for sessions the previous release has written.
+     */
+    private boolean sessionJsonCompatibility = false;
+
+    /**
+     * where the jti values of used DPoP proofs are stored: jpa (database) or memory (single node only)
+     */
+    private String jtiStore = "jpa";
+
+    /**
+     * where the pin retry counters are stored: jpa (database) or memory (single node only, counters are lost on restart)
+     */
+    private String pinRetryCounterStore = "jpa";
+
+    /**
+     * how the session ID nonces are kept: jpa (database, single use) or encrypted (not stored, usable until expired)
+     */
+    private String sessionIdNonceStore = "jpa";
+
+    /**
+     * base64 encoded AES key of the encrypted session ID nonces, shared by all nodes, a random key if not set
+     */
+    private String sessionIdNonceKey;
+
+    /**
+     * the device key pool is refilled when it holds fewer pre-generated key pairs
+     */
+    private int deviceKeyPoolLowWatermark = 16;
+
+    /**
+     * maximum number of pre-generated device key pairs, 0 generates every key pair on request
+     */
+    private int deviceKeyPoolHighWatermark = 64;
+
     public String getCredentialIssuerIdentifier(@NotNull FlowVariant flowVariant) {
         return getBaseUrl() + flowVariant.urlPath;
     }
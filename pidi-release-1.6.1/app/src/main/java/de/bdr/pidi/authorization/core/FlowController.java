@@ -13,6 +13,7 @@ import lombok.RequiredArgsConstructor;
 import org.jmolecules.architecture.hexagonal.PrimaryPort;
 
 import java.util.List;
+import java.util.function.Consumer;
 
 @PrimaryPort
 @RequiredArgsConstructor
@@ -78,4 +79,34 @@ public abstract class FlowController {
     public WResponseBuilder processSessionRequest(HttpRequest<?> request) {
         throw new UnsupportedOperationException(OPERATION_NOT_SUPPORTED_MSG);
     }
+
+    /**
+     * Runs the processing of a request and persists the session afterwards. The session is persisted also if the
+     * processing failed, the error response may rely on changes of the session (e.g. a new DPoP nonce). If persisting
+     * fails then as well, that failure is added to the failure of the processing instead of replacing it.
+     */
+    protected void persistAfter(WSession session, Runnable processing) {
+        runAndPersist(session, processing, sm::persist);
+    }
+
+    /**
+     * like {@link #persistAfter(WSession, Runnable)}, terminating the session
+     */
+    protected void persistAndTerminateAfter(WSession session, Runnable processing) {
+        runAndPersist(session, processing, sm::persistAndTerminate);
+    }
+
+    private static void runAndPersist(WSession session, Runnable processing, Consumer<WSession> persist) {
+        try {
+            processing.run();
+        } catch (RuntimeException | Error e) {
+            try {
+                persist.accept(session);
+            } catch (RuntimeException persistFailure) {
+                e.addSuppressed(persistFailure);
+            }
+            throw e;
+        }
+        persist.accept(session);
+    }
 }
@@ -5,7 +5,7 @@
 package de.bdr.pidi.authorization.core;
 
 import de.bdr.pidi.authorization.FlowVariant;
-import de.bdr.pidi.authorization.core.domain.PidIssuerNonce;
+import de.bdr.pidi.authorization.core.domain.Nonce;
 
 public interface SessionManager {
 
@@ -59,5 +59,5 @@ public interface SessionManager {
 
     void persistAndTerminate(WSession session);
 
-    PidIssuerNonce createSessionIdNonce();
+    Nonce createSessionIdNonce();
 }
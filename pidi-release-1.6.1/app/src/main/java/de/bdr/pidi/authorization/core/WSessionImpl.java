@@ -38,6 +38,9 @@ public class WSessionImpl implements WSession, WSessionManagement {
     private final Map<SessionKey, String> parameters = new EnumMap<>(SessionKey.class);
     @Getter @Setter
     private Requests nextExpectedRequest;
+    /** version of the stored session this instance is based on */
+    @Getter @Setter
+    private long version;
     private final ObjectMapper mapper = new ObjectMapper();
 
     public WSessionImpl(FlowVariant flowVariant, long sessionId) {
@@ -50,6 +53,7 @@ public class WSessionImpl implements WSession, WSessionManagement {
         this.flowVariant = wSession.flowVariant;
         this.parameters.putAll(wSession.parameters);
         this.nextExpectedRequest = wSession.nextExpectedRequest;
+        this.version = wSession.version;
     }
 
     @Override
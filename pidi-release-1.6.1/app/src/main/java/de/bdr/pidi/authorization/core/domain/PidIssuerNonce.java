@@ -1,22 +0,0 @@
-/*
- * Copyright 2024 Bundesdruckerei GmbH
- * For the license see the accompanying file LICENSE.MD.
- */
-package de.bdr.pidi.authorization.core.domain;
-
-import lombok.AllArgsConstructor;
-import lombok.EqualsAndHashCode;
-import lombok.Getter;
-import lombok.Setter;
-import lombok.ToString;
-
-@Getter
-@ToString
-@EqualsAndHashCode
-@AllArgsConstructor
-public class PidIssuerNonce {
-    private final long id;
-    private final Nonce nonce;
-    @Setter
-    private boolean used;
-}
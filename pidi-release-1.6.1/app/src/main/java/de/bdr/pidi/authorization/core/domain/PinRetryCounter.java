@@ -18,10 +18,6 @@ import java.time.Instant;
 public class PinRetryCounter {
     private final long id;
     private final String digest;
-    private int value;
+    private final int value;
     private final Instant expirationTime;
-
-    public void increment() {
-        this.value++;
-    }
 }
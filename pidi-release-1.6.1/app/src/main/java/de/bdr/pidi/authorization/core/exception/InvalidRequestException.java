@@ -26,6 +26,9 @@ public class InvalidRequestException extends OIDException {
     public static InvalidRequestException forWrongRequestOrder(Requests request) {
         return new InvalidRequestException("The /%s request is not allowed".formatted(request.getPath()), request + " is not the allowed next request");
     }
+    public static InvalidRequestException forConcurrentModification(long sessionId) {
+        return new InvalidRequestException("The session was changed by a concurrent request", "Session " + sessionId + " was changed by a concurrent request");
+    }
     public static String missingParameter(String param) {
         return String.format(MISSING_PARAM_MESSAGE, param);
     }
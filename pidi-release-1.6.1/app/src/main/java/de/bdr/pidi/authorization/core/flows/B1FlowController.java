@@ -8,6 +8,7 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.nimbusds.jwt.SignedJWT;
 import de.bdr.openid4vc.common.vci.CredentialRequest;
+import de.bdr.openid4vc.vci.data.storage.JtiStorage;
 import de.bdr.openid4vc.vci.service.HttpRequest;
 import de.bdr.pidi.authorization.FlowVariant;
 import de.bdr.pidi.authorization.core.AuthorizationConfiguration;
@@ -15,7 +16,7 @@ import de.bdr.pidi.authorization.core.SessionManager;
 import de.bdr.pidi.authorization.core.WResponseBuilder;
 import de.bdr.pidi.authorization.core.WSession;
 import de.bdr.pidi.authorization.core.WSessionManagement;
-import de.bdr.pidi.authorization.core.domain.PidIssuerNonce;
+import de.bdr.pidi.authorization.core.domain.Nonce;
 import de.bdr.pidi.authorization.core.domain.Requests;
 import de.bdr.pidi.authorization.core.exception.InvalidClientException;
 import de.bdr.pidi.authorization.core.particle.AuthorizationHandler;
@@ -36,6 +37,7 @@ import de.bdr.pidi.authorization.core.particle.SeedCredentialIssuanceHandler;
 import de.bdr.pidi.authorization.core.particle.SeedCredentialValidationHandler;
 import de.bdr.pidi.authorization.core.particle.StateHandler;
 import de.bdr.pidi.authorization.core.particle.TokenHandler;
+import de.bdr.pidi.authorization.core.service.BatchIssuanceExecutor;
 import de.bdr.pidi.authorization.core.service.KeyProofService;
 import de.bdr.pidi.authorization.core.service.NonceService;
 import de.bdr.pidi.authorization.core.service.PidSerializer;
@@ -68,6 +70,7 @@ public class B1FlowController extends BaseFlowController {
                             ClientConfigurationService clientConfigurationService,
                             AuthorizationConfiguration authConfig,
                             NonceService nonceService,
+                            JtiStorage jtiStorage,
                             /*
                             PIDI-1855: Temporarily disable Client Attestation
                             WalletAttestationService walletAttestationService,
@@ -76,6 +79,7 @@ public class B1FlowController extends BaseFlowController {
                             SdJwtBuilder<SdJwtVcAuthChannelCredentialRequest> b1SdJwtBuilder,
                             MdocBuilder<MsoMdocAuthChannelCredentialRequest> bMdocBuilder,
                             PidSerializer pidSerializer,
+                            BatchIssuanceExecutor batchIssuanceExecutor,
                             KeyProofService keyProofService,
                             SeedPidBuilder seedPidBuilder,
                             PinProofService pinProofService,
@@ -94,9 +98,9 @@ public class B1FlowController extends BaseFlowController {
                         /*
                         PIDI-1855: Temporarily disable Client Attestation
                         new ClientAttestationHandler(walletAttestationService, authorizationConfiguration.getCredentialIssuerIdentifier(FLOW_VARIANT)),
-                        new DpopHandler(nonceService, authConfig.getProofTimeTolerance(), authConfig.getProofValidity(), authConfig.getBaseUrl(), authConfig.getAuthorizationScheme(), true),
+                        new DpopHandler(jtiStorage, nonceService, authConfig.getProofTimeTolerance(), authConfig.getProofValidity(), authConfig.getBaseUrl(), authConfig.getAuthorizationScheme(), true),
                         */
-                        new DpopHandler(nonceService, authConfig.getProofTimeTolerance(), authConfig.getProofValidity(), authConfig.getBaseUrl(), authConfig.getAuthorizationScheme(), false),
+                        new DpopHandler(jtiStorage, nonceService, authConfig.getProofTimeTolerance(), authConfig.getProofValidity(), authConfig.getBaseUrl(), authConfig.getAuthorizationScheme(), false),
                         new KeyProofHandler(keyProofService, requestsUsingProof),
                         new SeedCredentialValidationHandler(seedPidBuilder, pidSerializer, authConfig.getCredentialIssuerIdentifier(FLOW_VARIANT), pinRetryCounterService, pinProofService),
                         /*
@@ -107,7 +111,7 @@ public class B1FlowController extends BaseFlowController {
                         new InitPinRetryCounterHandler(pinProofService, keyProofService, pinRetryCounterService),
                         new FinishAuthorizationHandler(authConfig.getAuthorizationCodeLifetime()),
                         new TokenHandler(authConfig.getAccessTokenLifetime(), authConfig.getAuthorizationScheme()),
-                        new CredentialHandler(b1SdJwtBuilder, bMdocBuilder, pidSerializer, requestsUsingProof),
+                        new CredentialHandler(b1SdJwtBuilder, bMdocBuilder, pidSerializer, requestsUsingProof, batchIssuanceExecutor),
                         new SeedCredentialIssuanceHandler(seedPidBuilder, pidSerializer, authConfig.getCredentialIssuerIdentifier(FLOW_VARIANT)),
                         /*
                         Post process
@@ -140,12 +144,10 @@ public class B1FlowController extends BaseFlowController {
         }
 
         var builder = new WResponseBuilder();
-        try {
+        persistAfter(session, () -> {
             doProcessSeedCredentialTokenRequest(request, builder, session);
             ((WSessionManagement) session).setNextExpectedRequest(Requests.CREDENTIAL_REQUEST);
-        } finally {
-            sm.persist(session);
-        }
+        });
         return builder;
     }
 
@@ -160,17 +162,15 @@ public class B1FlowController extends BaseFlowController {
         }
 
         var builder = new WResponseBuilder();
-        try {
+        persistAfter(session, () -> {
             doProcessSeedCredentialRequest(request, builder, session);
-        } finally {
-            sm.persist(session);
-        }
+        });
         return builder;
     }
 
     @Override
     public WResponseBuilder processSessionRequest(HttpRequest<?> request) {
-        final PidIssuerNonce sessionIdNonce;
+        final Nonce sessionIdNonce;
         try {
             sessionIdNonce = sm.createSessionIdNonce();
         } finally {
@@ -179,8 +179,8 @@ public class B1FlowController extends BaseFlowController {
 
         var builder = new WResponseBuilder();
         ObjectNode body = objectMapper.createObjectNode()
-                .put("session_id", sessionIdNonce.getNonce().nonce())
-                .put("session_id_expires_in", sessionIdNonce.getNonce().expiresIn().toSeconds());
+                .put("session_id", sessionIdNonce.nonce())
+                .put("session_id_expires_in", sessionIdNonce.expiresIn().toSeconds());
         builder.withJsonBody(body);
         return builder;
     }
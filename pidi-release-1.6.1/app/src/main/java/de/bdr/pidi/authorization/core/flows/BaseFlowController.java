@@ -49,12 +49,10 @@ public abstract class BaseFlowController extends FlowController {
         }
 
         var builder = new WResponseBuilder();
-        try {
+        persistAfter(session, () -> {
             doProcessPushedAuthRequest(request, builder, session);
             ((WSessionManagement) session).setNextExpectedRequest(Requests.AUTHORIZATION_REQUEST);
-        } finally {
-            sm.persist(session);
-        }
+        });
         return builder;
     }
 
@@ -69,12 +67,10 @@ public abstract class BaseFlowController extends FlowController {
         }
 
         var builder = new WResponseBuilder();
-        try {
+        persistAfter(session, () -> {
             doProcessAuthRequest(request, builder, session);
             ((WSessionManagement) session).setNextExpectedRequest(Requests.IDENTIFICATION_RESULT);
-        } finally {
-            sm.persist(session);
-        }
+        });
         return builder;
     }
 
@@ -89,16 +85,16 @@ public abstract class BaseFlowController extends FlowController {
         }
 
         var builder = new WResponseBuilder();
-        try {
-            doProcessFinishAuthRequest(request, builder, session);
-            ((WSessionManagement) session).setNextExpectedRequest(Requests.TOKEN_REQUEST);
-        } catch (OIDException | PidServerException e) {
-            var givenUri = session.getParameter(SessionKey.REDIRECT_URI);
-            var state = session.getParameter(SessionKey.STATE);
-            throw new FinishAuthException(givenUri, state, e);
-        } finally {
-            sm.persist(session);
-        }
+        persistAfter(session, () -> {
+            try {
+                doProcessFinishAuthRequest(request, builder, session);
+                ((WSessionManagement) session).setNextExpectedRequest(Requests.TOKEN_REQUEST);
+            } catch (OIDException | PidServerException e) {
+                var givenUri = session.getParameter(SessionKey.REDIRECT_URI);
+                var state = session.getParameter(SessionKey.STATE);
+                throw new FinishAuthException(givenUri, state, e);
+            }
+        });
         return builder;
     }
 
@@ -117,12 +113,10 @@ public abstract class BaseFlowController extends FlowController {
         }
 
         var builder = new WResponseBuilder();
-        try {
+        persistAfter(session, () -> {
             doProcessTokenRequest(request, builder, session);
             ((WSessionManagement) session).setNextExpectedRequest(nextExpectedRequest);
-        } finally {
-            sm.persist(session);
-        }
+        });
         return builder;
     }
 
@@ -141,12 +135,10 @@ public abstract class BaseFlowController extends FlowController {
         }
 
         var builder = new WResponseBuilder();
-        try {
+        persistAfter(session, () -> {
             doProcessCredentialRequest(request, builder, session);
             ((WSessionManagement) session).setNextExpectedRequest(nextExpectedRequest);
-        } finally {
-            sm.persist(session);
-        }
+        });
         return builder;
     }
 }
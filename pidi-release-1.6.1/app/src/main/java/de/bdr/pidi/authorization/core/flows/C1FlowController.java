@@ -7,6 +7,7 @@ package de.bdr.pidi.authorization.core.flows;
 import de.bdr.openid4vc.common.formats.msomdoc.MsoMdocCredentialRequest;
 import de.bdr.openid4vc.common.formats.sdjwtvc.SdJwtVcCredentialRequest;
 import de.bdr.openid4vc.common.vci.CredentialRequest;
+import de.bdr.openid4vc.vci.data.storage.JtiStorage;
 import de.bdr.openid4vc.vci.service.HttpRequest;
 import de.bdr.pidi.authorization.FlowVariant;
 import de.bdr.pidi.authorization.core.AuthorizationConfiguration;
@@ -33,6 +34,7 @@ import de.bdr.pidi.authorization.core.particle.RequestOrderValidationHandler;
 import de.bdr.pidi.authorization.core.particle.ScopeHandler;
 import de.bdr.pidi.authorization.core.particle.StateHandler;
 import de.bdr.pidi.authorization.core.particle.TokenHandler;
+import de.bdr.pidi.authorization.core.service.BatchIssuanceExecutor;
 import de.bdr.pidi.authorization.core.service.KeyProofService;
 import de.bdr.pidi.authorization.core.service.NonceService;
 import de.bdr.pidi.authorization.core.service.PidSerializer;
@@ -56,6 +58,7 @@ public class C1FlowController extends BaseFlowController {
                             ClientConfigurationService clientConfigurationService,
                             AuthorizationConfiguration authorizationConfiguration,
                             NonceService nonceService,
+                            JtiStorage jtiStorage,
                             /*
                             PIDI-1688: Temporarily disable Client Attestation
                             WalletAttestationService walletAttestationService,
@@ -64,6 +67,7 @@ public class C1FlowController extends BaseFlowController {
                             SdJwtBuilder<SdJwtVcCredentialRequest> c1SdJwtBuilder,
                             MdocBuilder<MsoMdocCredentialRequest> cMdocBuilder,
                             PidSerializer pidSerializer,
+                            BatchIssuanceExecutor batchIssuanceExecutor,
                             KeyProofService keyProofService,
                             SeedPidBuilder seedPidBuilder) {
         super(sm, authorizationConfiguration, List.of(
@@ -80,9 +84,9 @@ public class C1FlowController extends BaseFlowController {
                         /*
                         PIDI-1688: Temporarily disable Client Attestation
                         new ClientAttestationHandler(walletAttestationService, authorizationConfiguration.getCredentialIssuerIdentifier(FLOW_VARIANT)),
-                        new DpopHandler(nonceService, authorizationConfiguration.getProofTimeTolerance(), authorizationConfiguration.getProofValidity(), authorizationConfiguration.getBaseUrl(), authorizationConfiguration.getAuthorizationScheme(), true),
+                        new DpopHandler(jtiStorage, nonceService, authorizationConfiguration.getProofTimeTolerance(), authorizationConfiguration.getProofValidity(), authorizationConfiguration.getBaseUrl(), authorizationConfiguration.getAuthorizationScheme(), true),
                         */
-                        new DpopHandler(nonceService, authorizationConfiguration.getProofTimeTolerance(), authorizationConfiguration.getProofValidity(), authorizationConfiguration.getBaseUrl(), authorizationConfiguration.getAuthorizationScheme(), false),
+                        new DpopHandler(jtiStorage, nonceService, authorizationConfiguration.getProofTimeTolerance(), authorizationConfiguration.getProofValidity(), authorizationConfiguration.getBaseUrl(), authorizationConfiguration.getAuthorizationScheme(), false),
                         new KeyProofHandler(keyProofService, requestsUsingProof, authorizationConfiguration.getBatchIssuanceMaxSize()),
                         new RefreshTokenValidationHandler(seedPidBuilder, pidSerializer, authorizationConfiguration.getCredentialIssuerIdentifier(FLOW_VARIANT)),
                         /*
@@ -92,7 +96,7 @@ public class C1FlowController extends BaseFlowController {
                         new AuthorizationHandler(authorizationConfiguration.getBaseUrl(), identificationProvider),
                         new FinishAuthorizationHandler(authorizationConfiguration.getAuthorizationCodeLifetime()),
                         new TokenHandler(authorizationConfiguration.getAccessTokenLifetime(), authorizationConfiguration.getAuthorizationScheme()),
-                        new CredentialHandler(c1SdJwtBuilder, cMdocBuilder, pidSerializer, requestsUsingProof),
+                        new CredentialHandler(c1SdJwtBuilder, cMdocBuilder, pidSerializer, requestsUsingProof, batchIssuanceExecutor),
                         /*
                         Post process
                          */
@@ -104,23 +108,22 @@ public class C1FlowController extends BaseFlowController {
     @Override
     public WResponseBuilder processRefreshTokenRequest(HttpRequest<?> request) {
         var refreshToken = request.getParameters().get("refresh_token");
-        WSession session;
+        WSession loadedSession;
         try {
-            session = sm.loadByRefreshToken(refreshToken);
+            loadedSession = sm.loadByRefreshToken(refreshToken);
         } catch (SessionNotFoundException e) {
             log.debug("No session by refresh token found, init new session", e);
-            session = sm.initRefresh(flowVariant, refreshToken);
+            loadedSession = sm.initRefresh(flowVariant, refreshToken);
         } finally {
             log.info(PROCESSING_MSG, "refresh token", request.getParameters());
         }
+        final WSession session = loadedSession;
 
         var builder = new WResponseBuilder();
-        try {
+        persistAfter(session, () -> {
             doProcessRefreshTokenRequest(request, builder, session);
             ((WSessionManagement) session).setNextExpectedRequest(Requests.CREDENTIAL_REQUEST);
-        } finally {
-            sm.persist(session);
-        }
+        });
         return builder;
     }
 }
@@ -7,6 +7,7 @@ package de.bdr.pidi.authorization.core.flows;
 import de.bdr.openid4vc.common.formats.msomdoc.MsoMdocCredentialRequest;
 import de.bdr.openid4vc.common.formats.sdjwtvc.SdJwtVcCredentialRequest;
 import de.bdr.openid4vc.common.vci.CredentialRequest;
+import de.bdr.openid4vc.vci.data.storage.JtiStorage;
 import de.bdr.openid4vc.vci.service.HttpRequest;
 import de.bdr.pidi.authorization.FlowVariant;
 import de.bdr.pidi.authorization.core.AuthorizationConfiguration;
@@ -32,6 +33,8 @@ import de.bdr.pidi.authorization.core.particle.RequestOrderValidationHandler;
 import de.bdr.pidi.authorization.core.particle.ScopeHandler;
 import de.bdr.pidi.authorization.core.particle.StateHandler;
 import de.bdr.pidi.authorization.core.particle.TokenHandler;
+import de.bdr.pidi.authorization.core.service.BatchIssuanceExecutor;
+import de.bdr.pidi.authorization.core.service.DeviceKeyPool;
 import de.bdr.pidi.authorization.core.service.KeyProofService;
 import de.bdr.pidi.authorization.core.service.NonceService;
 import de.bdr.pidi.authorization.core.service.PidSerializer;
@@ -55,6 +58,7 @@ public class C2FlowController extends BaseFlowController {
                             ClientConfigurationService clientConfigurationService,
                             AuthorizationConfiguration authorizationConfiguration,
                             NonceService nonceService,
+                            JtiStorage jtiStorage,
                             /*
                             PIDI-1688: Temporarily disable Client Attestation
                             WalletAttestationService walletAttestationService,
@@ -63,7 +67,9 @@ public class C2FlowController extends BaseFlowController {
                             SdJwtBuilder<SdJwtVcCredentialRequest> c2SdJwtBuilder,
                             MdocBuilder<MsoMdocCredentialRequest> cMdocBuilder,
                             PidSerializer pidSerializer,
-                            KeyProofService keyProofService) {
+                            BatchIssuanceExecutor batchIssuanceExecutor,
+                            KeyProofService keyProofService,
+                            DeviceKeyPool deviceKeyPool) {
         super(sm, authorizationConfiguration, List.of(
                         /*
                         Pre process (validation, DPOP, key generation)
@@ -78,11 +84,11 @@ public class C2FlowController extends BaseFlowController {
                         /*
                         PIDI-1688: Temporarily disable Client Attestation
                         new ClientAttestationHandler(walletAttestationService, authorizationConfiguration.getCredentialIssuerIdentifier(FLOW_VARIANT)),
-                        new DpopHandler(nonceService, authorizationConfiguration.getProofTimeTolerance(), authorizationConfiguration.getProofValidity(), authorizationConfiguration.getBaseUrl(), authorizationConfiguration.getAuthorizationScheme(), true),
+                        new DpopHandler(jtiStorage, nonceService, authorizationConfiguration.getProofTimeTolerance(), authorizationConfiguration.getProofValidity(), authorizationConfiguration.getBaseUrl(), authorizationConfiguration.getAuthorizationScheme(), true),
                         */
-                        new DpopHandler(nonceService, authorizationConfiguration.getProofTimeTolerance(), authorizationConfiguration.getProofValidity(), authorizationConfiguration.getBaseUrl(), authorizationConfiguration.getAuthorizationScheme(), false),
+                        new DpopHandler(jtiStorage, nonceService, authorizationConfiguration.getProofTimeTolerance(), authorizationConfiguration.getProofValidity(), authorizationConfiguration.getBaseUrl(), authorizationConfiguration.getAuthorizationScheme(), false),
                         new KeyProofHandler(keyProofService, requestsUsingProof),
-                        new DeviceKeyHandler(),
+                        new DeviceKeyHandler(deviceKeyPool),
                         /*
                         Flow (process, issuance)
                          */
@@ -90,7 +96,7 @@ public class C2FlowController extends BaseFlowController {
                         new AuthorizationHandler(authorizationConfiguration.getBaseUrl(), identificationProvider),
                         new FinishAuthorizationHandler(authorizationConfiguration.getAuthorizationCodeLifetime()),
                         new TokenHandler(authorizationConfiguration.getAccessTokenLifetime(), authorizationConfiguration.getAuthorizationScheme()),
-                        new CredentialHandler(c2SdJwtBuilder, cMdocBuilder, pidSerializer, requestsUsingProof, true),
+                        new CredentialHandler(c2SdJwtBuilder, cMdocBuilder, pidSerializer, requestsUsingProof, true, batchIssuanceExecutor),
                         new PresentationSigningHandler(),
                         /*
                         Post process
@@ -115,11 +121,9 @@ public class C2FlowController extends BaseFlowController {
         }
 
         var builder = new WResponseBuilder();
-        try {
+        persistAndTerminateAfter(session, () -> {
             doProcessPresentationSigningRequest(request, builder, session);
-        } finally {
-            sm.persistAndTerminate(session);
-        }
+        });
         return builder;
     }
 }
@@ -7,6 +7,7 @@ package de.bdr.pidi.authorization.core.flows;
 import de.bdr.openid4vc.common.formats.msomdoc.MsoMdocCredentialRequest;
 import de.bdr.openid4vc.common.formats.sdjwtvc.SdJwtVcCredentialRequest;
 import de.bdr.openid4vc.common.vci.CredentialRequest;
+import de.bdr.openid4vc.vci.data.storage.JtiStorage;
 import de.bdr.pidi.authorization.FlowVariant;
 import de.bdr.pidi.authorization.core.AuthorizationConfiguration;
 import de.bdr.pidi.authorization.core.SessionManager;
@@ -25,6 +26,7 @@ import de.bdr.pidi.authorization.core.particle.RequestOrderValidationHandler;
 import de.bdr.pidi.authorization.core.particle.ScopeHandler;
 import de.bdr.pidi.authorization.core.particle.StateHandler;
 import de.bdr.pidi.authorization.core.particle.TokenHandler;
+import de.bdr.pidi.authorization.core.service.BatchIssuanceExecutor;
 import de.bdr.pidi.authorization.core.service.KeyProofService;
 import de.bdr.pidi.authorization.core.service.NonceService;
 import de.bdr.pidi.authorization.core.service.PidSerializer;
@@ -45,6 +47,7 @@ public class CFlowController extends BaseFlowController {
                            ClientConfigurationService clientConfigurationService,
                            AuthorizationConfiguration authorizationConfiguration,
                            NonceService nonceService,
+                           JtiStorage jtiStorage,
                            /*
                            PIDI-739: Temporarily disable Client Attestation
                            WalletAttestationService walletAttestationService,
@@ -53,6 +56,7 @@ public class CFlowController extends BaseFlowController {
                            SdJwtBuilder<SdJwtVcCredentialRequest> cSdJwtBuilder,
                            MdocBuilder<MsoMdocCredentialRequest> cMdocBuilder,
                            PidSerializer pidSerializer,
+                           BatchIssuanceExecutor batchIssuanceExecutor,
                            KeyProofService keyProofService) {
         super(sm, authorizationConfiguration, List.of(
                         /*
@@ -68,9 +72,9 @@ public class CFlowController extends BaseFlowController {
                         /*
                         PIDI-739: Temporarily disable Client Attestation
                         new ClientAttestationHandler(walletAttestationService, authorizationConfiguration.getCredentialIssuerIdentifier(FLOW_VARIANT)),
-                        new DpopHandler(nonceService, authorizationConfiguration.getProofTimeTolerance(), authorizationConfiguration.getProofValidity(), authorizationConfiguration.getBaseUrl(), authorizationConfiguration.getAuthorizationScheme(), true),
+                        new DpopHandler(jtiStorage, nonceService, authorizationConfiguration.getProofTimeTolerance(), authorizationConfiguration.getProofValidity(), authorizationConfiguration.getBaseUrl(), authorizationConfiguration.getAuthorizationScheme(), true),
                         */
-                        new DpopHandler(nonceService, authorizationConfiguration.getProofTimeTolerance(), authorizationConfiguration.getProofValidity(), authorizationConfiguration.getBaseUrl(), authorizationConfiguration.getAuthorizationScheme(), false),
+                        new DpopHandler(jtiStorage, nonceService, authorizationConfiguration.getProofTimeTolerance(), authorizationConfiguration.getProofValidity(), authorizationConfiguration.getBaseUrl(), authorizationConfiguration.getAuthorizationScheme(), false),
                         new KeyProofHandler(keyProofService, requestsUsingProof, authorizationConfiguration.getBatchIssuanceMaxSize()),
                         /*
                         Flow (process, issuance)
@@ -79,7 +83,7 @@ public class CFlowController extends BaseFlowController {
                         new AuthorizationHandler(authorizationConfiguration.getBaseUrl(), identificationProvider),
                         new FinishAuthorizationHandler(authorizationConfiguration.getAuthorizationCodeLifetime()),
                         new TokenHandler(authorizationConfiguration.getAccessTokenLifetime(), authorizationConfiguration.getAuthorizationScheme()),
-                        new CredentialHandler(cSdJwtBuilder, cMdocBuilder, pidSerializer, requestsUsingProof),
+                        new CredentialHandler(cSdJwtBuilder, cMdocBuilder, pidSerializer, requestsUsingProof, batchIssuanceExecutor),
                         /*
                         Post process
                          */
@@ -15,7 +15,9 @@ import de.bdr.pidi.authorization.core.WResponseBuilder;
 import de.bdr.pidi.authorization.core.WSession;
 import de.bdr.pidi.authorization.core.domain.SessionKey;
 import de.bdr.pidi.authorization.core.exception.InvalidCredentialRequestException;
+import de.bdr.pidi.authorization.core.service.BatchIssuanceExecutor;
 import de.bdr.pidi.authorization.core.service.PidSerializer;
+import de.bdr.pidi.authorization.out.identification.PidCredentialData;
 import de.bdr.pidi.authorization.out.issuance.FaultyRequestParameterException;
 import de.bdr.pidi.authorization.out.issuance.MdocBuilder;
 import de.bdr.pidi.authorization.out.issuance.SdJwtBuilder;
@@ -40,11 +42,20 @@ public class CredentialHandler implements OidHandler {
     private final PidSerializer pidSerializer;
     private final List<Class<? extends CredentialRequest>> requestsUsingProof;
     private final boolean useOwnDeviceKey;
+    private final BatchIssuanceExecutor batchIssuanceExecutor;
 
     public CredentialHandler(SdJwtBuilder<?> sdJwtBuilder, MdocBuilder<?> mdocBuilder, PidSerializer pidSerializer, List<Class<? extends CredentialRequest>> requestsUsingProof) {
         this(sdJwtBuilder, mdocBuilder, pidSerializer, requestsUsingProof, false);
     }
 
+    public CredentialHandler(SdJwtBuilder<?> sdJwtBuilder, MdocBuilder<?> mdocBuilder, PidSerializer pidSerializer, List<Class<? extends CredentialRequest>> requestsUsingProof, boolean useOwnDeviceKey) {
+        this(sdJwtBuilder, mdocBuilder, pidSerializer, requestsUsingProof, useOwnDeviceKey, BatchIssuanceExecutor.sequential());
+    }
+
+    public CredentialHandler(SdJwtBuilder<?> sdJwtBuilder, MdocBuilder<?> mdocBuilder, PidSerializer pidSerializer, List<Class<? extends CredentialRequest>> requestsUsingProof, BatchIssuanceExecutor batchIssuanceExecutor) {
+        this(sdJwtBuilder, mdocBuilder, pidSerializer, requestsUsingProof, false, batchIssuanceExecutor);
+    }
+
     @Override
     public void processCredentialRequest(HttpRequest<CredentialRequest> request, WResponseBuilder response, WSession session) {
         // Validation not neccessary:
@@ -60,14 +71,14 @@ public class CredentialHandler implements OidHandler {
         var holderBindingKeys = session.getOptionalParameter(SessionKey.VERIFIED_CREDENTIAL_KEY)
                 .map(List::of).map(c -> (Collection<String>) c)
                 .orElseGet(() -> session.getCheckedParameters(SessionKey.VERIFIED_CREDENTIAL_KEYS));
-        var identificationData = session.getCheckedParameter(SessionKey.IDENTIFICATION_DATA);
+        var credentialData = pidSerializer.fromString(session.getCheckedParameter(SessionKey.IDENTIFICATION_DATA));
+        var flowVariant = session.getFlowVariant();
 
-        return holderBindingKeys.stream().map(k -> buildCredential(credentialRequest, identificationData, k, session.getFlowVariant())).toList();
+        return batchIssuanceExecutor.map(List.copyOf(holderBindingKeys), k -> buildCredential(credentialRequest, credentialData, k, flowVariant));
     }
 
     @SuppressWarnings("unchecked")
-    private String buildCredential(CredentialRequest credentialRequest, String identificationData, String holderBindingKey, FlowVariant flowVariant) {
-        var credentialData = pidSerializer.fromString(identificationData);
+    private String buildCredential(CredentialRequest credentialRequest, PidCredentialData credentialData, String holderBindingKey, FlowVariant flowVariant) {
         try {
             return switch (credentialRequest) {
                 case SdJwtVcCredentialRequest sdJwtVcCredentialRequest ->
@@ -88,10 +99,10 @@ public class CredentialHandler implements OidHandler {
     }
 
     private List<String> buildCredentialsWithoutKeyProof(WSession session, CredentialRequest credentialRequest) {
-        var identificationData = session.getCheckedParameter(SessionKey.IDENTIFICATION_DATA);
+        var credentialData = pidSerializer.fromString(session.getCheckedParameter(SessionKey.IDENTIFICATION_DATA));
         final String holderBindingKey = useOwnDeviceKey ?
                 session.getCheckedParameterAsJwk(SessionKey.DEVICE_KEY_PAIR).toPublicJWK().toJSONString() : null;
-        return List.of(buildCredential(credentialRequest, identificationData, holderBindingKey, session.getFlowVariant()));
+        return List.of(buildCredential(credentialRequest, credentialData, holderBindingKey, session.getFlowVariant()));
     }
 
     private ObjectNode buildJsonBody(boolean isBatchedRequest, List<String> credentials) {
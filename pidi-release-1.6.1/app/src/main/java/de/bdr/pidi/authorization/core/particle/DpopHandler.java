@@ -32,9 +32,9 @@ public class DpopHandler implements OidHandler {
 
     public static final String DPOP_NONCE_HEADER = "DPoP-Nonce";
     /*
-    * Dummy JtiStorage, which always returns true on method  isUnused(jti, validUntil)
+     * rejects DPoP proofs that have been used before, see pidi.authorization.jti-store
      */
-    private final JtiStorage jtiStorage = (s, instant) -> true;
+    private final JtiStorage jtiStorage;
 
     private final NonceService nonceService;
     private final Duration proofTimeTolerance;
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.authorization.core.service;
+
+import de.bdr.pidi.authorization.core.AuthorizationConfiguration;
+import de.bdr.pidi.base.PidServerException;
+import lombok.extern.slf4j.Slf4j;
+import org.slf4j.MDC;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Fans out the credentials of a batch issuance request over a bounded number of threads.
+ * <p>
+ * Each request builds at most {@code parallelism} credentials at the same time: the calling thread builds the first
+ * credential and up to {@code parallelism - 1} workers help with the rest. All workers of the node together build at
+ * most {@code maxConcurrentBuilds} credentials at the same time, by default the number of processors as building a
+ * credential is CPU bound. The calling thread does not count against that limit, so a request is never stalled by the
+ * batches of other requests.
+ * <p>
+ * The results keep the order of the input. If building a credential fails, the exception of the first failing
+ * credential (in input order) is thrown, just like a sequential run would do. Credentials after a failed one
+ * are not started anymore.
+ */
+@Slf4j
+@Component
+public class BatchIssuanceExecutor implements DisposableBean {
+
+    private final int parallelism;
+    private final ExecutorService executor;
+    private final Semaphore permits;
+
+    @Autowired
+    public BatchIssuanceExecutor(AuthorizationConfiguration configuration) {
+        this(configuration.getBatchIssuanceParallelism(), configuration.getBatchIssuanceMaxConcurrentBuilds(),
+                configuration.isBatchIssuanceVirtualThreads());
+    }
+
+    /**
+     * @param parallelism         maximum number of credentials of one request built at the same time
+     * @param maxConcurrentBuilds maximum number of credentials built by the workers of all requests at the same time,
+     *                            0 for the number of processors
+     */
+    public BatchIssuanceExecutor(int parallelism, int maxConcurrentBuilds, boolean virtualThreads) {
+        this.parallelism = parallelism;
+        var workers = maxConcurrentBuilds > 0 ? maxConcurrentBuilds : Runtime.getRuntime().availableProcessors();
+        if (parallelism <= 1) {
+            this.executor = null;
+            this.permits = null;
+        } else if (virtualThreads) {
+            this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("batch-issuance-", 0).factory());
+            // virtual threads are unbounded, the semaphore limits the number of credentials built at the same time
+            this.permits = new Semaphore(workers, true);
+        } else {
+            this.executor = Executors.newFixedThreadPool(workers, Thread.ofPlatform().name("batch-issuance-", 0).daemon().factory());
+            this.permits = null;
+        }
+        log.info("Batch issuance parallelism {} per request, {} concurrent builds, virtual threads {}",
+                parallelism, executor == null ? 0 : workers, executor != null && virtualThreads);
+    }
+
+    /**
+     * an executor building all credentials on the calling thread
+     */
+    public static BatchIssuanceExecutor sequential() {
+        return new BatchIssuanceExecutor(1, 1, false);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public <T, R> List<R> map(List<T> items, Function<T, R> task) {
+        if (executor == null || items.size() < 2) {
+            return items.stream().map(task).toList();
+        }
+        var batch = new Batch<>(items, task, MDC.getCopyOfContextMap());
+        var workers = new ArrayList<Future<?>>();
+        for (int i = 1; i < Math.min(parallelism, items.size()); i++) {
+            workers.add(executor.submit(() -> batch.work(permits, true)));
+        }
+        try {
+            batch.buildFirst();
+            batch.work(null, false);
+            batch.awaitDone();
+        } catch (InterruptedException e) {
+            workers.forEach(worker -> worker.cancel(true));
+            Thread.currentThread().interrupt();
+            throw new PidServerException("Interrupted while building batch credentials", e);
+        } finally {
+            // workers still waiting for a thread find no credential left to build
+            workers.forEach(worker -> worker.cancel(false));
+        }
+        return batch.results();
+    }
+
+    /**
+     * The credentials of one request, the calling thread and the workers take the next credential until none is left.
+     */
+    private static final class Batch<T, R> {
+        private final List<T> items;
+        private final Function<T, R> task;
+        private final Map<String, String> context;
+        // the first credential is built by the calling thread
+        private final AtomicInteger next = new AtomicInteger(1);
+        private final AtomicInteger firstFailure = new AtomicInteger(Integer.MAX_VALUE);
+        private final Object[] results;
+        private final Throwable[] failures;
+        private final CountDownLatch done;
+
+        private Batch(List<T> items, Function<T, R> task, Map<String, String> context) {
+            this.items = items;
+            this.task = task;
+            this.context = context;
+            this.results = new Object[items.size()];
+            this.failures = new Throwable[items.size()];
+            this.done = new CountDownLatch(items.size());
+        }
+
+        void buildFirst() {
+            try {
+                build(0, null, false);
+            } finally {
+                done.countDown();
+            }
+        }
+
+        void work(Semaphore permits, boolean worker) {
+            int index;
+            while ((index = next.getAndIncrement()) < items.size()) {
+                try {
+                    build(index, permits, worker);
+                } finally {
+                    done.countDown();
+                }
+            }
+        }
+
+        private void build(int index, Semaphore permits, boolean worker) {
+            if (permits != null) {
+                try {
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    fail(index, new PidServerException("Interrupted while building batch credentials", e));
+                    return;
+                }
+            }
+            try {
+                if (firstFailure.get() < index) {
+                    // a sequential run would never have reached this credential
+                    return;
+                }
+                if (worker && context != null) {
+                    MDC.setContextMap(context);
+                }
+                results[index] = task.apply(items.get(index));
+            } catch (RuntimeException | Error e) {
+                fail(index, e);
+            } finally {
+                if (worker) {
+                    MDC.clear();
+                }
+                if (permits != null) {
+                    permits.release();
+                }
+            }
+        }
+
+        private void fail(int index, Throwable failure) {
+            failures[index] = failure;
+            firstFailure.accumulateAndGet(index, Math::min);
+        }
+
+        void awaitDone() throws InterruptedException {
+            done.await();
+        }
+
+        @SuppressWarnings("unchecked")
+        List<R> results() {
+            var failed = firstFailure.get();
+            if (failed == Integer.MAX_VALUE) {
+                return (List<R>) Collections.unmodifiableList(Arrays.asList(results));
+            }
+            if (failures[failed] instanceof Error error) {
+                throw error;
+            }
+            throw (RuntimeException) failures[failed];
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+}
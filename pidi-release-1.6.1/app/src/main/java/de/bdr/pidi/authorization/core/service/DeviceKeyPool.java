@@ -0,0 +1,138 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.authorization.core.service;
+
+import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.jwk.KeyUse;
+import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
+import de.bdr.pidi.authorization.core.AuthorizationConfiguration;
+import de.bdr.pidi.authorization.core.util.RandomUtil;
+import de.bdr.pidi.base.PidServerException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Keeps pre-generated ephemeral P-256 device key pairs, so the credential request does not have to generate one.
+ * <p>
+ * A background worker fills the pool up to the high watermark as soon as it drops below the low watermark. If the pool
+ * is empty, the key pair is generated on the calling thread. Each key pair is taken from the pool exactly once.
+ * <p>
+ * Metrics: {@code pidi.device-key-pool.requests} with the tag {@code result} ({@code hit} or {@code miss}) and
+ * {@code pidi.device-key-pool.size}.
+ */
+@Slf4j
+@Component
+public class DeviceKeyPool implements DisposableBean {
+
+    private final int lowWatermark;
+    private final int highWatermark;
+    private final BlockingQueue<ECKey> keys;
+    private final ExecutorService refiller;
+    private final AtomicBoolean refilling = new AtomicBoolean();
+    private final Counter hits;
+    private final Counter misses;
+
+    @Autowired
+    public DeviceKeyPool(AuthorizationConfiguration configuration, MeterRegistry meterRegistry) {
+        this(configuration.getDeviceKeyPoolLowWatermark(), configuration.getDeviceKeyPoolHighWatermark(), meterRegistry);
+    }
+
+    /**
+     * @param highWatermark maximum number of pooled key pairs, 0 disables the pool
+     */
+    public DeviceKeyPool(int lowWatermark, int highWatermark, MeterRegistry meterRegistry) {
+        if (highWatermark < 0 || lowWatermark < 0 || lowWatermark > highWatermark) {
+            throw new IllegalArgumentException("Invalid device key pool watermarks, low %d, high %d".formatted(lowWatermark, highWatermark));
+        }
+        this.lowWatermark = lowWatermark;
+        this.highWatermark = highWatermark;
+        this.hits = Counter.builder("pidi.device-key-pool.requests").tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("pidi.device-key-pool.requests").tag("result", "miss").register(meterRegistry);
+        if (highWatermark == 0) {
+            this.keys = null;
+            this.refiller = null;
+        } else {
+            this.keys = new ArrayBlockingQueue<>(highWatermark);
+            this.refiller = Executors.newSingleThreadExecutor(Thread.ofPlatform().name("device-key-pool").daemon().factory());
+            meterRegistry.gauge("pidi.device-key-pool.size", keys, BlockingQueue::size);
+            triggerRefill();
+        }
+        log.info("Device key pool, low watermark {}, high watermark {}", lowWatermark, highWatermark);
+    }
+
+    /**
+     * @return a key pair nobody else got, with a random key id
+     */
+    public ECKey next() {
+        var key = keys == null ? null : keys.poll();
+        if (key == null) {
+            misses.increment();
+            key = generate();
+        } else {
+            hits.increment();
+        }
+        if (keys != null && keys.size() < lowWatermark) {
+            triggerRefill();
+        }
+        return key;
+    }
+
+    int size() {
+        return keys == null ? 0 : keys.size();
+    }
+
+    private void triggerRefill() {
+        if (!refilling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refiller.execute(this::refill);
+        } catch (RejectedExecutionException e) {
+            // shut down
+            refilling.set(false);
+        }
+    }
+
+    private void refill() {
+        try {
+            while (!Thread.currentThread().isInterrupted() && keys.remainingCapacity() > 0) {
+                keys.offer(generate());
+            }
+        } catch (RuntimeException e) {
+            log.warn("Could not refill the device key pool", e);
+        } finally {
+            refilling.set(false);
+        }
+    }
+
+    private static ECKey generate() {
+        try {
+            // a new generator per key, the key id is set on the generator
+            return new ECKeyGenerator(Curve.P_256).keyUse(KeyUse.SIGNATURE).keyID(RandomUtil.randomString()).generate();
+        } catch (JOSEException e) {
+            throw new PidServerException("Could not create ephemeral device keypair", e);
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (refiller != null) {
+            refiller.shutdownNow();
+        }
+    }
+}
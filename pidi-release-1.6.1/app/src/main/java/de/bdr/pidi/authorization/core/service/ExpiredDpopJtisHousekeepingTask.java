@@ -0,0 +1,38 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.authorization.core.service;
+
+import de.bdr.pidi.authorization.out.persistence.DpopJtiAdapter;
+import de.bdr.pidi.base.housekeeping.HousekeepingTask;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+
+@Component
+@ConditionalOnProperty(name = DpopJtiAdapter.PROPERTY, havingValue = "jpa", matchIfMissing = true)
+public class ExpiredDpopJtisHousekeepingTask implements HousekeepingTask {
+
+    private final DpopJtiAdapter dpopJtiAdapter;
+
+    public ExpiredDpopJtisHousekeepingTask(DpopJtiAdapter dpopJtiAdapter) {
+        this.dpopJtiAdapter = dpopJtiAdapter;
+    }
+
+    @Override
+    public String getName() {
+        return "dpop-jtis";
+    }
+
+    @Override
+    public int deleteExpired(Instant now, int limit) {
+        return dpopJtiAdapter.deleteExpired(now, limit);
+    }
+
+    @Override
+    public long countExpired(Instant now) {
+        return dpopJtiAdapter.countExpired(now);
+    }
+}
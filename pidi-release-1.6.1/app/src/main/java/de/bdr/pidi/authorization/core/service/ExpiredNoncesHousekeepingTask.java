@@ -0,0 +1,39 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.authorization.core.service;
+
+import de.bdr.pidi.authorization.out.persistence.PidiNonceAdapter;
+import de.bdr.pidi.authorization.out.persistence.PidiNonceStore;
+import de.bdr.pidi.base.housekeeping.HousekeepingTask;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+
+@Component
+@ConditionalOnProperty(name = PidiNonceStore.PROPERTY, havingValue = "jpa", matchIfMissing = true)
+public class ExpiredNoncesHousekeepingTask implements HousekeepingTask {
+
+    private final PidiNonceAdapter pidiNonceAdapter;
+
+    public ExpiredNoncesHousekeepingTask(PidiNonceAdapter pidiNonceAdapter) {
+        this.pidiNonceAdapter = pidiNonceAdapter;
+    }
+
+    @Override
+    public String getName() {
+        return "nonces";
+    }
+
+    @Override
+    public int deleteExpired(Instant now, int limit) {
+        return pidiNonceAdapter.deleteExpired(now, limit);
+    }
+
+    @Override
+    public long countExpired(Instant now) {
+        return pidiNonceAdapter.countExpired(now);
+    }
+}
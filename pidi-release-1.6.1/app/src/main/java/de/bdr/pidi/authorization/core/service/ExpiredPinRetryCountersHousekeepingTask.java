@@ -0,0 +1,39 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.authorization.core.service;
+
+import de.bdr.pidi.authorization.out.persistence.PinRetryCounterAdapter;
+import de.bdr.pidi.authorization.out.persistence.PinRetryCounterStore;
+import de.bdr.pidi.base.housekeeping.HousekeepingTask;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+
+@Component
+@ConditionalOnProperty(name = PinRetryCounterStore.PROPERTY, havingValue = "jpa", matchIfMissing = true)
+public class ExpiredPinRetryCountersHousekeepingTask implements HousekeepingTask {
+
+    private final PinRetryCounterAdapter pinRetryCounterAdapter;
+
+    public ExpiredPinRetryCountersHousekeepingTask(PinRetryCounterAdapter pinRetryCounterAdapter) {
+        this.pinRetryCounterAdapter = pinRetryCounterAdapter;
+    }
+
+    @Override
+    public String getName() {
+        return "pin-retry-counters";
+    }
+
+    @Override
+    public int deleteExpired(Instant now, int limit) {
+        return pinRetryCounterAdapter.deleteExpired(now, limit);
+    }
+
+    @Override
+    public long countExpired(Instant now) {
+        return pinRetryCounterAdapter.countExpired(now);
+    }
+}
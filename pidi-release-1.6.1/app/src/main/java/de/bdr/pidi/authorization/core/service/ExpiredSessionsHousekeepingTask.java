@@ -0,0 +1,36 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.authorization.core.service;
+
+import de.bdr.pidi.authorization.out.persistence.PidiSessionStore;
+import de.bdr.pidi.base.housekeeping.HousekeepingTask;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+
+@Component
+public class ExpiredSessionsHousekeepingTask implements HousekeepingTask {
+
+    private final PidiSessionStore pidiSessionStore;
+
+    public ExpiredSessionsHousekeepingTask(PidiSessionStore pidiSessionStore) {
+        this.pidiSessionStore = pidiSessionStore;
+    }
+
+    @Override
+    public String getName() {
+        return "sessions";
+    }
+
+    @Override
+    public int deleteExpired(Instant now, int limit) {
+        return pidiSessionStore.deleteExpiredSessions(now, limit);
+    }
+
+    @Override
+    public long countExpired(Instant now) {
+        return pidiSessionStore.countExpiredSessions(now);
+    }
+}
@@ -9,7 +9,7 @@ import de.bdr.pidi.authorization.core.AuthorizationConfiguration;
 import de.bdr.pidi.authorization.core.exception.InvalidGrantException;
 import de.bdr.pidi.authorization.core.exception.OIDException;
 import de.bdr.pidi.authorization.core.util.PinUtil;
-import de.bdr.pidi.authorization.out.persistence.PinRetryCounterAdapter;
+import de.bdr.pidi.authorization.out.persistence.PinRetryCounterStore;
 import de.bdr.pidi.base.PidServerException;
 import org.springframework.stereotype.Service;
 
@@ -17,24 +17,24 @@ import java.time.Duration;
 
 @Service
 public class PinRetryCounterService {
-    private final PinRetryCounterAdapter adapter;
+    private final PinRetryCounterStore store;
     private final int maxPinRetries;
     private final Duration validity;
 
-    public PinRetryCounterService(PinRetryCounterAdapter adapter, AuthorizationConfiguration authConfig) {
-        this.adapter = adapter;
+    public PinRetryCounterService(PinRetryCounterStore store, AuthorizationConfiguration authConfig) {
+        this.store = store;
         this.maxPinRetries = authConfig.getMaxPinRetries();
         this.validity = authConfig.getPinRetryCounterValidity();
     }
 
     public void initPinRetryCounter(JWK clientInstanceKey) {
         var pinRetryCounterId = PinUtil.computeRetryCounterId(clientInstanceKey);
-        adapter.create(pinRetryCounterId, validity);
+        store.create(pinRetryCounterId, validity);
     }
 
     public String loadPinCounter(JWK clientInstanceKey) {
         var pinRetryCounterId = PinUtil.computeRetryCounterId(clientInstanceKey);
-        var pinRetryCounter = adapter.find(pinRetryCounterId)
+        var pinRetryCounter = store.find(pinRetryCounterId)
                 // seed credential has been validated, so a problem would be on our side
                 .orElseThrow(() -> new PidServerException("Pin retry counter not found"));
         if (pinRetryCounter.getValue() >= maxPinRetries) {
@@ -44,10 +44,9 @@ public class PinRetryCounterService {
     }
 
     public void increment(String pinRetryCounterId, OIDException e) {
-        var retryCounter = adapter.find(pinRetryCounterId).orElseThrow(() -> new PidServerException("Pin retry counter not found"));
-        retryCounter.increment();
-        adapter.increment(retryCounter);
-        if (retryCounter.getValue() >= maxPinRetries) {
+        // incremented and checked in one step, concurrent wrong PINs must not pass the limit
+        var retries = store.increment(pinRetryCounterId, maxPinRetries, validity).orElse(maxPinRetries);
+        if (retries >= maxPinRetries) {
             throw new InvalidGrantException("PIN locked", e);
         }
     }
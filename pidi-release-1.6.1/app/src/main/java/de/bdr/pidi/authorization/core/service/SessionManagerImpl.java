@@ -7,12 +7,10 @@ package de.bdr.pidi.authorization.core.service;
 import de.bdr.pidi.authorization.FlowVariant;
 import de.bdr.pidi.authorization.core.AuthorizationConfiguration;
 import de.bdr.pidi.authorization.core.AuthorizationHousekeeping;
-import de.bdr.pidi.authorization.core.NonceFactory;
 import de.bdr.pidi.authorization.core.SessionManager;
 import de.bdr.pidi.authorization.core.WSession;
 import de.bdr.pidi.authorization.core.WSessionImpl;
 import de.bdr.pidi.authorization.core.domain.Nonce;
-import de.bdr.pidi.authorization.core.domain.PidIssuerNonce;
 import de.bdr.pidi.authorization.core.domain.Requests;
 import de.bdr.pidi.authorization.core.domain.SessionKey;
 import de.bdr.pidi.authorization.core.exception.InvalidGrantException;
@@ -21,15 +19,14 @@ import de.bdr.pidi.authorization.core.exception.SessionNotFoundException;
 import de.bdr.pidi.authorization.core.exception.UnauthorizedException;
 import de.bdr.pidi.authorization.core.util.DigestUtil;
 import de.bdr.pidi.authorization.core.util.RandomUtil;
-import de.bdr.pidi.authorization.out.persistence.PidiNonceAdapter;
-import de.bdr.pidi.authorization.out.persistence.PidiSessionAdapter;
+import de.bdr.pidi.authorization.out.persistence.PidiNonceStore;
+import de.bdr.pidi.authorization.out.persistence.PidiSessionStore;
 import jakarta.transaction.Transactional;
 import lombok.extern.slf4j.Slf4j;
 import org.slf4j.MDC;
 import org.springframework.stereotype.Component;
 
 import java.time.Duration;
-import java.time.Instant;
 import java.util.regex.Pattern;
 
 @Slf4j
@@ -38,21 +35,21 @@ public class SessionManagerImpl implements SessionManager, AuthorizationHousekee
     private static final Pattern REQUEST_URI_PATTERN = Pattern.compile("urn:ietf:params:oauth:request_uri:[a-zA-Z\\d]{22}$");
     private static final String MDC_SESSION_ID = "sessionId";
 
-    private final PidiSessionAdapter pidiSessionAdapter;
-    private final PidiNonceAdapter pidiNonceAdapter;
+    private final PidiSessionStore pidiSessionStore;
+    private final PidiNonceStore pidiNonceStore;
     private final Duration pidiNonceLifetime;
     private final Duration sessionExpirationTime;
 
-    public SessionManagerImpl(PidiSessionAdapter pidiSessionAdapter, PidiNonceAdapter pidiNonceAdapter, AuthorizationConfiguration config) {
-        this.pidiSessionAdapter = pidiSessionAdapter;
-        this.pidiNonceAdapter = pidiNonceAdapter;
+    public SessionManagerImpl(PidiSessionStore pidiSessionStore, PidiNonceStore pidiNonceStore, AuthorizationConfiguration config) {
+        this.pidiSessionStore = pidiSessionStore;
+        this.pidiNonceStore = pidiNonceStore;
         this.pidiNonceLifetime = config.getPidIssuerNonceLifetime();
         this.sessionExpirationTime = config.getSessionExpirationTime();
     }
 
     @Override
     public WSession init(FlowVariant variant) {
-        var result = pidiSessionAdapter.init(variant, Requests.PUSHED_AUTHORIZATION_REQUEST, sessionExpirationTime);
+        var result = pidiSessionStore.init(variant, Requests.PUSHED_AUTHORIZATION_REQUEST, sessionExpirationTime);
         prepareMdc(result);
         return result;
     }
@@ -60,7 +57,7 @@ public class SessionManagerImpl implements SessionManager, AuthorizationHousekee
     @Override
     public WSession initRefresh(FlowVariant variant, String refreshToken) {
         validateRefreshToken(refreshToken);
-        var result = pidiSessionAdapter.init(variant, Requests.TOKEN_REQUEST, sessionExpirationTime);
+        var result = pidiSessionStore.init(variant, Requests.TOKEN_REQUEST, sessionExpirationTime);
 
         String refreshTokenDigest = DigestUtil.computeDigest(refreshToken);
         result.putParameter(SessionKey.REFRESH_TOKEN_DIGEST, refreshTokenDigest);
@@ -72,19 +69,15 @@ public class SessionManagerImpl implements SessionManager, AuthorizationHousekee
     @Transactional
     public WSession loadOrInitSessionId(FlowVariant variant, String pidIssuerSessionId) {
         validateSessionId(pidIssuerSessionId);
-        WSessionImpl result = pidiSessionAdapter.findByPidIssuerSessionId(pidIssuerSessionId)
+        WSessionImpl result = pidiSessionStore.findByPidIssuerSessionId(pidIssuerSessionId)
                 .orElseGet(() -> {
-                    var sessionIdNonce = pidiNonceAdapter.findByNonce(pidIssuerSessionId, pidiNonceLifetime)
-                            .orElseThrow(() -> new InvalidRequestException("Session ID is unknown"));
-                    if (sessionIdNonce.isUsed() || Instant.now().isAfter(sessionIdNonce.getNonce().expirationTime())) {
-                        throw new InvalidRequestException("Session ID invalid");
-                    }
-                    sessionIdNonce.setUsed(true);
-                    pidiNonceAdapter.setUsed(sessionIdNonce);
-
-                    WSessionImpl newInitSession = pidiSessionAdapter.init(variant, Requests.SEED_TOKEN_REQUEST, sessionExpirationTime);
-                    newInitSession.putParameter(SessionKey.PID_ISSUER_SESSION_ID, sessionIdNonce.getNonce().nonce());
-                    newInitSession.putParameter(SessionKey.PID_ISSUER_SESSION_ID_EXP_TIME, sessionIdNonce.getNonce().expirationTime());
+                    // consumed in one step, so concurrent requests can not init two sessions for the same session ID
+                    var sessionIdNonce = pidiNonceStore.consume(pidIssuerSessionId, pidiNonceLifetime)
+                            .orElseThrow(() -> new InvalidRequestException("Session ID invalid"));
+
+                    WSessionImpl newInitSession = pidiSessionStore.init(variant, Requests.SEED_TOKEN_REQUEST, sessionExpirationTime);
+                    newInitSession.putParameter(SessionKey.PID_ISSUER_SESSION_ID, sessionIdNonce.nonce());
+                    newInitSession.putParameter(SessionKey.PID_ISSUER_SESSION_ID_EXP_TIME, sessionIdNonce.expirationTime());
                     return newInitSession;
                 });
         prepareMdc(result);
@@ -94,7 +87,7 @@ public class SessionManagerImpl implements SessionManager, AuthorizationHousekee
     @Override
     public WSession loadByRequestUri(String requestUri, FlowVariant variant) {
         validateRequestUri(requestUri);
-        var result = pidiSessionAdapter.findByRequestUri(requestUri);
+        var result = pidiSessionStore.findByRequestUri(requestUri);
         prepareMdc(result);
         return result;
     }
@@ -108,7 +101,7 @@ public class SessionManagerImpl implements SessionManager, AuthorizationHousekee
     @Override
     public WSession loadByAuthorizationCode(String code, FlowVariant variant) {
         validateCode(code);
-        var result = pidiSessionAdapter.findByAuthorizationCode(code);
+        var result = pidiSessionStore.findByAuthorizationCode(code);
         prepareMdc(result);
         return result;
     }
@@ -122,7 +115,7 @@ public class SessionManagerImpl implements SessionManager, AuthorizationHousekee
     @Override
     public WSession loadByIssuerState(String issuerState, FlowVariant variant) {
         validateIssuerState(issuerState);
-        var result = pidiSessionAdapter.findByIssuerState(issuerState);
+        var result = pidiSessionStore.findByIssuerState(issuerState);
         if (result.getFlowVariant() != variant) {
             throw new SessionNotFoundException();
         }
@@ -133,7 +126,7 @@ public class SessionManagerImpl implements SessionManager, AuthorizationHousekee
     @Override
     public WSession loadByIssuerState(String issuerState) {
         validateIssuerState(issuerState);
-        var result = pidiSessionAdapter.findByIssuerState(issuerState);
+        var result = pidiSessionStore.findByIssuerState(issuerState);
         prepareMdc(result);
         return result;
     }
@@ -149,7 +142,7 @@ public class SessionManagerImpl implements SessionManager, AuthorizationHousekee
         var accessToken = validateAccessToken(scheme, authorization);
         WSessionImpl result;
         try {
-            result = pidiSessionAdapter.findByAccessToken(accessToken);
+            result = pidiSessionStore.findByAccessToken(accessToken);
         } catch (SessionNotFoundException e) {
             throw new UnauthorizedException(scheme, "session not found");
         }
@@ -180,7 +173,7 @@ public class SessionManagerImpl implements SessionManager, AuthorizationHousekee
         validateRefreshToken(refreshToken);
         String refreshTokenDigest = DigestUtil.computeDigest(refreshToken);
 
-        var result = pidiSessionAdapter.findByRefreshTokenDigest(refreshTokenDigest);
+        var result = pidiSessionStore.findByRefreshTokenDigest(refreshTokenDigest);
         prepareMdc(result);
         return result;
     }
@@ -199,27 +192,27 @@ public class SessionManagerImpl implements SessionManager, AuthorizationHousekee
 
     @Override
     public void persist(WSession session) {
-        // TODO PIDI-235 make sure that changing the WSession#nextExpectedRequest can only be changed from one request - even if there are concurrent requests
+        // fails if a concurrent request changed the session since it was loaded, so only one of them can move the flow on
         WSessionImpl sessionImpl = (WSessionImpl) session;
-        pidiSessionAdapter.update(sessionImpl, sessionExpirationTime);
+        pidiSessionStore.update(sessionImpl, sessionExpirationTime);
     }
 
     @Override
     public void persistAndTerminate(WSession session) {
-        pidiSessionAdapter.persistAndTerminate((WSessionImpl) session);
+        pidiSessionStore.persistAndTerminate((WSessionImpl) session);
     }
 
     @Override
     public void cleanupExpiredSessions() {
-        var count = pidiSessionAdapter.deleteExpiredSessions();
+        var count = pidiSessionStore.deleteExpiredSessions();
         log.info("Deleted {} expired sessions", count);
     }
 
     @Override
-    public PidIssuerNonce createSessionIdNonce() {
-        Nonce nonce = NonceFactory.createSecureRandomNonce(pidiNonceLifetime);
+    public Nonce createSessionIdNonce() {
+        Nonce nonce = pidiNonceStore.issue(pidiNonceLifetime);
         MDC.put(MDC_SESSION_ID, String.valueOf(nonce.nonce()));
-        return pidiNonceAdapter.createAndSave(nonce, pidiNonceLifetime);
+        return nonce;
     }
 
     private static void prepareMdc(WSessionImpl result) {
@@ -4,11 +4,10 @@
  */
 package de.bdr.pidi.authorization.core.util;
 
+import de.bdr.pidi.base.random.SecureRandomPool;
 import lombok.AccessLevel;
 import lombok.NoArgsConstructor;
 
-import java.security.SecureRandom;
-import java.util.Random;
 import java.util.regex.Pattern;
 
 @NoArgsConstructor(access = AccessLevel.PRIVATE)
@@ -18,12 +17,11 @@ public final class RandomUtil {
     private static final char[] DEFAULT_RANDOM_CHARS_ARRAY = DEFAULT_RANDOM_CHARS.toCharArray();
     private static final Pattern DEFAULT_RANDOM_CHARS_PATTERN = Pattern.compile("[" + DEFAULT_RANDOM_CHARS + "]{"+ RANDOM_CHARS_ARRAY_LENGTH + "}");
 
-    private static final Random SECURE_RANDOM = new SecureRandom();
-
     public static String randomString() {
+        var random = SecureRandomPool.shared().current();
         var result = new char[RANDOM_CHARS_ARRAY_LENGTH];
         for (int i = 0; i < RANDOM_CHARS_ARRAY_LENGTH; i++) {
-            result[i] = DEFAULT_RANDOM_CHARS_ARRAY[SECURE_RANDOM.nextInt(DEFAULT_RANDOM_CHARS_ARRAY.length)];
+            result[i] = DEFAULT_RANDOM_CHARS_ARRAY[random.nextInt(DEFAULT_RANDOM_CHARS_ARRAY.length)];
         }
         return new String(result);
     }
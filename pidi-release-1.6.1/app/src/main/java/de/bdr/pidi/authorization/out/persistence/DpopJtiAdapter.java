@@ -0,0 +1,57 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.authorization.out.persistence;
+
+import de.bdr.openid4vc.vci.data.storage.JtiStorage;
+import de.bdr.pidi.authorization.core.util.DigestUtil;
+import org.jetbrains.annotations.NotNull;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+/**
+ * Stores the used DPoP proof jti values in the database, so a proof is rejected by every node once it has been used.
+ * The insert is a single statement and relies on the primary key, concurrent requests with the same proof can not
+ * both succeed. Expired values are deleted by the housekeeping.
+ */
+@Service
+@ConditionalOnProperty(name = DpopJtiAdapter.PROPERTY, havingValue = "jpa", matchIfMissing = true)
+public class DpopJtiAdapter implements JtiStorage {
+
+    public static final String PROPERTY = "pidi.authorization.jti-store";
+
+    private final DpopJtiRepository dpopJtiRepository;
+
+    public DpopJtiAdapter(DpopJtiRepository dpopJtiRepository) {
+        this.dpopJtiRepository = dpopJtiRepository;
+    }
+
+    @Override
+    @Transactional
+    public boolean isUnused(@NotNull String jti, @NotNull Instant validUntil) {
+        /*
+        Postgress timestamp contains only microseconds and no nanoseconds, rounded up to keep the jti at least until validUntil
+         */
+        var expires = validUntil.truncatedTo(ChronoUnit.MICROS).plus(1, ChronoUnit.MICROS);
+        return dpopJtiRepository.insertIfAbsent(DigestUtil.computeDigest(jti), expires) == 1;
+    }
+
+    /**
+     * deletes up to {@code limit} jti values that expired before {@code now}
+     *
+     * @return number of deleted jti values
+     */
+    @Transactional
+    public int deleteExpired(Instant now, int limit) {
+        return dpopJtiRepository.deleteExpiredChunk(now, limit);
+    }
+
+    public long countExpired(Instant now) {
+        return dpopJtiRepository.countByExpiresBefore(now);
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.authorization.out.persistence;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+
+@Setter
+@Getter
+@Entity
+@Table(name = "dpop_jti")
+public class DpopJtiEntity {
+    /**
+     * SHA-256 of the jti, the jti itself is chosen by the client and may be of any length
+     */
+    @Id
+    private String jtiDigest;
+
+    @Column(nullable = false)
+    private Instant expires;
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.authorization.out.persistence;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+
+import java.time.Instant;
+
+public interface DpopJtiRepository extends JpaRepository<DpopJtiEntity, String> {
+
+    /**
+     * @return 1 if the jti was inserted, 0 if it is already present
+     */
+    @Modifying
+    @Query(value = "INSERT INTO dpop_jti (jti_digest, expires) VALUES (:jtiDigest, :expires) ON CONFLICT DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(String jtiDigest, Instant expires);
+
+    @Modifying
+    @Query(value = "DELETE FROM dpop_jti WHERE jti_digest IN (SELECT jti_digest FROM dpop_jti WHERE expires < :now LIMIT :limit)", nativeQuery = true)
+    int deleteExpiredChunk(Instant now, int limit);
+
+    long countByExpiresBefore(Instant now);
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.authorization.out.persistence;
+
+import de.bdr.openid4vc.common.vci.EncryptedNonceService;
+import de.bdr.openid4vc.common.vci.NonceService.NoncePurpose;
+import de.bdr.pidi.authorization.core.AuthorizationConfiguration;
+import de.bdr.pidi.authorization.core.domain.Nonce;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Issues session ID nonces without storing them. A nonce is the expiration time followed by a nonce of the
+ * {@link EncryptedNonceService}, the expiration time is part of its purpose, so it can not be changed.
+ * <p>
+ * A nonce is accepted until it expires. A second session for a session ID is still prevented by the session lookup,
+ * only concurrent first requests with the same session ID are not detected. With the key set by
+ * {@code pidi.authorization.session-id-nonce-key} all nodes accept the nonces, without it a random key of this node
+ * is used.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = PidiNonceStore.PROPERTY, havingValue = "encrypted")
+public class EncryptedPidiNonceStore implements PidiNonceStore {
+
+    private static final byte SESSION_ID_PURPOSE = 0x10;
+    private static final char SEPARATOR = '.';
+
+    private final byte[] key;
+    private final Map<Duration, EncryptedNonceService> nonceServices = new ConcurrentHashMap<>();
+
+    @Autowired
+    public EncryptedPidiNonceStore(AuthorizationConfiguration configuration) {
+        this(sessionIdNonceKey(configuration.getSessionIdNonceKey()));
+    }
+
+    EncryptedPidiNonceStore(byte[] key) {
+        this.key = key.clone();
+    }
+
+    @Override
+    public Nonce issue(Duration lifetime) {
+        var expirationTime = Instant.ofEpochMilli(Instant.now().plus(lifetime).toEpochMilli());
+        var encrypted = nonceService(lifetime).generate(purpose(expirationTime.toEpochMilli())).getNonce();
+        return new Nonce(expirationTime.toEpochMilli() + String.valueOf(SEPARATOR) + encrypted, lifetime, expirationTime);
+    }
+
+    @Override
+    public Optional<Nonce> consume(String nonce, Duration lifetime) {
+        var separator = nonce.indexOf(SEPARATOR);
+        if (separator < 1) {
+            return Optional.empty();
+        }
+        final Instant expirationTime;
+        try {
+            expirationTime = Instant.ofEpochMilli(Long.parseLong(nonce.substring(0, separator)));
+        } catch (NumberFormatException e) {
+            return Optional.empty();
+        }
+        if (!Instant.now().isBefore(expirationTime)) {
+            return Optional.empty();
+        }
+        try {
+            nonceService(lifetime).validate(nonce.substring(separator + 1), purpose(expirationTime.toEpochMilli()));
+        } catch (IllegalArgumentException e) {
+            log.debug("Session ID nonce invalid", e);
+            return Optional.empty();
+        }
+        return Optional.of(new Nonce(nonce, lifetime, expirationTime));
+    }
+
+    private EncryptedNonceService nonceService(Duration lifetime) {
+        return nonceServices.computeIfAbsent(lifetime, maxNonceAge -> new EncryptedNonceService(key, maxNonceAge));
+    }
+
+    private static NoncePurpose purpose(long expirationTime) {
+        var bytes = ByteBuffer.allocate(1 + Long.BYTES).put(SESSION_ID_PURPOSE).putLong(expirationTime).array();
+        return () -> bytes;
+    }
+
+    private static byte[] sessionIdNonceKey(String configuredKey) {
+        if (configuredKey != null && !configuredKey.isBlank()) {
+            return Base64.getDecoder().decode(configuredKey);
+        }
+        log.warn("No session ID nonce key configured, the session IDs are only accepted by this node");
+        var key = new byte[32];
+        new SecureRandom().nextBytes(key);
+        return key;
+    }
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.authorization.out.persistence;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import de.bdr.pidi.authorization.FlowVariant;
+import de.bdr.pidi.authorization.core.AuthorizationConfiguration;
+import de.bdr.pidi.authorization.core.WSessionImpl;
+import de.bdr.pidi.authorization.core.domain.Requests;
+import de.bdr.pidi.authorization.core.domain.SessionKey;
+import de.bdr.pidi.authorization.core.exception.InvalidRequestException;
+import de.bdr.pidi.authorization.core.exception.SessionNotFoundException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the sessions in the memory of this node. Only usable if all requests of a flow reach the same node, the
+ * sessions are lost on restart.
+ * <p>
+ * Sessions are evicted as soon as they expire, while the database keeps expired sessions until the housekeeping
+ * deletes them.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = PidiSessionStore.PROPERTY, havingValue = "memory")
+public class InMemoryPidiSessionStore implements PidiSessionStore {
+
+    /**
+     * the session parameters used to find a session
+     */
+    private static final List<SessionKey> LOOKUP_KEYS = List.of(SessionKey.REQUEST_URI, SessionKey.AUTHORIZATION_CODE,
+            SessionKey.ISSUER_STATE, SessionKey.ACCESS_TOKEN, SessionKey.REFRESH_TOKEN_DIGEST, SessionKey.PID_ISSUER_SESSION_ID);
+
+    private record StoredSession(long id, FlowVariant flow, Requests nextExpectedRequest, Map<SessionKey, String> parameters,
+                                 long version, Instant expires) {
+    }
+
+    private final Clock clock;
+    private final AtomicLong nextId = new AtomicLong();
+    private final Cache<Long, StoredSession> sessions;
+    private final Map<SessionKey, Map<String, Long>> lookups = new EnumMap<>(SessionKey.class);
+    private final AtomicInteger expiredCount = new AtomicInteger();
+
+    @Autowired
+    public InMemoryPidiSessionStore(AuthorizationConfiguration configuration) {
+        this(configuration.getSessionStoreMaximumSize(), Clock.systemUTC());
+    }
+
+    InMemoryPidiSessionStore(long maximumSize, Clock clock) {
+        this.clock = clock;
+        LOOKUP_KEYS.forEach(key -> lookups.put(key, new ConcurrentHashMap<>()));
+        this.sessions = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new SessionExpiry())
+                .ticker(() -> clock.millis() * 1_000_000)
+                .executor(Runnable::run)
+                .removalListener(this::onRemoval)
+                .build();
+        log.info("Sessions are stored in memory, maximum size {}", maximumSize);
+    }
+
+    @Override
+    public WSessionImpl init(FlowVariant flowVariant, Requests nextExpected, Duration sessionExpirationTime) {
+        var stored = new StoredSession(nextId.incrementAndGet(), flowVariant, nextExpected, Map.of(), 0,
+                clock.instant().plus(sessionExpirationTime));
+        sessions.put(stored.id(), stored);
+        return map(stored);
+    }
+
+    @Override
+    public WSessionImpl findByRequestUri(String requestUri) throws SessionNotFoundException {
+        return findBy(SessionKey.REQUEST_URI, requestUri).orElseThrow(SessionNotFoundException::new);
+    }
+
+    @Override
+    public WSessionImpl findByAuthorizationCode(String authorizationCode) throws SessionNotFoundException {
+        return findBy(SessionKey.AUTHORIZATION_CODE, authorizationCode).orElseThrow(SessionNotFoundException::new);
+    }
+
+    @Override
+    public WSessionImpl findByIssuerState(String issuerState) throws SessionNotFoundException {
+        return findBy(SessionKey.ISSUER_STATE, issuerState).orElseThrow(SessionNotFoundException::new);
+    }
+
+    @Override
+    public WSessionImpl findByAccessToken(String accessToken) throws SessionNotFoundException {
+        return findBy(SessionKey.ACCESS_TOKEN, accessToken).orElseThrow(SessionNotFoundException::new);
+    }
+
+    @Override
+    public WSessionImpl findByRefreshTokenDigest(String refreshTokenDigest) throws SessionNotFoundException {
+        return findBy(SessionKey.REFRESH_TOKEN_DIGEST, refreshTokenDigest).orElseThrow(SessionNotFoundException::new);
+    }
+
+    @Override
+    public Optional<WSessionImpl> findByPidIssuerSessionId(String pidIssuerSessionId) {
+        return findBy(SessionKey.PID_ISSUER_SESSION_ID, pidIssuerSessionId);
+    }
+
+    @Override
+    public void update(WSessionImpl wSession, Duration sessionExpirationTime) throws SessionNotFoundException {
+        var parameters = new EnumMap<SessionKey, String>(SessionKey.class);
+        parameters.putAll(wSession.getParameters());
+        var expires = clock.instant().plus(sessionExpirationTime);
+        var previous = new StoredSession[1];
+        var updated = sessions.asMap().compute(wSession.getSessionId(), (id, current) -> {
+            checkVersion(wSession, current);
+            previous[0] = current;
+            return new StoredSession(id, wSession.getFlowVariant(), wSession.getNextExpectedRequest(),
+                    Collections.unmodifiableMap(parameters), current.version() + 1, expires);
+        });
+        updateLookups(previous[0], updated);
+        wSession.setVersion(updated.version());
+    }
+
+    /**
+     * A terminated session can not be used anymore, so it is removed right away.
+     */
+    @Override
+    public void persistAndTerminate(WSessionImpl wSession) {
+        sessions.asMap().compute(wSession.getSessionId(), (id, current) -> {
+            checkVersion(wSession, current);
+            return null;
+        });
+        wSession.setVersion(wSession.getVersion() + 1);
+    }
+
+    /**
+     * Expired sessions are evicted by the cache itself, this only reports how many have been evicted since the last
+     * call.
+     */
+    @Override
+    public int deleteExpiredSessions() {
+        sessions.cleanUp();
+        return expiredCount.getAndSet(0);
+    }
+
+    @Override
+    public int deleteExpiredSessions(Instant now, int limit) {
+        return deleteExpiredSessions();
+    }
+
+    /**
+     * Expired sessions are not kept, so there are none left to delete.
+     */
+    @Override
+    public long countExpiredSessions(Instant now) {
+        return 0;
+    }
+
+    long size() {
+        sessions.cleanUp();
+        return sessions.estimatedSize();
+    }
+
+    private Optional<WSessionImpl> findBy(SessionKey key, String value) {
+        if (value == null) {
+            return Optional.empty();
+        }
+        var id = lookups.get(key).get(value);
+        if (id == null) {
+            return Optional.empty();
+        }
+        // the lookup may still point to the session while the parameter was just changed
+        return Optional.ofNullable(sessions.getIfPresent(id))
+                .filter(stored -> value.equals(stored.parameters().get(key)))
+                .map(this::map);
+    }
+
+    private static void checkVersion(WSessionImpl wSession, StoredSession current) {
+        if (current == null) {
+            throw new SessionNotFoundException();
+        }
+        if (current.version() != wSession.getVersion()) {
+            throw InvalidRequestException.forConcurrentModification(wSession.getSessionId());
+        }
+    }
+
+    private void updateLookups(StoredSession previous, StoredSession updated) {
+        for (var key : LOOKUP_KEYS) {
+            var oldValue = previous.parameters().get(key);
+            var newValue = updated.parameters().get(key);
+            if (Objects.equals(oldValue, newValue)) {
+                continue;
+            }
+            if (oldValue != null) {
+                lookups.get(key).remove(oldValue, updated.id());
+            }
+            if (newValue != null) {
+                lookups.get(key).put(newValue, updated.id());
+            }
+        }
+    }
+
+    private void onRemoval(Long id, StoredSession session, RemovalCause cause) {
+        if (session == null || cause == RemovalCause.REPLACED) {
+            return;
+        }
+        if (cause == RemovalCause.EXPIRED) {
+            expiredCount.incrementAndGet();
+        }
+        for (var key : LOOKUP_KEYS) {
+            var value = session.parameters().get(key);
+            if (value != null) {
+                lookups.get(key).remove(value, id);
+            }
+        }
+    }
+
+    /**
+     * expires a session at the time stored with it, reading does not extend the lifetime
+     */
+    private class SessionExpiry implements Expiry<Long, StoredSession> {
+        @Override
+        public long expireAfterCreate(Long id, StoredSession session, long currentTime) {
+            return Math.max(0, Duration.between(clock.instant(), session.expires()).toNanos());
+        }
+
+        @Override
+        public long expireAfterUpdate(Long id, StoredSession session, long currentTime, long currentDuration) {
+            return expireAfterCreate(id, session, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(Long id, StoredSession session, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+
+    private WSessionImpl map(StoredSession stored) {
+        var session = new WSessionImpl(stored.flow(), stored.id());
+        session.setNextExpectedRequest(stored.nextExpectedRequest());
+        session.setVersion(stored.version());
+        session.putParameters(stored.parameters());
+        return session;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.authorization.out.persistence;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import de.bdr.pidi.authorization.core.domain.PinRetryCounter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the PIN retry counters in the memory of this node. Only usable if all requests of a client reach the same
+ * node, the counters are lost on restart.
+ * <p>
+ * Counters are evicted as soon as they expire, the increment is atomic per digest.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = PinRetryCounterStore.PROPERTY, havingValue = "memory")
+public class InMemoryPinRetryCounterStore implements PinRetryCounterStore {
+
+    private final Clock clock;
+    private final AtomicLong nextId = new AtomicLong();
+    private final ConcurrentMap<String, PinRetryCounter> counters;
+
+    @Autowired
+    public InMemoryPinRetryCounterStore() {
+        this(Clock.systemUTC());
+    }
+
+    InMemoryPinRetryCounterStore(Clock clock) {
+        this.clock = clock;
+        this.counters = Caffeine.newBuilder()
+                .expireAfter(new CounterExpiry())
+                .ticker(() -> clock.millis() * 1_000_000)
+                .executor(Runnable::run)
+                .<String, PinRetryCounter>build()
+                .asMap();
+        log.info("PIN retry counters are stored in memory");
+    }
+
+    @Override
+    public PinRetryCounter create(String digest, Duration validity) {
+        return counters.compute(digest, (key, current) ->
+                new PinRetryCounter(current == null ? nextId.incrementAndGet() : current.getId(), key, 0, expires(validity)));
+    }
+
+    @Override
+    public Optional<PinRetryCounter> find(String digest) {
+        return Optional.ofNullable(counters.get(digest));
+    }
+
+    @Override
+    public OptionalInt increment(String digest, int limit, Duration validity) {
+        var incremented = new AtomicBoolean();
+        var counter = counters.compute(digest, (key, current) -> {
+            if (current == null) {
+                incremented.set(true);
+                return new PinRetryCounter(nextId.incrementAndGet(), key, 1, expires(validity));
+            }
+            if (current.getValue() >= limit) {
+                return current;
+            }
+            incremented.set(true);
+            return new PinRetryCounter(current.getId(), key, current.getValue() + 1, current.getExpirationTime());
+        });
+        return incremented.get() ? OptionalInt.of(counter.getValue()) : OptionalInt.empty();
+    }
+
+    private Instant expires(Duration validity) {
+        return clock.instant().plus(validity);
+    }
+
+    /**
+     * expires a counter at the time stored with it, incrementing does not extend the lifetime
+     */
+    private class CounterExpiry implements Expiry<String, PinRetryCounter> {
+        @Override
+        public long expireAfterCreate(String digest, PinRetryCounter counter, long currentTime) {
+            return Math.max(0, Duration.between(clock.instant(), counter.getExpirationTime()).toNanos());
+        }
+
+        @Override
+        public long expireAfterUpdate(String digest, PinRetryCounter counter, long currentTime, long currentDuration) {
+            return expireAfterCreate(digest, counter, currentTime);
+        }
+
+        @Override
+        public long expireAfterRead(String digest, PinRetryCounter counter, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
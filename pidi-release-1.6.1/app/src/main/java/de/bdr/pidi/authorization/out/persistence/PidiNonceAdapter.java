@@ -4,23 +4,33 @@
  */
 package de.bdr.pidi.authorization.out.persistence;
 
+import de.bdr.pidi.authorization.core.NonceFactory;
 import de.bdr.pidi.authorization.core.domain.Nonce;
-import de.bdr.pidi.authorization.core.domain.PidIssuerNonce;
 import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.Duration;
+import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.Optional;
 
+/**
+ * Stores the session ID nonces in the database. A nonce is consumed by a single statement that only matches an unused
+ * and unexpired nonce, so concurrent requests with the same nonce can not both consume it. Expired nonces are deleted
+ * by the housekeeping.
+ */
 @Service
 @RequiredArgsConstructor
-public class PidiNonceAdapter {
+@ConditionalOnProperty(name = PidiNonceStore.PROPERTY, havingValue = "jpa", matchIfMissing = true)
+public class PidiNonceAdapter implements PidiNonceStore {
     private final PidiNonceRepository pidiNonceRepository;
 
+    @Override
     @Transactional
-    public PidIssuerNonce createAndSave(Nonce nonce, Duration pidiNonceLifetime) {
+    public Nonce issue(Duration lifetime) {
+        var nonce = NonceFactory.createSecureRandomNonce(lifetime);
         PidiNonceEntity entity = new PidiNonceEntity();
         entity.setNonce(nonce.nonce());
         entity.setUsed(false);
@@ -28,21 +38,30 @@ public class PidiNonceAdapter {
         Postgress timestamp contains only microseconds and no nanoseconds
          */
         entity.setExpires(nonce.expirationTime().truncatedTo(ChronoUnit.MICROS));
-        return map(pidiNonceRepository.save(entity), pidiNonceLifetime);
+        return map(pidiNonceRepository.save(entity), lifetime);
+    }
+
+    @Override
+    @Transactional
+    public Optional<Nonce> consume(String nonce, Duration lifetime) {
+        return pidiNonceRepository.consumeByNonce(nonce, Instant.now()).map(entity -> map(entity, lifetime));
     }
 
+    /**
+     * deletes up to {@code limit} nonces that expired before {@code now}
+     *
+     * @return number of deleted nonces
+     */
     @Transactional
-    public void setUsed(PidIssuerNonce pidiNonce) {
-        PidiNonceEntity entity = pidiNonceRepository.getReferenceById(pidiNonce.getId());
-        entity.setUsed(pidiNonce.isUsed());
-        pidiNonceRepository.save(entity);
+    public int deleteExpired(Instant now, int limit) {
+        return pidiNonceRepository.deleteExpiredChunk(now, limit);
     }
 
-    public Optional<PidIssuerNonce> findByNonce(String nonce, Duration pidiNonceLifetime) {
-        return pidiNonceRepository.findFirstByNonce(nonce).map(pidiNonceEntity -> map(pidiNonceEntity, pidiNonceLifetime));
+    public long countExpired(Instant now) {
+        return pidiNonceRepository.countByExpiresBefore(now);
     }
 
-    private PidIssuerNonce map(final PidiNonceEntity entity, Duration pidiNonceLifetime) {
-        return new PidIssuerNonce(entity.getId(), new Nonce(entity.getNonce(), pidiNonceLifetime, entity.getExpires()), entity.isUsed());
+    private static Nonce map(final PidiNonceEntity entity, Duration lifetime) {
+        return new Nonce(entity.getNonce(), lifetime, entity.getExpires());
     }
 }
@@ -5,9 +5,22 @@
 package de.bdr.pidi.authorization.out.persistence;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 
+import java.time.Instant;
 import java.util.Optional;
 
 public interface PidiNonceRepository  extends JpaRepository<PidiNonceEntity, Long> {
     Optional<PidiNonceEntity> findFirstByNonce(String nonce);
+
+    @Query(value = "UPDATE pidi_nonce SET used = true WHERE nonce = :nonce AND used = false AND expires > :now " +
+            "RETURNING *", nativeQuery = true)
+    Optional<PidiNonceEntity> consumeByNonce(String nonce, Instant now);
+
+    @Modifying
+    @Query(value = "DELETE FROM pidi_nonce WHERE id IN (SELECT id FROM pidi_nonce WHERE expires < :now LIMIT :limit)", nativeQuery = true)
+    int deleteExpiredChunk(Instant now, int limit);
+
+    long countByExpiresBefore(Instant now);
 }
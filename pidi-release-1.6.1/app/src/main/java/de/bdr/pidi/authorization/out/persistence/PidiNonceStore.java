@@ -0,0 +1,34 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.authorization.out.persistence;
+
+import de.bdr.pidi.authorization.core.domain.Nonce;
+
+import java.time.Duration;
+import java.util.Optional;
+
+/**
+ * Issues and consumes the session ID nonces of the B1 flow, selected by {@code pidi.authorization.session-id-nonce-store}:
+ * <ul>
+ *     <li>{@code jpa} (default): {@link PidiNonceAdapter}, every nonce is stored and can be consumed only once</li>
+ *     <li>{@code encrypted}: {@link EncryptedPidiNonceStore}, nothing is stored, a nonce is accepted until it expires</li>
+ * </ul>
+ */
+public interface PidiNonceStore {
+
+    String PROPERTY = "pidi.authorization.session-id-nonce-store";
+
+    /**
+     * issues a new nonce that expires after {@code lifetime}
+     */
+    Nonce issue(Duration lifetime);
+
+    /**
+     * consumes the nonce if it was issued by this store and is not expired
+     *
+     * @return the consumed nonce with its expiration time, empty if the nonce is unknown, expired or already consumed
+     */
+    Optional<Nonce> consume(String nonce, Duration lifetime);
+}
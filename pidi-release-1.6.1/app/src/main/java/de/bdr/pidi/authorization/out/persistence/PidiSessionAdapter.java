@@ -8,12 +8,16 @@ import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import de.bdr.pidi.authorization.FlowVariant;
+import de.bdr.pidi.authorization.core.AuthorizationConfiguration;
 import de.bdr.pidi.authorization.core.WSessionImpl;
 import de.bdr.pidi.authorization.core.domain.Requests;
 import de.bdr.pidi.authorization.core.domain.SessionKey;
+import de.bdr.pidi.authorization.core.exception.InvalidRequestException;
 import de.bdr.pidi.authorization.core.exception.SessionNotFoundException;
 import de.bdr.pidi.base.PidServerException;
 import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -23,12 +27,25 @@ import java.time.temporal.ChronoUnit;
 import java.util.HashMap;
 import java.util.Optional;
 
+/**
+ * Stores the sessions in the database. Concurrent changes are detected by the version column of the session.
+ * <p>
+ * The parameters are stored binary in session_data and read from there. Only sessions written by the previous release
+ * without session_data are read from the JSON in session.
+ * <p>
+ * {@code pidi.authorization.session-json-compatibility} is set only while nodes of the previous release run alongside,
+ * during a rolling update or to allow rolling back. The parameters are then written as JSON to session as well, and
+ * as these nodes only update the JSON, it is read first if present.
+ */
 @Component
 @RequiredArgsConstructor
-public class PidiSessionAdapter {
+@ConditionalOnProperty(name = PidiSessionStore.PROPERTY, havingValue = "jpa", matchIfMissing = true)
+public class PidiSessionAdapter implements PidiSessionStore {
     private final PidiSessionRepository pidiSessionRepository;
     private final ObjectMapper objectMapper;
+    private final AuthorizationConfiguration authorizationConfiguration;
 
+    @Override
     public WSessionImpl init(FlowVariant flowVariant, Requests nextExpected, Duration sessionExpirationTime) {
         var entity = new PidiSessionEntity();
         entity.setFlow(flowVariant);
@@ -38,58 +55,105 @@ public class PidiSessionAdapter {
         return map(saved);
     }
 
+    @Override
     public WSessionImpl findByRequestUri(String requestUri) throws SessionNotFoundException {
         return pidiSessionRepository.findFirstByRequestUri(requestUri).map(this::map)
                 .orElseThrow(SessionNotFoundException::new);
     }
 
+    @Override
     public WSessionImpl findByAuthorizationCode(String authorizationCode) throws SessionNotFoundException {
         return pidiSessionRepository.findFirstByAuthorizationCode(authorizationCode).map(this::map)
                 .orElseThrow(SessionNotFoundException::new);
     }
 
+    @Override
     public WSessionImpl findByIssuerState(String issuerState) throws SessionNotFoundException {
         return pidiSessionRepository.findFirstByIssuerState(issuerState).map(this::map)
                 .orElseThrow(SessionNotFoundException::new);
     }
 
+    @Override
     public WSessionImpl findByAccessToken(String accessToken) throws SessionNotFoundException {
         return pidiSessionRepository.findFirstByAccessToken(accessToken).map(this::map)
                 .orElseThrow(SessionNotFoundException::new);
     }
 
+    @Override
     public WSessionImpl findByRefreshTokenDigest(String refreshTokenDigest) throws SessionNotFoundException {
         return pidiSessionRepository.findFirstByRefreshTokenDigest(refreshTokenDigest).map(this::map)
                 .orElseThrow(SessionNotFoundException::new);
     }
 
-    public Optional<WSessionImpl> findByPidIssuerSessionId(String pidIssuerSessionId) throws SessionNotFoundException {
+    @Override
+    public Optional<WSessionImpl> findByPidIssuerSessionId(String pidIssuerSessionId) {
         return pidiSessionRepository.findFirstByPidIssuerSessionId(pidIssuerSessionId).map(this::map);
     }
 
+    @Override
     @Transactional
     public void update(WSessionImpl wSession, Duration sessionExpirationTime) throws SessionNotFoundException {
-        var entity = pidiSessionRepository.getReferenceById(wSession.getSessionId());
+        var entity = loadForUpdate(wSession);
         setAllFields(wSession, entity);
         setExpirationTime(entity, sessionExpirationTime);
+        flush(wSession, entity);
     }
 
+    @Override
     @Transactional
     public int deleteExpiredSessions() {
         return pidiSessionRepository.deleteAllByExpiresBefore(Instant.now());
     }
 
+    @Override
+    @Transactional
+    public int deleteExpiredSessions(Instant now, int limit) {
+        return pidiSessionRepository.deleteExpiredChunk(now, limit);
+    }
+
+    @Override
+    public long countExpiredSessions(Instant now) {
+        return pidiSessionRepository.countByExpiresBefore(now);
+    }
+
+    @Override
     @Transactional
     public void persistAndTerminate(WSessionImpl wSession) {
-        var entity = pidiSessionRepository.getReferenceById(wSession.getSessionId());
+        var entity = loadForUpdate(wSession);
         setAllFields(wSession, entity);
         entity.setExpires(Instant.now().truncatedTo(ChronoUnit.MICROS));
+        flush(wSession, entity);
+    }
+
+    private PidiSessionEntity loadForUpdate(WSessionImpl wSession) {
+        var entity = pidiSessionRepository.findById(wSession.getSessionId()).orElseThrow(SessionNotFoundException::new);
+        if (entity.getVersion() != wSession.getVersion()) {
+            throw InvalidRequestException.forConcurrentModification(wSession.getSessionId());
+        }
+        return entity;
+    }
+
+    /**
+     * writes the entity, the update only matches if the version is still the loaded one
+     */
+    private void flush(WSessionImpl wSession, PidiSessionEntity entity) {
+        try {
+            var saved = pidiSessionRepository.saveAndFlush(entity);
+            wSession.setVersion(saved.getVersion());
+        } catch (ObjectOptimisticLockingFailureException e) {
+            throw InvalidRequestException.forConcurrentModification(wSession.getSessionId());
+        }
     }
 
     private WSessionImpl map(PidiSessionEntity entity) {
         var session = new WSessionImpl(entity.getFlow(), entity.getId());
         session.setNextExpectedRequest(entity.getNextExpectedRequest());
-        if (entity.getSession() == null) {
+        session.setVersion(entity.getVersion());
+        var readJson = entity.getSessionData() == null || authorizationConfiguration.isSessionJsonCompatibility();
+        if (entity.getSession() == null || !readJson) {
+            if (entity.getSessionData() != null) {
+                session.putParameters(SessionParameterCodec.decode(entity.getSessionData()));
+            }
             return session;
         }
         try {
@@ -110,9 +174,13 @@ public class PidiSessionAdapter {
         target.setAccessToken(source.getParameter(SessionKey.ACCESS_TOKEN));
         target.setRefreshTokenDigest(source.getParameter(SessionKey.REFRESH_TOKEN_DIGEST));
         target.setPidIssuerSessionId(source.getParameter(SessionKey.PID_ISSUER_SESSION_ID));
+        target.setSessionData(SessionParameterCodec.encode(source.getParameters()));
+        if (!authorizationConfiguration.isSessionJsonCompatibility()) {
+            target.setSession(null);
+            return;
+        }
         try {
-            String params = objectMapper.writeValueAsString(source.getParameters());
-            target.setSession(params);
+            target.setSession(objectMapper.writeValueAsString(source.getParameters()));
         } catch (JsonProcessingException e) {
             throw new PidServerException("Could not serialize session parameters for session " + source.getSessionId(), e);
         }
@@ -14,6 +14,7 @@ import jakarta.persistence.Enumerated;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.Id;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 import jakarta.validation.constraints.NotNull;
 import lombok.Getter;
 import lombok.Setter;
@@ -33,7 +34,12 @@ public class PidiSessionEntity {
     @NotNull
     @Enumerated(EnumType.STRING)
     private FlowVariant flow;
+    /**
+     * JSON representation of the session parameters, read and written by the previous release, takes precedence over
+     * {@link #sessionData} if present
+     */
     private String session;
+    private byte[] sessionData;
     private String authorizationCode;
     private String issuerState;
     private String requestUri;
@@ -48,4 +54,7 @@ public class PidiSessionEntity {
     @Enumerated(EnumType.STRING)
     private Requests nextExpectedRequest;
 
+    @Version
+    private long version;
+
 }
@@ -5,6 +5,8 @@
 package de.bdr.pidi.authorization.out.persistence;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 
 import java.time.Instant;
 import java.util.Optional;
@@ -17,4 +19,10 @@ public interface PidiSessionRepository extends JpaRepository<PidiSessionEntity,
     Optional<PidiSessionEntity> findFirstByRefreshTokenDigest(String refreshTokenDigest);
     Optional<PidiSessionEntity> findFirstByPidIssuerSessionId(String pipIssuerSessionId);
     int deleteAllByExpiresBefore(Instant now);
+
+    @Modifying
+    @Query(value = "DELETE FROM pidi_session WHERE id IN (SELECT id FROM pidi_session WHERE expires < :now LIMIT :limit)", nativeQuery = true)
+    int deleteExpiredChunk(Instant now, int limit);
+
+    long countByExpiresBefore(Instant now);
 }
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.authorization.out.persistence;
+
+import de.bdr.pidi.authorization.FlowVariant;
+import de.bdr.pidi.authorization.core.WSessionImpl;
+import de.bdr.pidi.authorization.core.domain.Requests;
+import de.bdr.pidi.authorization.core.exception.SessionNotFoundException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+
+/**
+ * Storage of the {@link WSessionImpl sessions}, selected by {@code pidi.authorization.session-store}:
+ * <ul>
+ *     <li>{@code jpa} (default): {@link PidiSessionAdapter}, shared by all nodes through the database</li>
+ *     <li>{@code memory}: {@link InMemoryPidiSessionStore}, only usable if a single node serves all requests</li>
+ * </ul>
+ * Every loaded session carries the version it was loaded with. Storing a session that was changed by another request
+ * in the meantime fails with an {@link de.bdr.pidi.authorization.core.exception.InvalidRequestException}.
+ */
+public interface PidiSessionStore {
+
+    String PROPERTY = "pidi.authorization.session-store";
+
+    WSessionImpl init(FlowVariant flowVariant, Requests nextExpected, Duration sessionExpirationTime);
+
+    WSessionImpl findByRequestUri(String requestUri) throws SessionNotFoundException;
+
+    WSessionImpl findByAuthorizationCode(String authorizationCode) throws SessionNotFoundException;
+
+    WSessionImpl findByIssuerState(String issuerState) throws SessionNotFoundException;
+
+    WSessionImpl findByAccessToken(String accessToken) throws SessionNotFoundException;
+
+    WSessionImpl findByRefreshTokenDigest(String refreshTokenDigest) throws SessionNotFoundException;
+
+    Optional<WSessionImpl> findByPidIssuerSessionId(String pidIssuerSessionId);
+
+    void update(WSessionImpl wSession, Duration sessionExpirationTime) throws SessionNotFoundException;
+
+    void persistAndTerminate(WSessionImpl wSession);
+
+    int deleteExpiredSessions();
+
+    /**
+     * deletes up to {@code limit} sessions that expired before {@code now}
+     *
+     * @return number of deleted sessions
+     */
+    int deleteExpiredSessions(Instant now, int limit);
+
+    long countExpiredSessions(Instant now);
+}
@@ -6,6 +6,7 @@ package de.bdr.pidi.authorization.out.persistence;
 
 import de.bdr.pidi.authorization.core.domain.PinRetryCounter;
 import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -13,38 +14,55 @@ import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
 import java.util.Optional;
+import java.util.OptionalInt;
 
+/**
+ * Stores the PIN retry counters in the database. Creating and incrementing a counter are single upsert statements,
+ * the row lock of the conflicting row serializes concurrent increments. Expired counters are deleted by the
+ * housekeeping.
+ */
 @Service
 @RequiredArgsConstructor
-public class PinRetryCounterAdapter {
+@ConditionalOnProperty(name = PinRetryCounterStore.PROPERTY, havingValue = "jpa", matchIfMissing = true)
+public class PinRetryCounterAdapter implements PinRetryCounterStore {
     private final PinRetryCounterRepository pinRetryCounterRepository;
 
-    /**
-     * creates a counter for new digests, overrides a counter with initial values on already present digests
-     */
+    @Override
     @Transactional
     public PinRetryCounter create(final String digest, final Duration validity) {
-        var entity = pinRetryCounterRepository.findFirstByDigest(digest).orElseGet(PinRetryCounterEntity::new);
-        entity.setDigest(digest);
-        // Postgress timestamp contains only microseconds and no nanoseconds
-        entity.setExpires(Instant.now().plus(validity).truncatedTo(ChronoUnit.MICROS));
-        entity.setValue(0);
-        pinRetryCounterRepository.save(entity);
-        return map(entity);
+        return map(pinRetryCounterRepository.createOrReset(digest, expires(validity)));
     }
 
+    @Override
     public Optional<PinRetryCounter> find(final String digest) {
         return pinRetryCounterRepository.findFirstByDigest(digest).map(PinRetryCounterAdapter::map);
     }
 
+    @Override
+    @Transactional
+    public OptionalInt increment(final String digest, final int limit, final Duration validity) {
+        return pinRetryCounterRepository.incrementBelowLimit(digest, limit, expires(validity))
+                .map(OptionalInt::of)
+                .orElseGet(OptionalInt::empty);
+    }
+
+    /**
+     * deletes up to {@code limit} counters that expired before {@code now}
+     *
+     * @return number of deleted counters
+     */
     @Transactional
-    public void increment(final PinRetryCounter pinRetryCounter) {
-        PinRetryCounterEntity entity = pinRetryCounterRepository.getReferenceById(pinRetryCounter.getId());
-        if (entity.getValue() + 1 != pinRetryCounter.getValue()) {
-            throw new IllegalArgumentException("PinRetryCounter is invalid.");
-        }
-        entity.setValue(pinRetryCounter.getValue());
-        pinRetryCounterRepository.save(entity);
+    public int deleteExpired(Instant now, int limit) {
+        return pinRetryCounterRepository.deleteExpiredChunk(now, limit);
+    }
+
+    public long countExpired(Instant now) {
+        return pinRetryCounterRepository.countByExpiresBefore(now);
+    }
+
+    private static Instant expires(Duration validity) {
+        // Postgress timestamp contains only microseconds and no nanoseconds
+        return Instant.now().plus(validity).truncatedTo(ChronoUnit.MICROS);
     }
 
     private static PinRetryCounter map(final PinRetryCounterEntity entity) {
@@ -5,9 +5,33 @@
 package de.bdr.pidi.authorization.out.persistence;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 
+import java.time.Instant;
 import java.util.Optional;
 
 public interface PinRetryCounterRepository extends JpaRepository<PinRetryCounterEntity, Long> {
     Optional<PinRetryCounterEntity> findFirstByDigest(String digest);
+
+    @Query(value = "INSERT INTO pin_retry_counter (id, digest, value, expires) " +
+            "VALUES (nextval('hibernate_sequence'), :digest, 0, :expires) " +
+            "ON CONFLICT (digest) DO UPDATE SET value = 0, expires = excluded.expires " +
+            "RETURNING *", nativeQuery = true)
+    PinRetryCounterEntity createOrReset(String digest, Instant expires);
+
+    /**
+     * @return the incremented value, empty if the counter had already reached the limit
+     */
+    @Query(value = "INSERT INTO pin_retry_counter (id, digest, value, expires) " +
+            "VALUES (nextval('hibernate_sequence'), :digest, 1, :expires) " +
+            "ON CONFLICT (digest) DO UPDATE SET value = pin_retry_counter.value + 1 WHERE pin_retry_counter.value < :limit " +
+            "RETURNING value", nativeQuery = true)
+    Optional<Integer> incrementBelowLimit(String digest, int limit, Instant expires);
+
+    @Modifying
+    @Query(value = "DELETE FROM pin_retry_counter WHERE id IN (SELECT id FROM pin_retry_counter WHERE expires < :now LIMIT :limit)", nativeQuery = true)
+    int deleteExpiredChunk(Instant now, int limit);
+
+    long countByExpiresBefore(Instant now);
 }
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.authorization.out.persistence;
+
+import de.bdr.pidi.authorization.core.domain.PinRetryCounter;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.OptionalInt;
+
+/**
+ * Storage of the {@link PinRetryCounter PIN retry counters}, selected by {@code pidi.authorization.pin-retry-counter-store}:
+ * <ul>
+ *     <li>{@code jpa} (default): {@link PinRetryCounterAdapter}, shared by all nodes through the database</li>
+ *     <li>{@code memory}: {@link InMemoryPinRetryCounterStore}, only usable if a single node serves all requests</li>
+ * </ul>
+ * A counter is incremented and checked against the limit in one atomic step, so concurrent requests with a wrong PIN
+ * can not exceed the limit.
+ */
+public interface PinRetryCounterStore {
+
+    String PROPERTY = "pidi.authorization.pin-retry-counter-store";
+
+    /**
+     * creates a counter for new digests, overrides a counter with initial values on already present digests
+     */
+    PinRetryCounter create(String digest, Duration validity);
+
+    Optional<PinRetryCounter> find(String digest);
+
+    /**
+     * increments the counter unless it already reached {@code limit}, a missing counter is created with the value 1
+     *
+     * @return the incremented value, empty if the counter had already reached the limit
+     */
+    OptionalInt increment(String digest, int limit, Duration validity);
+}
@@ -0,0 +1,90 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.authorization.out.persistence;
+
+import de.bdr.pidi.authorization.core.domain.SessionKey;
+import de.bdr.pidi.base.PidServerException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Binary encoding of the session parameters: a format byte, the number of entries and then per entry the
+ * {@link SessionKey#getValue() key value} and the length prefixed UTF-8 bytes of the parameter. Like the former JSON
+ * representation it relies on the key value (not the enum name or ordinal), so renaming or reordering the enum
+ * constants keeps stored sessions readable.
+ */
+final class SessionParameterCodec {
+
+    private static final byte FORMAT_V1 = 1;
+    private static final Map<String, SessionKey> KEYS = Arrays.stream(SessionKey.values())
+            .collect(Collectors.toUnmodifiableMap(SessionKey::getValue, Function.identity()));
+
+    private SessionParameterCodec() {
+    }
+
+    static byte[] encode(Map<SessionKey, String> parameters) {
+        var bytes = new ByteArrayOutputStream(64 * (parameters.size() + 1));
+        try (var out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_V1);
+            out.writeShort(parameters.size());
+            for (var entry : parameters.entrySet()) {
+                out.writeUTF(entry.getKey().getValue());
+                var value = entry.getValue();
+                if (value == null) {
+                    out.writeInt(-1);
+                } else {
+                    var valueBytes = value.getBytes(StandardCharsets.UTF_8);
+                    out.writeInt(valueBytes.length);
+                    out.write(valueBytes);
+                }
+            }
+        } catch (IOException e) {
+            throw new PidServerException("Could not encode session parameters", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    static Map<SessionKey, String> decode(byte[] data) {
+        var parameters = new EnumMap<SessionKey, String>(SessionKey.class);
+        try (var in = new DataInputStream(new ByteArrayInputStream(data))) {
+            var format = in.readByte();
+            if (format != FORMAT_V1) {
+                throw new PidServerException("Unknown session parameter format " + format);
+            }
+            var count = in.readUnsignedShort();
+            for (int i = 0; i < count; i++) {
+                var keyValue = in.readUTF();
+                var key = KEYS.get(keyValue);
+                if (key == null) {
+                    throw new PidServerException("Unknown session parameter " + keyValue);
+                }
+                parameters.put(key, readValue(in));
+            }
+        } catch (IOException e) {
+            throw new PidServerException("Could not decode session parameters", e);
+        }
+        return parameters;
+    }
+
+    private static String readValue(DataInputStream in) throws IOException {
+        var length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        var valueBytes = new byte[length];
+        in.readFully(valueBytes);
+        return new String(valueBytes, StandardCharsets.UTF_8);
+    }
+}
@@ -8,5 +8,5 @@
  * OID4V
  */
 @org.springframework.modulith.ApplicationModule(allowedDependencies = {"walletattestation",
-        "authorization::identificationApi",  "authorization::issuanceApi", "authorization", "clientconfiguration", "base", "base::requests"})
+        "authorization::identificationApi",  "authorization::issuanceApi", "authorization", "clientconfiguration", "base", "base::requests", "base::housekeeping", "base::random"})
 package de.bdr.pidi.authorization;
\ No newline at end of file
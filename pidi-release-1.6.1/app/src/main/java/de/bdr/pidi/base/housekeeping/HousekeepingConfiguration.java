@@ -0,0 +1,55 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.base.housekeeping;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.validation.annotation.Validated;
+
+import java.time.Duration;
+
+@Setter
+@Getter
+@ToString
+@Validated
+@Configuration
+@ConfigurationProperties(prefix = "pidi.housekeeping")
+public class HousekeepingConfiguration {
+
+    /**
+     * run the housekeeping periodically, the actuator endpoints are available either way
+     */
+    private boolean enabled;
+
+    /**
+     * delay between the end of a housekeeping run and the start of the next one
+     */
+    @NotNull
+    private Duration interval = Duration.ofMinutes(5);
+
+    /**
+     * maximum number of entries deleted in one transaction
+     */
+    @Min(1)
+    private int chunkSize = 1_000;
+
+    /**
+     * pause between two chunks, leaves room for the regular load and the autovacuum
+     */
+    @NotNull
+    private Duration chunkPause = Duration.ofMillis(100);
+
+    /**
+     * maximum duration of a housekeeping run, the remaining entries are deleted by the next run. The other nodes
+     * are locked out for this duration at most.
+     */
+    @NotNull
+    private Duration maxRunTime = Duration.ofMinutes(4);
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.base.housekeeping;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * Makes sure only one node runs the housekeeping at a time. The lock is a row in the table housekeeping_lock, held
+ * until a point in time, so a node that dies while holding it does not block the housekeeping forever.
+ */
+@Component
+public class HousekeepingLock {
+
+    private static final String LOCK_NAME = "housekeeping";
+
+    private static final String ACQUIRE = """
+            INSERT INTO housekeeping_lock (name, locked_until, locked_by) VALUES (?, ?, ?)
+            ON CONFLICT (name) DO UPDATE SET locked_until = EXCLUDED.locked_until, locked_by = EXCLUDED.locked_by
+            WHERE housekeeping_lock.locked_until <= ?""";
+
+    private static final String RELEASE = "UPDATE housekeeping_lock SET locked_until = ? WHERE name = ? AND locked_by = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String owner = UUID.randomUUID().toString();
+
+    public HousekeepingLock(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    /**
+     * @return true if the lock was free or expired and is now held by this node until {@code now + duration}
+     */
+    public boolean tryLock(Duration duration) {
+        var now = Instant.now();
+        return jdbcTemplate.update(ACQUIRE, LOCK_NAME, Timestamp.from(now.plus(duration)), owner, Timestamp.from(now)) == 1;
+    }
+
+    public void unlock() {
+        jdbcTemplate.update(RELEASE, Timestamp.from(Instant.now()), LOCK_NAME, owner);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.base.housekeeping;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Periodically deletes the expired entries of all {@link HousekeepingTask}s. Each task deletes in chunks of
+ * {@link HousekeepingConfiguration#getChunkSize()} entries with a pause in between, so no transaction holds many row
+ * locks or runs for long. A run ends after {@link HousekeepingConfiguration#getMaxRunTime()}, the rest is left to the
+ * next run.
+ * <p>
+ * Metrics per task: {@code pidi.housekeeping.deleted} (deleted entries), {@code pidi.housekeeping.duration} (duration
+ * of a run) and {@code pidi.housekeeping.backlog} (expired entries left after the last run).
+ */
+@Slf4j
+@Component
+@EnableScheduling
+@ConditionalOnProperty(name = "pidi.housekeeping.enabled", havingValue = "true")
+public class HousekeepingScheduler {
+
+    private record TaskMetrics(Counter deleted, Timer duration, AtomicLong backlog) {
+    }
+
+    private final HousekeepingConfiguration configuration;
+    private final HousekeepingLock lock;
+    private final List<HousekeepingTask> tasks;
+    private final MeterRegistry meterRegistry;
+    private final Map<HousekeepingTask, TaskMetrics> metrics = new IdentityHashMap<>();
+
+    public HousekeepingScheduler(HousekeepingConfiguration configuration, HousekeepingLock lock,
+                                 List<HousekeepingTask> tasks, MeterRegistry meterRegistry) {
+        this.configuration = configuration;
+        this.lock = lock;
+        this.tasks = tasks;
+        this.meterRegistry = meterRegistry;
+        tasks.forEach(task -> metrics.put(task, register(task)));
+        log.info("Housekeeping of {} every {}", tasks.stream().map(HousekeepingTask::getName).toList(), configuration.getInterval());
+    }
+
+    @Scheduled(initialDelayString = "${pidi.housekeeping.interval}", fixedDelayString = "${pidi.housekeeping.interval}")
+    public void run() {
+        if (!lock.tryLock(configuration.getMaxRunTime())) {
+            log.debug("Housekeeping is running on another node");
+            return;
+        }
+        try {
+            var deadline = Instant.now().plus(configuration.getMaxRunTime());
+            for (var task : tasks) {
+                run(task, deadline);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void run(HousekeepingTask task, Instant deadline) {
+        var metrics = this.metrics.get(task);
+        var sample = Timer.start(meterRegistry);
+        try {
+            var total = 0;
+            int deleted;
+            do {
+                deleted = task.deleteExpired(Instant.now(), configuration.getChunkSize());
+                metrics.deleted().increment(deleted);
+                total += deleted;
+            } while (deleted == configuration.getChunkSize() && Instant.now().isBefore(deadline) && pause());
+            metrics.backlog().set(task.countExpired(Instant.now()));
+            log.info("Deleted {} expired {}, {} left", total, task.getName(), metrics.backlog().get());
+        } catch (RuntimeException e) {
+            log.warn("Housekeeping of {} failed", task.getName(), e);
+        } finally {
+            sample.stop(metrics.duration());
+        }
+    }
+
+    /**
+     * @return false if interrupted
+     */
+    private boolean pause() {
+        try {
+            Thread.sleep(configuration.getChunkPause());
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private TaskMetrics register(HousekeepingTask task) {
+        var tags = Tags.of("task", task.getName());
+        return new TaskMetrics(
+                meterRegistry.counter("pidi.housekeeping.deleted", tags),
+                meterRegistry.timer("pidi.housekeeping.duration", tags),
+                // the registry references the gauge value only weakly, so it is kept here
+                meterRegistry.gauge("pidi.housekeeping.backlog", tags, new AtomicLong()));
+    }
+}
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.base.housekeeping;
+
+import java.time.Instant;
+
+/**
+ * Deletes expired entries of one kind, run by the {@link HousekeepingScheduler}.
+ */
+public interface HousekeepingTask {
+
+    /**
+     * @return the name of the task, used in the log and as tag of the metrics
+     */
+    String getName();
+
+    /**
+     * Deletes up to {@code limit} entries that expired before {@code now}, in a transaction of its own.
+     *
+     * @return number of deleted entries
+     */
+    int deleteExpired(Instant now, int limit);
+
+    /**
+     * @return number of entries that expired before {@code now} and are not yet deleted
+     */
+    long countExpired(Instant now);
+}
@@ -0,0 +1,12 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+/**
+ * Scheduled deletion of expired data. The modules contribute {@link de.bdr.pidi.base.housekeeping.HousekeepingTask}s,
+ * the {@link de.bdr.pidi.base.housekeeping.HousekeepingScheduler} runs them in small chunks on one node at a time.
+ */
+@NamedInterface("housekeeping")
+package de.bdr.pidi.base.housekeeping;
+
+import org.springframework.modulith.NamedInterface;
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.base.random;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.validation.annotation.Validated;
+
+import java.time.Duration;
+
+@Setter
+@Getter
+@ToString
+@Validated
+@Configuration
+@ConfigurationProperties(prefix = "pidi.random")
+public class RandomConfiguration {
+
+    /**
+     * number of DRBG instances, rounded up to a power of two, 0 for twice the available processors
+     */
+    @Min(0)
+    private int instances;
+
+    /**
+     * security strength in bits of the DRBG instances, one of 112, 128, 192 or 256
+     */
+    @Min(112)
+    private int strength = SecureRandomPool.DEFAULT_STRENGTH;
+
+    /**
+     * an instance is reseeded from the entropy source when it is used after this interval, zero disables the reseeding
+     */
+    @NotNull
+    private Duration reseedInterval = SecureRandomPool.DEFAULT_RESEED_INTERVAL;
+
+    /**
+     * the pool is also used by static helpers that are not managed by Spring, see {@link SecureRandomPool#shared()}
+     */
+    @Bean
+    public SecureRandomPool secureRandomPool() {
+        return SecureRandomPool.install(new SecureRandomPool(instances, strength, reseedInterval));
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.base.random;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.ByteBuffer;
+import java.security.DrbgParameters;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Independently seeded DRBG instances. A thread always uses the instance of its stripe, so concurrent threads
+ * mostly use different instances instead of contending for a single generator. Each instance is reseeded from the
+ * entropy source when it is used after the reseed interval has passed.
+ * <p>
+ * The instances are checked by a self test on creation, the pool is not created if a check fails.
+ */
+@Slf4j
+public final class SecureRandomPool {
+
+    static final int DEFAULT_STRENGTH = 256;
+    static final Duration DEFAULT_RESEED_INTERVAL = Duration.ofMinutes(10);
+
+    private static final int SELF_TEST_BYTES = 32;
+
+    private static volatile SecureRandomPool installed;
+
+    private record Instance(SecureRandom random, AtomicLong nextReseed) {
+    }
+
+    private final Instance[] instances;
+    private final int mask;
+    private final long reseedIntervalNanos;
+
+    /**
+     * @param instances      number of DRBG instances, rounded up to a power of two, 0 for twice the processors
+     * @param strength       security strength in bits requested from the DRBG
+     * @param reseedInterval time after which an instance is reseeded, zero disables the reseeding
+     */
+    public SecureRandomPool(int instances, int strength, Duration reseedInterval) {
+        var size = instances > 0 ? instances : 2 * Runtime.getRuntime().availableProcessors();
+        size = size > 1 ? Integer.highestOneBit((size - 1) << 1) : 1;
+        this.mask = size - 1;
+        this.reseedIntervalNanos = reseedInterval.toNanos();
+        this.instances = new Instance[size];
+        var now = System.nanoTime();
+        for (int i = 0; i < size; i++) {
+            this.instances[i] = new Instance(newDrbg(strength, i), new AtomicLong(now + reseedIntervalNanos));
+        }
+        selfTest(strength);
+        log.info("Created {} DRBG instances with strength {}, algorithm {}", size, strength, this.instances[0].random().getAlgorithm());
+    }
+
+    /**
+     * @return the pool configured by {@code pidi.random}, a pool with default settings until it is created
+     */
+    public static SecureRandomPool shared() {
+        var pool = installed;
+        return pool != null ? pool : DefaultHolder.POOL;
+    }
+
+    static SecureRandomPool install(SecureRandomPool pool) {
+        installed = pool;
+        return pool;
+    }
+
+    /**
+     * @return the generator of the current thread, must not be handed over to other threads
+     */
+    public SecureRandom current() {
+        var instance = instances[stripe(Thread.currentThread().threadId())];
+        var nextReseed = instance.nextReseed().get();
+        var now = System.nanoTime();
+        if (reseedIntervalNanos > 0 && now - nextReseed >= 0
+                && instance.nextReseed().compareAndSet(nextReseed, now + reseedIntervalNanos)) {
+            instance.random().reseed();
+        }
+        return instance.random();
+    }
+
+    int size() {
+        return instances.length;
+    }
+
+    private int stripe(long threadId) {
+        // thread ids are consecutive, the multiplication spreads them over the stripes
+        return (int) ((threadId * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+
+    private static SecureRandom newDrbg(int strength, int index) {
+        // the personalization string only separates the instances, their seeds come from the entropy source
+        var personalization = ByteBuffer.allocate(Integer.BYTES + Long.BYTES)
+                .putInt(index)
+                .putLong(System.nanoTime())
+                .array();
+        try {
+            return SecureRandom.getInstance("DRBG",
+                    DrbgParameters.instantiation(strength, DrbgParameters.Capability.RESEED_ONLY, personalization));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("DRBG with strength " + strength + " not available", e);
+        }
+    }
+
+    private void selfTest(int strength) {
+        var outputs = new HashSet<String>();
+        for (var instance : instances) {
+            var random = instance.random();
+            if (!(random.getParameters() instanceof DrbgParameters.Instantiation parameters)
+                    || parameters.getStrength() < strength) {
+                throw new IllegalStateException("DRBG self test failed: strength below " + strength);
+            }
+            var first = new byte[SELF_TEST_BYTES];
+            var second = new byte[SELF_TEST_BYTES];
+            random.nextBytes(first);
+            random.nextBytes(second);
+            if (Arrays.equals(first, second) || Arrays.equals(first, new byte[SELF_TEST_BYTES])) {
+                throw new IllegalStateException("DRBG self test failed: repeated output");
+            }
+            if (!outputs.add(HexFormat.of().formatHex(first))) {
+                throw new IllegalStateException("DRBG self test failed: instances are not independent");
+            }
+        }
+    }
+
+    private static final class DefaultHolder {
+        private static final SecureRandomPool POOL = new SecureRandomPool(0, DEFAULT_STRENGTH, DEFAULT_RESEED_INTERVAL);
+    }
+}
@@ -0,0 +1,12 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+/**
+ * The random numbers of session ids, tokens, nonces and SAML ids. The {@link de.bdr.pidi.base.random.SecureRandomPool}
+ * spreads the requests over several DRBG instances, so concurrent requests do not wait for one generator.
+ */
+@NamedInterface("random")
+package de.bdr.pidi.base.random;
+
+import org.springframework.modulith.NamedInterface;
@@ -11,6 +11,7 @@ import de.bdr.pidi.identification.core.model.Authentication;
 import de.bdr.pidi.identification.core.model.AuthenticationState;
 import de.bdr.pidi.identification.core.model.ResponseData;
 import io.micrometer.core.annotation.Timed;
+import jakarta.transaction.Transactional;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.codec.binary.Hex;
 import org.springframework.stereotype.Service;
@@ -21,6 +22,7 @@ import java.time.Instant;
 import java.time.temporal.TemporalAmount;
 import java.util.Arrays;
 import java.util.Objects;
+import java.util.Optional;
 import java.util.Random;
 
 import static de.bdr.pidi.identification.core.model.AuthenticationState.AUTHENTICATED;
@@ -67,30 +69,25 @@ public class AuthenticationService {
         return randomProvider.getSamlRng();
     }
 
+    /**
+     * advances the Authentication identified by the tokenId before the SAML request is built and signed, so a reused
+     * tokenId is rejected without any crypto. The transition is rolled back if the SAML request can not be built.
+     */
+    @Transactional
     public String createSamlRedirectBindingUrl(String tokenId, String responseUrl) {
         if (tokenId == null) {
             throw new IllegalArgumentException("tokenId must not be null");
         }
-        var authentication = store.findByTokenId(tokenId);
-        validateAuthenticationBeforeSamlRequest(authentication);
         String samlId = generateRandomId(getSamlRng());
-        var result = autent.createSamlRedirectBindingUrl(samlId, responseUrl);
-        authentication.start(samlId);
-        store.updateWithSamlIdentifiedByTokenAndFormerState(authentication, INITIALIZED);
-        return result;
-    }
-
-    private void validateAuthenticationBeforeSamlRequest(Authentication authentication) {
-        if (authentication == null) {
-            throw new AuthenticationNotFoundException("no authentication found for tokenId");
-        }
-        validateAuthenticationState(authentication, INITIALIZED);
-        validateAuthenticationIsNotTimedout(authentication);
+        transitioned(store.startIdentifiedByToken(tokenId, samlId, Instant.now()), INITIALIZED, "tokenId");
+        return autent.createSamlRedirectBindingUrl(samlId, responseUrl);
     }
 
     /**
      * receive the SAML response, validate and decode it and create the <code>referenceId</code>.
-     * If successful, this advances the Authentication's state.
+     * The Authentication's state is advanced before the SAML response is decrypted and its signature checked, so an
+     * unknown or replayed RelayState is rejected without any crypto. The transition is rolled back if the SAML response
+     * is invalid. Only one of concurrent calls for a RelayState succeeds, the others wait for its row lock.
      *
      * @param relayState   the SAML RelayState parameter
      * @param samlResponse the SAML Response
@@ -100,34 +97,20 @@ public class AuthenticationService {
      * @return the referenceId
      */
     @Timed
+    @Transactional
     public ResponseData receiveSamlResponse(String relayState, String samlResponse, String sigAlg, String signature, String responseUrl) {
         // I'd like to use the ID/InResponseTo elements but cannot access them here
-        var authentication = store.findBySamlId(relayState);
-
-        validateAuthenticationBeforeSamlResponse(authentication);
+        // identification ends here, the sessionId becomes the referenceId
+        transitioned(store.respondIdentifiedBySaml(relayState, Instant.now()), STARTED, "SAML RelayState");
 
         ResponseData responseData = autent
-                .validateSamlResponseAndExtractPseudonym(relayState, samlResponse, sigAlg, signature, responseUrl, authentication);
+                .validateSamlResponseAndExtractPseudonym(relayState, samlResponse, sigAlg, signature, responseUrl);
         if (identificationConfiguration.isLoggingPseudonymsAllowed()) {
             log.debug("received {}", responseData);
         }
-
-        var refId = authentication.getSessionId();
-        // identification ends here
-        authentication.respond(refId);
-        store.updateWithReferenceIdIdentifiedBySamlAndFormerState(authentication, STARTED);
-
         return responseData;
     }
 
-    private void validateAuthenticationBeforeSamlResponse(Authentication authentication) {
-        if (authentication == null) {
-            throw new AuthenticationNotFoundException("no authentication found for SAML RelayState");
-        }
-        validateAuthenticationState(authentication, STARTED);
-        validateAuthenticationIsNotTimedout(authentication);
-    }
-
     /**
      * retrieve the Authentication belonging to the sessionId
      *
@@ -144,22 +127,6 @@ public class AuthenticationService {
         return authentication;
     }
 
-    /**
-     * retrieve the Authentication belonging to the referenceId
-     * for use in the Reflector (needs to be in state RESPONDED).
-     *
-     * @param referenceId the key to find the Authentication
-     * @return a valid Authentication, throws Exceptions otherwise
-     */
-    public Authentication retrieveRespondedAuth(String referenceId) {
-        if (referenceId == null) {
-            throw new AuthenticationNotFoundException("no referenceId given");
-        }
-        var authentication = store.findByReferenceId(referenceId);
-        validateAuthenticationAfterRetrieval(authentication, referenceId);
-        return authentication;
-    }
-
     private void validateAuthenticationAfterRetrieval(Authentication authentication, String referenceId) {
         if (authentication == null) {
             throw new AuthenticationNotFoundException("no authentication found for sessionId");
@@ -175,13 +142,24 @@ public class AuthenticationService {
         validateAuthenticationIsNotTimedout(authentication);
     }
 
-    public void finishAuthentication(Authentication authentication) {
+    /**
+     * finish the RESPONDED Authentication belonging to the sessionId and referenceId,
+     * it gets a new sessionId and becomes AUTHENTICATED. Only one of concurrent calls for a referenceId succeeds.
+     *
+     * @param sessionId   the current key to the Authentication
+     * @param referenceId the key to finalize the Authentication, binds the TLS sessions
+     * @return the AUTHENTICATED Authentication, throws Exceptions otherwise
+     */
+    public Authentication finishAuthentication(String sessionId, String referenceId) {
+        validateSessionIdExists(sessionId);
+        if (referenceId == null) {
+            throw new AuthenticationNotFoundException("no referenceId given");
+        }
         String newSessionId = generateRandomId(getSessionRng());
-        String oldSessionId = authentication.getSessionId();
-        Instant validUntil = Instant.now().plus(identificationConfiguration.getMinAuthenticatedSessionDuration());
-        authentication.authenticate(newSessionId, validUntil);
-
-        store.updateWithChangedSessionValidUntilIdentifiedByReferenceAndFormerState(authentication, oldSessionId, RESPONDED);
+        var now = Instant.now();
+        Instant validUntil = now.plus(identificationConfiguration.getMinAuthenticatedSessionDuration());
+        return transitioned(store.authenticateIdentifiedByReference(referenceId, sessionId, newSessionId, validUntil, now),
+                RESPONDED, "referenceId");
     }
 
     /**
@@ -192,16 +170,17 @@ public class AuthenticationService {
      */
     public Authentication terminateAuthentication(String sessionId) {
         validateSessionIdExists(sessionId);
-        var authentication = store.findBySessionId(sessionId);
-        if (authentication == null) {
-            throw new AuthenticationNotFoundException("no authentication found for sessionId");
-        }
-        validateAuthenticationIsNotTimedout(authentication, Duration.ofSeconds(2));
-        validateAuthenticationState(authentication, AUTHENTICATED);
-        var formerState = authentication.getAuthenticationState();
-        authentication.terminate();
-        store.removeIdentifiedBySessionAndFormerState(authentication, sessionId, formerState);
-        return authentication;
+        var validAt = Instant.now().plus(Duration.ofSeconds(2));
+        return transitioned(store.terminateIdentifiedBySession(sessionId, validAt), AUTHENTICATED, "sessionId");
+    }
+
+    /**
+     * the store transitions an Authentication only if it is in the former state and still valid,
+     * there is no separate read to tell a missing, timed out or already advanced Authentication apart.
+     */
+    private static Authentication transitioned(Optional<Authentication> authentication, AuthenticationState formerState, String key) {
+        return authentication.orElseThrow(() -> new AuthenticationNotFoundException(
+                String.format("no valid authentication in state %s found for %s", formerState.name(), key)));
     }
 
     private void validateSessionIdExists(String sessionId) {
@@ -11,6 +11,7 @@ import org.jmolecules.architecture.hexagonal.SecondaryPort;
 
 import java.time.Instant;
 import java.util.Collection;
+import java.util.Optional;
 @SecondaryPort
 public interface AuthenticationStore {
     /**
@@ -67,6 +68,21 @@ public interface AuthenticationStore {
      */
     int updateStateByValidUntilBeforeAndAuthenticationStateNotIn(AuthenticationState newState, Instant validUntil, Collection<AuthenticationState> authenticationStates);
 
+    /**
+     * delete up to {@code limit} authentication objects that expired before a specific date or are in specific states
+     *
+     * @param validUntil           the specified date
+     * @param authenticationStates states to be deleted regardless of their validity
+     * @param limit                maximum number of authentication objects to delete
+     * @return number of deleted authentication objects
+     */
+    int deleteByValidUntilBeforeOrAuthenticationStateIn(Instant validUntil, Collection<AuthenticationState> authenticationStates, int limit);
+
+    /**
+     * count authentication objects that expired before a specific date or are in specific states
+     */
+    long countByValidUntilBeforeOrAuthenticationStateIn(Instant validUntil, Collection<AuthenticationState> authenticationStates);
+
     /**
      * first call to store the Authentication after it was created.
      * Set attributes:
@@ -83,47 +99,58 @@ public interface AuthenticationStore {
     void createWithSessionAndToken(Authentication authentication);
 
     /**
-     * update the Authentication in the Store to persist a transition to state STARTED.
+     * transition the INITIALIZED Authentication with the tokenId to state STARTED.
+     * The state and validity are checked by the same statement that changes the Authentication,
+     * so of concurrent transitions only one succeeds.
      * Changed attributes:
      * <ul>
      *     <li>authenticationState</li>
      *     <li>samlId</li>
      * </ul>
+     *
+     * @param validAt the Authentication must still be valid at this point in time
+     * @return the started Authentication, empty if there is no INITIALIZED Authentication valid at <code>validAt</code>
      */
-    void updateWithSamlIdentifiedByTokenAndFormerState(Authentication authentication, AuthenticationState formerState);
+    Optional<Authentication> startIdentifiedByToken(String tokenId, String samlId, Instant validAt);
 
     /**
-     * update the Authentication in the Store to persist a transition to state RESPONDED.
+     * transition the STARTED Authentication with the samlId to state RESPONDED, its sessionId becomes the referenceId.
+     * The state and validity are checked by the same statement that changes the Authentication.
      * Changed attributes:
      * <ul>
      *     <li>authenticationState</li>
      *     <li>referenceId</li>
      * </ul>
+     *
+     * @param validAt the Authentication must still be valid at this point in time
+     * @return the responded Authentication, empty if there is no STARTED Authentication valid at <code>validAt</code>
      */
-    void updateWithReferenceIdIdentifiedBySamlAndFormerState(Authentication authentication, AuthenticationState formerState);
+    Optional<Authentication> respondIdentifiedBySaml(String samlId, Instant validAt);
 
     /**
-     * update the Authentication in the Store to persist a transition to state AUTHENTICATED.
+     * transition the RESPONDED Authentication with the referenceId and sessionId to state AUTHENTICATED with a new sessionId.
+     * The state and validity are checked by the same statement that changes the Authentication.
      * Changed attributes:
      * <ul>
      *     <li>authenticationState</li>
      *     <li>sessionId</li>
      *     <li>validUntil</li>
      * </ul>
+     *
+     * @param validAt the Authentication must still be valid at this point in time
+     * @return the authenticated Authentication, empty if there is no RESPONDED Authentication valid at <code>validAt</code>
      */
-    void updateWithChangedSessionValidUntilIdentifiedByReferenceAndFormerState(Authentication authentication, String oldSessionId, AuthenticationState formerState);
+    Optional<Authentication> authenticateIdentifiedByReference(String referenceId, String sessionId, String newSessionId, Instant validUntil, Instant validAt);
 
 
     /**
-     * update (or delete) the Authentication in the Store to persist a transition to state TERMINATED.
-     * Changed attributes:
-     * <ul>
-     *     <li>authenticationState</li>
-     * </ul>
-     * In case this method updates the state,
-     * a separate process (housekeeping) is responsible for deleting the entries from the store.
+     * transition the AUTHENTICATED Authentication with the sessionId to state TERMINATED by deleting it from the Store.
+     * The state and validity are checked by the same statement that deletes the Authentication.
+     *
+     * @param validAt the Authentication must still be valid at this point in time
+     * @return the terminated Authentication, empty if there is no AUTHENTICATED Authentication valid at <code>validAt</code>
      */
-    void removeIdentifiedBySessionAndFormerState(Authentication authentication, String sessionId, AuthenticationState formerState);
+    Optional<Authentication> terminateIdentifiedBySession(String sessionId, Instant validAt);
 
     long countAuthenticatedSessions();
 
@@ -4,7 +4,6 @@
  */
 package de.bdr.pidi.identification.core;
 
-import de.bdr.pidi.identification.core.model.Authentication;
 import de.bdr.pidi.identification.core.model.ResponseData;
 
 public interface EidAuth {
@@ -17,9 +16,8 @@ public interface EidAuth {
      * @param sigAlg         the Signature algorithm
      * @param signature      the Signature
      * @param responseUrl
-     * @param authentication the Authentication that contains the SAML identifier (to be compared with SAML response)
      * @return extracted data from samlResponse
      */
-    ResponseData validateSamlResponseAndExtractPseudonym(String relayState, String samlResponse, String sigAlg, String signature, String responseUrl, Authentication authentication);
+    ResponseData validateSamlResponseAndExtractPseudonym(String relayState, String samlResponse, String sigAlg, String signature, String responseUrl);
 
 }
@@ -5,14 +5,12 @@
 package de.bdr.pidi.identification.core;
 
 import de.bdr.pidi.identification.core.configuration.MultiSamlConfiguration;
-import de.bdr.pidi.identification.core.exception.AuthenticationStateException;
 import de.bdr.pidi.identification.core.exception.CryptoConfigException;
 import de.bdr.pidi.identification.core.exception.EidWrappingException;
 import de.bdr.pidi.identification.core.exception.IdentificationError;
 import de.bdr.pidi.identification.core.exception.MissingAuthDataException;
 import de.bdr.pidi.identification.core.exception.SamlCryptoConfigException;
 import de.bdr.pidi.identification.core.exception.SamlResponseValidationFailedException;
-import de.bdr.pidi.identification.core.model.Authentication;
 import de.bdr.pidi.identification.core.model.Place;
 import de.bdr.pidi.identification.core.model.ResponseData;
 import de.bund.bsi.eid240.GeneralPlaceType;
@@ -34,6 +32,7 @@ import io.micrometer.core.instrument.Tags;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.lang3.StringUtils;
 import org.opensaml.core.config.InitializationException;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 
@@ -47,22 +46,32 @@ import java.util.concurrent.ConcurrentHashMap;
 public class EidAuthAdapter implements EidAuth {
 
     private static final String SAML_RESPONSE_COUNTER_METRIC_ID = "saml_response_counter";
+    // generators kept per SAML configuration, more are created for a peak but not kept
+    static final int MAX_IDLE_REQUEST_GENERATORS = 16;
     private final MultiSamlConfiguration config;
     private final MultiSamlConfiguration configV2;
-    private final Map<SamlConfiguration, SamlRequestGenerator> requestGeneratorMap = new ConcurrentHashMap<>();
+    private final SamlRequestGeneratorPool.Factory requestGeneratorFactory;
+    private final Map<SamlConfiguration, SamlRequestGeneratorPool> requestGeneratorPools = new ConcurrentHashMap<>();
     private final Map<SamlConfiguration, SamlResponseHandler> responseHandlerMap = new ConcurrentHashMap<>();
     private final MeterRegistry meterRegistry;
 
+    @Autowired
     public EidAuthAdapter(@Qualifier("samlConfigApiV1") MultiSamlConfiguration config,
                           @Qualifier("samlConfigApiV2") MultiSamlConfiguration configV2,
                           MeterRegistry meterRegistry) {
+        this(config, configV2, meterRegistry, SamlRequestGenerator::new);
+    }
+
+    EidAuthAdapter(MultiSamlConfiguration config, MultiSamlConfiguration configV2, MeterRegistry meterRegistry,
+                   SamlRequestGeneratorPool.Factory requestGeneratorFactory) {
         this.config = config;
         this.configV2 = configV2;
         this.meterRegistry = meterRegistry;
+        this.requestGeneratorFactory = requestGeneratorFactory;
     }
 
     @Override
-    public synchronized String createSamlRedirectBindingUrl(String sessionId, String responseUrl) {
+    public String createSamlRedirectBindingUrl(String sessionId, String responseUrl) {
 
         var requestedData = new RequestData()
                 .familyNames(true)
@@ -85,8 +94,8 @@ public class EidAuthAdapter implements EidAuth {
         try {
             var multiConfiguration = findMultiSamlConfiguration(responseUrl);
             // build the SAML request query string that will be sent to the eID-server
-            return requestGenerator(multiConfiguration.getConfigurations().getFirst())
-                    .createSamlRequestUrl(requestedData, sessionId);
+            return requestGeneratorPool(multiConfiguration.getConfigurations().getFirst())
+                    .withGenerator(generator -> generator.createSamlRequestUrl(requestedData, sessionId));
         } catch (InvalidInputException | SamlRequestException e) {
             throw new SamlCryptoConfigException("failed to SAML request", true, e);
         }
@@ -104,17 +113,9 @@ public class EidAuthAdapter implements EidAuth {
         return multi;
     }
 
-    private SamlRequestGenerator requestGenerator(SamlConfiguration samlConfiguration) {
-        var requestGenerator = this.requestGeneratorMap.get(samlConfiguration);
-        if (requestGenerator == null) {
-            try {
-                requestGenerator = new SamlRequestGenerator(samlConfiguration);
-                this.requestGeneratorMap.put(samlConfiguration, requestGenerator);
-            } catch (InitializationException | InvalidInputException | SamlRequestException e) {
-                throw new CryptoConfigException("failed to initialize PanStar SDK", e);
-            }
-        }
-        return requestGenerator;
+    private SamlRequestGeneratorPool requestGeneratorPool(SamlConfiguration samlConfiguration) {
+        return this.requestGeneratorPools.computeIfAbsent(samlConfiguration,
+                c -> new SamlRequestGeneratorPool(c, requestGeneratorFactory, MAX_IDLE_REQUEST_GENERATORS));
     }
 
     private ProcessedSamlResult validateAndExtractAttributes(String samlResponse, String relayState, String sigAlg, String signature, String responseUrl) {
@@ -157,21 +158,16 @@ public class EidAuthAdapter implements EidAuth {
     }
 
     private SamlResponseHandler responseHandler(SamlConfiguration samlConfiguration) {
-        return Optional.ofNullable(this.responseHandlerMap.get(samlConfiguration)).orElseGet(() -> {
+        // created at most once per configuration and shared by all requests, as before
+        return this.responseHandlerMap.computeIfAbsent(samlConfiguration, c -> {
             try {
-                var responseHandler = new SamlResponseHandler(samlConfiguration);
-                storeResponseHandlerForConfiguration(samlConfiguration, responseHandler);
-                return responseHandler;
+                return new SamlResponseHandler(c);
             } catch (InitializationException | InvalidInputException e) {
                 throw new CryptoConfigException("failed to initialize PanStar SDK", e);
             }
         });
     }
 
-    void storeResponseHandlerForConfiguration(SamlConfiguration samlConfiguration, SamlResponseHandler responseHandler) {
-        this.responseHandlerMap.put(samlConfiguration, responseHandler);
-    }
-
     private SamlResponseValidationFailedException toSamlResponseValidationFailedException(UnsuccessfulSamlAuthenticationProcessException e, String message) {
         var visibleCode = translateSamlStatusCodeToOurVisibleCode(e).map(IdentificationError::toString).orElse(EidWrappingException.ERR_CODE_SYSTEM);
 
@@ -218,14 +214,13 @@ public class EidAuthAdapter implements EidAuth {
 
     @Override
     public ResponseData validateSamlResponseAndExtractPseudonym(String relayState, String samlResponse, String sigAlg,
-                                                                String signature, String responseUrl,
-                                                                Authentication authentication) {
+                                                                String signature, String responseUrl) {
         ProcessedSamlResult processed =
                 validateAndExtractAttributes(samlResponse, relayState, sigAlg, signature, responseUrl);
-        return mapEidResponse(relayState, authentication, processed);
+        return mapEidResponse(processed);
     }
 
-    ResponseData mapEidResponse(String relayState, Authentication authentication, ProcessedSamlResult processed) {
+    ResponseData mapEidResponse(ProcessedSamlResult processed) {
         if (processed == null) {
             throw new MissingAuthDataException("the SAML Response did not include the attributes");
         }
@@ -253,9 +248,6 @@ public class EidAuthAdapter implements EidAuth {
                 residence = Place.fromNoPlace(placeData.getNoPlaceInfo());
             }
         }
-        if (!relayState.equals(authentication.getSamlId())) {
-            throw new AuthenticationStateException("SAML ID from Authentication did not match the relayState");
-        }
         return new ResponseData(Base64.getUrlEncoder().encodeToString(personalData.getRestrictedID().getID()),
                 familyNames, givenNames, birthFamilyName, dateOfBirth, placeOfBirth, residence, nationality,
                 ageOver18);
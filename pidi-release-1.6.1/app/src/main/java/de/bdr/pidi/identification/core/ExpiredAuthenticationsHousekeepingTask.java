@@ -0,0 +1,44 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.identification.core;
+
+import de.bdr.pidi.base.housekeeping.HousekeepingTask;
+import de.bdr.pidi.identification.core.model.AuthenticationState;
+import org.springframework.stereotype.Component;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Deletes authentications that are terminated, timed out or expired. Unlike
+ * {@link IdentificationHousekeeping#cleanupExpiredAuthentications()} expired authentications are deleted right away
+ * instead of being marked as {@link AuthenticationState#TIMEOUT} first.
+ */
+@Component
+public class ExpiredAuthenticationsHousekeepingTask implements HousekeepingTask {
+
+    private static final List<AuthenticationState> FINISHED_STATES = List.of(AuthenticationState.TERMINATED, AuthenticationState.TIMEOUT);
+
+    private final AuthenticationStore authenticationStore;
+
+    public ExpiredAuthenticationsHousekeepingTask(AuthenticationStore authenticationStore) {
+        this.authenticationStore = authenticationStore;
+    }
+
+    @Override
+    public String getName() {
+        return "authentications";
+    }
+
+    @Override
+    public int deleteExpired(Instant now, int limit) {
+        return authenticationStore.deleteByValidUntilBeforeOrAuthenticationStateIn(now, FINISHED_STATES, limit);
+    }
+
+    @Override
+    public long countExpired(Instant now) {
+        return authenticationStore.countByValidUntilBeforeOrAuthenticationStateIn(now, FINISHED_STATES);
+    }
+}
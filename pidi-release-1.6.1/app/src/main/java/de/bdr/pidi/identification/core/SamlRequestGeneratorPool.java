@@ -0,0 +1,90 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.identification.core;
+
+import de.bdr.pidi.identification.core.exception.CryptoConfigException;
+import de.governikus.panstar.sdk.saml.configuration.SamlConfiguration;
+import de.governikus.panstar.sdk.saml.exception.SamlRequestException;
+import de.governikus.panstar.sdk.saml.request.SamlRequestGenerator;
+import de.governikus.panstar.sdk.utils.exception.InvalidInputException;
+import org.opensaml.core.config.InitializationException;
+
+import java.util.Deque;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out the {@link SamlRequestGenerator}s of one {@link SamlConfiguration} so that each one is used by a single
+ * thread at a time. The PanStar generator is not documented to be thread-safe, instead of serializing all requests
+ * a generator is created whenever all existing ones are in use. At most {@code maxIdle} generators are kept after
+ * use, the ones created for a larger peak of concurrent requests are dropped. A pool instead of a ThreadLocal keeps
+ * the number of generators small with virtual threads.
+ */
+class SamlRequestGeneratorPool {
+
+    @FunctionalInterface
+    interface Factory {
+        SamlRequestGenerator create(SamlConfiguration samlConfiguration)
+                throws InitializationException, InvalidInputException, SamlRequestException;
+    }
+
+    @FunctionalInterface
+    interface GeneratorAction<T> {
+        T apply(SamlRequestGenerator generator) throws InvalidInputException, SamlRequestException;
+    }
+
+    private final SamlConfiguration samlConfiguration;
+    private final Factory factory;
+    private final int maxIdle;
+    private final Deque<SamlRequestGenerator> idle = new ConcurrentLinkedDeque<>();
+    // size of idle, ConcurrentLinkedDeque.size() traverses the deque
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    SamlRequestGeneratorPool(SamlConfiguration samlConfiguration, Factory factory, int maxIdle) {
+        if (maxIdle < 1) {
+            throw new IllegalArgumentException("maxIdle must be positive");
+        }
+        this.samlConfiguration = samlConfiguration;
+        this.factory = factory;
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * runs the action with a generator that is not used by any other thread meanwhile.
+     *
+     * @throws CryptoConfigException if a new generator could not be created
+     */
+    <T> T withGenerator(GeneratorAction<T> action) throws InvalidInputException, SamlRequestException {
+        var generator = borrow();
+        try {
+            return action.apply(generator);
+        } finally {
+            giveBack(generator);
+        }
+    }
+
+    private SamlRequestGenerator borrow() {
+        var generator = idle.pollFirst();
+        if (generator != null) {
+            idleCount.decrementAndGet();
+            return generator;
+        }
+        try {
+            return factory.create(samlConfiguration);
+        } catch (InitializationException | InvalidInputException | SamlRequestException e) {
+            throw new CryptoConfigException("failed to initialize PanStar SDK", e);
+        }
+    }
+
+    private void giveBack(SamlRequestGenerator generator) {
+        if (idleCount.incrementAndGet() > maxIdle) {
+            // surplus of a peak, left to the garbage collector
+            idleCount.decrementAndGet();
+            return;
+        }
+        // most recently used first, so that surplus generators of a peak stay unused
+        idle.offerFirst(generator);
+    }
+}
@@ -26,7 +26,7 @@ import java.time.Instant;
 @Table(name = "eid_session",
         indexes = {
                 @Index(name = "vu_index", columnList = "validUntil"),
-                @Index(name = "vu_as_index", columnList = "validUntil, authenticationState")
+                @Index(name = "eid_session_as_index", columnList = "authenticationState")
         }
 )
 @Entity
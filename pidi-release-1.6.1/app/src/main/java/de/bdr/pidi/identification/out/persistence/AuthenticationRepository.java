@@ -11,6 +11,7 @@ import org.springframework.data.jpa.repository.Query;
 
 import java.time.Instant;
 import java.util.Collection;
+import java.util.Optional;
 
 public interface AuthenticationRepository extends JpaRepository<AuthenticationEntity, Long> {
 
@@ -24,19 +25,27 @@ public interface AuthenticationRepository extends JpaRepository<AuthenticationEn
 
     long countByAuthenticationStateAndValidUntilAfter(AuthenticationState authenticationState, Instant validUntil);
 
-    @Modifying
-    @Query("UPDATE AuthenticationEntity " +
-            "SET authenticationState = :newAuthenticationState, " +
-            "samlId = :samlId " +
-            "WHERE tokenId = :tokenId AND authenticationState = :oldAuthenticationState")
-    int updateSamlIdByTokenIdAndAuthenticationState(AuthenticationState newAuthenticationState, String samlId, String tokenId, AuthenticationState oldAuthenticationState);
+    // the transitions check state and validity in the statement and return the changed row, no row means no transition
 
-    @Modifying
-    @Query("UPDATE AuthenticationEntity " +
-            "SET authenticationState = :newAuthenticationState, " +
-            "referenceId = :referenceId " +
-            "WHERE samlId = :samlId AND authenticationState = :oldAuthenticationState")
-    int updateReferenceIdBySamlIdAndAuthenticationState(AuthenticationState newAuthenticationState, String referenceId, String samlId, AuthenticationState oldAuthenticationState);
+    @Query(value = "UPDATE eid_session SET authentication_state = 'STARTED', saml_id = :samlId " +
+            "WHERE token_id = :tokenId AND authentication_state = 'INITIALIZED' AND valid_until >= :validAt " +
+            "RETURNING *", nativeQuery = true)
+    Optional<AuthenticationEntity> startByTokenId(String tokenId, String samlId, Instant validAt);
+
+    @Query(value = "UPDATE eid_session SET authentication_state = 'RESPONDED', reference_id = session_id " +
+            "WHERE saml_id = :samlId AND authentication_state = 'STARTED' AND valid_until >= :validAt " +
+            "RETURNING *", nativeQuery = true)
+    Optional<AuthenticationEntity> respondBySamlId(String samlId, Instant validAt);
+
+    @Query(value = "UPDATE eid_session SET authentication_state = 'AUTHENTICATED', session_id = :newSessionId, valid_until = :validUntil " +
+            "WHERE reference_id = :referenceId AND session_id = :sessionId AND authentication_state = 'RESPONDED' AND valid_until >= :validAt " +
+            "RETURNING *", nativeQuery = true)
+    Optional<AuthenticationEntity> authenticateByReferenceId(String referenceId, String sessionId, String newSessionId, Instant validUntil, Instant validAt);
+
+    @Query(value = "DELETE FROM eid_session " +
+            "WHERE session_id = :sessionId AND authentication_state = 'AUTHENTICATED' AND valid_until >= :validAt " +
+            "RETURNING *", nativeQuery = true)
+    Optional<AuthenticationEntity> deleteAuthenticatedBySessionId(String sessionId, Instant validAt);
 
     @Modifying
     @Query("UPDATE AuthenticationEntity " +
@@ -54,21 +63,17 @@ public interface AuthenticationRepository extends JpaRepository<AuthenticationEn
     @Query("DELETE FROM AuthenticationEntity WHERE authenticationState IN :authenticationStates")
     int deleteByAuthenticationStateIn(Collection<AuthenticationState> authenticationStates);
 
+    // each branch selects its chunk by an own index (vu_index, eid_session_as_index), an OR would scan the table
     @Modifying
-    @Query("DELETE FROM AuthenticationEntity WHERE sessionId = :sessionId AND referenceId = :referenceId AND authenticationState = :authenticationState")
-    int deleteBySessionIdAndReferenceIdAndAuthenticationState(String sessionId, String referenceId, AuthenticationState authenticationState);
+    @Query(value = "DELETE FROM eid_session WHERE id IN (SELECT id FROM (" +
+            "(SELECT id FROM eid_session WHERE valid_until < :validUntil LIMIT :limit) UNION " +
+            "(SELECT id FROM eid_session WHERE authentication_state IN :authenticationStates LIMIT :limit)) chunk LIMIT :limit)", nativeQuery = true)
+    int deleteByValidUntilBeforeOrAuthenticationStateIn(Instant validUntil, Collection<String> authenticationStates, int limit);
 
-    @Modifying
-    @Query("DELETE FROM AuthenticationEntity WHERE sessionId = :sessionId AND authenticationState = :authenticationState")
-    int deleteBySessionIdAndAuthenticationState(String sessionId, AuthenticationState authenticationState);
+    long countByValidUntilBeforeOrAuthenticationStateIn(Instant validUntil, Collection<AuthenticationState> authenticationStates);
 
     @Modifying
-    @Query("UPDATE AuthenticationEntity " +
-            "SET authenticationState = :authenticationState, " +
-            "sessionId = :sessionId, " +
-            "validUntil = :validUntil " +
-            "WHERE sessionId = :oldSessionId AND authenticationState = :oldAuthenticationState AND referenceId = :referenceId"
-    )
-    int updateChangedSessionValidUntilByReferenceAndFormerState(AuthenticationState authenticationState, String sessionId, Instant validUntil, String oldSessionId, AuthenticationState oldAuthenticationState, String referenceId);
+    @Query("DELETE FROM AuthenticationEntity WHERE sessionId = :sessionId AND referenceId = :referenceId AND authenticationState = :authenticationState")
+    int deleteBySessionIdAndReferenceIdAndAuthenticationState(String sessionId, String referenceId, AuthenticationState authenticationState);
 
 }
@@ -18,6 +18,7 @@ import java.net.MalformedURLException;
 import java.net.URI;
 import java.time.Instant;
 import java.util.Collection;
+import java.util.Optional;
 
 @SecondaryAdapter
 @Component
@@ -89,6 +90,18 @@ public class JpaAuthenticationStore implements AuthenticationStore {
         return repo.updateStateByValidUntilBeforeAndAuthenticationStateNotIn(newState, validUntil, authenticationStates);
     }
 
+    @Transactional
+    @Override
+    public int deleteByValidUntilBeforeOrAuthenticationStateIn(Instant validUntil, Collection<AuthenticationState> authenticationStates, int limit) {
+        var states = authenticationStates.stream().map(AuthenticationState::name).toList();
+        return repo.deleteByValidUntilBeforeOrAuthenticationStateIn(validUntil, states, limit);
+    }
+
+    @Override
+    public long countByValidUntilBeforeOrAuthenticationStateIn(Instant validUntil, Collection<AuthenticationState> authenticationStates) {
+        return repo.countByValidUntilBeforeOrAuthenticationStateIn(validUntil, authenticationStates);
+    }
+
     @Transactional
     @Override
     //  @LogProcess(value = "IAS-Create", message = "Create a new authentication session in the data store")
@@ -102,44 +115,33 @@ public class JpaAuthenticationStore implements AuthenticationStore {
     @Transactional
     @Override
     //  @LogProcess(value = "IAS-UpdateToken", message = "Advance the authentication state in the data store after call from eID client")
-    public void updateWithSamlIdentifiedByTokenAndFormerState(Authentication authentication, AuthenticationState formerState) {
-        var newState = authentication.getAuthenticationState();
-        var samlId = authentication.getSamlId();
-        var tokenId = authentication.getTokenId();
-        if (repo.updateSamlIdByTokenIdAndAuthenticationState(newState, samlId, tokenId, formerState) != 1) {
-            throw new AuthenticationNotFoundException(String.format("Could not update saml id %s for token id %s and state %s", samlId, tokenId, formerState));
-        }
+    public Optional<Authentication> startIdentifiedByToken(String tokenId, String samlId, Instant validAt) {
+        return repo.startByTokenId(tokenId, samlId, validAt).map(this::toDomainAuthentication);
     }
 
     @Transactional
     @Override
     // @LogProcess(value = "IAS-UpdateSaml", message = "Advance the authentication state in the data store after response from eID server")
-    public void updateWithReferenceIdIdentifiedBySamlAndFormerState(Authentication authentication, AuthenticationState formerState) {
-        var newState = authentication.getAuthenticationState();
-
-        var referenceId = authentication.getReferenceId();
-        var samlId = authentication.getSamlId();
-        if (repo.updateReferenceIdBySamlIdAndAuthenticationState(newState, referenceId, samlId, formerState) != 1) {
-            throw new AuthenticationNotFoundException(String.format("Could not update reference id %s for saml id %s and state %s", referenceId, samlId, formerState));
-        }
+    public Optional<Authentication> respondIdentifiedBySaml(String samlId, Instant validAt) {
+        return repo.respondBySamlId(samlId, validAt).map(this::toDomainAuthentication);
     }
 
     @Transactional
     @Override
     //  @LogProcess(value = "IAS-UpdateLoggedin", message = "Advance the authentication state in the data store after completed round trip")
-    public void updateWithChangedSessionValidUntilIdentifiedByReferenceAndFormerState(Authentication authentication, String oldSessionId, AuthenticationState formerState) {
-        if (repo.updateChangedSessionValidUntilByReferenceAndFormerState(authentication.getAuthenticationState(), authentication.getSessionId(), authentication.getValidUntil(), oldSessionId, formerState, authentication.getReferenceId()) != 1) {
-            throw new AuthenticationNotFoundException(String.format("Authentication to be deleted not found with session id %s, reference id %s and authentication state %s", oldSessionId, authentication.getReferenceId(), formerState.name()));
-        }
+    public Optional<Authentication> authenticateIdentifiedByReference(String referenceId, String sessionId, String newSessionId, Instant validUntil, Instant validAt) {
+        return repo.authenticateByReferenceId(referenceId, sessionId, newSessionId, validUntil, validAt).map(this::toDomainAuthentication);
     }
 
     @Transactional
     @Override
     //@LogProcess(value = "IAS-Terminate", message = "Terminate the authentication state in the data store.")
-    public void removeIdentifiedBySessionAndFormerState(Authentication authentication, String sessionId, AuthenticationState formerState) {
-        if (repo.deleteBySessionIdAndAuthenticationState(sessionId, formerState) != 1) {
-            throw new AuthenticationNotFoundException(String.format("Authentication removal for session %s and authentication state %s not successful", sessionId, formerState));
-        }
+    public Optional<Authentication> terminateIdentifiedBySession(String sessionId, Instant validAt) {
+        return repo.deleteAuthenticatedBySessionId(sessionId, validAt).map(entity -> {
+            var authentication = toDomainAuthentication(entity);
+            authentication.terminate();
+            return authentication;
+        });
     }
 
 
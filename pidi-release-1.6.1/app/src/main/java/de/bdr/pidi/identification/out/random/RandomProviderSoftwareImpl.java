@@ -4,68 +4,37 @@
  */
 package de.bdr.pidi.identification.out.random;
 
+import de.bdr.pidi.base.random.SecureRandomPool;
 import de.bdr.pidi.identification.core.RandomProvider;
-import lombok.extern.slf4j.Slf4j;
+import lombok.RequiredArgsConstructor;
 import org.jmolecules.architecture.hexagonal.SecondaryAdapter;
 import org.springframework.stereotype.Component;
 
-import java.security.SecureRandom;
 import java.util.Random;
 
-@Slf4j
+/**
+ * Hands out the DRBG instance of the calling thread from the {@link SecureRandomPool}, the returned generators must
+ * be used right away by the calling thread.
+ */
 @Component
 @SecondaryAdapter
+@RequiredArgsConstructor
 public class RandomProviderSoftwareImpl implements RandomProvider {
 
-    private Random tokenRng;
-    private Random sessionRng;
-    private Random samlRng;
-
-
-    private synchronized Random sessionRng() {
-        if (sessionRng == null) {
-            sessionRng = initRng();
-        }
-        return sessionRng;
-    }
-
-    private Random initRng() {
-        log.debug("~~~~ consuming entropy for RNG");
-        SecureRandom instanceStrong = new SecureRandom();
-        int rand = instanceStrong.nextInt();
-        if (log.isTraceEnabled()) {
-            log.trace("~~~~ created RNG, first random int: {}, algo: {}, provider: {}", rand, instanceStrong.getAlgorithm(), instanceStrong.getProvider());
-        }
-        return instanceStrong;
-    }
-
-
-    private synchronized Random tokenRng() {
-        if (tokenRng == null) {
-            tokenRng = initRng();
-        }
-        return tokenRng;
-    }
-
-    private synchronized Random samlRng() {
-        if (samlRng == null) {
-            samlRng = initRng();
-        }
-        return samlRng;
-    }
+    private final SecureRandomPool secureRandomPool;
 
     @Override
     public Random getTokenRng() {
-        return tokenRng();
+        return secureRandomPool.current();
     }
 
     @Override
     public Random getSessionRng() {
-        return sessionRng();
+        return secureRandomPool.current();
     }
 
     @Override
     public Random getSamlRng() {
-        return samlRng();
+        return secureRandomPool.current();
     }
 }
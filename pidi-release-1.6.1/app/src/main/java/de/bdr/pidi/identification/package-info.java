@@ -7,7 +7,7 @@
  * <p>
  * It uses the panstar sdk from governikus.
  */
-@ApplicationModule(allowedDependencies = {"authorization::identificationApi", "base"})
+@ApplicationModule(allowedDependencies = {"authorization::identificationApi", "base", "base::housekeeping", "base::random"})
 package de.bdr.pidi.identification;
 
 import org.springframework.modulith.ApplicationModule;
\ No newline at end of file
@@ -43,6 +43,7 @@ import java.security.UnrecoverableKeyException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.security.interfaces.ECPrivateKey;
+import java.time.Clock;
 import java.time.Duration;
 import java.util.Arrays;
 import java.util.List;
@@ -66,6 +67,7 @@ public class PidDataBuilderConfig {
     private final String seedSigAlias;
     private final Duration lifetime;
     private final Duration seedValidity;
+    private final Duration seedRefreshInterval;
 
     public PidDataBuilderConfig(IssuanceConfiguration configuration) {
         authority = configuration.getBaseUrl().toString();
@@ -78,6 +80,7 @@ public class PidDataBuilderConfig {
         seedPassword = configuration.getSeedPassword();
         seedEncAlias = configuration.getSeedEncAlias();
         seedSigAlias = configuration.getSeedSigAlias();
+        seedRefreshInterval = configuration.getSeedRefreshInterval();
     }
 
     @Bean
@@ -199,7 +202,8 @@ public class PidDataBuilderConfig {
 
     @Bean
     public SeedPidService seedPidService(FileResourceHelper helper) {
-        var trustManager = new SeedTrustManager(seedPath, seedPassword, seedEncAlias, seedSigAlias, helper);
+        var trustManager = new SeedTrustManager(seedPath, seedPassword, seedEncAlias, seedSigAlias, helper,
+                seedRefreshInterval, Clock.systemUTC());
         return new SeedPidService(trustManager, seedValidity);
     }
 }
@@ -41,6 +41,8 @@ public class RabbitConfig {
         var rabbitTemplate = new RabbitTemplate(connectionFactory);
         rabbitTemplate.setMessageConverter(jackson2JsonMessageConverter);
         rabbitTemplate.setExchange(DIRECT_EXCHANGE);
+        // unroutable messages are returned to the sender instead of being dropped silently
+        rabbitTemplate.setMandatory(true);
         return rabbitTemplate;
     }
 }
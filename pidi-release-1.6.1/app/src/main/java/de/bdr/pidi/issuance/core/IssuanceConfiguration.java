@@ -28,4 +28,8 @@ public class IssuanceConfiguration extends BaseUrlConfiguration {
     private String seedSigAlias;
     private Duration lifetime;
     private Duration seedValidity;
+    /**
+     * how often the seed keystore file is checked for changes, zero disables the check
+     */
+    private Duration seedRefreshInterval = Duration.ZERO;
 }
@@ -0,0 +1,53 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.issuance.core;
+
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.NotNull;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.ToString;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.validation.annotation.Validated;
+
+import java.time.Duration;
+
+@Setter
+@Getter
+@ToString
+@Validated
+@Configuration
+@ConfigurationProperties(prefix = "pidi.revocationservice")
+public class RevocationServiceConfiguration {
+
+    /**
+     * maximum number of stored issuances sent in one message
+     */
+    @Min(1)
+    private int batchSize = 50;
+
+    /**
+     * maximum time until the relay looks for issuances stored by other nodes or left over from a failed message,
+     * issuances stored on this node are sent right away
+     */
+    @NotNull
+    private Duration pollInterval = Duration.ofSeconds(1);
+
+    /**
+     * maximum time to wait for the broker to confirm a message
+     */
+    @NotNull
+    private Duration confirmTimeout = Duration.ofSeconds(5);
+
+    /**
+     * delay before the first retry of an unconfirmed message, doubled for each further retry
+     */
+    @NotNull
+    private Duration retryDelay = Duration.ofMillis(500);
+
+    @NotNull
+    private Duration maxRetryDelay = Duration.ofSeconds(2);
+}
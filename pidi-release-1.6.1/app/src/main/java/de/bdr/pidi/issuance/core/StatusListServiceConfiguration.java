@@ -14,6 +14,7 @@ import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.validation.annotation.Validated;
 
+import java.time.Duration;
 import java.util.Map;
 
 @Setter
@@ -33,6 +34,22 @@ public class StatusListServiceConfiguration {
     @Getter(AccessLevel.NONE)
     private Map<FlowVariant, String> poolId;
 
+    /**
+     * number of references fetched from the status list service at once, 1 disables the local reference buffer
+     */
+    private int prefetchChunkSize = 1;
+
+    /**
+     * the local reference buffer is refilled when less references are left
+     */
+    private int prefetchLowWatermark;
+
+    /**
+     * buffered references older than this are discarded
+     */
+    @NotNull
+    private Duration prefetchMaxAge = Duration.ofHours(1);
+
     public String getApiKey(@NotNull FlowVariant flowVariant) {
         return apiKey.get(flowVariant);
     }
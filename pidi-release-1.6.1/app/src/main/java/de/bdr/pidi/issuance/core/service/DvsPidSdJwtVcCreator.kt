@@ -0,0 +1,33 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.issuance.core.service
+
+import de.bdr.openid4vc.common.Algorithm
+import de.bdr.openid4vc.common.signing.KeyMaterial
+import de.bdr.openid4vc.common.vci.CredentialRequest
+import de.bdr.openid4vc.vci.credentials.sdjwt.RequestSignedSdJwtVcCreator
+import eu.europa.ec.eudi.sdjwt.SdObject
+import java.time.Duration
+import java.util.UUID
+
+/**
+ * Creates the DVS signed PID SD-JWT VCs, the signer for the verifier of a request is passed to
+ * [create].
+ *
+ * @param keys the key material of the DVS signers, e.g. the certificate chain of the issuer
+ */
+class DvsPidSdJwtVcCreator(publicUrl: String, keys: KeyMaterial, lifetime: Duration, authority: String) :
+    RequestSignedSdJwtVcCreator(
+        issuer = publicUrl,
+        configuration = PidSdJwtVcClaims.configuration(lifetime, authority),
+        keys = keys,
+        algorithm = Algorithm.DVS_P256_SHA256_HS256
+    ) {
+    val claims = PidSdJwtVcClaims(configuration)
+
+    override fun validateCredentialRequest(request: CredentialRequest) = claims.validateCredentialRequest(request)
+
+    override fun createSdObject(issuanceId: UUID): SdObject = claims.createSdObject(issuanceId)
+}
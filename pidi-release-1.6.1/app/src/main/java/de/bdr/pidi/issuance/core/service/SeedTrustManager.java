@@ -12,15 +12,36 @@ import com.nimbusds.jose.crypto.ECDSAVerifier;
 import com.nimbusds.jose.jwk.ECKey;
 import de.bdr.pidi.authorization.out.issuance.SeedException;
 import de.bdr.pidi.base.FileResourceHelper;
+import lombok.extern.slf4j.Slf4j;
 
 import javax.crypto.SecretKey;
-import java.security.Key;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
 import java.security.KeyStore;
 import java.security.KeyStoreException;
 import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.regex.Pattern;
 
+/**
+ * Provides the keys of the seed keystore. The keystore is read once into an immutable snapshot holding ready to use
+ * signers, verifiers and encryption keys, so issuing and verifying seeds does not touch the keystore.
+ * <p>
+ * If a refresh interval is set, the modification time of the keystore file is checked at most once per interval and
+ * the snapshot is replaced when the file has changed. Requests that already got a signer or key keep using it, a
+ * failed reload keeps the previous snapshot.
+ */
+@Slf4j
 public class SeedTrustManager {
 
     private static final Pattern KEY_IDENTIFIER = Pattern.compile("[A-Za-z0-9.\\-_]{1,64}");
@@ -30,26 +51,46 @@ public class SeedTrustManager {
     private final String signerPath;
     private final String signerPassword;
     private final FileResourceHelper helper;
-    private KeyStore keystore;
+    private final Duration refreshInterval;
+    private final Clock clock;
+    private final AtomicReference<Instant> nextRefreshCheck;
+    private volatile KeyMaterial keyMaterial;
+
+    /**
+     * Immutable content of the keystore, the signer and verifiers are thread-safe.
+     *
+     * @param modified modification time of the keystore file when it was read, null if unknown
+     */
+    private record KeyMaterial(FileTime modified, SeedSigner signer, Map<String, JWSVerifier> verifiers,
+                               Map<String, SecretKey> encryptionKeys) {
+    }
 
     public SeedTrustManager(String seedPath, String seedPassword, String encryptionAlias, String signatureAlias, FileResourceHelper helper) {
+        this(seedPath, seedPassword, encryptionAlias, signatureAlias, helper, Duration.ZERO, Clock.systemUTC());
+    }
+
+    /**
+     * @param refreshInterval how often the keystore file is checked for changes, zero disables the check
+     */
+    public SeedTrustManager(String seedPath, String seedPassword, String encryptionAlias, String signatureAlias, FileResourceHelper helper,
+                            Duration refreshInterval, Clock clock) {
         this.signerPath = seedPath;
         this.signerPassword = seedPassword;
 
         this.helper = helper;
         this.signatureAlias = signatureAlias;
         this.encryptionAlias = encryptionAlias;
+        this.refreshInterval = refreshInterval;
+        this.clock = clock;
+        this.nextRefreshCheck = new AtomicReference<>(clock.instant().plus(refreshInterval));
     }
 
     public SeedSigner currentSigner() {
-        try {
-            var keyStore = openKeystore();
-            ECKey key = ECKey.load(keyStore, this.signatureAlias, this.signerPassword.toCharArray());
-            JWSSigner signer = new ECDSASigner(key);
-            return new SeedSigner(this.signatureAlias, signer);
-        } catch (IllegalArgumentException | KeyStoreException | JOSEException e) {
-            throw cryptoException("signer", e);
+        var signer = keyMaterial().signer();
+        if (signer == null) {
+            throw new SeedException(SeedException.Kind.CRYPTO, "could not read the signer key");
         }
+        return signer;
     }
 
     public SeedEncrypter currentEncrypter() {
@@ -59,42 +100,27 @@ public class SeedTrustManager {
 
     public SecretKey encryptionKeyForKeyId(String keyId) {
         keyId = safeKeyId(keyId);
-        try {
-            var keyStore = openKeystore();
-            Key key = keyStore.getKey(keyId, this.signerPassword.toCharArray());
-            if (key instanceof SecretKey secretKey) {
-                return secretKey;
-            } else {
-                throw new SeedException(SeedException.Kind.CRYPTO, "encryption key unknown or in wrong format");
-            }
-        } catch (KeyStoreException | NoSuchAlgorithmException | UnrecoverableKeyException e) {
-            throw cryptoException("encryption", e);
+        var key = keyMaterial().encryptionKeys().get(normalized(keyId));
+        if (key == null) {
+            throw new SeedException(SeedException.Kind.CRYPTO, "encryption key unknown or in wrong format");
         }
-    }
-
-    private SeedException cryptoException(String method, Exception e) {
-        return new SeedException(SeedException.Kind.CRYPTO, "could not read the %s key".formatted(method), e);
-    }
-
-    private synchronized KeyStore openKeystore() {
-        if (this.keystore == null) {
-            this.keystore = this.helper.readKeyStore(this.signerPath, this.signerPassword);
-        }
-        return this.keystore;
+        return key;
     }
 
     public JWSVerifier verifierForKeyId(String keyId) {
         keyId = safeKeyId(keyId);
-        var keyStore = openKeystore();
-        try {
-            ECKey key = ECKey.load(keyStore, keyId, this.signerPassword.toCharArray());
-            if (key == null) {
-                throw new SeedException(SeedException.Kind.INVALID, "no signing cert found for keyId");
-            }
-            return new ECDSAVerifier(key);
-        } catch (KeyStoreException | JOSEException e) {
-            throw cryptoException("signer", e);
+        var verifier = keyMaterial().verifiers().get(normalized(keyId));
+        if (verifier == null) {
+            throw new SeedException(SeedException.Kind.INVALID, "no signing cert found for keyId");
         }
+        return verifier;
+    }
+
+    /**
+     * Reads the keystore again and replaces the current keys. Signers and keys handed out before stay usable.
+     */
+    void reload() {
+        this.keyMaterial = load();
     }
 
     /**
@@ -108,4 +134,108 @@ public class SeedTrustManager {
         throw new SeedException(SeedException.Kind.INVALID, "key identifier has unexpected format");
     }
 
+    /**
+     * PKCS12 and JKS keystores return their aliases in lower case and look them up ignoring the case, so do the
+     * snapshot maps.
+     */
+    private static String normalized(String alias) {
+        return alias.toLowerCase(Locale.ROOT);
+    }
+
+    private KeyMaterial keyMaterial() {
+        var current = this.keyMaterial;
+        if (current == null) {
+            return initialKeyMaterial();
+        }
+        if (refreshDue()) {
+            return refreshIfModified(current);
+        }
+        return current;
+    }
+
+    /**
+     * Only the very first access waits for the keystore, later reloads replace the snapshot in the background of
+     * the running requests.
+     */
+    private synchronized KeyMaterial initialKeyMaterial() {
+        if (this.keyMaterial == null) {
+            this.keyMaterial = load();
+        }
+        return this.keyMaterial;
+    }
+
+    /**
+     * @return true for exactly one caller per refresh interval
+     */
+    private boolean refreshDue() {
+        if (refreshInterval.isZero()) {
+            return false;
+        }
+        var now = clock.instant();
+        var next = nextRefreshCheck.get();
+        return !now.isBefore(next) && nextRefreshCheck.compareAndSet(next, now.plus(refreshInterval));
+    }
+
+    private KeyMaterial refreshIfModified(KeyMaterial current) {
+        var modified = lastModified();
+        if (modified == null || modified.equals(current.modified())) {
+            return current;
+        }
+        try {
+            var reloaded = load();
+            this.keyMaterial = reloaded;
+            log.info("Reloaded the seed keystore {}", signerPath);
+            return reloaded;
+        } catch (SeedException e) {
+            log.warn("Could not reload the seed keystore {}, keeping the previous keys", signerPath, e);
+            return current;
+        }
+    }
+
+    private KeyMaterial load() {
+        var modified = lastModified();
+        KeyStore keyStore;
+        try {
+            keyStore = this.helper.readKeyStore(this.signerPath, this.signerPassword);
+        } catch (IllegalArgumentException e) {
+            throw cryptoException("seed", e);
+        }
+        SeedSigner signer = null;
+        var verifiers = new HashMap<String, JWSVerifier>();
+        var encryptionKeys = new HashMap<String, SecretKey>();
+        var signatureKeyId = normalized(this.signatureAlias);
+        try {
+            for (var alias : Collections.list(keyStore.aliases())) {
+                var key = keyStore.getKey(alias, this.signerPassword.toCharArray());
+                if (key instanceof SecretKey secretKey) {
+                    encryptionKeys.put(normalized(alias), secretKey);
+                    continue;
+                }
+                ECKey ecKey = ECKey.load(keyStore, alias, this.signerPassword.toCharArray());
+                if (ecKey == null) {
+                    continue;
+                }
+                verifiers.put(normalized(alias), new ECDSAVerifier(ecKey.toPublicJWK()));
+                if (normalized(alias).equals(signatureKeyId) && ecKey.isPrivate()) {
+                    JWSSigner jwsSigner = new ECDSASigner(ecKey);
+                    signer = new SeedSigner(this.signatureAlias, jwsSigner);
+                }
+            }
+        } catch (KeyStoreException | NoSuchAlgorithmException | UnrecoverableKeyException | JOSEException e) {
+            throw cryptoException("seed", e);
+        }
+        return new KeyMaterial(modified, signer, Map.copyOf(verifiers), Map.copyOf(encryptionKeys));
+    }
+
+    private FileTime lastModified() {
+        try {
+            return Files.getLastModifiedTime(Paths.get(this.signerPath));
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private SeedException cryptoException(String method, Exception e) {
+        return new SeedException(SeedException.Kind.CRYPTO, "could not read the %s key".formatted(method), e);
+    }
 }
@@ -5,18 +5,14 @@
 package de.bdr.pidi.issuance.in;
 
 import com.nimbusds.jose.JOSEException;
-import com.nimbusds.jose.KeyLengthException;
-import de.bdr.openid4vc.common.Algorithm;
-import de.bdr.openid4vc.common.signing.DVSP256SHA256HS256DelegateSigner;
-import de.bdr.openid4vc.common.signing.KeyMaterial;
+import de.bdr.openid4vc.common.signing.DVSP256SHA256HS256SignerFactory;
 import de.bdr.openid4vc.common.signing.Signer;
 import de.bdr.openid4vc.common.signing.X509KeyMaterial;
-import de.bdr.openid4vc.common.signing.nimbus.DVSP256SHA256HS256MacSigner;
-import de.bdr.openid4vc.common.signing.nimbus.DVSP256SHA256Key;
 import de.bdr.pidi.authorization.FlowVariant;
 import de.bdr.pidi.authorization.out.issuance.FaultyRequestParameterException;
 import de.bdr.pidi.base.requests.SdJwtVcAuthChannelCredentialRequest;
-import de.bdr.pidi.issuance.core.service.PidSdJwtVcCreator;
+import de.bdr.pidi.issuance.core.service.DvsPidSdJwtVcCreator;
+import de.bdr.pidi.issuance.core.service.PidSdJwtVcClaims;
 import de.bdr.pidi.issuance.out.revoc.RevocationAdapter;
 import de.bdr.pidi.issuance.out.sls.StatusListAdapter;
 import java.security.InvalidKeyException;
@@ -26,29 +22,32 @@ import java.security.interfaces.ECPrivateKey;
 import java.security.interfaces.ECPublicKey;
 import java.time.Duration;
 import java.util.List;
-import org.jetbrains.annotations.NotNull;
 
+/**
+ * The creator and the DVS signer factory are shared by all requests, only the signer with the MAC key derived for the
+ * verifier of a request is created per request.
+ */
 public class DvsSignedSdJwtBuilder extends SdJwtBuilderImpl<SdJwtVcAuthChannelCredentialRequest> {
-    private final String authority;
-    private final String publicUrl;
-    private final Duration lifetime;
-    private final ECPrivateKey signerPrivateKey;
-    private final X509KeyMaterial signerX509KeyMaterial;
+    private final DVSP256SHA256HS256SignerFactory dvsSignerFactory;
+    private final DvsPidSdJwtVcCreator dvsSdJwtVcCreator;
 
     public DvsSignedSdJwtBuilder(String authority, Duration lifetime, ECPrivateKey signerPrivateKey, List<X509Certificate> certificateChain,
                                  StatusListAdapter statusListAdapter, RevocationAdapter revocationAdapter, FlowVariant flowVariant) {
         super(statusListAdapter, revocationAdapter, lifetime, flowVariant);
-        this.authority = authority;
-        this.publicUrl = authority + flowVariant.urlPath;
-        this.lifetime = lifetime;
-        this.signerPrivateKey = signerPrivateKey;
-        this.signerX509KeyMaterial = new X509KeyMaterial(certificateChain);
+        this.dvsSignerFactory = new DVSP256SHA256HS256SignerFactory(signerPrivateKey, new X509KeyMaterial(certificateChain));
+        this.dvsSdJwtVcCreator = new DvsPidSdJwtVcCreator(authority + flowVariant.urlPath, dvsSignerFactory.getKeys(), lifetime, authority);
+    }
+
+    @Override
+    PidSdJwtVcClaims provideClaims() {
+        return dvsSdJwtVcCreator.getClaims();
     }
 
     @Override
-    PidSdJwtVcCreator provideCreator(SdJwtVcAuthChannelCredentialRequest credentialRequest) {
-        ECPublicKey verifierPub = getVerifierPub(credentialRequest);
-        return buildDvsSdJwtVcCreator(verifierPub);
+    SdJwtCreation prepareCreation(SdJwtVcAuthChannelCredentialRequest credentialRequest) {
+        Signer signer = getVerifierSigner(getVerifierPub(credentialRequest));
+        return (issuanceId, holderBindingKey, statusRef) ->
+                dvsSdJwtVcCreator.create(credentialRequest, issuanceId, holderBindingKey, statusRef, signer);
     }
 
     @Override
@@ -56,54 +55,19 @@ public class DvsSignedSdJwtBuilder extends SdJwtBuilderImpl<SdJwtVcAuthChannelCr
         return credentialRequest.getVct();
     }
 
-    private ECPublicKey getVerifierPub(SdJwtVcAuthChannelCredentialRequest credentialRequest) {
+    private Signer getVerifierSigner(ECPublicKey verifierPub) {
         try {
-            return credentialRequest.getVerifierPub().toECKey().toECPublicKey();
-        } catch (JOSEException | ClassCastException e) {
-            throw new FaultyRequestParameterException("verifierPub is no valid ec key", e);
-        }
-    }
-
-    // TODO this delegate only serves to fix the getKeys method of the (final) class DVSP256SHA256HS256DelegateSigner - should be fixed in base lib
-    static class CertificateChainProvidingDelegateSigner implements Signer {
-        private final Signer signer;
-        private final X509KeyMaterial keyMaterial;
-
-        public CertificateChainProvidingDelegateSigner(DVSP256SHA256HS256DelegateSigner signer, X509KeyMaterial keyMaterial) {
-            this.signer = signer;
-            this.keyMaterial = keyMaterial;
-        }
-
-        @NotNull
-        @Override
-        public Algorithm getAlgorithm() {
-            return signer.getAlgorithm();
-        }
-
-        @NotNull
-        @Override
-        public KeyMaterial getKeys() {
-            return keyMaterial;
-        }
-
-        @NotNull
-        @Override
-        public byte[] sign(@NotNull byte[] bytes) {
-            return signer.sign(bytes);
+            return dvsSignerFactory.forVerifier(verifierPub);
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new IllegalArgumentException("Invalid verifier key", e);
         }
     }
 
-    // TODO With the current version of the openid4vc lib, a new signer and creator need to be created. That will change with a future version of the lib
-    private PidSdJwtVcCreator buildDvsSdJwtVcCreator(ECPublicKey verifierPub) {
-        DVSP256SHA256HS256MacSigner dvsMacSigner;
+    private ECPublicKey getVerifierPub(SdJwtVcAuthChannelCredentialRequest credentialRequest) {
         try {
-            dvsMacSigner = new DVSP256SHA256HS256MacSigner(new DVSP256SHA256Key(signerPrivateKey, verifierPub));
-        } catch (NoSuchAlgorithmException | InvalidKeyException | KeyLengthException e) {
-            throw new IllegalArgumentException("Invalid verifier key", e);
+            return credentialRequest.getVerifierPub().toECKey().toECPublicKey();
+        } catch (JOSEException | ClassCastException e) {
+            throw new FaultyRequestParameterException("verifierPub is no valid ec key", e);
         }
-
-        var dvsDelegateSigner = new DVSP256SHA256HS256DelegateSigner(dvsMacSigner);
-        var certificateChainProvidingDelegateSigner = new CertificateChainProvidingDelegateSigner(dvsDelegateSigner, signerX509KeyMaterial);
-        return new PidSdJwtVcCreator(publicUrl, certificateChainProvidingDelegateSigner, lifetime, authority);
     }
 }
@@ -6,6 +6,7 @@ package de.bdr.pidi.issuance.in;
 
 import de.bdr.openid4vc.common.formats.sdjwtvc.SdJwtVcCredentialRequest;
 import de.bdr.pidi.authorization.FlowVariant;
+import de.bdr.pidi.issuance.core.service.PidSdJwtVcClaims;
 import de.bdr.pidi.issuance.core.service.PidSdJwtVcCreator;
 import de.bdr.pidi.issuance.out.revoc.RevocationAdapter;
 import de.bdr.pidi.issuance.out.sls.StatusListAdapter;
@@ -23,8 +24,14 @@ public class IssuerSignedSdJwtBuilder extends SdJwtBuilderImpl<SdJwtVcCredential
     }
 
     @Override
-    PidSdJwtVcCreator provideCreator(SdJwtVcCredentialRequest credentialRequest) {
-        return issuerSigSdJwtVcCreator;
+    PidSdJwtVcClaims provideClaims() {
+        return issuerSigSdJwtVcCreator.getClaims();
+    }
+
+    @Override
+    SdJwtCreation prepareCreation(SdJwtVcCredentialRequest credentialRequest) {
+        return (issuanceId, holderBindingKey, statusRef) ->
+                issuerSigSdJwtVcCreator.create(credentialRequest, issuanceId, holderBindingKey, statusRef);
     }
 
     @Override
@@ -5,11 +5,13 @@
 package de.bdr.pidi.issuance.in;
 
 import com.nimbusds.jose.jwk.JWK;
+import de.bdr.openid4vc.common.vci.Credential;
 import de.bdr.openid4vc.common.vci.FormatSpecificCredentialRequest;
+import de.bdr.openid4vc.vci.service.statuslist.StatusReference;
 import de.bdr.pidi.authorization.FlowVariant;
 import de.bdr.pidi.authorization.out.identification.PidCredentialData;
 import de.bdr.pidi.authorization.out.issuance.SdJwtBuilder;
-import de.bdr.pidi.issuance.core.service.PidSdJwtVcCreator;
+import de.bdr.pidi.issuance.core.service.PidSdJwtVcClaims;
 import de.bdr.pidi.issuance.out.revoc.RevocationAdapter;
 import de.bdr.pidi.issuance.out.sls.StatusListAdapter;
 import java.text.ParseException;
@@ -21,10 +23,20 @@ import lombok.RequiredArgsConstructor;
 @RequiredArgsConstructor
 abstract class SdJwtBuilderImpl<T extends FormatSpecificCredentialRequest> implements SdJwtBuilder<T> {
 
-    abstract PidSdJwtVcCreator provideCreator(T credentialRequest);
+    abstract PidSdJwtVcClaims provideClaims();
+
+    /**
+     * Prepares the creation of the credential of a request, before a status list index is acquired for it.
+     */
+    abstract SdJwtCreation prepareCreation(T credentialRequest);
 
     abstract String getVct(T credentialRequest);
 
+    @FunctionalInterface
+    interface SdJwtCreation {
+        Credential create(UUID issuanceId, JWK holderBindingKey, StatusReference statusRef);
+    }
+
     private final StatusListAdapter statusListAdapter;
     private final RevocationAdapter revocationAdapter;
     private final Duration lifetime;
@@ -32,27 +44,28 @@ abstract class SdJwtBuilderImpl<T extends FormatSpecificCredentialRequest> imple
 
     @Override
     public String build(PidCredentialData pidCredentialData, T credentialRequest, String holderBindingKey) throws ParseException {
-        var creator = provideCreator(credentialRequest);
-        validateRequest(creator, credentialRequest);
+        var claims = provideClaims();
+        validateRequest(claims, credentialRequest);
+        var creation = prepareCreation(credentialRequest);
         UUID dataKey = UUID.randomUUID();
         try {
-            creator.putPidCredentialData(dataKey, pidCredentialData);
+            claims.putPidCredentialData(dataKey, pidCredentialData);
             var statusRef = statusListAdapter.acquireFreeIndex(flowVariant);
-            var sdJwt = creator.create(credentialRequest, dataKey, JWK.parse(holderBindingKey), statusRef).getCredential();
+            var sdJwt = creation.create(dataKey, JWK.parse(holderBindingKey), statusRef).getCredential();
             // The expiry time can differ by a few ms, but otherwise the credential would have to be parsed to get to the exact time.
             var exp = Instant.now().plus(lifetime);
             revocationAdapter.notifyRevocService(pidCredentialData.getPseudonym(), statusRef, exp);
             return sdJwt;
         } finally {
-            creator.removePidCredentialData(dataKey);
+            claims.removePidCredentialData(dataKey);
         }
     }
 
     /**
      * The request gets already checked in the OidHandler, this only serves as an additional assurance
      */
-    private void validateRequest(PidSdJwtVcCreator creator, T request) {
-        if (!creator.validateCredentialRequest(request)) {
+    private void validateRequest(PidSdJwtVcClaims claims, T request) {
+        if (!claims.validateCredentialRequest(request)) {
             throw new IllegalArgumentException("Credential type %s not supported".formatted(getVct(request)));
         }
     }
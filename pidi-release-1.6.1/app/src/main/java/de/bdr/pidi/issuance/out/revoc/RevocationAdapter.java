@@ -5,25 +5,208 @@
 package de.bdr.pidi.issuance.out.revoc;
 
 import de.bdr.openid4vc.vci.service.statuslist.StatusReference;
+import de.bdr.pidi.issuance.core.RevocationServiceConfiguration;
 import de.bdr.pidi.issuance.out.revoc.model.Issuance;
-import lombok.RequiredArgsConstructor;
+import de.bdr.pidi.issuance.out.revoc.model.IssuanceBatch;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
-import org.springframework.retry.annotation.Backoff;
-import org.springframework.retry.annotation.Retryable;
+import org.springframework.context.SmartLifecycle;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+/**
+ * Sends the issuance information to the revocation service using a transactional outbox.
+ * <p>
+ * A credential request only stores its issuance in the revocation_outbox table, within the transaction of the
+ * credential if there is one, and does not wait for the broker. The relay of each node sends the stored issuances in
+ * messages of up to batch-size issuances and deletes them once the broker has confirmed the message. The issuances of
+ * a message are locked while it is sent, so the relays of several nodes do not send them twice. Unconfirmed messages
+ * are resent with exponential backoff until the broker is available again, the issuances stay in the outbox meanwhile.
+ */
+@Slf4j
 @Component
-@RequiredArgsConstructor
-public class RevocationAdapter {
-    // app/docs/api/issuer-info-asyncapi.yml$channels.revocation.publish.operationId
-    public static final String ROUTING_KEY = "provideIssuanceInformation";
+public class RevocationAdapter implements SmartLifecycle {
+    // app/docs/api/issuer-info-asyncapi.yml$channels.revocation-batch.publish.operationId
+    public static final String BATCH_ROUTING_KEY = "provideIssuanceInformationBatch";
+
     private final RabbitTemplate rabbitTemplate;
+    private final RevocationOutboxRepository outboxRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final RevocationServiceConfiguration configuration;
+    private final Semaphore stored = new Semaphore(0);
+
+    private volatile boolean running;
+    private Thread relay;
 
-    @Retryable(maxAttempts = 5, backoff = @Backoff(delay = 500))
+    public RevocationAdapter(RabbitTemplate rabbitTemplate, RevocationOutboxRepository outboxRepository,
+                             PlatformTransactionManager transactionManager, RevocationServiceConfiguration configuration) {
+        this.rabbitTemplate = rabbitTemplate;
+        this.outboxRepository = outboxRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.configuration = configuration;
+    }
+
+    @Transactional
     public void notifyRevocService(String pseudonym, StatusReference statusRef, Instant expirationTime) {
-        var message = new Issuance(pseudonym, statusRef.getUri(), statusRef.getIndex(), expirationTime);
-        rabbitTemplate.convertAndSend(ROUTING_KEY, message);
+        var entity = new RevocationOutboxEntity();
+        entity.setPseudonym(pseudonym);
+        entity.setListId(statusRef.getUri());
+        entity.setListIndex(statusRef.getIndex());
+        entity.setExpirationTime(expirationTime);
+        entity.setCreated(Instant.now());
+        outboxRepository.save(entity);
+        // wakes the relay once the issuance is visible to it
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    stored.release();
+                }
+            });
+        } else {
+            stored.release();
+        }
+    }
+
+    @Override
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        relay = Thread.ofPlatform().name("revocation-relay").daemon().start(this::relayLoop);
+    }
+
+    /**
+     * lets the relay finish the message it is sending, issuances still stored are sent after the next start or by the
+     * relay of another node
+     */
+    @Override
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        stored.release();
+        try {
+            relay.join(configuration.getConfirmTimeout().plusSeconds(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void relayLoop() {
+        var delay = configuration.getRetryDelay();
+        while (running) {
+            int sent;
+            try {
+                sent = relayBatch();
+                delay = configuration.getRetryDelay();
+            } catch (RuntimeException e) {
+                log.warn("Sending issuances to the revocation service failed, retrying in {}", delay, e);
+                if (!pause(delay)) {
+                    return;
+                }
+                delay = min(delay.multipliedBy(2), configuration.getMaxRetryDelay());
+                continue;
+            }
+            if (sent < configuration.getBatchSize() && !awaitStored()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * sends the oldest stored issuances in one message and deletes them once it is confirmed, they stay stored if the
+     * message fails
+     *
+     * @return number of sent issuances
+     */
+    int relayBatch() {
+        var sent = transactionTemplate.execute(status -> {
+            var batch = outboxRepository.lockOldest(configuration.getBatchSize());
+            if (batch.isEmpty()) {
+                return 0;
+            }
+            publish(batch);
+            outboxRepository.deleteAllByIdInBatch(batch.stream().map(RevocationOutboxEntity::getId).toList());
+            return batch.size();
+        });
+        return sent == null ? 0 : sent;
+    }
+
+    private void publish(List<RevocationOutboxEntity> batch) {
+        var correlation = new CorrelationData(UUID.randomUUID().toString());
+        var issuances = batch.stream()
+                .map(entity -> new Issuance(entity.getPseudonym(), entity.getListId(), entity.getListIndex(), entity.getExpirationTime()))
+                .toList();
+        rabbitTemplate.convertAndSend(BATCH_ROUTING_KEY, new IssuanceBatch(issuances), correlation);
+        CorrelationData.Confirm confirm;
+        try {
+            confirm = correlation.getFuture().get(configuration.getConfirmTimeout().toMillis(), TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            throw new AmqpException("Message %s was not confirmed by the broker".formatted(correlation.getId()), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AmqpException("Interrupted while waiting for confirmation of message %s".formatted(correlation.getId()), e);
+        }
+        if (!confirm.isAck()) {
+            throw new AmqpException("Message %s was rejected by the broker: %s".formatted(correlation.getId(), confirm.getReason()));
+        }
+        if (correlation.getReturned() != null) {
+            throw new AmqpException("Message %s could not be routed: %s".formatted(correlation.getId(), correlation.getReturned().getReplyText()));
+        }
+    }
+
+    /**
+     * waits until an issuance is stored on this node or the poll interval has passed, issuances stored by other nodes
+     * are found by polling
+     *
+     * @return false if the relay has been stopped
+     */
+    private boolean awaitStored() {
+        try {
+            if (stored.tryAcquire(configuration.getPollInterval().toMillis(), TimeUnit.MILLISECONDS)) {
+                stored.drainPermits();
+            }
+            return running;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private boolean pause(Duration delay) {
+        try {
+            Thread.sleep(delay);
+            return running;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private static Duration min(Duration a, Duration b) {
+        return a.compareTo(b) <= 0 ? a : b;
     }
 }
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.issuance.out.revoc;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+
+@Setter
+@Getter
+@Entity
+@Table(name = "revocation_outbox")
+public class RevocationOutboxEntity {
+    @Id
+    @GeneratedValue
+    private Long id;
+
+    @Column(nullable = false)
+    private String pseudonym;
+
+    @Column(nullable = false)
+    private String listId;
+
+    @Column(nullable = false)
+    private int listIndex;
+
+    @Column(nullable = false)
+    private Instant expirationTime;
+
+    @Column(nullable = false)
+    private Instant created;
+}
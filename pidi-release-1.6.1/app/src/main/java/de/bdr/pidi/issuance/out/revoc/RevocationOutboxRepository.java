@@ -0,0 +1,20 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.issuance.out.revoc;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
+
+public interface RevocationOutboxRepository extends JpaRepository<RevocationOutboxEntity, Long> {
+
+    /**
+     * locks the oldest issuances until the end of the transaction, issuances locked by the relay of another node are
+     * skipped
+     */
+    @Query(value = "SELECT * FROM revocation_outbox ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<RevocationOutboxEntity> lockOldest(int limit);
+}
@@ -9,6 +9,7 @@ import de.bdr.pidi.authorization.FlowVariant;
 import de.bdr.pidi.base.PidServerException;
 import de.bdr.pidi.issuance.core.StatusListServiceConfiguration;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.http.HttpEntity;
@@ -18,17 +19,31 @@ import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
+import java.time.Clock;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 @Service
 @Slf4j
-public class StatusListAdapterImpl implements StatusListAdapter {
+public class StatusListAdapterImpl implements StatusListAdapter, DisposableBean {
     private static final String CREATE_REFERENCE_URL_TEMPLATE = "%s/pools/%s/new-references";
+    private static final String AMOUNT_QUERY_TEMPLATE = "%s?amount=%d";
     private static final String API_KEY_HEADER = "x-api-key";
 
     private final StatusListServiceConfiguration configuration;
     private final RestTemplate restTemplate;
+    private final Map<PoolAccess, StatusReferenceBuffer> buffers = new ConcurrentHashMap<>();
+    private final ExecutorService refillExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("status-reference-refill-", 0).factory());
+
+    /**
+     * variants share a buffer only if they fetch from the same pool with the same API key
+     */
+    private record PoolAccess(String poolId, String apiKey) {
+    }
 
     @Autowired
     public StatusListAdapterImpl(RestTemplateBuilder restTemplateBuilder, StatusListServiceConfiguration statusListServiceConfiguration) {
@@ -37,15 +52,38 @@ public class StatusListAdapterImpl implements StatusListAdapter {
     }
 
     public StatusReference acquireFreeIndex(FlowVariant flowVariant) {
+        var poolAccess = new PoolAccess(configuration.getPoolId(flowVariant), configuration.getApiKey(flowVariant));
+        if (configuration.getPrefetchChunkSize() <= 1) {
+            return fetchReferences(poolAccess, 1).getFirst();
+        }
+        return buffers.computeIfAbsent(poolAccess, access -> new StatusReferenceBuffer(access.poolId(),
+                configuration.getPrefetchChunkSize(), configuration.getPrefetchLowWatermark(), configuration.getPrefetchMaxAge(),
+                amount -> fetchReferences(access, amount), refillExecutor, Clock.systemUTC())).take();
+    }
+
+    @Override
+    public void destroy() {
+        refillExecutor.shutdownNow();
+        buffers.values().forEach(StatusReferenceBuffer::close);
+    }
+
+    private List<StatusReference> fetchReferences(PoolAccess poolAccess, int amount) {
         HttpHeaders headers = new HttpHeaders();
         headers.setAccept(List.of(MediaType.APPLICATION_JSON));
-        headers.add(API_KEY_HEADER, configuration.getApiKey(flowVariant));
+        headers.add(API_KEY_HEADER, poolAccess.apiKey());
         HttpEntity<Void> request = new HttpEntity<>(null, headers);
         var createReferenceUrl =
-                CREATE_REFERENCE_URL_TEMPLATE.formatted(configuration.getBaseUrl(), configuration.getPoolId(flowVariant));
+                CREATE_REFERENCE_URL_TEMPLATE.formatted(configuration.getBaseUrl(), poolAccess.poolId());
+        if (amount > 1) {
+            createReferenceUrl = AMOUNT_QUERY_TEMPLATE.formatted(createReferenceUrl, amount);
+        }
         try {
             References responseObject = restTemplate.postForObject(createReferenceUrl, request, References.class);
-            return Objects.requireNonNull(responseObject).references().getFirst();
+            var references = Objects.requireNonNull(responseObject).references();
+            if (references.isEmpty()) {
+                throw new PidServerException("Status list service returned no references!");
+            }
+            return references;
         } catch (RestClientException | NullPointerException e) {
             throw new PidServerException("Could not acquire free index from status list service!", e);
         }
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.issuance.out.sls;
+
+import de.bdr.openid4vc.vci.service.statuslist.StatusReference;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Local buffer of the status list references of one pool.
+ * <p>
+ * References are fetched in chunks and handed out without locking. Whenever less than the low-water mark of
+ * references are left, a refill is started in the background. If the buffer runs empty, a single reference is fetched
+ * on the calling thread. References buffered longer than the maximum age are discarded.
+ */
+@Slf4j
+class StatusReferenceBuffer {
+
+    private record BufferedReference(StatusReference reference, Instant fetchedAt) {
+    }
+
+    private final String poolId;
+    private final int chunkSize;
+    private final int lowWatermark;
+    private final Duration maxAge;
+    private final IntFunction<List<StatusReference>> fetcher;
+    private final Executor refillExecutor;
+    private final Clock clock;
+
+    private final ConcurrentLinkedQueue<BufferedReference> references = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final AtomicBoolean refilling = new AtomicBoolean();
+    private volatile boolean closed;
+
+    StatusReferenceBuffer(String poolId, int chunkSize, int lowWatermark, Duration maxAge,
+                          IntFunction<List<StatusReference>> fetcher, Executor refillExecutor, Clock clock) {
+        this.poolId = poolId;
+        this.chunkSize = chunkSize;
+        this.lowWatermark = lowWatermark;
+        this.maxAge = maxAge;
+        this.fetcher = fetcher;
+        this.refillExecutor = refillExecutor;
+        this.clock = clock;
+    }
+
+    StatusReference take() {
+        BufferedReference buffered;
+        while ((buffered = references.poll()) != null) {
+            if (size.decrementAndGet() < lowWatermark) {
+                triggerRefill();
+            }
+            if (!isExpired(buffered)) {
+                return buffered.reference();
+            }
+        }
+        triggerRefill();
+        return fetcher.apply(1).getFirst();
+    }
+
+    int size() {
+        return size.get();
+    }
+
+    /**
+     * Discards all buffered references. The status list service has no way to give back references, the indices
+     * simply stay unused.
+     */
+    void close() {
+        closed = true;
+        var discarded = 0;
+        while (references.poll() != null) {
+            size.decrementAndGet();
+            discarded++;
+        }
+        if (discarded > 0) {
+            log.info("Discarded {} unused status list references of pool {}", discarded, poolId);
+        }
+    }
+
+    private boolean isExpired(BufferedReference buffered) {
+        return buffered.fetchedAt().plus(maxAge).isBefore(clock.instant());
+    }
+
+    private void triggerRefill() {
+        if (closed || !refilling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            refillExecutor.execute(this::refill);
+        } catch (RuntimeException e) {
+            refilling.set(false);
+            log.warn("Could not schedule refill of status list references of pool {}", poolId, e);
+        }
+    }
+
+    private void refill() {
+        try {
+            var fetched = fetcher.apply(chunkSize);
+            var fetchedAt = clock.instant();
+            if (closed) {
+                return;
+            }
+            fetched.forEach(reference -> references.offer(new BufferedReference(reference, fetchedAt)));
+            size.addAndGet(fetched.size());
+            log.debug("Buffered {} status list references of pool {}", fetched.size(), poolId);
+        } catch (RuntimeException e) {
+            log.warn("Could not refill status list references of pool {}", poolId, e);
+        } finally {
+            refilling.set(false);
+        }
+    }
+}
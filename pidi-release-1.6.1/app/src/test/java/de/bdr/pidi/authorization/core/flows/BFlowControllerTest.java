@@ -18,6 +18,8 @@ import de.bdr.pidi.authorization.core.WSessionImpl;
 import de.bdr.pidi.authorization.core.domain.Nonce;
 import de.bdr.pidi.authorization.core.domain.Requests;
 import de.bdr.pidi.authorization.core.domain.SessionKey;
+import de.bdr.pidi.authorization.core.exception.InvalidRequestException;
+import de.bdr.pidi.authorization.core.exception.ValidationFailedException;
 import de.bdr.pidi.authorization.core.particle.ClientAttestationHandlerTest;
 import de.bdr.pidi.authorization.core.particle.PkceHandlerTest;
 import de.bdr.pidi.authorization.core.particle.RequestUtil;
@@ -61,9 +63,11 @@ import java.util.Map;
 import java.util.UUID;
 
 import static de.bdr.pidi.authorization.ConfigTestData.AUTH_CONFIG;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mockStatic;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -122,6 +126,19 @@ class BFlowControllerTest {
         verify(sessionManager).persist(any(WSession.class));
     }
 
+    @Test
+    void testPar_persistFailureDoesNotHideRequestFailure() {
+        when(request.getParameters()).thenReturn(new HashMap<>());
+        when(sessionManager.init(FlowVariant.B)).thenReturn(session);
+        var persistFailure = InvalidRequestException.forConcurrentModification(1L);
+        doThrow(persistFailure).when(sessionManager).persist(session);
+
+        assertThatThrownBy(() -> out.processPushedAuthRequest(request))
+                .isInstanceOf(ValidationFailedException.class)
+                .hasSuppressedException(persistFailure);
+        verify(sessionManager).persist(session);
+    }
+
     @Test
     void testAuth_ok() throws MalformedURLException, URISyntaxException {
         var params = new HashMap<String, String>();
@@ -14,8 +14,11 @@ import de.bdr.pidi.authorization.core.WResponseBuilder;
 import de.bdr.pidi.authorization.core.WSession;
 import de.bdr.pidi.authorization.core.WSessionImpl;
 import de.bdr.pidi.authorization.core.domain.SessionKey;
+import de.bdr.pidi.authorization.core.exception.InvalidCredentialRequestException;
+import de.bdr.pidi.authorization.core.service.BatchIssuanceExecutor;
 import de.bdr.pidi.authorization.core.service.PidSerializer;
 import de.bdr.pidi.authorization.out.identification.PidCredentialData;
+import de.bdr.pidi.authorization.out.issuance.FaultyRequestParameterException;
 import de.bdr.pidi.authorization.out.issuance.MdocBuilder;
 import de.bdr.pidi.authorization.out.issuance.SdJwtBuilder;
 import de.bdr.pidi.base.requests.MsoMdocAuthChannelCredentialRequest;
@@ -29,8 +32,13 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import java.text.ParseException;
 import java.time.Instant;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
@@ -164,4 +172,81 @@ class CredentialHandlerTest {
                 .isEqualTo("mdoc");
         assertThat(body.findValue("credentials")).isNull();
     }
+
+    @Test
+    void shouldBatchProcessInParallel() {
+        var batchSize = 10;
+        var keys = IntStream.range(0, batchSize).mapToObj(i -> "credentialKey" + i).toList();
+        WSession session = createBatchSession(keys);
+        var responseBuilder = new WResponseBuilder();
+        var localRequest = RequestUtil.getHttpRequest(TestUtils.createSdJwtCredentialRequest());
+        // every credential waits for the next one, so they only finish if all run at the same time, in reverse order
+        var finished = IntStream.range(0, batchSize).mapToObj(i -> new CountDownLatch(1)).toList();
+        SdJwtBuilder<SdJwtVcCredentialRequest> chainedBuilder = (pid, request, key) -> {
+            var index = Integer.parseInt(key.substring("credentialKey".length()));
+            if (index < batchSize - 1) {
+                await(finished.get(index + 1));
+            }
+            finished.get(index).countDown();
+            return "sdJwt" + index;
+        };
+        handler = new CredentialHandler(chainedBuilder, mockedMdocBuilder, pidSerializer, requestsUsingProof, new BatchIssuanceExecutor(batchSize, batchSize, true));
+
+        handler.processCredentialRequest(localRequest, responseBuilder, session);
+
+        var body = responseBuilder.buildJSONResponseEntity().getBody();
+        assertThat(body).isNotNull();
+        assertThat(body.findValue("credentials"))
+                .map(JsonNode::asText)
+                .containsExactlyElementsOf(IntStream.range(0, batchSize).mapToObj(i -> "sdJwt" + i).toList());
+    }
+
+    @Test
+    void shouldReportFirstFailingCredentialOfParallelBatch() {
+        var keys = IntStream.range(0, 6).mapToObj(i -> "credentialKey" + i).toList();
+        WSession session = createBatchSession(keys);
+        var localRequest = RequestUtil.getHttpRequest(TestUtils.createSdJwtCredentialRequest());
+        var built = ConcurrentHashMap.<Integer>newKeySet();
+        var laterFailed = new CountDownLatch(1);
+        SdJwtBuilder<SdJwtVcCredentialRequest> failingBuilder = (pid, request, key) -> {
+            var index = Integer.parseInt(key.substring("credentialKey".length()));
+            if (index == 2) {
+                // blocks one of the two threads until the later credential has failed on the other one
+                await(laterFailed);
+                throw new FaultyRequestParameterException("faulty 2");
+            }
+            if (index == 4) {
+                laterFailed.countDown();
+                throw new FaultyRequestParameterException("faulty 4");
+            }
+            built.add(index);
+            return "sdJwt" + index;
+        };
+        handler = new CredentialHandler(failingBuilder, mockedMdocBuilder, pidSerializer, requestsUsingProof, new BatchIssuanceExecutor(2, 2, false));
+
+        assertThatThrownBy(() -> handler.processCredentialRequest(localRequest, new WResponseBuilder(), session))
+                .isInstanceOf(InvalidCredentialRequestException.class)
+                .hasMessage("faulty 2");
+        // credential 5 is taken after credential 4 failed and is not started anymore
+        assertThat(built).containsExactlyInAnyOrder(0, 1, 3);
+    }
+
+    private WSession createBatchSession(List<String> keys) {
+        WSession session = new WSessionImpl(FlowVariant.C, TestUtils.randomSessionId());
+        session.putParameter(SessionKey.ACCESS_TOKEN_EXP_TIME, Instant.now().plusSeconds(10));
+        session.putParameter(SessionKey.IDENTIFICATION_DATA, pidSerializer.toString(PidCredentialData.Companion.getTEST_DATA_SET()));
+        session.putParameters(SessionKey.VERIFIED_CREDENTIAL_KEYS, keys);
+        return session;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(10, TimeUnit.SECONDS)) {
+                throw new AssertionError("credentials were not built in parallel");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AssertionError(e);
+        }
+    }
 }
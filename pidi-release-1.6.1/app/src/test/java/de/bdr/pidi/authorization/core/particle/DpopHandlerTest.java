@@ -7,6 +7,7 @@ package de.bdr.pidi.authorization.core.particle;
 import com.nimbusds.oauth2.sdk.token.DPoPAccessToken;
 import de.bdr.openid4vc.common.vci.CredentialRequest;
 import de.bdr.openid4vc.vci.data.TokenType;
+import de.bdr.openid4vc.vci.data.storage.InMemoryJtiStorage;
 import de.bdr.openid4vc.vci.service.HttpHeaders;
 import de.bdr.openid4vc.vci.service.HttpRequest;
 import de.bdr.pidi.authorization.FlowVariant;
@@ -61,7 +62,7 @@ class DpopHandlerTest {
 
     @BeforeEach
     void setUp() throws MalformedURLException {
-        handler = new DpopHandler(nonceService, Duration.ofSeconds(30), Duration.ofSeconds(30), java.net.URI.create("http://base-url").toURL(), TokenType.DPOP.getValue(), false);
+        handler = new DpopHandler(new InMemoryJtiStorage(), nonceService, Duration.ofSeconds(30), Duration.ofSeconds(30), java.net.URI.create("http://base-url").toURL(), TokenType.DPOP.getValue(), false);
     }
 
     @Test
@@ -259,6 +260,22 @@ class DpopHandlerTest {
         );
     }
 
+    @DisplayName("Verify replayed dpop proof is rejected on token request")
+    @Test
+    void test013() {
+        WSession session = new WSessionImpl(FlowVariant.C1, 1L);
+        var responseBuilder = new WResponseBuilder();
+        var nonce = prepareNonce();
+        doReturn(nonce).when(nonceService).fetchDpopNonceFromSession(any());
+        Mockito.when(nonceService.generateAndStoreDpopNonce(session)).thenReturn(nonce);
+        var request = prepareTokenDpopRequest(nonce);
+        handler.processTokenRequest(request, responseBuilder, session);
+
+        assertThatThrownBy(() -> handler.processTokenRequest(request, new WResponseBuilder(), session))
+                .isInstanceOf(InvalidDpopProofException.class)
+                .hasMessage("JTI already used");
+    }
+
     private Nonce prepareNonce() {
         return new Nonce(RandomUtil.randomString(), Duration.ofSeconds(30));
     }
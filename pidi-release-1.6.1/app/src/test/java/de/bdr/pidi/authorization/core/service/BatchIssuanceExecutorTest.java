@@ -0,0 +1,112 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.authorization.core.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BatchIssuanceExecutorTest {
+
+    private BatchIssuanceExecutor executor;
+
+    @AfterEach
+    void tearDown() {
+        executor.destroy();
+    }
+
+    @Test
+    void shouldBuildAtMostParallelismCredentialsOfOneRequestAtTheSameTime() {
+        executor = new BatchIssuanceExecutor(3, 8, true);
+        var inFlight = new AtomicInteger();
+        var maxInFlight = new AtomicInteger();
+        var threads = new ConcurrentHashMap<Integer, Thread>();
+        var items = IntStream.range(0, 20).boxed().toList();
+
+        var results = executor.map(items, item -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            threads.put(item, Thread.currentThread());
+            sleep();
+            inFlight.decrementAndGet();
+            return "credential" + item;
+        });
+
+        assertThat(results).containsExactlyElementsOf(items.stream().map(item -> "credential" + item).toList());
+        assertThat(maxInFlight.get()).isBetween(2, 3);
+        assertThat(threads.get(0)).isSameAs(Thread.currentThread());
+    }
+
+    @Test
+    void shouldBuildOnTheRequestThreadWhileAllWorkersAreBusy() throws Exception {
+        executor = new BatchIssuanceExecutor(2, 1, false);
+        var workerBusy = new CountDownLatch(1);
+        var release = new CountDownLatch(1);
+        // the request thread of the other request waits with its first credential, so the worker takes the second
+        var blocking = CompletableFuture.supplyAsync(() -> executor.map(List.of(0, 1), item -> {
+            if (item == 0) {
+                await(workerBusy);
+            } else {
+                workerBusy.countDown();
+                await(release);
+            }
+            return item;
+        }));
+        assertThat(workerBusy.await(10, TimeUnit.SECONDS)).isTrue();
+
+        var threads = ConcurrentHashMap.<Thread>newKeySet();
+        var results = executor.map(List.of(0, 1, 2), item -> {
+            threads.add(Thread.currentThread());
+            return item;
+        });
+
+        assertThat(results).containsExactly(0, 1, 2);
+        assertThat(threads).containsExactly(Thread.currentThread());
+        release.countDown();
+        assertThat(blocking.get(10, TimeUnit.SECONDS)).containsExactly(0, 1);
+    }
+
+    @Test
+    void shouldBuildSequentiallyWithParallelismOne() {
+        executor = BatchIssuanceExecutor.sequential();
+        var threads = ConcurrentHashMap.<Thread>newKeySet();
+
+        var results = executor.map(List.of(0, 1, 2), item -> {
+            threads.add(Thread.currentThread());
+            return item;
+        });
+
+        assertThat(results).containsExactly(0, 1, 2);
+        assertThat(threads).containsExactly(Thread.currentThread());
+    }
+
+    private static void sleep() {
+        try {
+            Thread.sleep(5);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(10, TimeUnit.SECONDS)) {
+                throw new AssertionError("latch not released");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.authorization.core.service;
+
+import com.nimbusds.jose.jwk.Curve;
+import com.nimbusds.jose.jwk.ECKey;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DeviceKeyPoolTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private DeviceKeyPool pool;
+
+    @AfterEach
+    void tearDown() {
+        if (pool != null) {
+            pool.destroy();
+        }
+    }
+
+    @Test
+    @DisplayName("Verify the pool is filled up to the high watermark and hands out pooled keys")
+    void test001() throws InterruptedException {
+        pool = new DeviceKeyPool(2, 8, meterRegistry);
+        awaitSize(8);
+
+        var key = pool.next();
+
+        assertThat(key.getCurve()).isEqualTo(Curve.P_256);
+        assertThat(key.isPrivate()).isTrue();
+        assertThat(key.getKeyID()).isNotBlank();
+        assertThat(hits()).isEqualTo(1);
+        assertThat(misses()).isZero();
+        assertThat(meterRegistry.get("pidi.device-key-pool.size").gauge().value()).isEqualTo(7);
+    }
+
+    @Test
+    @DisplayName("Verify the pool is refilled when it drops below the low watermark")
+    void test002() throws InterruptedException {
+        pool = new DeviceKeyPool(4, 8, meterRegistry);
+        awaitSize(8);
+
+        for (int i = 0; i < 5; i++) {
+            pool.next();
+        }
+
+        awaitSize(8);
+        assertThat(hits()).isEqualTo(5);
+    }
+
+    @Test
+    @DisplayName("Verify keys are generated on request if the pool is disabled")
+    void test003() {
+        pool = new DeviceKeyPool(0, 0, meterRegistry);
+
+        var first = pool.next();
+        var second = pool.next();
+
+        assertThat(first.getKeyID()).isNotEqualTo(second.getKeyID());
+        assertThat(misses()).isEqualTo(2);
+        assertThat(hits()).isZero();
+    }
+
+    @Test
+    @DisplayName("Verify invalid watermarks are rejected")
+    void test004() {
+        assertThatThrownBy(() -> new DeviceKeyPool(9, 8, meterRegistry)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new DeviceKeyPool(0, -1, meterRegistry)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    @DisplayName("Verify no key is handed out twice under concurrent requests")
+    void test005() throws InterruptedException {
+        pool = new DeviceKeyPool(16, 64, meterRegistry);
+        awaitSize(64);
+        var threads = 16;
+        var keysPerThread = 200;
+        Set<ECKey> handedOut = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+        var privateKeys = ConcurrentHashMap.<String>newKeySet();
+        var ready = new CountDownLatch(threads);
+        var start = new CountDownLatch(1);
+
+        try (var executor = Executors.newFixedThreadPool(threads)) {
+            for (int t = 0; t < threads; t++) {
+                executor.execute(() -> {
+                    ready.countDown();
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    for (int i = 0; i < keysPerThread; i++) {
+                        var key = pool.next();
+                        handedOut.add(key);
+                        privateKeys.add(key.getD().toString());
+                    }
+                });
+            }
+            ready.await();
+            start.countDown();
+        }
+
+        var total = threads * keysPerThread;
+        assertThat(handedOut).hasSize(total);
+        assertThat(privateKeys).hasSize(total);
+        assertThat(hits() + misses()).isEqualTo(total);
+        assertThat(hits()).isGreaterThanOrEqualTo(64);
+    }
+
+    private double hits() {
+        return meterRegistry.get("pidi.device-key-pool.requests").tag("result", "hit").counter().count();
+    }
+
+    private double misses() {
+        return meterRegistry.get("pidi.device-key-pool.requests").tag("result", "miss").counter().count();
+    }
+
+    private void awaitSize(int size) throws InterruptedException {
+        for (int i = 0; i < 500 && pool.size() < size; i++) {
+            Thread.sleep(10);
+        }
+        assertThat(pool.size()).isEqualTo(size);
+    }
+}
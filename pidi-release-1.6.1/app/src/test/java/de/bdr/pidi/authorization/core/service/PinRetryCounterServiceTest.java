@@ -9,7 +9,7 @@ import de.bdr.pidi.authorization.core.domain.PinRetryCounter;
 import de.bdr.pidi.authorization.core.exception.InvalidGrantException;
 import de.bdr.pidi.authorization.core.exception.InvalidRequestException;
 import de.bdr.pidi.authorization.core.util.PinUtil;
-import de.bdr.pidi.authorization.out.persistence.PinRetryCounterAdapter;
+import de.bdr.pidi.authorization.out.persistence.PinRetryCounterStore;
 import de.bdr.pidi.testdata.TestUtils;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -21,11 +21,11 @@ import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.time.Instant;
 import java.util.Optional;
+import java.util.OptionalInt;
 
 import static de.bdr.pidi.authorization.ConfigTestData.AUTH_CONFIG;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
-import static org.mockito.ArgumentMatchers.argThat;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.verify;
 
@@ -35,7 +35,7 @@ class PinRetryCounterServiceTest {
     private static final String RETRY_COUNTER_ID = PinUtil.computeRetryCounterId(TestUtils.DEVICE_PUBLIC_KEY);
 
     @Mock
-    private PinRetryCounterAdapter adapter;
+    private PinRetryCounterStore store;
     @Spy
     private AuthorizationConfiguration authConfig = AUTH_CONFIG;
     @InjectMocks
@@ -45,13 +45,13 @@ class PinRetryCounterServiceTest {
     @Test
     void test001() {
         service.initPinRetryCounter(TestUtils.DEVICE_PUBLIC_KEY);
-        verify(adapter).create(RETRY_COUNTER_ID, AUTH_CONFIG.getPinRetryCounterValidity());
+        verify(store).create(RETRY_COUNTER_ID, AUTH_CONFIG.getPinRetryCounterValidity());
     }
 
     @DisplayName("Validate load pin retry counter")
     @Test
     void test002() {
-        doReturn(Optional.of(getPinRetryCounter(0))).when(adapter).find(RETRY_COUNTER_ID);
+        doReturn(Optional.of(getPinRetryCounter(0))).when(store).find(RETRY_COUNTER_ID);
 
         var counter = service.loadPinCounter(TestUtils.DEVICE_PUBLIC_KEY);
 
@@ -61,7 +61,7 @@ class PinRetryCounterServiceTest {
     @DisplayName("Validate exception when try to load exceeded pin retry counter")
     @Test
     void test003() {
-        doReturn(Optional.of(getPinRetryCounter(AUTH_CONFIG.getMaxPinRetries()))).when(adapter).find(RETRY_COUNTER_ID);
+        doReturn(Optional.of(getPinRetryCounter(AUTH_CONFIG.getMaxPinRetries()))).when(store).find(RETRY_COUNTER_ID);
 
         assertThatThrownBy(() -> service.loadPinCounter(TestUtils.DEVICE_PUBLIC_KEY))
                 .isInstanceOf(InvalidGrantException.class)
@@ -71,25 +71,35 @@ class PinRetryCounterServiceTest {
     @DisplayName("Validate incremented pin retry count")
     @Test
     void test004() {
-        doReturn(Optional.of(getPinRetryCounter(0))).when(adapter).find(RETRY_COUNTER_ID);
+        doReturn(OptionalInt.of(1)).when(store).increment(RETRY_COUNTER_ID, AUTH_CONFIG.getMaxPinRetries(), AUTH_CONFIG.getPinRetryCounterValidity());
 
         service.increment(RETRY_COUNTER_ID, new InvalidRequestException("something was wrong"));
 
-        verify(adapter).increment(argThat(p -> p.getValue() == 1));
+        verify(store).increment(RETRY_COUNTER_ID, AUTH_CONFIG.getMaxPinRetries(), AUTH_CONFIG.getPinRetryCounterValidity());
     }
 
     @DisplayName("Validate PIN locked when increment exceeded pin retries")
     @Test
     void test005() {
-        doReturn(Optional.of(getPinRetryCounter(AUTH_CONFIG.getMaxPinRetries() - 1))).when(adapter).find(RETRY_COUNTER_ID);
+        doReturn(OptionalInt.of(AUTH_CONFIG.getMaxPinRetries())).when(store).increment(RETRY_COUNTER_ID, AUTH_CONFIG.getMaxPinRetries(), AUTH_CONFIG.getPinRetryCounterValidity());
 
         var cause = new InvalidRequestException("something was wrong");
         assertThatThrownBy(() -> service.increment(RETRY_COUNTER_ID, cause))
                 .isInstanceOf(InvalidGrantException.class)
                 .hasMessage("PIN locked")
                 .hasCauseInstanceOf(InvalidRequestException.class);
+    }
+
+    @DisplayName("Validate PIN locked when the limit had already been reached by a concurrent request")
+    @Test
+    void test006() {
+        doReturn(OptionalInt.empty()).when(store).increment(RETRY_COUNTER_ID, AUTH_CONFIG.getMaxPinRetries(), AUTH_CONFIG.getPinRetryCounterValidity());
 
-        verify(adapter).increment(argThat(p -> p.getValue() == AUTH_CONFIG.getMaxPinRetries()));
+        var cause = new InvalidRequestException("something was wrong");
+        assertThatThrownBy(() -> service.increment(RETRY_COUNTER_ID, cause))
+                .isInstanceOf(InvalidGrantException.class)
+                .hasMessage("PIN locked")
+                .hasCauseInstanceOf(InvalidRequestException.class);
     }
 
     private PinRetryCounter getPinRetryCounter(int count) {
@@ -10,12 +10,14 @@ import de.bdr.pidi.authorization.core.AuthorizationConfiguration;
 import de.bdr.pidi.authorization.core.AuthorizationHousekeeping;
 import de.bdr.pidi.authorization.core.SessionManager;
 import de.bdr.pidi.authorization.core.WSessionImpl;
+import de.bdr.pidi.authorization.core.domain.Nonce;
+import de.bdr.pidi.authorization.core.domain.Requests;
 import de.bdr.pidi.authorization.core.domain.SessionKey;
 import de.bdr.pidi.authorization.core.exception.InvalidRequestException;
 import de.bdr.pidi.authorization.core.exception.SessionNotFoundException;
 import de.bdr.pidi.authorization.core.exception.UnauthorizedException;
-import de.bdr.pidi.authorization.out.persistence.PidiNonceAdapter;
-import de.bdr.pidi.authorization.out.persistence.PidiSessionAdapter;
+import de.bdr.pidi.authorization.out.persistence.PidiNonceStore;
+import de.bdr.pidi.authorization.out.persistence.PidiSessionStore;
 import de.bdr.pidi.testdata.TestUtils;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
@@ -27,6 +29,9 @@ import org.mockito.Mock;
 import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Instant;
+import java.util.Optional;
+
 import static de.bdr.pidi.authorization.ConfigTestData.AUTH_CONFIG;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.is;
@@ -41,6 +46,7 @@ import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.doReturn;
 import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
 @ExtendWith(MockitoExtension.class)
@@ -49,16 +55,16 @@ class SessionManagerImplTest {
     private static final String TOKEN_TYPE = TokenType.DPOP.getValue();
 
     @Mock
-    private PidiSessionAdapter sessionAdapter;
+    private PidiSessionStore sessionAdapter;
     @Mock
-    private PidiNonceAdapter pidiNonceAdapter;
+    private PidiNonceStore pidiNonceStore;
     @Spy
     private AuthorizationConfiguration config = AUTH_CONFIG;
     private SessionManager sessionManagerUT;
 
     @BeforeEach
     void setUp() {
-        sessionManagerUT = new SessionManagerImpl(sessionAdapter, pidiNonceAdapter, config);
+        sessionManagerUT = new SessionManagerImpl(sessionAdapter, pidiNonceStore, config);
     }
 
     @DisplayName("Verify invalid request_uri parameter")
@@ -298,6 +304,34 @@ class SessionManagerImplTest {
         verify(sessionAdapter).deleteExpiredSessions();
     }
 
+    @DisplayName("Verify session gets initialized with a consumed session ID nonce")
+    @Test
+    void test017() {
+        var sessionIdNonce = new Nonce("session-id", AUTH_CONFIG.getPidIssuerNonceLifetime(), Instant.now().plusSeconds(60));
+        doReturn(Optional.empty()).when(sessionAdapter).findByPidIssuerSessionId("session-id");
+        doReturn(Optional.of(sessionIdNonce)).when(pidiNonceStore).consume("session-id", AUTH_CONFIG.getPidIssuerNonceLifetime());
+        var session = new WSessionImpl(FlowVariant.B1, VALID_SESSION_ID);
+        doReturn(session).when(sessionAdapter).init(FlowVariant.B1, Requests.SEED_TOKEN_REQUEST, AUTH_CONFIG.getSessionExpirationTime());
+
+        var result = sessionManagerUT.loadOrInitSessionId(FlowVariant.B1, "session-id");
+
+        assertThat(result, is(sameInstance(session)));
+        assertEquals("session-id", result.getParameter(SessionKey.PID_ISSUER_SESSION_ID));
+        assertEquals(sessionIdNonce.expirationTime(), result.getCheckedParameterAsInstant(SessionKey.PID_ISSUER_SESSION_ID_EXP_TIME));
+    }
+
+    @DisplayName("Verify unknown, expired or already consumed session ID nonce")
+    @Test
+    void test018() {
+        doReturn(Optional.empty()).when(sessionAdapter).findByPidIssuerSessionId("session-id");
+        doReturn(Optional.empty()).when(pidiNonceStore).consume("session-id", AUTH_CONFIG.getPidIssuerNonceLifetime());
+
+        var e = assertThrows(InvalidRequestException.class, () -> sessionManagerUT.loadOrInitSessionId(FlowVariant.B1, "session-id"));
+
+        assertEquals("Session ID invalid", e.getMessage());
+        verify(sessionAdapter, never()).init(any(), any(), any());
+    }
+
     private void prepareMockInit() {
         var session = new WSessionImpl(FlowVariant.C, VALID_SESSION_ID);
         doReturn(session).when(sessionAdapter).init(any(), any(), any());
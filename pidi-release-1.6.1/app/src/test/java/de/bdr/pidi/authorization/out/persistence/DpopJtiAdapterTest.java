@@ -0,0 +1,77 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.authorization.out.persistence;
+
+import de.bdr.pidi.end2end.integration.IntegrationTest;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class DpopJtiAdapterTest extends IntegrationTest {
+
+    @Autowired
+    private DpopJtiAdapter dpopJtiAdapter;
+
+    @Test
+    @DisplayName("Verify jti is unused only once")
+    void test001() {
+        var jti = UUID.randomUUID().toString();
+        var validUntil = Instant.now().plus(Duration.ofMinutes(5));
+
+        assertThat(dpopJtiAdapter.isUnused(jti, validUntil)).isTrue();
+        assertThat(dpopJtiAdapter.isUnused(jti, validUntil)).isFalse();
+        assertThat(dpopJtiAdapter.isUnused(UUID.randomUUID().toString(), validUntil)).isTrue();
+    }
+
+    @Test
+    @DisplayName("Verify only one of concurrent requests with the same jti succeeds")
+    void test002() throws InterruptedException {
+        var jti = UUID.randomUUID().toString();
+        var validUntil = Instant.now().plus(Duration.ofMinutes(5));
+        var unused = new AtomicInteger();
+        var start = new CountDownLatch(1);
+
+        try (var executor = Executors.newFixedThreadPool(4)) {
+            for (int i = 0; i < 4; i++) {
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                        if (dpopJtiAdapter.isUnused(jti, validUntil)) {
+                            unused.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            start.countDown();
+        }
+
+        assertThat(unused.get()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Verify expired jti values get deleted")
+    void test003() {
+        // expired long before the jti values of the other tests, so these are not affected
+        var expired = Instant.parse("2000-01-01T00:00:00Z");
+        var jti = UUID.randomUUID().toString();
+        dpopJtiAdapter.isUnused(jti, expired);
+        var now = expired.plus(Duration.ofDays(1));
+
+        assertThat(dpopJtiAdapter.countExpired(now)).isEqualTo(1);
+        assertThat(dpopJtiAdapter.deleteExpired(now, 10)).isEqualTo(1);
+        assertThat(dpopJtiAdapter.isUnused(jti, Instant.now().plusSeconds(60))).isTrue();
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.authorization.out.persistence;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class EncryptedPidiNonceStoreTest {
+
+    private static final Duration LIFETIME = Duration.ofSeconds(60);
+
+    private final EncryptedPidiNonceStore store = new EncryptedPidiNonceStore(new byte[32]);
+
+    @Test
+    @DisplayName("Verify issued nonce is accepted with its expiration time")
+    void test001() {
+        var nonce = store.issue(LIFETIME);
+
+        assertThat(nonce.expirationTime()).isBetween(Instant.now().plus(LIFETIME).minusSeconds(5), Instant.now().plus(LIFETIME));
+        assertThat(nonce.nonce()).hasSizeLessThanOrEqualTo(128);
+        assertThat(store.consume(nonce.nonce(), LIFETIME)).contains(nonce);
+    }
+
+    @Test
+    @DisplayName("Verify nonce with a changed expiration time is rejected")
+    void test002() {
+        var nonce = store.issue(LIFETIME);
+        var encrypted = nonce.nonce().substring(nonce.nonce().indexOf('.'));
+        var extended = nonce.expirationTime().plus(LIFETIME).toEpochMilli() + encrypted;
+
+        assertThat(store.consume(extended, LIFETIME)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Verify expired nonce is rejected")
+    void test003() {
+        var nonce = store.issue(Duration.ofSeconds(-1));
+
+        assertThat(store.consume(nonce.nonce(), LIFETIME)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Verify nonce of another key or malformed nonce is rejected")
+    void test004() {
+        var otherKey = new byte[32];
+        otherKey[0] = 1;
+        var nonce = new EncryptedPidiNonceStore(otherKey).issue(LIFETIME);
+
+        assertThat(store.consume(nonce.nonce(), LIFETIME)).isEmpty();
+        assertThat(store.consume("not-a-nonce", LIFETIME)).isEmpty();
+        assertThat(store.consume("123.not-base64", LIFETIME)).isEmpty();
+        assertThat(store.consume(".", LIFETIME)).isEmpty();
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.authorization.out.persistence;
+
+import de.bdr.pidi.authorization.FlowVariant;
+import de.bdr.pidi.authorization.core.domain.Requests;
+import de.bdr.pidi.authorization.core.domain.SessionKey;
+import de.bdr.pidi.authorization.core.exception.InvalidRequestException;
+import de.bdr.pidi.authorization.core.exception.SessionNotFoundException;
+import de.bdr.pidi.testdata.TestUtils;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class InMemoryPidiSessionStoreTest {
+
+    private static final Duration EXPIRATION = Duration.ofMinutes(60);
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-11-01T10:00:00Z");
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+
+    private final MutableClock clock = new MutableClock();
+    private final InMemoryPidiSessionStore store = new InMemoryPidiSessionStore(1_000, clock);
+
+    @Test
+    @DisplayName("Verify session gets found by its lookup parameters")
+    void test001() {
+        var requestUri = TestUtils.generateRequestUri();
+        var session = store.init(FlowVariant.C, Requests.PUSHED_AUTHORIZATION_REQUEST, EXPIRATION);
+        session.putParameter(SessionKey.REQUEST_URI, requestUri);
+        session.putParameter(SessionKey.CLIENT_ID, "client");
+        session.setNextExpectedRequest(Requests.AUTHORIZATION_REQUEST);
+        store.update(session, EXPIRATION);
+
+        var found = store.findByRequestUri(requestUri);
+
+        assertThat(found.getSessionId()).isEqualTo(session.getSessionId());
+        assertThat(found.getFlowVariant()).isEqualTo(FlowVariant.C);
+        assertThat(found.getParameter(SessionKey.CLIENT_ID)).isEqualTo("client");
+        assertThat(found.getNextExpectedRequest()).isEqualTo(Requests.AUTHORIZATION_REQUEST);
+        assertThat(found.getVersion()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Verify session gets not found by a replaced lookup parameter")
+    void test002() {
+        var authCode = TestUtils.generateAuthorizationCode();
+        var session = store.init(FlowVariant.C, Requests.IDENTIFICATION_RESULT, EXPIRATION);
+        session.putParameter(SessionKey.AUTHORIZATION_CODE, authCode);
+        store.update(session, EXPIRATION);
+        session.removeParameter(SessionKey.AUTHORIZATION_CODE);
+        session.putParameter(SessionKey.ACCESS_TOKEN, "token");
+        store.update(session, EXPIRATION);
+
+        assertThatThrownBy(() -> store.findByAuthorizationCode(authCode)).isInstanceOf(SessionNotFoundException.class);
+        assertThat(store.findByAccessToken("token").getSessionId()).isEqualTo(session.getSessionId());
+        assertThat(store.findByPidIssuerSessionId("unknown")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Verify stale session can not be stored")
+    void test003() {
+        var issuerState = TestUtils.generateIssuerState();
+        var session = store.init(FlowVariant.C, Requests.AUTHORIZATION_REQUEST, EXPIRATION);
+        session.putParameter(SessionKey.ISSUER_STATE, issuerState);
+        store.update(session, EXPIRATION);
+        var first = store.findByIssuerState(issuerState);
+        var second = store.findByIssuerState(issuerState);
+
+        first.setNextExpectedRequest(Requests.FINISH_AUTHORIZATION_REQUEST);
+        store.update(first, EXPIRATION);
+        second.setNextExpectedRequest(Requests.IDENTIFICATION_RESULT);
+
+        assertThatThrownBy(() -> store.update(second, EXPIRATION)).isInstanceOf(InvalidRequestException.class);
+        assertThat(store.findByIssuerState(issuerState).getNextExpectedRequest()).isEqualTo(Requests.FINISH_AUTHORIZATION_REQUEST);
+    }
+
+    @Test
+    @DisplayName("Verify only one of concurrent requests can change the session")
+    void test004() throws InterruptedException {
+        var session = store.init(FlowVariant.C, Requests.TOKEN_REQUEST, EXPIRATION);
+        session.putParameter(SessionKey.ACCESS_TOKEN, "token");
+        store.update(session, EXPIRATION);
+        var succeeded = new AtomicInteger();
+        var conflicts = new AtomicInteger();
+        var loaded = new CountDownLatch(8);
+        var start = new CountDownLatch(1);
+
+        try (var executor = Executors.newFixedThreadPool(8)) {
+            for (int i = 0; i < 8; i++) {
+                executor.execute(() -> {
+                    var loadedSession = store.findByAccessToken("token");
+                    loaded.countDown();
+                    try {
+                        start.await();
+                        loadedSession.setNextExpectedRequest(Requests.CREDENTIAL_REQUEST);
+                        store.update(loadedSession, EXPIRATION);
+                        succeeded.incrementAndGet();
+                    } catch (InvalidRequestException e) {
+                        conflicts.incrementAndGet();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            // all requests have loaded the same version of the session before the first one stores it
+            loaded.await();
+            start.countDown();
+        }
+
+        assertThat(succeeded.get()).isEqualTo(1);
+        assertThat(conflicts.get()).isEqualTo(7);
+    }
+
+    @Test
+    @DisplayName("Verify expired and terminated sessions are removed")
+    void test005() {
+        var expiring = store.init(FlowVariant.C, Requests.TOKEN_REQUEST, EXPIRATION);
+        expiring.putParameter(SessionKey.ACCESS_TOKEN, "expiring");
+        store.update(expiring, EXPIRATION);
+        var terminated = store.init(FlowVariant.C2, Requests.PRESENTATION_SIGNING_REQUEST, EXPIRATION);
+        terminated.putParameter(SessionKey.ACCESS_TOKEN, "terminated");
+        store.update(terminated, EXPIRATION);
+
+        store.persistAndTerminate(terminated);
+        assertThatThrownBy(() -> store.findByAccessToken("terminated")).isInstanceOf(SessionNotFoundException.class);
+        assertThat(store.findByAccessToken("expiring").getSessionId()).isEqualTo(expiring.getSessionId());
+
+        clock.now = clock.now.plus(EXPIRATION).plusSeconds(1);
+
+        assertThatThrownBy(() -> store.findByAccessToken("expiring")).isInstanceOf(SessionNotFoundException.class);
+        assertThat(store.deleteExpiredSessions()).isEqualTo(1);
+        assertThat(store.size()).isZero();
+        assertThatThrownBy(() -> store.update(expiring, EXPIRATION)).isInstanceOf(SessionNotFoundException.class);
+    }
+}
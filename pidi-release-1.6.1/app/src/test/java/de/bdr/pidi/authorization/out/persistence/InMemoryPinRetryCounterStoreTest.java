@@ -0,0 +1,112 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.authorization.out.persistence;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class InMemoryPinRetryCounterStoreTest {
+
+    private static final Duration VALIDITY = Duration.ofMinutes(60);
+    private static final int LIMIT = 3;
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-11-01T10:00:00Z");
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+
+    private final MutableClock clock = new MutableClock();
+    private final InMemoryPinRetryCounterStore store = new InMemoryPinRetryCounterStore(clock);
+
+    @Test
+    @DisplayName("Verify counter is incremented up to the limit and reset by create")
+    void test001() {
+        var created = store.create("digest", VALIDITY);
+        assertThat(created.getValue()).isZero();
+        assertThat(created.getExpirationTime()).isEqualTo(clock.now.plus(VALIDITY));
+
+        assertThat(store.increment("digest", LIMIT, VALIDITY)).hasValue(1);
+        assertThat(store.increment("digest", LIMIT, VALIDITY)).hasValue(2);
+        assertThat(store.increment("digest", LIMIT, VALIDITY)).hasValue(3);
+        assertThat(store.increment("digest", LIMIT, VALIDITY)).isEmpty();
+        assertThat(store.find("digest")).get().extracting(c -> c.getValue()).isEqualTo(LIMIT);
+
+        var recreated = store.create("digest", VALIDITY);
+        assertThat(recreated.getId()).isEqualTo(created.getId());
+        assertThat(store.find("digest")).get().extracting(c -> c.getValue()).isEqualTo(0);
+    }
+
+    @Test
+    @DisplayName("Verify missing counter is created on increment")
+    void test002() {
+        assertThat(store.increment("digest", LIMIT, VALIDITY)).hasValue(1);
+        assertThat(store.find("digest")).isPresent();
+    }
+
+    @Test
+    @DisplayName("Verify counter expires at its expiration time, incrementing does not extend it")
+    void test003() {
+        store.create("digest", VALIDITY);
+        clock.now = clock.now.plus(VALIDITY.minusMinutes(1));
+        store.increment("digest", LIMIT, VALIDITY);
+        assertThat(store.find("digest")).isPresent();
+
+        clock.now = clock.now.plus(Duration.ofMinutes(1));
+
+        assertThat(store.find("digest")).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Verify concurrent increments never exceed the limit")
+    void test004() throws InterruptedException {
+        store.create("digest", VALIDITY);
+        var incremented = new AtomicInteger();
+        var start = new CountDownLatch(1);
+
+        try (var executor = Executors.newFixedThreadPool(8)) {
+            for (int i = 0; i < 1_000; i++) {
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                        if (store.increment("digest", LIMIT, VALIDITY).isPresent()) {
+                            incremented.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            start.countDown();
+        }
+
+        assertThat(incremented.get()).isEqualTo(LIMIT);
+        assertThat(store.find("digest")).get().extracting(c -> c.getValue()).isEqualTo(LIMIT);
+    }
+}
@@ -4,12 +4,17 @@
  */
 package de.bdr.pidi.authorization.out.persistence;
 
-import de.bdr.pidi.authorization.core.NonceFactory;
-import de.bdr.pidi.authorization.core.domain.PidIssuerNonce;
 import de.bdr.pidi.end2end.integration.IntegrationTest;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static de.bdr.pidi.authorization.ConfigTestData.AUTH_CONFIG;
 import static org.assertj.core.api.Assertions.assertThat;
 
@@ -23,14 +28,60 @@ class PidiNonceAdapterTest extends IntegrationTest {
 
     @Test
     void testAdapter() {
-        PidIssuerNonce nonce = pidiNonceAdapter.createAndSave(NonceFactory.createSecureRandomNonce(AUTH_CONFIG.getSessionExpirationTime()), AUTH_CONFIG.getSessionExpirationTime());
+        var nonce = pidiNonceAdapter.issue(AUTH_CONFIG.getSessionExpirationTime());
+
+        assertThat(pidiNonceRepository.findFirstByNonce(nonce.nonce())).get().extracting(PidiNonceEntity::isUsed).isEqualTo(false);
+
+        assertThat(pidiNonceAdapter.consume(nonce.nonce(), AUTH_CONFIG.getSessionExpirationTime())).get().isEqualTo(nonce);
+        assertThat(pidiNonceRepository.findFirstByNonce(nonce.nonce())).get().extracting(PidiNonceEntity::isUsed).isEqualTo(true);
+        assertThat(pidiNonceAdapter.consume(nonce.nonce(), AUTH_CONFIG.getSessionExpirationTime())).isEmpty();
+        assertThat(pidiNonceAdapter.consume("unknown", AUTH_CONFIG.getSessionExpirationTime())).isEmpty();
+    }
+
+    @Test
+    void testConsumeExpired() {
+        var nonce = pidiNonceAdapter.issue(Duration.ofSeconds(-1));
+
+        assertThat(pidiNonceAdapter.consume(nonce.nonce(), Duration.ofSeconds(-1))).isEmpty();
+    }
+
+    @Test
+    void testConcurrentConsume() throws InterruptedException {
+        var nonce = pidiNonceAdapter.issue(AUTH_CONFIG.getSessionExpirationTime());
+        var consumed = new AtomicInteger();
+        var start = new CountDownLatch(1);
+
+        try (var executor = Executors.newFixedThreadPool(4)) {
+            for (int i = 0; i < 4; i++) {
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                        if (pidiNonceAdapter.consume(nonce.nonce(), AUTH_CONFIG.getSessionExpirationTime()).isPresent()) {
+                            consumed.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            start.countDown();
+        }
 
-        assertThat(nonce.isUsed()).isFalse();
-        assertThat(pidiNonceRepository.existsById(nonce.getId())).isTrue();
-        assertThat(pidiNonceAdapter.findByNonce(nonce.getNonce().nonce(), AUTH_CONFIG.getSessionExpirationTime())).get().isEqualTo(nonce);
+        assertThat(consumed.get()).isEqualTo(1);
+    }
+
+    @Test
+    void testDeleteExpired() {
+        // expired long before the nonces of the other tests, so these are not affected
+        var expired = Instant.parse("2000-01-01T00:00:00Z");
+        var entity = new PidiNonceEntity();
+        entity.setNonce(UUID.randomUUID().toString());
+        entity.setExpires(expired);
+        entity = pidiNonceRepository.save(entity);
+        var now = expired.plus(Duration.ofDays(1));
 
-        nonce.setUsed(true);
-        pidiNonceAdapter.setUsed(nonce);
-        assertThat(pidiNonceRepository.findById(nonce.getId())).get().extracting(PidiNonceEntity::isUsed).isEqualTo(true);
+        assertThat(pidiNonceAdapter.countExpired(now)).isEqualTo(1);
+        assertThat(pidiNonceAdapter.deleteExpired(now, 10)).isEqualTo(1);
+        assertThat(pidiNonceRepository.existsById(entity.getId())).isFalse();
     }
 }
\ No newline at end of file
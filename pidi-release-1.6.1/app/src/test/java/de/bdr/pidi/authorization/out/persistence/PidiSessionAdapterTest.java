@@ -5,19 +5,28 @@
 package de.bdr.pidi.authorization.out.persistence;
 
 import de.bdr.pidi.authorization.FlowVariant;
+import de.bdr.pidi.authorization.core.AuthorizationConfiguration;
 import de.bdr.pidi.authorization.core.domain.Requests;
 import de.bdr.pidi.authorization.core.domain.SessionKey;
+import de.bdr.pidi.authorization.core.exception.InvalidRequestException;
 import de.bdr.pidi.authorization.core.exception.SessionNotFoundException;
 import de.bdr.pidi.end2end.integration.IntegrationTest;
 import de.bdr.pidi.testdata.TestUtils;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.jdbc.core.JdbcTemplate;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+
 import static de.bdr.pidi.authorization.ConfigTestData.AUTH_CONFIG;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
 
 class PidiSessionAdapterTest extends IntegrationTest {
 
@@ -30,6 +39,14 @@ class PidiSessionAdapterTest extends IntegrationTest {
     @Autowired
     private JdbcTemplate jdbcTemplate;
 
+    @Autowired
+    private AuthorizationConfiguration authorizationConfiguration;
+
+    @AfterEach
+    void tearDown() {
+        authorizationConfiguration.setSessionJsonCompatibility(false);
+    }
+
     @Test
     @DisplayName("Verify new session gets initialized and persisted")
     void test001() {
@@ -238,8 +255,118 @@ class PidiSessionAdapterTest extends IntegrationTest {
         session.putParameter(SessionKey.REQUEST_URI, requestUri);
         sessionAdapter.update(session, AUTH_CONFIG.getSessionExpirationTime());
 
-        var params = jdbcTemplate.queryForObject("select session from pidi_session where id = ?", String.class, session.getSessionId());
-        var expected = "{\"%s\":\"%s\"}".formatted(SessionKey.REQUEST_URI.getValue(), requestUri);
-        assertThat(params).isEqualToIgnoringWhitespace(expected);
+        var data = jdbcTemplate.queryForObject("select session_data from pidi_session where id = ?", byte[].class, session.getSessionId());
+        assertThat(new String(data, StandardCharsets.UTF_8)).contains(SessionKey.REQUEST_URI.getValue(), requestUri);
+        assertThat(SessionParameterCodec.decode(data)).containsExactly(entry(SessionKey.REQUEST_URI, requestUri));
+    }
+
+    @Test
+    @DisplayName("Verify session stored as json before the binary encoding gets loaded")
+    void test018() {
+        var session = sessionAdapter.init(FlowVariant.C, Requests.PUSHED_AUTHORIZATION_REQUEST, AUTH_CONFIG.getSessionExpirationTime());
+        var requestUri = TestUtils.generateRequestUri();
+        jdbcTemplate.update("update pidi_session set request_uri = ?, session = ? where id = ?", requestUri,
+                "{\"%s\":\"%s\"}".formatted(SessionKey.REQUEST_URI.getValue(), requestUri), session.getSessionId());
+
+        var foundSession = sessionAdapter.findByRequestUri(requestUri);
+
+        assertThat(foundSession.getParameter(SessionKey.REQUEST_URI)).isEqualTo(requestUri);
+    }
+
+    @Test
+    @DisplayName("Verify session changed by a concurrent request can not be stored")
+    void test019() {
+        var session = sessionAdapter.init(FlowVariant.C, Requests.PUSHED_AUTHORIZATION_REQUEST, AUTH_CONFIG.getSessionExpirationTime());
+        var requestUri = TestUtils.generateRequestUri();
+        session.putParameter(SessionKey.REQUEST_URI, requestUri);
+        sessionAdapter.update(session, AUTH_CONFIG.getSessionExpirationTime());
+        var first = sessionAdapter.findByRequestUri(requestUri);
+        var second = sessionAdapter.findByRequestUri(requestUri);
+
+        first.setNextExpectedRequest(Requests.AUTHORIZATION_REQUEST);
+        sessionAdapter.update(first, AUTH_CONFIG.getSessionExpirationTime());
+        second.setNextExpectedRequest(Requests.FINISH_AUTHORIZATION_REQUEST);
+
+        assertThatThrownBy(() -> sessionAdapter.update(second, AUTH_CONFIG.getSessionExpirationTime()))
+                .isInstanceOf(InvalidRequestException.class);
+        assertThatThrownBy(() -> sessionAdapter.persistAndTerminate(second))
+                .isInstanceOf(InvalidRequestException.class);
+        assertThat(sessionAdapter.findByRequestUri(requestUri).getNextExpectedRequest()).isEqualTo(Requests.AUTHORIZATION_REQUEST);
+        // the winning request can go on with its session
+        sessionAdapter.update(first, AUTH_CONFIG.getSessionExpirationTime());
+    }
+
+    @Test
+    @DisplayName("Verify expired sessions get deleted in chunks")
+    void test020() {
+        // expired long before the sessions of the other tests, so these are not affected
+        var expired = Instant.parse("2000-01-01T00:00:00Z");
+        var ids = new ArrayList<Long>();
+        for (int i = 0; i < 3; i++) {
+            var entity = new PidiSessionEntity();
+            entity.setFlow(FlowVariant.C);
+            entity.setNextExpectedRequest(Requests.AUTHORIZATION_REQUEST);
+            entity.setExpires(expired.plusSeconds(i));
+            ids.add(sessionRepository.save(entity).getId());
+        }
+        var now = expired.plus(Duration.ofDays(1));
+
+        assertThat(sessionAdapter.countExpiredSessions(now)).isEqualTo(3);
+        assertThat(sessionAdapter.deleteExpiredSessions(now, 2)).isEqualTo(2);
+        assertThat(sessionAdapter.countExpiredSessions(now)).isEqualTo(1);
+        assertThat(sessionAdapter.deleteExpiredSessions(now, 2)).isEqualTo(1);
+        assertThat(sessionRepository.findAllById(ids)).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Verify session parameters get written as json for nodes of the previous release")
+    void test021() {
+        authorizationConfiguration.setSessionJsonCompatibility(true);
+        var session = sessionAdapter.init(FlowVariant.C, Requests.PUSHED_AUTHORIZATION_REQUEST, AUTH_CONFIG.getSessionExpirationTime());
+        var requestUri = TestUtils.generateRequestUri();
+        session.putParameter(SessionKey.REQUEST_URI, requestUri);
+        sessionAdapter.update(session, AUTH_CONFIG.getSessionExpirationTime());
+
+        var json = jdbcTemplate.queryForObject("select session from pidi_session where id = ?", String.class, session.getSessionId());
+        assertThat(json).isEqualToIgnoringWhitespace("{\"%s\":\"%s\"}".formatted(SessionKey.REQUEST_URI.getValue(), requestUri));
+    }
+
+    @Test
+    @DisplayName("Verify session updated by a node of the previous release gets loaded from json")
+    void test022() {
+        authorizationConfiguration.setSessionJsonCompatibility(true);
+        var session = sessionAdapter.init(FlowVariant.C, Requests.PUSHED_AUTHORIZATION_REQUEST, AUTH_CONFIG.getSessionExpirationTime());
+        var requestUri = TestUtils.generateRequestUri();
+        session.putParameter(SessionKey.REQUEST_URI, requestUri);
+        sessionAdapter.update(session, AUTH_CONFIG.getSessionExpirationTime());
+        // the previous release only knows the json column, session_data keeps the former parameters
+        var issuerState = TestUtils.generateIssuerState();
+        jdbcTemplate.update("update pidi_session set session = ? where id = ?",
+                "{\"%s\":\"%s\",\"%s\":\"%s\"}".formatted(SessionKey.REQUEST_URI.getValue(), requestUri, SessionKey.ISSUER_STATE.getValue(), issuerState),
+                session.getSessionId());
+
+        var foundSession = sessionAdapter.findByRequestUri(requestUri);
+
+        assertThat(foundSession.getParameter(SessionKey.ISSUER_STATE)).isEqualTo(issuerState);
+    }
+
+    @Test
+    @DisplayName("Verify session parameters get written and read binary only without json compatibility")
+    void test023() {
+        var session = sessionAdapter.init(FlowVariant.C, Requests.PUSHED_AUTHORIZATION_REQUEST, AUTH_CONFIG.getSessionExpirationTime());
+        var requestUri = TestUtils.generateRequestUri();
+        session.putParameter(SessionKey.REQUEST_URI, requestUri);
+        sessionAdapter.update(session, AUTH_CONFIG.getSessionExpirationTime());
+
+        var json = jdbcTemplate.queryForObject("select session from pidi_session where id = ?", String.class, session.getSessionId());
+        assertThat(json).isNull();
+        // json left behind by a node of the previous release is ignored once session_data is written
+        jdbcTemplate.update("update pidi_session set session = ? where id = ?",
+                "{\"%s\":\"%s\"}".formatted(SessionKey.ISSUER_STATE.getValue(), TestUtils.generateIssuerState()), session.getSessionId());
+
+        var foundSession = sessionAdapter.findByRequestUri(requestUri);
+
+        assertThat(foundSession.getParameter(SessionKey.REQUEST_URI)).isEqualTo(requestUri);
+        assertThat(foundSession.getParameter(SessionKey.ISSUER_STATE)).isNull();
     }
 }
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.authorization.out.persistence;
+
+import de.bdr.pidi.authorization.FlowVariant;
+import de.bdr.pidi.authorization.core.domain.Requests;
+import de.bdr.pidi.authorization.core.domain.SessionKey;
+import de.bdr.pidi.end2end.integration.IntegrationTest;
+import de.bdr.pidi.testdata.TestUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Compares the throughput of the session stores by simulating complete flows (PAR, authorize, finish authorization,
+ * token, credential) on several threads. Run with {@code mvn test -Dtest.groups=benchmark}.
+ */
+@Slf4j
+@Tag("benchmark")
+class PidiSessionStoreBenchmarkTest extends IntegrationTest {
+
+    private static final Duration EXPIRATION = Duration.ofMinutes(60);
+    private static final int THREADS = 16;
+    private static final int FLOWS_PER_THREAD = 200;
+
+    @Autowired
+    private PidiSessionAdapter jpaStore;
+
+    @Test
+    @DisplayName("Benchmark concurrent flows on the jpa and the in-memory session store")
+    void test001() {
+        var inMemoryStore = new InMemoryPidiSessionStore(1_000_000, Clock.systemUTC());
+        // warm up both stores before measuring
+        runFlows(jpaStore, 2, 50);
+        runFlows(inMemoryStore, 2, 50);
+
+        var jpa = runFlows(jpaStore, THREADS, FLOWS_PER_THREAD);
+        var inMemory = runFlows(inMemoryStore, THREADS, FLOWS_PER_THREAD);
+
+        log.info("Session store throughput with {} threads: jpa {} flows/s, memory {} flows/s", THREADS, jpa, inMemory);
+        assertThat(inMemory).isGreaterThan(jpa);
+    }
+
+    /**
+     * @return completed flows per second
+     */
+    private static long runFlows(PidiSessionStore store, int threads, int flowsPerThread) {
+        var completed = new AtomicInteger();
+        var start = System.nanoTime();
+        try (var executor = Executors.newFixedThreadPool(threads)) {
+            for (int t = 0; t < threads; t++) {
+                executor.execute(() -> {
+                    for (int i = 0; i < flowsPerThread; i++) {
+                        runFlow(store);
+                        completed.incrementAndGet();
+                    }
+                });
+            }
+        }
+        var elapsed = Duration.ofNanos(System.nanoTime() - start);
+        assertThat(completed.get()).isEqualTo(threads * flowsPerThread);
+        return completed.get() * 1_000L / Math.max(1, elapsed.toMillis());
+    }
+
+    private static void runFlow(PidiSessionStore store) {
+        var requestUri = TestUtils.generateRequestUri();
+        var session = store.init(FlowVariant.C, Requests.PUSHED_AUTHORIZATION_REQUEST, EXPIRATION);
+        session.putParameter(SessionKey.CLIENT_ID, "fed79862-af36-4fee-8e64-89e3c91091ed");
+        session.putParameter(SessionKey.REQUEST_URI, requestUri);
+        session.setNextExpectedRequest(Requests.AUTHORIZATION_REQUEST);
+        store.update(session, EXPIRATION);
+
+        var issuerState = TestUtils.generateIssuerState();
+        session = store.findByRequestUri(requestUri);
+        session.putParameter(SessionKey.ISSUER_STATE, issuerState);
+        session.setNextExpectedRequest(Requests.FINISH_AUTHORIZATION_REQUEST);
+        store.update(session, EXPIRATION);
+
+        var authorizationCode = TestUtils.generateAuthorizationCode();
+        session = store.findByIssuerState(issuerState);
+        session.putParameter(SessionKey.IDENTIFICATION_DATA, "{\"givenName\":\"ERIKA\",\"familyName\":\"MUSTERMANN\"}");
+        session.putParameter(SessionKey.AUTHORIZATION_CODE, authorizationCode);
+        session.setNextExpectedRequest(Requests.TOKEN_REQUEST);
+        store.update(session, EXPIRATION);
+
+        var accessToken = TestUtils.generateAccessToken();
+        session = store.findByAuthorizationCode(authorizationCode);
+        session.putParameter(SessionKey.ACCESS_TOKEN, accessToken);
+        session.setNextExpectedRequest(Requests.CREDENTIAL_REQUEST);
+        store.update(session, EXPIRATION);
+
+        session = store.findByAccessToken(accessToken);
+        store.persistAndTerminate(session);
+    }
+}
@@ -9,12 +9,17 @@ import de.bdr.pidi.end2end.integration.IntegrationTest;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.Optional;
+import java.util.OptionalInt;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static de.bdr.pidi.authorization.ConfigTestData.AUTH_CONFIG;
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.assertj.core.api.Assertions.assertThatCode;
 
 class PinRetryCounterAdapterTest extends IntegrationTest {
 
@@ -35,17 +40,65 @@ class PinRetryCounterAdapterTest extends IntegrationTest {
         Optional<PinRetryCounter> optionalPinRetryCounter = pinRetryCounterAdapter.find("digest");
         assertThat(optionalPinRetryCounter).isPresent().get().isEqualTo(pinRetryCounter);
 
-        pinRetryCounter.increment();
-        assertThatCode(() -> pinRetryCounterAdapter.increment(pinRetryCounter)).doesNotThrowAnyException();
+        assertThat(pinRetryCounterAdapter.increment("digest", 2, AUTH_CONFIG.getPinRetryCounterValidity())).hasValue(1);
         assertThat(pinRetryCounterRepository.findFirstByDigest("digest")).isPresent().map(PinRetryCounterEntity::getValue).isEqualTo(Optional.of(1));
 
-        pinRetryCounter.increment();
-        pinRetryCounter.increment();
-        assertThatCode(() -> pinRetryCounterAdapter.increment(pinRetryCounter))
-                .isExactlyInstanceOf(IllegalArgumentException.class)
-                .hasMessage("PinRetryCounter is invalid.");
+        assertThat(pinRetryCounterAdapter.increment("digest", 2, AUTH_CONFIG.getPinRetryCounterValidity())).hasValue(2);
+        assertThat(pinRetryCounterAdapter.increment("digest", 2, AUTH_CONFIG.getPinRetryCounterValidity())).isEmpty();
+        assertThat(pinRetryCounterRepository.findFirstByDigest("digest")).isPresent().map(PinRetryCounterEntity::getValue).isEqualTo(Optional.of(2));
 
-        pinRetryCounterAdapter.create("digest", AUTH_CONFIG.getPinRetryCounterValidity());
+        var recreated = pinRetryCounterAdapter.create("digest", AUTH_CONFIG.getPinRetryCounterValidity());
+        assertThat(recreated.getId()).isEqualTo(pinRetryCounter.getId());
         assertThat(pinRetryCounterRepository.findFirstByDigest("digest")).isPresent().map(PinRetryCounterEntity::getValue).isEqualTo(Optional.of(0));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testConcurrentIncrementsDoNotExceedLimit() throws InterruptedException {
+        var digest = UUID.randomUUID().toString();
+        var validity = AUTH_CONFIG.getPinRetryCounterValidity();
+        var limit = AUTH_CONFIG.getMaxPinRetries();
+        pinRetryCounterAdapter.create(digest, validity);
+        var incremented = new AtomicInteger();
+        var start = new CountDownLatch(1);
+
+        try (var executor = Executors.newFixedThreadPool(8)) {
+            for (int i = 0; i < 32; i++) {
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                        if (pinRetryCounterAdapter.increment(digest, limit, validity).isPresent()) {
+                            incremented.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            start.countDown();
+        }
+
+        assertThat(incremented.get()).isEqualTo(limit);
+        assertThat(pinRetryCounterAdapter.find(digest)).isPresent().get().extracting(PinRetryCounter::getValue).isEqualTo(limit);
+    }
+
+    @Test
+    void testMissingCounterIsCreatedOnIncrement() {
+        var digest = UUID.randomUUID().toString();
+
+        assertThat(pinRetryCounterAdapter.increment(digest, 3, Duration.ofMinutes(5))).hasValue(1);
+        assertThat(pinRetryCounterAdapter.find(digest)).isPresent().get().extracting(PinRetryCounter::getValue).isEqualTo(1);
+    }
+
+    @Test
+    void testExpiredCountersGetDeleted() {
+        // expired long before the counters of the other tests, so these are not affected
+        var expired = Instant.parse("2000-01-01T00:00:00Z");
+        var digest = UUID.randomUUID().toString();
+        pinRetryCounterAdapter.create(digest, Duration.between(Instant.now(), expired));
+        var now = expired.plus(Duration.ofDays(1));
+
+        assertThat(pinRetryCounterAdapter.countExpired(now)).isEqualTo(1);
+        assertThat(pinRetryCounterAdapter.deleteExpired(now, 10)).isEqualTo(1);
+        assertThat(pinRetryCounterAdapter.find(digest)).isEmpty();
+    }
+}
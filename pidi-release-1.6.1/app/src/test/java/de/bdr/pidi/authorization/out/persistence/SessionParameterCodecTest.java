@@ -0,0 +1,58 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.authorization.out.persistence;
+
+import de.bdr.pidi.authorization.core.domain.SessionKey;
+import de.bdr.pidi.base.PidServerException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SessionParameterCodecTest {
+
+    @Test
+    @DisplayName("Verify session parameters survive encoding and decoding")
+    void test001() {
+        var parameters = new EnumMap<SessionKey, String>(SessionKey.class);
+        parameters.put(SessionKey.REQUEST_URI, "urn:ietf:params:oauth:request_uri:abc");
+        parameters.put(SessionKey.IDENTIFICATION_DATA, "{\"name\":\"Müller\",\"quote\":\"\\\"\"}");
+        parameters.put(SessionKey.SCOPE, "");
+        parameters.put(SessionKey.STATE, null);
+
+        var decoded = SessionParameterCodec.decode(SessionParameterCodec.encode(parameters));
+
+        assertThat(decoded).isEqualTo(parameters);
+    }
+
+    @Test
+    @DisplayName("Verify empty session parameters")
+    void test002() {
+        assertThat(SessionParameterCodec.decode(SessionParameterCodec.encode(Map.of()))).isEmpty();
+    }
+
+    @Test
+    @DisplayName("Verify session parameters are encoded using the SessionKey value (not enum name)")
+    void test003() {
+        var encoded = new String(SessionParameterCodec.encode(Map.of(SessionKey.REQUEST_URI, "uri")), StandardCharsets.ISO_8859_1);
+
+        assertThat(encoded).contains(SessionKey.REQUEST_URI.getValue()).doesNotContain(SessionKey.REQUEST_URI.name());
+    }
+
+    @Test
+    @DisplayName("Verify truncated session parameters are rejected")
+    void test004() {
+        var encoded = SessionParameterCodec.encode(Map.of(SessionKey.REQUEST_URI, "uri"));
+
+        assertThatThrownBy(() -> SessionParameterCodec.decode(Arrays.copyOf(encoded, encoded.length - 1)))
+                .isInstanceOf(PidServerException.class);
+    }
+}
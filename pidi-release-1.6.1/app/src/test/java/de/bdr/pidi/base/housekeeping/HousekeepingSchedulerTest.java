@@ -0,0 +1,110 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.base.housekeeping;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.lenient;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class HousekeepingSchedulerTest {
+
+    @Mock
+    private HousekeepingLock lock;
+    @Mock
+    private HousekeepingTask sessions;
+    @Mock
+    private HousekeepingTask nonces;
+
+    private final HousekeepingConfiguration configuration = new HousekeepingConfiguration();
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private HousekeepingScheduler scheduler;
+
+    @BeforeEach
+    void setUp() {
+        configuration.setChunkSize(10);
+        configuration.setChunkPause(Duration.ZERO);
+        lenient().doReturn("sessions").when(sessions).getName();
+        lenient().doReturn("nonces").when(nonces).getName();
+        scheduler = new HousekeepingScheduler(configuration, lock, List.of(sessions, nonces), meterRegistry);
+    }
+
+    @Test
+    @DisplayName("Verify expired entries get deleted in chunks until a chunk is not full")
+    void test001() {
+        doReturn(true).when(lock).tryLock(configuration.getMaxRunTime());
+        doReturn(10, 10, 3).when(sessions).deleteExpired(any(), anyInt());
+        doReturn(0L).when(sessions).countExpired(any());
+        doReturn(0).when(nonces).deleteExpired(any(), anyInt());
+        doReturn(0L).when(nonces).countExpired(any());
+
+        scheduler.run();
+
+        verify(sessions, times(3)).deleteExpired(any(), anyInt());
+        verify(nonces).deleteExpired(any(), anyInt());
+        verify(lock).unlock();
+        assertThat(meterRegistry.get("pidi.housekeeping.deleted").tag("task", "sessions").counter().count()).isEqualTo(23);
+        assertThat(meterRegistry.get("pidi.housekeeping.duration").tag("task", "sessions").timer().count()).isEqualTo(1);
+    }
+
+    @Test
+    @DisplayName("Verify run stops after the maximum run time and reports the backlog")
+    void test002() {
+        configuration.setMaxRunTime(Duration.ZERO);
+        doReturn(true).when(lock).tryLock(Duration.ZERO);
+        doReturn(10).when(sessions).deleteExpired(any(), anyInt());
+        doReturn(42L).when(sessions).countExpired(any());
+        doReturn(0).when(nonces).deleteExpired(any(), anyInt());
+        doReturn(0L).when(nonces).countExpired(any());
+
+        scheduler.run();
+
+        verify(sessions).deleteExpired(any(), anyInt());
+        assertThat(meterRegistry.get("pidi.housekeeping.backlog").tag("task", "sessions").gauge().value()).isEqualTo(42);
+    }
+
+    @Test
+    @DisplayName("Verify nothing gets deleted while another node holds the lock")
+    void test003() {
+        doReturn(false).when(lock).tryLock(any());
+
+        scheduler.run();
+
+        verify(sessions, never()).deleteExpired(any(), anyInt());
+        verify(lock, never()).unlock();
+    }
+
+    @Test
+    @DisplayName("Verify a failing task does not stop the other tasks")
+    void test004() {
+        doReturn(true).when(lock).tryLock(any());
+        doThrow(new IllegalStateException("database unavailable")).when(sessions).deleteExpired(any(), anyInt());
+        doReturn(5).when(nonces).deleteExpired(any(), anyInt());
+        doReturn(0L).when(nonces).countExpired(any());
+
+        scheduler.run();
+
+        verify(nonces).deleteExpired(any(), anyInt());
+        verify(lock).unlock();
+        assertThat(meterRegistry.get("pidi.housekeeping.deleted").tag("task", "nonces").counter().count()).isEqualTo(5);
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.base.random;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.security.DrbgParameters;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SecureRandomPoolTest {
+
+    @Test
+    @DisplayName("Verify number of instances is rounded up to a power of two")
+    void test001() {
+        assertThat(new SecureRandomPool(1, 128, Duration.ZERO).size()).isEqualTo(1);
+        assertThat(new SecureRandomPool(3, 128, Duration.ZERO).size()).isEqualTo(4);
+        assertThat(new SecureRandomPool(8, 128, Duration.ZERO).size()).isEqualTo(8);
+        assertThat(new SecureRandomPool(0, 128, Duration.ZERO).size())
+                .isGreaterThanOrEqualTo(2 * Runtime.getRuntime().availableProcessors());
+    }
+
+    @Test
+    @DisplayName("Verify a thread keeps its DRBG instance with the requested strength")
+    void test002() {
+        var pool = new SecureRandomPool(4, 256, Duration.ofMinutes(10));
+
+        var random = pool.current();
+
+        assertThat(pool.current()).isSameAs(random);
+        assertThat(random.getAlgorithm()).isEqualTo("DRBG");
+        assertThat(random.getParameters()).isInstanceOfSatisfying(DrbgParameters.Instantiation.class,
+                parameters -> assertThat(parameters.getStrength()).isGreaterThanOrEqualTo(256));
+    }
+
+    @Test
+    @DisplayName("Verify concurrent threads spread over the instances and draw distinct values")
+    void test003() throws InterruptedException {
+        var pool = new SecureRandomPool(8, 128, Duration.ofMillis(1));
+        Set<SecureRandom> used = ConcurrentHashMap.newKeySet();
+        Set<String> values = ConcurrentHashMap.newKeySet();
+        var start = new CountDownLatch(1);
+
+        try (var executor = Executors.newFixedThreadPool(16)) {
+            for (int i = 0; i < 16; i++) {
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                        for (int j = 0; j < 1_000; j++) {
+                            var random = pool.current();
+                            used.add(random);
+                            var bytes = new byte[16];
+                            random.nextBytes(bytes);
+                            values.add(HexFormat.of().formatHex(bytes));
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            start.countDown();
+        }
+
+        assertThat(used).hasSizeGreaterThan(1);
+        assertThat(values).hasSize(16_000);
+    }
+
+    @Test
+    @DisplayName("Verify unsupported strength is rejected on creation")
+    void test004() {
+        assertThatThrownBy(() -> new SecureRandomPool(1, 512, Duration.ZERO))
+                .isInstanceOf(IllegalStateException.class);
+    }
+}
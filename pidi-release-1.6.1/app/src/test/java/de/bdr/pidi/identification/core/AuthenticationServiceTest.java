@@ -0,0 +1,132 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.identification.core;
+
+import de.bdr.pidi.end2end.integration.IntegrationTest;
+import de.bdr.pidi.identification.core.exception.AuthenticationNotFoundException;
+import de.bdr.pidi.identification.core.exception.SamlCryptoConfigException;
+import de.bdr.pidi.identification.core.exception.SamlResponseValidationFailedException;
+import de.bdr.pidi.identification.core.model.AuthenticationState;
+import de.bdr.pidi.identification.core.model.ResponseData;
+import de.bdr.pidi.identification.out.persistence.AuthenticationRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AuthenticationServiceTest extends IntegrationTest {
+
+    private static final String RESPONSE_URL = "https://localhost/saml-consumer";
+    private static final ResponseData RESPONSE_DATA = new ResponseData("pseudonym", null, null, null, null, null, null, null, true);
+
+    @MockitoBean
+    private EidAuth autent;
+
+    @Autowired
+    private AuthenticationService authenticationService;
+
+    @Autowired
+    private AuthenticationRepository repository;
+
+    private final List<String> tokenIds = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        tokenIds.stream().map(repository::findByTokenId).filter(Objects::nonNull).forEach(repository::delete);
+        tokenIds.clear();
+    }
+
+    @Test
+    void testReusedTokenIdIsRejectedWithoutSamlRequest() {
+        var tokenId = initialize();
+        when(autent.createSamlRedirectBindingUrl(anyString(), anyString())).thenReturn("https://localhost/saml");
+
+        authenticationService.createSamlRedirectBindingUrl(tokenId, RESPONSE_URL);
+        assertThatThrownBy(() -> authenticationService.createSamlRedirectBindingUrl(tokenId, RESPONSE_URL))
+                .isInstanceOf(AuthenticationNotFoundException.class);
+
+        verify(autent, times(1)).createSamlRedirectBindingUrl(anyString(), anyString());
+    }
+
+    @Test
+    void testFailedSamlRequestRollsBackTheTransition() {
+        var tokenId = initialize();
+        when(autent.createSamlRedirectBindingUrl(anyString(), anyString()))
+                .thenThrow(new SamlCryptoConfigException("failed to SAML request", true))
+                .thenReturn("https://localhost/saml");
+
+        assertThatThrownBy(() -> authenticationService.createSamlRedirectBindingUrl(tokenId, RESPONSE_URL))
+                .isInstanceOf(SamlCryptoConfigException.class);
+        assertThat(repository.findByTokenId(tokenId).getAuthenticationState()).isEqualTo(AuthenticationState.INITIALIZED);
+
+        assertThat(authenticationService.createSamlRedirectBindingUrl(tokenId, RESPONSE_URL)).isEqualTo("https://localhost/saml");
+        assertThat(repository.findByTokenId(tokenId).getAuthenticationState()).isEqualTo(AuthenticationState.STARTED);
+    }
+
+    @Test
+    void testUnknownOrReplayedRelayStateIsRejectedWithoutValidation() {
+        var samlId = start();
+        when(autent.validateSamlResponseAndExtractPseudonym(any(), any(), any(), any(), any())).thenReturn(RESPONSE_DATA);
+
+        assertThatThrownBy(() -> authenticationService.receiveSamlResponse("unknown", "response", "alg", "sig", RESPONSE_URL))
+                .isInstanceOf(AuthenticationNotFoundException.class);
+        verify(autent, never()).validateSamlResponseAndExtractPseudonym(any(), any(), any(), any(), any());
+
+        assertThat(authenticationService.receiveSamlResponse(samlId, "response", "alg", "sig", RESPONSE_URL)).isEqualTo(RESPONSE_DATA);
+        assertThatThrownBy(() -> authenticationService.receiveSamlResponse(samlId, "response", "alg", "sig", RESPONSE_URL))
+                .isInstanceOf(AuthenticationNotFoundException.class);
+        verify(autent, times(1)).validateSamlResponseAndExtractPseudonym(any(), any(), any(), any(), any());
+    }
+
+    @Test
+    void testInvalidSamlResponseRollsBackTheTransition() {
+        var samlId = start();
+        when(autent.validateSamlResponseAndExtractPseudonym(any(), any(), any(), any(), any()))
+                .thenThrow(new SamlResponseValidationFailedException("invalid signature", null, null))
+                .thenReturn(RESPONSE_DATA);
+
+        assertThatThrownBy(() -> authenticationService.receiveSamlResponse(samlId, "response", "alg", "sig", RESPONSE_URL))
+                .isInstanceOf(SamlResponseValidationFailedException.class);
+        assertThat(repository.findBySamlId(samlId).getAuthenticationState()).isEqualTo(AuthenticationState.STARTED);
+
+        assertThat(authenticationService.receiveSamlResponse(samlId, "response", "alg", "sig", RESPONSE_URL)).isEqualTo(RESPONSE_DATA);
+        assertThat(repository.findBySamlId(samlId).getAuthenticationState()).isEqualTo(AuthenticationState.RESPONDED);
+    }
+
+    private String initialize() {
+        try {
+            var authentication = authenticationService.initializeAuthentication(null, URI.create("https://localhost/redirect").toURL(), null);
+            tokenIds.add(authentication.getTokenId());
+            return authentication.getTokenId();
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * @return the samlId of a STARTED Authentication
+     */
+    private String start() {
+        var tokenId = initialize();
+        when(autent.createSamlRedirectBindingUrl(anyString(), anyString())).thenReturn("https://localhost/saml");
+        authenticationService.createSamlRedirectBindingUrl(tokenId, RESPONSE_URL);
+        return repository.findByTokenId(tokenId).getSamlId();
+    }
+}
@@ -6,14 +6,16 @@ package de.bdr.pidi.identification.core;
 
 import de.bdr.pidi.identification.core.configuration.MultiSamlConfiguration;
 import de.bdr.pidi.identification.core.exception.CryptoConfigException;
-import de.bdr.pidi.identification.core.model.Authentication;
 import de.bund.bsi.eid240.GeneralDateType;
 import de.bund.bsi.eid240.GeneralPlaceType;
 import de.bund.bsi.eid240.PersonalDataType;
 import de.bund.bsi.eid240.PlaceType;
 import de.bund.bsi.eid240.RestrictedIDType;
 import de.governikus.panstar.sdk.saml.configuration.SamlConfiguration;
+import de.governikus.panstar.sdk.saml.exception.SamlRequestException;
+import de.governikus.panstar.sdk.saml.request.SamlRequestGenerator;
 import de.governikus.panstar.sdk.saml.response.ProcessedSamlResult;
+import de.governikus.panstar.sdk.utils.exception.InvalidInputException;
 import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.BeforeEach;
@@ -21,11 +23,19 @@ import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.ArgumentMatchers;
 import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
@@ -93,14 +103,11 @@ class EidAuthAdapterTest {
     @ParameterizedTest
     @ValueSource(ints = {0, 1})
     void test_mapResponse_ok(int i) {
-        var relayState = "relayState";
-        Authentication auth = Mockito.mock(Authentication.class);
-        Mockito.when(auth.getSamlId()).thenReturn(relayState);
         ProcessedSamlResult processed = Mockito.mock(ProcessedSamlResult.class);
         var personalData = personal(i);
         Mockito.when(processed.getPersonalData()).thenReturn(personalData);
 
-        var result = out.mapEidResponse(relayState, auth, processed);
+        var result = out.mapEidResponse(processed);
 
         Assertions.assertAll(
                 () -> Assertions.assertNotNull(result),
@@ -134,4 +141,87 @@ class EidAuthAdapterTest {
 
     }
 
+    @Test
+    void test_createSamlRedirectBinding_createsGeneratorsForConcurrentRequestsAndReusesThem() throws Exception {
+        var responseUrl = "https://return.to/saml";
+        Mockito.when(msConf1.getResponseUrl()).thenReturn(responseUrl);
+        Mockito.when(msConf1.getConfigurations()).thenReturn(List.of(Mockito.mock(SamlConfiguration.class)));
+        int threads = 8;
+        var created = new AtomicInteger();
+        var usage = new GeneratorUsage(threads);
+        out = new EidAuthAdapter(msConf1, msConf2, micrometer, configuration -> {
+            created.incrementAndGet();
+            return usage.generator();
+        });
+
+        // all requests of the first round wait for each other, so they run concurrently
+        createUrls(responseUrl, threads, threads);
+        int createdForPeak = created.get();
+        usage.ungate();
+        createUrls(responseUrl, threads, 64);
+        createUrls(responseUrl, 1, 16);
+
+        Assertions.assertAll(
+                () -> Assertions.assertEquals(threads, usage.peak.get()),
+                () -> Assertions.assertEquals(threads, createdForPeak),
+                () -> Assertions.assertEquals(threads, created.get(), "the generators were not reused"),
+                () -> Assertions.assertEquals(threads + 64 + 16, usage.calls.get()),
+                () -> Assertions.assertFalse(usage.sharedUse.get(), "a generator was used by two threads at once")
+        );
+    }
+
+    /** creates generators that note their calls, the concurrency of the calls and whether one is shared */
+    private static class GeneratorUsage {
+        final AtomicInteger calls = new AtomicInteger();
+        final AtomicInteger peak = new AtomicInteger();
+        final AtomicBoolean sharedUse = new AtomicBoolean();
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final CountDownLatch gate;
+
+        GeneratorUsage(int gated) {
+            gate = new CountDownLatch(gated);
+        }
+
+        void ungate() {
+            while (gate.getCount() > 0) {
+                gate.countDown();
+            }
+        }
+
+        SamlRequestGenerator generator() throws InvalidInputException, SamlRequestException {
+            var inUse = new AtomicBoolean();
+            var generator = Mockito.mock(SamlRequestGenerator.class);
+            Mockito.when(generator.createSamlRequestUrl(ArgumentMatchers.any(), ArgumentMatchers.anyString()))
+                    .thenAnswer(invocation -> {
+                        if (!inUse.compareAndSet(false, true)) {
+                            sharedUse.set(true);
+                        }
+                        peak.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                        try {
+                            calls.incrementAndGet();
+                            gate.countDown();
+                            Assertions.assertTrue(gate.await(5, TimeUnit.SECONDS), "requests did not run concurrently");
+                            return "https://eid.example/saml?RelayState=" + invocation.getArgument(1);
+                        } finally {
+                            inFlight.decrementAndGet();
+                            inUse.set(false);
+                        }
+                    });
+            return generator;
+        }
+    }
+
+    private void createUrls(String responseUrl, int threads, int requests) throws Exception {
+        try (var executor = Executors.newFixedThreadPool(threads)) {
+            List<Future<String>> urls = new ArrayList<>();
+            for (int i = 0; i < requests; i++) {
+                var sessionId = "session" + i;
+                urls.add(executor.submit(() -> out.createSamlRedirectBindingUrl(sessionId, responseUrl)));
+            }
+            for (var url : urls) {
+                Assertions.assertNotNull(url.get());
+            }
+        }
+    }
+
 }
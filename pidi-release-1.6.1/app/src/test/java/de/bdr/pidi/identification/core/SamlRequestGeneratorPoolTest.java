@@ -0,0 +1,86 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.identification.core;
+
+import de.governikus.panstar.sdk.saml.configuration.SamlConfiguration;
+import de.governikus.panstar.sdk.saml.request.SamlRequestGenerator;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+class SamlRequestGeneratorPoolTest {
+
+    private final List<SamlRequestGenerator> created = new ArrayList<>();
+    private final SamlRequestGeneratorPool out = new SamlRequestGeneratorPool(Mockito.mock(SamlConfiguration.class),
+            configuration -> {
+                var generator = Mockito.mock(SamlRequestGenerator.class);
+                created.add(generator);
+                return generator;
+            }, 2);
+
+    @Test
+    void test_withGenerator_reusesGenerator() throws Exception {
+        var first = out.withGenerator(generator -> generator);
+        var second = out.withGenerator(generator -> generator);
+
+        Assertions.assertSame(first, second);
+        Assertions.assertEquals(1, created.size());
+    }
+
+    @Test
+    void test_withGenerator_nestedUseGetsDistinctGenerators() throws Exception {
+        var used = useNested(4);
+
+        Assertions.assertEquals(4, used.size());
+        Assertions.assertEquals(4, created.size());
+    }
+
+    @Test
+    void test_withGenerator_keepsAtMostMaxIdleGenerators() throws Exception {
+        var peak = useNested(4);
+
+        var afterPeak = useNested(4);
+
+        // two of the peak were kept, two are created again
+        Assertions.assertEquals(6, created.size());
+        var kept = new HashSet<>(afterPeak);
+        kept.retainAll(peak);
+        Assertions.assertEquals(2, kept.size());
+    }
+
+    @Test
+    void test_constructor_rejectsNonPositiveMaxIdle() {
+        var configuration = Mockito.mock(SamlConfiguration.class);
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> new SamlRequestGeneratorPool(configuration, c -> null, 0));
+    }
+
+    /** @return the generators of the given number of nested, thus simultaneous, uses */
+    private Set<SamlRequestGenerator> useNested(int depth) throws Exception {
+        var used = new HashSet<SamlRequestGenerator>();
+        useNested(depth, used);
+        return used;
+    }
+
+    private void useNested(int depth, Set<SamlRequestGenerator> used) throws Exception {
+        if (depth == 0) {
+            return;
+        }
+        out.withGenerator(generator -> {
+            used.add(generator);
+            try {
+                useNested(depth - 1, used);
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+            return null;
+        });
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.identification.out.persistence;
+
+import de.bdr.pidi.end2end.integration.IntegrationTest;
+import de.bdr.pidi.identification.core.model.Authentication;
+import de.bdr.pidi.identification.core.model.AuthenticationState;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class JpaAuthenticationStoreTest extends IntegrationTest {
+
+    @Autowired
+    private JpaAuthenticationStore store;
+
+    @Autowired
+    private AuthenticationRepository repository;
+
+    private final List<String> tokenIds = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        tokenIds.stream().map(repository::findByTokenId).filter(Objects::nonNull).forEach(repository::delete);
+        tokenIds.clear();
+    }
+
+    @Test
+    void testTransitions() {
+        var tokenId = initialize(Duration.ofMinutes(5));
+        var samlId = randomId();
+        var now = Instant.now();
+
+        var started = store.startIdentifiedByToken(tokenId, samlId, now);
+        assertThat(started).get().extracting(Authentication::getAuthenticationState).isEqualTo(AuthenticationState.STARTED);
+        assertThat(started).get().extracting(Authentication::getSamlId).isEqualTo(samlId);
+
+        var responded = store.respondIdentifiedBySaml(samlId, now);
+        assertThat(responded).get().extracting(Authentication::getAuthenticationState).isEqualTo(AuthenticationState.RESPONDED);
+        var referenceId = responded.orElseThrow().getReferenceId();
+        assertThat(referenceId).isEqualTo(tokenId);
+
+        var sessionId = randomId();
+        var validUntil = now.plus(Duration.ofMinutes(15));
+        var authenticated = store.authenticateIdentifiedByReference(referenceId, tokenId, sessionId, validUntil, now);
+        assertThat(authenticated).get().extracting(Authentication::getAuthenticationState).isEqualTo(AuthenticationState.AUTHENTICATED);
+        assertThat(authenticated).get().extracting(Authentication::getSessionId).isEqualTo(sessionId);
+        assertThat(repository.findBySessionId(sessionId).getValidUntil()).isCloseTo(validUntil, within(1, ChronoUnit.MILLIS));
+
+        var terminated = store.terminateIdentifiedBySession(sessionId, now);
+        assertThat(terminated).get().extracting(Authentication::getAuthenticationState).isEqualTo(AuthenticationState.TERMINATED);
+        assertThat(repository.findByTokenId(tokenId)).isNull();
+    }
+
+    @Test
+    void testTransitionsRequireFormerState() {
+        var tokenId = initialize(Duration.ofMinutes(5));
+        var samlId = randomId();
+        var now = Instant.now();
+
+        assertThat(store.respondIdentifiedBySaml(samlId, now)).isEmpty();
+        assertThat(store.authenticateIdentifiedByReference(tokenId, tokenId, randomId(), now.plus(Duration.ofMinutes(15)), now)).isEmpty();
+        assertThat(store.terminateIdentifiedBySession(tokenId, now)).isEmpty();
+
+        assertThat(store.startIdentifiedByToken(tokenId, samlId, now)).isPresent();
+        assertThat(store.startIdentifiedByToken(tokenId, randomId(), now)).isEmpty();
+        assertThat(store.authenticateIdentifiedByReference(tokenId, tokenId, randomId(), now.plus(Duration.ofMinutes(15)), now)).isEmpty();
+
+        assertThat(store.respondIdentifiedBySaml(samlId, now)).isPresent();
+        assertThat(store.respondIdentifiedBySaml(samlId, now)).isEmpty();
+        assertThat(store.terminateIdentifiedBySession(tokenId, now)).isEmpty();
+        // the referenceId is only finished together with the sessionId it belongs to
+        assertThat(store.authenticateIdentifiedByReference(tokenId, randomId(), randomId(), now.plus(Duration.ofMinutes(15)), now)).isEmpty();
+        assertThat(repository.findByTokenId(tokenId).getAuthenticationState()).isEqualTo(AuthenticationState.RESPONDED);
+    }
+
+    @Test
+    void testTransitionsRequireValidity() {
+        var tokenId = initialize(Duration.ofMinutes(5));
+        var samlId = randomId();
+        var now = Instant.now();
+        var later = now.plus(Duration.ofMinutes(10));
+
+        assertThat(store.startIdentifiedByToken(tokenId, samlId, later)).isEmpty();
+        assertThat(store.startIdentifiedByToken(tokenId, samlId, now)).isPresent();
+        assertThat(store.respondIdentifiedBySaml(samlId, later)).isEmpty();
+        assertThat(store.respondIdentifiedBySaml(samlId, now)).isPresent();
+        assertThat(store.authenticateIdentifiedByReference(tokenId, tokenId, randomId(), later.plus(Duration.ofMinutes(15)), later)).isEmpty();
+
+        var sessionId = randomId();
+        assertThat(store.authenticateIdentifiedByReference(tokenId, tokenId, sessionId, now.plus(Duration.ofMinutes(5)), now)).isPresent();
+        assertThat(store.terminateIdentifiedBySession(sessionId, later)).isEmpty();
+        assertThat(repository.findByTokenId(tokenId).getAuthenticationState()).isEqualTo(AuthenticationState.AUTHENTICATED);
+    }
+
+    @Test
+    void testConcurrentRespondOfTheSameSamlResponse() throws InterruptedException {
+        var tokenId = initialize(Duration.ofMinutes(5));
+        var samlId = randomId();
+        assertThat(store.startIdentifiedByToken(tokenId, samlId, Instant.now())).isPresent();
+
+        var responded = concurrently(() -> store.respondIdentifiedBySaml(samlId, Instant.now()).isPresent());
+
+        assertThat(responded).isEqualTo(1);
+        assertThat(repository.findByTokenId(tokenId).getAuthenticationState()).isEqualTo(AuthenticationState.RESPONDED);
+    }
+
+    @Test
+    void testConcurrentAuthenticateOfTheSameReference() throws InterruptedException {
+        var tokenId = initialize(Duration.ofMinutes(5));
+        var samlId = randomId();
+        assertThat(store.startIdentifiedByToken(tokenId, samlId, Instant.now())).isPresent();
+        var referenceId = store.respondIdentifiedBySaml(samlId, Instant.now()).orElseThrow().getReferenceId();
+        var validUntil = Instant.now().plus(Duration.ofMinutes(15));
+
+        var authenticated = concurrently(() ->
+                store.authenticateIdentifiedByReference(referenceId, tokenId, randomId(), validUntil, Instant.now()).isPresent());
+
+        assertThat(authenticated).isEqualTo(1);
+        assertThat(repository.findByTokenId(tokenId).getAuthenticationState()).isEqualTo(AuthenticationState.AUTHENTICATED);
+    }
+
+    @Test
+    void testDeleteExpiredOrFinishedInChunks() {
+        var valid = initialize(Duration.ofMinutes(5));
+        var expired = initialize(Duration.ofMinutes(-5));
+        var timedOut = initialize(Duration.ofMinutes(5));
+        var entity = repository.findByTokenId(timedOut);
+        entity.setAuthenticationState(AuthenticationState.TIMEOUT);
+        repository.save(entity);
+        var finishedStates = List.of(AuthenticationState.TERMINATED, AuthenticationState.TIMEOUT);
+
+        int deleted;
+        do {
+            deleted = store.deleteByValidUntilBeforeOrAuthenticationStateIn(Instant.now(), finishedStates, 1);
+            assertThat(deleted).isBetween(0, 1);
+        } while (deleted > 0);
+
+        assertThat(repository.findByTokenId(valid)).isNotNull();
+        assertThat(repository.findByTokenId(expired)).isNull();
+        assertThat(repository.findByTokenId(timedOut)).isNull();
+        assertThat(store.countByValidUntilBeforeOrAuthenticationStateIn(Instant.now(), finishedStates)).isZero();
+    }
+
+    /** @return how many of four concurrent runs of the transition succeeded */
+    private int concurrently(Supplier<Boolean> transition) throws InterruptedException {
+        var succeeded = new AtomicInteger();
+        var start = new CountDownLatch(1);
+
+        try (var executor = Executors.newFixedThreadPool(4)) {
+            for (int i = 0; i < 4; i++) {
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                        if (transition.get()) {
+                            succeeded.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            start.countDown();
+        }
+        return succeeded.get();
+    }
+
+    private String initialize(Duration validity) {
+        var tokenId = randomId();
+        tokenIds.add(tokenId);
+        try {
+            store.createWithSessionAndToken(Authentication.initialize(tokenId, tokenId, Instant.now().plus(validity),
+                    null, URI.create("https://localhost/redirect").toURL()));
+        } catch (MalformedURLException e) {
+            throw new IllegalStateException(e);
+        }
+        return tokenId;
+    }
+
+    private static String randomId() {
+        return UUID.randomUUID().toString().replace("-", "");
+    }
+}
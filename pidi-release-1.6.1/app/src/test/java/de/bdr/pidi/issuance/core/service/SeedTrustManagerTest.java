@@ -5,23 +5,47 @@
 
 package de.bdr.pidi.issuance.core.service;
 
+import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
+import com.nimbusds.jose.JWSObject;
+import com.nimbusds.jose.Payload;
 import de.bdr.pidi.authorization.out.issuance.SeedException;
 import de.bdr.pidi.base.FileResourceHelper;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.text.ParseException;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.Locale;
 import java.util.Properties;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
 @ExtendWith(MockitoExtension.class)
 class SeedTrustManagerTest {
@@ -29,6 +53,27 @@ class SeedTrustManagerTest {
     static SeedTrustManager out;
     static String signatureAlias = null;
     static String encryptionAlias = null;
+    static String seedPath = null;
+    static String seedPassword = null;
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-11-01T10:00:00Z");
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
 
     @BeforeAll
     static void setupClass() throws IOException {
@@ -38,8 +83,9 @@ class SeedTrustManagerTest {
         }
         encryptionAlias = prop.getProperty("pidi.issuance.seed-enc-alias");
         signatureAlias = prop.getProperty("pidi.issuance.seed-sig-alias");
-        out = new SeedTrustManager(prop.getProperty("pidi.issuance.seed-path"),
-                prop.getProperty("pidi.issuance.seed-password"),
+        seedPath = prop.getProperty("pidi.issuance.seed-path");
+        seedPassword = prop.getProperty("pidi.issuance.seed-password");
+        out = new SeedTrustManager(seedPath, seedPassword,
                 encryptionAlias, signatureAlias,
                 new FileResourceHelper());
     }
@@ -92,4 +138,126 @@ class SeedTrustManagerTest {
         assertThrows(SeedException.class, () -> out.safeKeyId(keyId));
     }
 
+    @Test
+    void given_mixedCaseAliases_when_keysRequested_then_foundIgnoringCase() throws JOSEException {
+        var mixedCaseSignatureAlias = mixedCase(signatureAlias);
+        var mixedCaseEncryptionAlias = mixedCase(encryptionAlias);
+        var trustManager = new SeedTrustManager(seedPath, seedPassword, mixedCaseEncryptionAlias, mixedCaseSignatureAlias,
+                new FileResourceHelper());
+
+        var signer = trustManager.currentSigner();
+        var encrypter = trustManager.currentEncrypter();
+
+        assertEquals(mixedCaseSignatureAlias, signer.keyIdentifier());
+        assertEquals(mixedCaseEncryptionAlias, encrypter.keyIdentifier());
+        assertTrue(sign(signer, "mixed case").verify(trustManager.verifierForKeyId(signatureAlias.toUpperCase(Locale.ROOT))));
+        assertTrue(sign(signer, "mixed case").verify(out.verifierForKeyId(mixedCaseSignatureAlias)));
+        assertEquals(out.encryptionKeyForKeyId(encryptionAlias), trustManager.encryptionKeyForKeyId(mixedCaseEncryptionAlias));
+    }
+
+    @Test
+    void given_concurrentRequests_when_currentSigner_then_keystoreReadOnce() throws InterruptedException {
+        var helper = spy(new FileResourceHelper());
+        var trustManager = new SeedTrustManager(seedPath, seedPassword, encryptionAlias, signatureAlias, helper);
+        var first = trustManager.currentSigner();
+        var verified = new AtomicInteger();
+        var ready = new CountDownLatch(8);
+        var start = new CountDownLatch(1);
+
+        try (var executor = Executors.newFixedThreadPool(8)) {
+            for (int i = 0; i < 8; i++) {
+                executor.execute(() -> {
+                    ready.countDown();
+                    try {
+                        start.await();
+                        for (int j = 0; j < 50; j++) {
+                            var signer = trustManager.currentSigner();
+                            assertSame(first, signer);
+                            var jws = sign(signer, "payload-" + j);
+                            if (jws.verify(trustManager.verifierForKeyId(signer.keyIdentifier()))) {
+                                verified.incrementAndGet();
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } catch (JOSEException e) {
+                        throw new IllegalStateException(e);
+                    }
+                });
+            }
+            ready.await();
+            start.countDown();
+        }
+
+        assertEquals(8 * 50, verified.get());
+        verify(helper, times(1)).readKeyStore(anyString(), anyString());
+    }
+
+    @Test
+    void given_changedKeystore_when_refreshIntervalPassed_then_reloaded(@TempDir Path tempDir) throws Exception {
+        var keystore = Files.copy(Path.of(seedPath), tempDir.resolve("seed.p12"));
+        var helper = spy(new FileResourceHelper());
+        var clock = new MutableClock();
+        var trustManager = new SeedTrustManager(keystore.toString(), seedPassword, encryptionAlias, signatureAlias, helper,
+                Duration.ofMinutes(1), clock);
+        var signerBefore = trustManager.currentSigner();
+        var verifierBefore = trustManager.verifierForKeyId(signatureAlias);
+        var keyBefore = trustManager.currentEncrypter().key();
+        var signedBefore = sign(signerBefore, "before");
+
+        // unchanged file, the keystore is not read again
+        clock.now = clock.now.plus(Duration.ofMinutes(2));
+        assertSame(signerBefore, trustManager.currentSigner());
+        verify(helper, times(1)).readKeyStore(anyString(), anyString());
+
+        Files.setLastModifiedTime(keystore, FileTime.from(clock.now));
+        clock.now = clock.now.plus(Duration.ofMinutes(2));
+        var signerAfter = trustManager.currentSigner();
+        var verifierAfter = trustManager.verifierForKeyId(signatureAlias);
+
+        assertNotSame(signerBefore, signerAfter);
+        verify(helper, times(2)).readKeyStore(anyString(), anyString());
+        assertTrue(signedBefore.verify(verifierAfter));
+        assertTrue(sign(signerAfter, "after").verify(verifierBefore));
+        assertTrue(sign(signerBefore, "in flight").verify(verifierAfter));
+        assertEquals(keyBefore, trustManager.currentEncrypter().key());
+    }
+
+    @Test
+    void given_brokenKeystore_when_reloaded_then_previousKeysKept(@TempDir Path tempDir) throws Exception {
+        var keystore = Files.copy(Path.of(seedPath), tempDir.resolve("seed.p12"));
+        var clock = new MutableClock();
+        var trustManager = new SeedTrustManager(keystore.toString(), seedPassword, encryptionAlias, signatureAlias,
+                new FileResourceHelper(), Duration.ofMinutes(1), clock);
+        var signer = trustManager.currentSigner();
+
+        Files.writeString(keystore, "broken");
+        Files.setLastModifiedTime(keystore, FileTime.from(clock.now.plus(Duration.ofHours(1))));
+        clock.now = clock.now.plus(Duration.ofMinutes(2));
+
+        assertSame(signer, trustManager.currentSigner());
+        assertThrows(SeedException.class, trustManager::reload);
+        assertSame(signer, trustManager.currentSigner());
+    }
+
+    private static String mixedCase(String alias) {
+        var result = new StringBuilder(alias.length());
+        for (int i = 0; i < alias.length(); i++) {
+            var c = alias.charAt(i);
+            result.append(i % 2 == 0 ? Character.toUpperCase(c) : Character.toLowerCase(c));
+        }
+        return result.toString();
+    }
+
+    private static JWSObject sign(SeedSigner signer, String payload) {
+        try {
+            var jws = new JWSObject(new JWSHeader.Builder(JWSAlgorithm.ES256).keyID(signer.keyIdentifier()).build(),
+                    new Payload(payload));
+            jws.sign(signer.signer());
+            // the verification of a parsed object shows the signature is transferable
+            return JWSObject.parse(jws.serialize());
+        } catch (JOSEException | ParseException e) {
+            throw new IllegalStateException(e);
+        }
+    }
 }
@@ -7,9 +7,13 @@ package de.bdr.pidi.issuance.in;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.nimbusds.jose.JOSEException;
+import com.nimbusds.jose.JWSHeader;
 import com.nimbusds.jose.jwk.Curve;
 import com.nimbusds.jose.jwk.ECKey;
+import com.nimbusds.jose.util.Base64URL;
 import com.nimbusds.jose.util.X509CertUtils;
+import com.nimbusds.jwt.SignedJWT;
+import de.bdr.openid4vc.common.signing.nimbus.DVSP256SHA256HS256MacSigner;
 import de.bdr.openid4vc.common.signing.nimbus.DVSP256SHA256Key;
 import de.bdr.openid4vc.vci.service.statuslist.StatusReference;
 import de.bdr.pidi.authorization.FlowVariant;
@@ -84,6 +88,9 @@ class DvsSignedSdJwtBuilderTest extends SdJwtBuilderTestBase {
     private String holderBindingKey;
 
     private DvsVerifier dvsVerifier;
+    private ECPrivateKey signerPrivateKey;
+    private ECPublicKey verifierPublicKey;
+    private ECPublicKey signerPublicKey;
 
     @BeforeAll
     void setUp() throws JOSEException, NoSuchAlgorithmException, InvalidKeyException, CertificateException,
@@ -96,15 +103,15 @@ class DvsSignedSdJwtBuilderTest extends SdJwtBuilderTestBase {
         var keyPairGenerator = KeyPairGenerator.getInstance("EC");
         keyPairGenerator.initialize(256);
         var verifierKeyPair = keyPairGenerator.generateKeyPair();
-        var verifierPublicKey = (ECPublicKey) verifierKeyPair.getPublic();
+        verifierPublicKey = (ECPublicKey) verifierKeyPair.getPublic();
         var verifierPrivateKey = (ECPrivateKey) verifierKeyPair.getPrivate();
 
         // Load signer keys
         var ks = KeyStore.getInstance("pkcs12");
         ks.load(Objects.requireNonNull(IssuerSignedSdJwtBuilderTest.class.getResourceAsStream("/keystore/issuance-test-keystore.p12")), "issuance-test".toCharArray());
         var alias = ks.aliases().nextElement();
-        var signerPrivateKey = (ECPrivateKey) ks.getKey(alias, "issuance-test".toCharArray());
-        var signerPublicKey = (ECPublicKey) ks.getCertificate(alias).getPublicKey();
+        signerPrivateKey = (ECPrivateKey) ks.getKey(alias, "issuance-test".toCharArray());
+        signerPublicKey = (ECPublicKey) ks.getCertificate(alias).getPublicKey();
         var certificateChain = Arrays.stream(ks.getCertificateChain(alias)).map(X509Certificate.class::cast).toList();
 
         setUpMultiCertificatesChainSdJwtBuilder(signerPrivateKey, statusListAdapter, revocationAdapter);
@@ -247,6 +254,36 @@ class DvsSignedSdJwtBuilderTest extends SdJwtBuilderTestBase {
                         .isThrownBy(() -> X509CertUtils.parse(Base64.getDecoder().decode((String) c))));
     }
 
+    @DisplayName("DVS MAC of the signer factory equals the MAC of a signer created for the request")
+    @Test
+    void test006() throws Exception {
+        var sdJwt = sdJwtBuilder.build(getPidCredentialData(), credentialRequest, holderBindingKey);
+
+        var jwt = SignedJWT.parse(stripDisclosures(sdJwt));
+        var perRequestSigner = new DVSP256SHA256HS256MacSigner(new DVSP256SHA256Key(signerPrivateKey, verifierPublicKey));
+        Base64URL perRequestMac = perRequestSigner.sign(new JWSHeader(jwt.getHeader().getAlgorithm()), jwt.getSigningInput());
+
+        assertThat(jwt.getSignature().decode()).isEqualTo(perRequestMac.decode());
+    }
+
+    @DisplayName("DVS signed SdJwts of the same builder are bound to the verifier of each request")
+    @Test
+    void test007() throws Exception {
+        var keyPairGenerator = KeyPairGenerator.getInstance("EC");
+        keyPairGenerator.initialize(256);
+        var otherVerifierKeyPair = keyPairGenerator.generateKeyPair();
+        var otherVerifierPub = new ECKey.Builder(Curve.P_256, (ECPublicKey) otherVerifierKeyPair.getPublic()).build();
+        var otherRequest = new SdJwtVcAuthChannelCredentialRequest(SdJwtVcAuthChannelCredentialFormat.INSTANCE, null, Collections.emptyList(), null, SD_JWT_VCTYPE, otherVerifierPub);
+        var otherVerifier = new DvsVerifier(new DVSP256SHA256Key((ECPrivateKey) otherVerifierKeyPair.getPrivate(), signerPublicKey));
+
+        var sdJwt = sdJwtBuilder.build(getPidCredentialData(), credentialRequest, holderBindingKey);
+        var otherSdJwt = sdJwtBuilder.build(getPidCredentialData(), otherRequest, holderBindingKey);
+
+        verifySignature(sdJwt, dvsVerifier);
+        verifySignature(otherSdJwt, otherVerifier);
+        assertThat(SignedJWT.parse(stripDisclosures(otherSdJwt)).verify(dvsVerifier)).isFalse();
+    }
+
     private static HashMap<?, ?> parseHeader(String sdJwt) throws JsonProcessingException {
         var objectMapper = new ObjectMapper();
         String decodedHeader = getDecodedHeader(sdJwt);
@@ -31,7 +31,7 @@ public class RabbitTestConfig {
                 bindings = @QueueBinding(
                         value = @Queue(autoDelete = "true"),
                         exchange = @Exchange("pidi.direct"),
-                        key = "provideIssuanceInformation"),
+                        key = "provideIssuanceInformationBatch"),
                 messageConverter = "simpleConverter")
         void testQueue(String in) {
             // invocation tested by RabbitListenerTestHarness
@@ -9,6 +9,7 @@ import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.springframework.amqp.AmqpException;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.amqp.rabbit.test.RabbitListenerTest;
 import org.springframework.amqp.rabbit.test.RabbitListenerTestHarness;
@@ -17,8 +18,10 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.context.annotation.Import;
 import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
 
+import java.time.Duration;
 import java.time.Instant;
 
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
@@ -39,6 +42,9 @@ class RevocationAdapterITest {
     @Autowired
     private RevocationAdapter adapter;
 
+    @Autowired
+    private RevocationOutboxRepository outboxRepository;
+
     @Autowired
     private RabbitListenerTestHarness harness;
 
@@ -66,10 +72,10 @@ class RevocationAdapterITest {
         // then
         answer.await(5);
         verify(listener).testQueue("""
-                {"pseudonym":"pseudo",\
+                {"issuances":[{"pseudonym":"pseudo",\
                 "listID":"http://test/647e8cdd-1ef0-4cf8-b0ed-2f436d8811f9",\
                 "index":1,\
-                "expirationTime":"2024-11-04T16:00:00Z"}""");
+                "expirationTime":"2024-11-04T16:00:00Z"}]}""");
     }
 
     @DisplayName("should retry on exception")
@@ -77,7 +83,7 @@ class RevocationAdapterITest {
     void test002() throws InterruptedException {
         // given
         doThrow(AmqpException.class).doCallRealMethod()
-                .when(rabbitTemplate).convertAndSend(eq("provideIssuanceInformation"), any(Object.class));
+                .when(rabbitTemplate).convertAndSend(eq("provideIssuanceInformationBatch"), any(Object.class), any(CorrelationData.class));
         RabbitTestConfig.Listener listener = harness.getSpy("test");
         var answer = harness.getLatchAnswerFor("test", 1);
         doAnswer(answer).when(listener).testQueue(anyString());
@@ -92,6 +98,41 @@ class RevocationAdapterITest {
         // then
         answer.await(5);
         verify(listener).testQueue(anyString());
-        verify(rabbitTemplate, times(2)).convertAndSend(anyString(), any(Object.class));
+        verify(rabbitTemplate, times(2)).convertAndSend(anyString(), any(Object.class), any(CorrelationData.class));
+    }
+
+    @DisplayName("should store the issuance without waiting for the broker and delete it once it is confirmed")
+    @Test
+    void test003() throws Exception {
+        // given
+        doThrow(AmqpException.class)
+                .when(rabbitTemplate).convertAndSend(eq("provideIssuanceInformationBatch"), any(Object.class), any(CorrelationData.class));
+        RabbitTestConfig.Listener listener = harness.getSpy("test");
+        var answer = harness.getLatchAnswerFor("test", 1);
+        doAnswer(answer).when(listener).testQueue(anyString());
+
+        // when
+        adapter.notifyRevocService(
+                "pseudo",
+                new StatusReference("http://test/647e8cdd-1ef0-4cf8-b0ed-2f436d8811f9", 3),
+                Instant.parse("2024-11-04T16:00:00Z")
+        );
+
+        // then
+        assertThat(outboxRepository.findAll()).extracting(RevocationOutboxEntity::getListIndex).containsExactly(3);
+        reset(rabbitTemplate);
+        answer.await(5);
+        verify(listener).testQueue(anyString());
+        awaitEmptyOutbox();
+    }
+
+    private void awaitEmptyOutbox() throws InterruptedException {
+        var deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (outboxRepository.count() > 0) {
+            if (System.nanoTime() - deadline > 0) {
+                throw new AssertionError("outbox not empty");
+            }
+            Thread.sleep(10);
+        }
     }
 }
\ No newline at end of file
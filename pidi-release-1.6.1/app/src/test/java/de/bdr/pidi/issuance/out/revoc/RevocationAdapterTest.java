@@ -5,50 +5,240 @@
 package de.bdr.pidi.issuance.out.revoc;
 
 import de.bdr.openid4vc.vci.service.statuslist.StatusReference;
+import de.bdr.pidi.issuance.core.RevocationServiceConfiguration;
 import de.bdr.pidi.issuance.out.revoc.model.Issuance;
+import de.bdr.pidi.issuance.out.revoc.model.IssuanceBatch;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.ArgumentCaptor;
-import org.mockito.Captor;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.amqp.rabbit.connection.CorrelationData;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.SimpleTransactionStatus;
 
+import java.time.Duration;
 import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntPredicate;
+import java.util.stream.IntStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.lenient;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
 
 @ExtendWith(MockitoExtension.class)
 class RevocationAdapterTest {
 
-    @Captor
-    private ArgumentCaptor<Issuance> amqpMessage;
+    private static final String LIST_ID = "http://test/647e8cdd-1ef0-4cf8-b0ed-2f436d8811f9";
 
     @Mock
     private RabbitTemplate rabbitTemplate;
+    @Mock
+    private RevocationOutboxRepository outboxRepository;
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private final RevocationServiceConfiguration configuration = new RevocationServiceConfiguration();
+    private final ConcurrentSkipListMap<Long, RevocationOutboxEntity> outbox = new ConcurrentSkipListMap<>();
+    private final AtomicLong ids = new AtomicLong();
+    private final List<IssuanceBatch> confirmedBatches = new CopyOnWriteArrayList<>();
+    private final AtomicInteger attempts = new AtomicInteger();
 
-    @InjectMocks
     private RevocationAdapter adapter;
 
-    @DisplayName("should send issuance message")
+    @BeforeEach
+    void setUp() {
+        configuration.setRetryDelay(Duration.ofMillis(1));
+        configuration.setMaxRetryDelay(Duration.ofMillis(4));
+        configuration.setPollInterval(Duration.ofMillis(10));
+        lenient().when(transactionManager.getTransaction(any())).thenAnswer(invocation -> new SimpleTransactionStatus());
+        lenient().when(outboxRepository.save(any())).thenAnswer(invocation -> {
+            RevocationOutboxEntity entity = invocation.getArgument(0);
+            entity.setId(ids.incrementAndGet());
+            outbox.put(entity.getId(), entity);
+            return entity;
+        });
+        lenient().when(outboxRepository.lockOldest(anyInt()))
+                .thenAnswer(invocation -> outbox.values().stream().limit(invocation.<Integer>getArgument(0)).toList());
+        lenient().doAnswer(invocation -> {
+            invocation.<Collection<Long>>getArgument(0).forEach(outbox::remove);
+            return null;
+        }).when(outboxRepository).deleteAllByIdInBatch(any());
+        adapter = new RevocationAdapter(rabbitTemplate, outboxRepository, transactionManager, configuration);
+    }
+
+    @AfterEach
+    void tearDown() {
+        adapter.stop();
+    }
+
+    /**
+     * lets the mocked broker confirm a message, or reject it if the predicate matches the attempt number
+     */
+    private void brokerRejects(IntPredicate rejectAttempt) {
+        doAnswer(invocation -> {
+            var correlation = invocation.<CorrelationData>getArgument(2);
+            var ack = !rejectAttempt.test(attempts.incrementAndGet());
+            if (ack) {
+                confirmedBatches.add(invocation.getArgument(1));
+            }
+            correlation.getFuture().complete(new CorrelationData.Confirm(ack, ack ? null : "nack"));
+            return null;
+        }).when(rabbitTemplate).convertAndSend(eq(RevocationAdapter.BATCH_ROUTING_KEY), any(Object.class), any(CorrelationData.class));
+    }
+
+    private void notify(int index) {
+        adapter.notifyRevocService("pseudo", new StatusReference(LIST_ID, index), Instant.parse("2024-11-04T16:00:00Z"));
+    }
+
+    private List<Integer> confirmedIndices() {
+        return confirmedBatches.stream().flatMap(batch -> batch.getIssuances().stream()).map(Issuance::getIndex).toList();
+    }
+
+    private static void awaitCondition(BooleanSupplier condition) {
+        var deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (!condition.getAsBoolean()) {
+            if (System.nanoTime() - deadline > 0) {
+                throw new AssertionError("condition not met");
+            }
+            Thread.onSpinWait();
+        }
+    }
+
+    @DisplayName("should send the stored issuance and delete it once the message is confirmed")
     @Test
     void test001() {
+        brokerRejects(attempt -> false);
+        adapter.start();
         var expTime = Instant.now().plusSeconds(30);
-        adapter.notifyRevocService(
-                "pseudo",
-                new StatusReference("http://test/647e8cdd-1ef0-4cf8-b0ed-2f436d8811f9", 1),
-                expTime
-        );
-
-        verify(rabbitTemplate).convertAndSend(eq("provideIssuanceInformation"), amqpMessage.capture());
-        var message = amqpMessage.getValue();
+
+        adapter.notifyRevocService("pseudo", new StatusReference(LIST_ID, 1), expTime);
+
+        awaitCondition(outbox::isEmpty);
+        assertThat(confirmedBatches).hasSize(1);
+        var message = confirmedBatches.getFirst().getIssuances().getFirst();
         assertThat(message.getPseudonym()).isEqualTo("pseudo");
-        assertThat(message.getListID()).isEqualTo("http://test/647e8cdd-1ef0-4cf8-b0ed-2f436d8811f9");
+        assertThat(message.getListID()).isEqualTo(LIST_ID);
         assertThat(message.getIndex()).isEqualTo(1);
         assertThat(message.getExpirationTime()).isEqualTo(expTime);
     }
-}
\ No newline at end of file
+
+    @DisplayName("should store issuances without waiting for the broker and send them once it is available")
+    @Test
+    void test002() {
+        var brokerAvailable = new AtomicInteger();
+        brokerRejects(attempt -> brokerAvailable.get() == 0);
+        adapter.start();
+
+        notify(1);
+        notify(2);
+
+        assertThat(outbox).hasSize(2);
+        awaitCondition(() -> attempts.get() > 2);
+        assertThat(outbox).hasSize(2);
+        verify(transactionManager, atLeastOnce()).rollback(any());
+
+        brokerAvailable.set(1);
+        awaitCondition(outbox::isEmpty);
+        assertThat(confirmedIndices()).containsExactlyInAnyOrder(1, 2);
+    }
+
+    @DisplayName("should send stored issuances in messages of at most batch-size issuances")
+    @Test
+    void test003() {
+        brokerRejects(attempt -> false);
+        configuration.setBatchSize(50);
+        IntStream.range(0, 120).forEach(this::notify);
+
+        adapter.start();
+
+        awaitCondition(outbox::isEmpty);
+        assertThat(confirmedBatches).extracting(batch -> batch.getIssuances().size()).containsExactly(50, 50, 20);
+        assertThat(confirmedIndices()).containsExactlyElementsOf(IntStream.range(0, 120).boxed().toList());
+    }
+
+    @DisplayName("should resend rejected messages without losing or duplicating issuances")
+    @Test
+    void test004() {
+        brokerRejects(attempt -> attempt % 3 != 0);
+        configuration.setBatchSize(7);
+        adapter.start();
+
+        try (var callers = Executors.newFixedThreadPool(8)) {
+            for (int t = 0; t < 8; t++) {
+                var offset = t * 100;
+                callers.execute(() -> {
+                    for (int i = 0; i < 100; i++) {
+                        notify(offset + i);
+                    }
+                });
+            }
+        }
+
+        awaitCondition(outbox::isEmpty);
+        assertThat(confirmedIndices()).hasSize(800).doesNotHaveDuplicates();
+        assertThat(confirmedBatches).allSatisfy(batch -> assertThat(batch.getIssuances()).hasSizeBetween(1, 7));
+        assertThat(attempts.get()).isEqualTo(3 * confirmedBatches.size());
+    }
+
+    @DisplayName("should resend messages the broker does not confirm in time")
+    @Test
+    void test005() {
+        configuration.setConfirmTimeout(Duration.ofMillis(10));
+        doAnswer(invocation -> {
+            if (attempts.incrementAndGet() > 1) {
+                confirmedBatches.add(invocation.getArgument(1));
+                invocation.<CorrelationData>getArgument(2).getFuture().complete(new CorrelationData.Confirm(true, null));
+            }
+            return null;
+        }).when(rabbitTemplate).convertAndSend(eq(RevocationAdapter.BATCH_ROUTING_KEY), any(Object.class), any(CorrelationData.class));
+        adapter.start();
+
+        notify(1);
+
+        awaitCondition(outbox::isEmpty);
+        assertThat(attempts.get()).isEqualTo(2);
+        assertThat(confirmedIndices()).containsExactly(1);
+    }
+
+    @DisplayName("should keep unconfirmed issuances stored when stopped during a broker outage")
+    @Test
+    void test006() {
+        brokerRejects(attempt -> true);
+        adapter.start();
+
+        notify(1);
+        awaitCondition(() -> attempts.get() > 0);
+        adapter.stop();
+
+        assertThat(adapter.isRunning()).isFalse();
+        assertThat(outbox.values()).extracting(RevocationOutboxEntity::getListIndex).containsExactly(1);
+        assertThat(confirmedBatches).isEmpty();
+    }
+
+    @DisplayName("should store issuances when not running without sending them")
+    @Test
+    void test007() {
+        notify(1);
+
+        assertThat(outbox).hasSize(1);
+        verifyNoInteractions(rabbitTemplate);
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.issuance.out.sls;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import de.bdr.openid4vc.vci.service.statuslist.StatusReference;
+import de.bdr.pidi.authorization.FlowVariant;
+import de.bdr.pidi.issuance.core.StatusListServiceConfiguration;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.client.RestClientTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.ExpectedCount;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.test.web.client.response.MockRestResponseCreators;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.hamcrest.Matchers.startsWith;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+
+@RestClientTest(value = {StatusListAdapterImpl.class, StatusListServiceConfiguration.class}, properties = {
+        "pidi.statuslistservice.prefetch-chunk-size=2",
+        "pidi.statuslistservice.api-key.C1=other-api-key"
+})
+class StatusListAdapterImplPrefetchTest {
+
+    @Autowired
+    private MockRestServiceServer mockServer;
+
+    @Autowired
+    private StatusListAdapter statusListAdapter;
+
+    @Autowired
+    private StatusListServiceConfiguration configuration;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void shouldFetchWithApiKeyOfVariantSharingThePool() throws JsonProcessingException {
+        // Given
+        assertThat(configuration.getPoolId(FlowVariant.C1)).isEqualTo(configuration.getPoolId(FlowVariant.C));
+        Set<String> apiKeys = ConcurrentHashMap.newKeySet();
+        var references = new References(List.of(new StatusReference("status-list-url", 4711)));
+        mockServer.expect(ExpectedCount.manyTimes(), requestTo(startsWith("%s/pools/%s/new-references".formatted(configuration.getBaseUrl(), configuration.getPoolId(FlowVariant.C)))))
+                .andExpect(request -> apiKeys.add(request.getHeaders().getFirst("x-api-key")))
+                .andRespond(MockRestResponseCreators.withSuccess(objectMapper.writeValueAsString(references), MediaType.APPLICATION_JSON));
+
+        // When
+        statusListAdapter.acquireFreeIndex(FlowVariant.C);
+        statusListAdapter.acquireFreeIndex(FlowVariant.C1);
+
+        // Then
+        assertThat(apiKeys).contains(configuration.getApiKey(FlowVariant.C), "other-api-key");
+    }
+}
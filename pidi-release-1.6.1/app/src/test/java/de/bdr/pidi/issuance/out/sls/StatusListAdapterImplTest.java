@@ -27,7 +27,7 @@ import static org.springframework.test.web.client.match.MockRestRequestMatchers.
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
 import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
 
-@RestClientTest({StatusListAdapterImpl.class, StatusListServiceConfiguration.class})
+@RestClientTest(value = {StatusListAdapterImpl.class, StatusListServiceConfiguration.class}, properties = "pidi.statuslistservice.prefetch-chunk-size=1")
 class StatusListAdapterImplTest {
 
     @Autowired
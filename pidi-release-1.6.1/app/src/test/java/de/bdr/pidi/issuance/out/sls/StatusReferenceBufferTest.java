@@ -0,0 +1,200 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.pidi.issuance.out.sls;
+
+import com.sun.net.httpserver.HttpServer;
+import de.bdr.openid4vc.vci.service.statuslist.StatusReference;
+import de.bdr.pidi.authorization.FlowVariant;
+import de.bdr.pidi.issuance.core.StatusListServiceConfiguration;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StatusReferenceBufferTest {
+
+    private static final String POOL_ID = "test-pool";
+
+    /**
+     * in-process stand-in for the reservation of the status list service, hands out consecutive indices
+     */
+    private static class StubPool {
+        private final AtomicInteger nextIndex = new AtomicInteger();
+        private final List<Integer> requestedAmounts = new CopyOnWriteArrayList<>();
+
+        List<StatusReference> reserve(int amount) {
+            requestedAmounts.add(amount);
+            var first = nextIndex.getAndAdd(amount);
+            return IntStream.range(first, first + amount).mapToObj(i -> new StatusReference("https://sls/list/1", i)).toList();
+        }
+    }
+
+    private static class MutableClock extends Clock {
+        private Instant now = Instant.parse("2024-11-01T10:00:00Z");
+
+        @Override
+        public ZoneId getZone() {
+            return ZoneOffset.UTC;
+        }
+
+        @Override
+        public Clock withZone(ZoneId zone) {
+            return this;
+        }
+
+        @Override
+        public Instant instant() {
+            return now;
+        }
+    }
+
+    @Test
+    void shouldFetchChunksBelowLowWatermark() {
+        var pool = new StubPool();
+        var buffer = new StatusReferenceBuffer(POOL_ID, 10, 3, Duration.ofHours(1), pool::reserve, Runnable::run, Clock.systemUTC());
+
+        // empty buffer: a chunk is fetched and the caller gets a single reference
+        assertThat(buffer.take().getIndex()).isEqualTo(10);
+        assertThat(pool.requestedAmounts).containsExactly(10, 1);
+        assertThat(buffer.size()).isEqualTo(10);
+
+        var indices = IntStream.range(0, 7).map(i -> buffer.take().getIndex()).boxed().toList();
+        assertThat(indices).containsExactly(0, 1, 2, 3, 4, 5, 6);
+        assertThat(pool.requestedAmounts).containsExactly(10, 1);
+
+        // falling below the low-water mark refills
+        assertThat(buffer.take().getIndex()).isEqualTo(7);
+        assertThat(pool.requestedAmounts).containsExactly(10, 1, 10);
+        assertThat(buffer.size()).isEqualTo(12);
+    }
+
+    @Test
+    void shouldDiscardExpiredReferences() {
+        var pool = new StubPool();
+        var clock = new MutableClock();
+        var buffer = new StatusReferenceBuffer(POOL_ID, 5, 0, Duration.ofMinutes(10), pool::reserve, Runnable::run, clock);
+        buffer.take();
+        assertThat(buffer.size()).isEqualTo(5);
+
+        clock.now = clock.now.plus(Duration.ofMinutes(11));
+
+        // all buffered references are expired, so a fresh one is fetched
+        assertThat(buffer.take().getIndex()).isEqualTo(11);
+        assertThat(pool.requestedAmounts).containsExactly(5, 1, 5, 1);
+    }
+
+    @Test
+    void shouldDiscardReferencesOnClose() {
+        var pool = new StubPool();
+        var buffer = new StatusReferenceBuffer(POOL_ID, 5, 0, Duration.ofHours(1), pool::reserve, Runnable::run, Clock.systemUTC());
+        buffer.take();
+
+        buffer.close();
+
+        assertThat(buffer.size()).isZero();
+    }
+
+    @Test
+    void shouldSurviveFailingRefill() {
+        var calls = new AtomicInteger();
+        var buffer = new StatusReferenceBuffer(POOL_ID, 5, 0, Duration.ofHours(1), amount -> {
+            if (amount > 1) {
+                calls.incrementAndGet();
+                throw new IllegalStateException("status list service down");
+            }
+            return List.of(new StatusReference("https://sls/list/1", 42));
+        }, Runnable::run, Clock.systemUTC());
+
+        assertThat(buffer.take().getIndex()).isEqualTo(42);
+        assertThat(buffer.take().getIndex()).isEqualTo(42);
+        assertThat(calls.get()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldNeverHandOutReferenceTwice() throws InterruptedException {
+        var pool = new StubPool();
+        var refillExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        var buffer = new StatusReferenceBuffer(POOL_ID, 100, 50, Duration.ofHours(1), pool::reserve, refillExecutor, Clock.systemUTC());
+        var taken = ConcurrentHashMap.<Integer>newKeySet();
+        var duplicates = new AtomicInteger();
+
+        try (var callers = Executors.newFixedThreadPool(16)) {
+            for (int t = 0; t < 16; t++) {
+                callers.execute(() -> {
+                    for (int i = 0; i < 2_000; i++) {
+                        if (!taken.add(buffer.take().getIndex())) {
+                            duplicates.incrementAndGet();
+                        }
+                    }
+                });
+            }
+        }
+        refillExecutor.shutdown();
+        assertThat(refillExecutor.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+
+        assertThat(duplicates.get()).isZero();
+        assertThat(taken).hasSize(16 * 2_000);
+        assertThat(taken.size() + buffer.size()).isEqualTo(pool.nextIndex.get());
+    }
+
+    @Test
+    void shouldBufferReferencesFromStatusListService() throws IOException {
+        var pool = new StubPool();
+        var server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/pools/" + POOL_ID + "/new-references", exchange -> {
+            var query = exchange.getRequestURI().getQuery();
+            var amount = query == null ? 1 : Integer.parseInt(query.substring("amount=".length()));
+            var body = pool.reserve(amount).stream()
+                    .map(r -> "{\"uri\":\"%s\",\"index\":%d}".formatted(r.getUri(), r.getIndex()))
+                    .collect(Collectors.joining(",", "{\"references\":[", "]}"))
+                    .getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().add("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+            exchange.close();
+        });
+        server.start();
+        var configuration = new StatusListServiceConfiguration();
+        configuration.setBaseUrl("http://localhost:" + server.getAddress().getPort());
+        configuration.setApiKey(Map.of(FlowVariant.C, "api-key"));
+        configuration.setPoolId(Map.of(FlowVariant.C, POOL_ID));
+        configuration.setPrefetchChunkSize(20);
+        configuration.setPrefetchLowWatermark(5);
+        var adapter = new StatusListAdapterImpl(new RestTemplateBuilder(), configuration);
+        try {
+            var indices = new ArrayList<Integer>();
+            for (int i = 0; i < 100; i++) {
+                indices.add(adapter.acquireFreeIndex(FlowVariant.C).getIndex());
+            }
+
+            assertThat(Set.copyOf(indices)).hasSize(100);
+            // most references come from chunks, not from single requests
+            assertThat(pool.requestedAmounts.stream().filter(a -> a == 1).count()).isLessThan(50);
+        } finally {
+            adapter.destroy();
+            server.stop(0);
+        }
+    }
+}
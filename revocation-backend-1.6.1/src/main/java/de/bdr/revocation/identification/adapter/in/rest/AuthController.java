@@ -84,9 +84,7 @@ public class AuthController implements EidApi {
     @Override
     public ResponseEntity<LoggedInResponse> finishLogin(String referenceId, String xSessionID) {
         xSessionID = authenticationSupport.parseSessionIdFromHeader(servletSupport.getServletRequest(), xSessionID);
-        var authentication = authenticationService.retrieveAuth(xSessionID, referenceId);
-
-        authenticationService.finishAuthentication(authentication);
+        var authentication = authenticationService.finishAuthentication(xSessionID, referenceId);
         return toResponse(authentication);
     }
 
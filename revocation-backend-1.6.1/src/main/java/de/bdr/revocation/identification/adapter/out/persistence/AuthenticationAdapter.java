@@ -12,6 +12,7 @@ import jakarta.transaction.Transactional;
 import jakarta.validation.constraints.NotNull;
 import java.time.Instant;
 import java.util.Collection;
+import java.util.Optional;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Component;
 
@@ -62,32 +63,52 @@ public class AuthenticationAdapter {
         authenticationRepository.save(new AuthenticationEntity(authentication));
     }
 
+    /**
+     * transition the INITIALIZED Authentication with the tokenId to state STARTED in a single statement.
+     *
+     * @param validAt the Authentication must still be valid at this point in time
+     * @return the started Authentication, empty if there is no INITIALIZED Authentication valid at <code>validAt</code>
+     */
     @Transactional
-    public void updateWithSamlIdentifiedByTokenAndFormerState(Authentication authentication, AuthenticationState formerState) {
-        var newState = authentication.getAuthenticationState();
-        var samlId = authentication.getSamlId();
-        var tokenId = authentication.getTokenId();
-        if (authenticationRepository.updateSamlIdByTokenIdAndAuthenticationState(newState, samlId, tokenId, formerState) != 1) {
-            throw new AuthenticationNotFoundException(String.format("Could not update saml id %s for token id %s and state %s", samlId, tokenId, formerState));
-        }
+    public Optional<Authentication> startIdentifiedByToken(String tokenId, String samlId, Instant validAt) {
+        return authenticationRepository.startByTokenId(tokenId, samlId, validAt).map(this::toDomainAuthentication);
+    }
+
+    /**
+     * lock the STARTED Authentication with the samlId until the end of the surrounding transaction, so it can be
+     * checked before the SAML Response is validated. Concurrent calls wait for the lock and find no STARTED
+     * Authentication once it has been transitioned.
+     *
+     * @param validAt the Authentication must still be valid at this point in time
+     * @return the locked Authentication, empty if there is no STARTED Authentication valid at <code>validAt</code>
+     */
+    @Transactional(Transactional.TxType.MANDATORY)
+    public Optional<Authentication> lockStartedIdentifiedBySaml(String samlId, Instant validAt) {
+        return authenticationRepository.lockStartedBySamlId(samlId, validAt).map(this::toDomainAuthentication);
     }
 
+    /**
+     * transition the STARTED Authentication with the samlId to state RESPONDED in a single statement.
+     *
+     * @param validAt the Authentication must still be valid at this point in time
+     * @return the responded Authentication, empty if there is no STARTED Authentication valid at <code>validAt</code>
+     */
     @Transactional
-    public void updateWithReferenceIdIdentifiedBySamlAndFormerState(Authentication authentication, AuthenticationState formerState) {
-        var newState = authentication.getAuthenticationState();
-        var pseudonym = authentication.getPseudonym();
-        var referenceId = authentication.getReferenceId();
-        var samlId = authentication.getSamlId();
-        if (authenticationRepository.updateReferenceIdBySamlIdAndAuthenticationState(newState, pseudonym, referenceId, samlId, formerState) != 1) {
-            throw new AuthenticationNotFoundException(String.format("Could not update reference id %s for saml id %s and state %s", referenceId, samlId, formerState));
-        }
+    public Optional<Authentication> respondIdentifiedBySaml(String samlId, String pseudonym, String referenceId, Instant validAt) {
+        return authenticationRepository.respondBySamlId(samlId, pseudonym, referenceId, validAt).map(this::toDomainAuthentication);
     }
 
+    /**
+     * transition the RESPONDED Authentication with the referenceId and sessionId to state AUTHENTICATED
+     * with the newSessionId in a single statement.
+     *
+     * @param validAt the Authentication must still be valid at this point in time
+     * @return the authenticated Authentication, empty if there is no RESPONDED Authentication valid at <code>validAt</code>
+     */
     @Transactional
-    public void updateWithChangedSessionValidUntilIdentifiedByReferenceAndFormerState(Authentication authentication, String oldSessionId, AuthenticationState formerState) {
-        if (authenticationRepository.updateChangedSessionValidUntilByReferenceAndFormerState(authentication.getAuthenticationState(), authentication.getSessionId(), authentication.getValidUntil(), oldSessionId, formerState, authentication.getReferenceId()) != 1) {
-            throw new AuthenticationNotFoundException(String.format("Authentication to be deleted not found with session id %s, reference id %s and authentication state %s", oldSessionId, authentication.getReferenceId(), formerState.name()));
-        }
+    public Optional<Authentication> authenticateIdentifiedByReference(String referenceId, String sessionId, String newSessionId, Instant validUntil, Instant validAt) {
+        return authenticationRepository.authenticateByReferenceId(referenceId, sessionId, newSessionId, validUntil, validAt)
+                .map(this::toDomainAuthentication);
     }
 
     @Transactional
@@ -100,11 +121,19 @@ public class AuthenticationAdapter {
         }
     }
 
+    /**
+     * transition the AUTHENTICATED Authentication with the sessionId to state TERMINATED by deleting it in a single statement.
+     *
+     * @param validAt the Authentication must still be valid at this point in time
+     * @return the terminated Authentication, empty if there is no AUTHENTICATED Authentication valid at <code>validAt</code>
+     */
     @Transactional
-    public void removeIdentifiedBySessionAndFormerState(String sessionId, AuthenticationState formerState) {
-        if (authenticationRepository.deleteBySessionIdAndAuthenticationState(sessionId, formerState) != 1) {
-            throw new AuthenticationNotFoundException(String.format("Authentication removal for session %s and authentication state %s not successful", sessionId, formerState));
-        }
+    public Optional<Authentication> terminateIdentifiedBySession(String sessionId, Instant validAt) {
+        return authenticationRepository.deleteAuthenticatedBySessionId(sessionId, validAt).map(entity -> {
+            var authentication = toDomainAuthentication(entity);
+            authentication.terminate();
+            return authentication;
+        });
     }
 
     private Authentication toDomainAuthentication(@NotNull AuthenticationEntity entity) {
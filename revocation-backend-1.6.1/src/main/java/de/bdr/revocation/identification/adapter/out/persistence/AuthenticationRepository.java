@@ -5,7 +5,6 @@
 package de.bdr.revocation.identification.adapter.out.persistence;
 
 import de.bdr.revocation.identification.core.model.AuthenticationState;
-import jakarta.validation.constraints.NotNull;
 import java.time.Instant;
 import java.util.Collection;
 import java.util.Optional;
@@ -21,22 +20,41 @@ public interface AuthenticationRepository extends JpaRepository<AuthenticationEn
 
     Optional<AuthenticationEntity> findBySessionId(String sessionId);
 
-    @Modifying
-    @Query("""
-            UPDATE AuthenticationEntity \
-            SET authenticationState = :newAuthenticationState, \
-            samlId = :samlId \
-            WHERE tokenId = :tokenId AND authenticationState = :oldAuthenticationState""")
-    int updateSamlIdByTokenIdAndAuthenticationState(AuthenticationState newAuthenticationState, String samlId, String tokenId, AuthenticationState oldAuthenticationState);
+    // the transitions check state and validity in the statement and return the changed row, no row means no transition
 
-    @Modifying
-    @Query("""
-            UPDATE AuthenticationEntity \
-            SET authenticationState = :newAuthenticationState, \
-            pseudonym = :pseudonym, \
-            referenceId = :referenceId \
-            WHERE samlId = :samlId AND authenticationState = :oldAuthenticationState""")
-    int updateReferenceIdBySamlIdAndAuthenticationState(AuthenticationState newAuthenticationState, String pseudonym, String referenceId, String samlId, AuthenticationState oldAuthenticationState);
+    @Query(value = """
+            UPDATE authentication \
+            SET authentication_state = 'STARTED', saml_id = :samlId \
+            WHERE token_id = :tokenId AND authentication_state = 'INITIALIZED' AND valid_until >= :validAt \
+            RETURNING *""", nativeQuery = true)
+    Optional<AuthenticationEntity> startByTokenId(String tokenId, String samlId, Instant validAt);
+
+    @Query(value = """
+            SELECT * FROM authentication \
+            WHERE saml_id = :samlId AND authentication_state = 'STARTED' AND valid_until >= :validAt \
+            FOR UPDATE""", nativeQuery = true)
+    Optional<AuthenticationEntity> lockStartedBySamlId(String samlId, Instant validAt);
+
+    @Query(value = """
+            UPDATE authentication \
+            SET authentication_state = 'RESPONDED', pseudonym = :pseudonym, reference_id = :referenceId \
+            WHERE saml_id = :samlId AND authentication_state = 'STARTED' AND valid_until >= :validAt \
+            RETURNING *""", nativeQuery = true)
+    Optional<AuthenticationEntity> respondBySamlId(String samlId, String pseudonym, String referenceId, Instant validAt);
+
+    @Query(value = """
+            UPDATE authentication \
+            SET authentication_state = 'AUTHENTICATED', session_id = :newSessionId, valid_until = :validUntil \
+            WHERE reference_id = :referenceId AND session_id = :sessionId AND authentication_state = 'RESPONDED' \
+            AND valid_until >= :validAt \
+            RETURNING *""", nativeQuery = true)
+    Optional<AuthenticationEntity> authenticateByReferenceId(String referenceId, String sessionId, String newSessionId, Instant validUntil, Instant validAt);
+
+    @Query(value = """
+            DELETE FROM authentication \
+            WHERE session_id = :sessionId AND authentication_state = 'AUTHENTICATED' AND valid_until >= :validAt \
+            RETURNING *""", nativeQuery = true)
+    Optional<AuthenticationEntity> deleteAuthenticatedBySessionId(String sessionId, Instant validAt);
 
     @Modifying
     @Query("""
@@ -54,16 +72,4 @@ public interface AuthenticationRepository extends JpaRepository<AuthenticationEn
 
     int deleteByAuthenticationStateIn(Collection<AuthenticationState> authenticationStates);
 
-    int deleteBySessionIdAndAuthenticationState(@NotNull String sessionId, @NotNull AuthenticationState authenticationState);
-
-    @Modifying
-    @Query("""
-            UPDATE AuthenticationEntity \
-            SET authenticationState = :authenticationState, \
-            sessionId = :sessionId, \
-            validUntil = :validUntil \
-            WHERE sessionId = :oldSessionId AND authenticationState = :oldAuthenticationState AND referenceId = :referenceId"""
-    )
-    int updateChangedSessionValidUntilByReferenceAndFormerState(AuthenticationState authenticationState, String sessionId, Instant validUntil, String oldSessionId, AuthenticationState oldAuthenticationState, String referenceId);
-
 }
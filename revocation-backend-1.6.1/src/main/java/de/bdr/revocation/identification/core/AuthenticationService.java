@@ -10,9 +10,11 @@ import de.bdr.revocation.identification.core.exception.AuthenticationNotFoundExc
 import de.bdr.revocation.identification.core.exception.AuthenticationStateException;
 import de.bdr.revocation.identification.core.model.Authentication;
 import de.bdr.revocation.identification.core.model.AuthenticationState;
+import jakarta.transaction.Transactional;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.TemporalAmount;
+import java.util.Optional;
 import java.util.Random;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
@@ -59,30 +61,25 @@ public class AuthenticationService {
         return randomProvider.getSamlRng();
     }
 
+    /**
+     * advances the Authentication identified by the tokenId before the SAML request is built and signed, so a reused
+     * tokenId is rejected without any crypto. The transition is rolled back if the SAML request can not be built.
+     */
+    @Transactional
     public String createSamlRedirectBindingUrl(String tokenId) {
         if (tokenId == null) {
             throw new IllegalArgumentException("tokenId must not be null");
         }
-        var authentication = authenticationAdapter.findByTokenId(tokenId);
-        validateAuthenticationBeforeSamlRequest(authentication);
         String samlId = generateRandomId(getSamlRng());
-        var result = autent.createSamlRedirectBindingUrl(samlId);
-        authentication.start(samlId);
-        authenticationAdapter.updateWithSamlIdentifiedByTokenAndFormerState(authentication, INITIALIZED);
-        return result;
-    }
-
-    private void validateAuthenticationBeforeSamlRequest(Authentication authentication) {
-        if (authentication == null) {
-            throw new AuthenticationNotFoundException("no authentication found for tokenId");
-        }
-        validateAuthenticationState(authentication, INITIALIZED);
-        validateAuthenticationIsNotTimedout(authentication);
+        transitioned(authenticationAdapter.startIdentifiedByToken(tokenId, samlId, Instant.now()), INITIALIZED, "tokenId");
+        return autent.createSamlRedirectBindingUrl(samlId);
     }
 
     /**
      * receive the SAML response, validate and decode it and create the <code>referenceId</code>.
-     * If successful, this advances the Authentication's state.
+     * The STARTED Authentication is locked before the SAML response is decrypted and its signature checked, so an
+     * unknown or replayed RelayState is rejected without any crypto. If the SAML response is valid, this advances the
+     * Authentication's state, only one of concurrent calls for a RelayState succeeds.
      *
      * @param relayState   the SAML RelayState parameter
      * @param samlResponse the SAML Response
@@ -90,33 +87,26 @@ public class AuthenticationService {
      * @param signature  the Signature
      * @return the referenceId
      */
+    @Transactional
     public String receiveSamlResponse(String relayState, String samlResponse, String sigAlg, String signature) {
-        // I'd like to use the ID/InResponseTo elements but cannot access them here
-        var authentication = authenticationAdapter.findBySamlId(relayState);
-        validateAuthenticationBeforeSamlResponse(authentication);
+        var now = Instant.now();
+        transitioned(authenticationAdapter.lockStartedIdentifiedBySaml(relayState, now), STARTED, "SAML RelayState");
 
         var result = autent
-                .validateSamlResponseAndExtractPseudonym(relayState, samlResponse, sigAlg, signature, authentication);
+                .validateSamlResponseAndExtractPseudonym(relayState, samlResponse, sigAlg, signature);
         if (identificationConfiguration.isLoggingPseudonymsAllowed()) {
             log.debug("pseudonym for test purposes: {}", result.pseudonym());
         }
 
         var refId = generateRandomId(getTokenRng());
 
-        authentication.respond(result.pseudonym(), refId);
-        authenticationAdapter.updateWithReferenceIdIdentifiedBySamlAndFormerState(authentication, STARTED);
+        // I'd like to use the ID/InResponseTo elements but cannot access them here
+        transitioned(authenticationAdapter.respondIdentifiedBySaml(relayState, result.pseudonym(), refId, now),
+                STARTED, "SAML RelayState");
 
         return refId;
     }
 
-    private void validateAuthenticationBeforeSamlResponse(Authentication authentication) {
-        if (authentication == null) {
-            throw new AuthenticationNotFoundException("no authentication found for SAML RelayState");
-        }
-        validateAuthenticationState(authentication, STARTED);
-        validateAuthenticationIsNotTimedout(authentication);
-    }
-
     /**
      * retrieve the Authentication belonging to the sessionId
      *
@@ -147,13 +137,24 @@ public class AuthenticationService {
         validateAuthenticationIsNotTimedout(authentication);
     }
 
-    public void finishAuthentication(Authentication authentication) {
+    /**
+     * finish the RESPONDED Authentication belonging to the sessionId and referenceId,
+     * it gets a new sessionId and becomes AUTHENTICATED. Only one of concurrent calls for a referenceId succeeds.
+     *
+     * @param sessionId   the current key to the Authentication
+     * @param referenceId the key to finalize the Authentication, binds the TLS sessions
+     * @return the AUTHENTICATED Authentication, throws Exceptions otherwise
+     */
+    public Authentication finishAuthentication(String sessionId, String referenceId) {
+        validateSessionIdExists(sessionId);
+        if (referenceId == null) {
+            throw new AuthenticationNotFoundException("no referenceId given");
+        }
         String newSessionId = generateRandomId(getSessionRng());
-        String oldSessionId = authentication.getSessionId();
-        Instant validUntil = Instant.now().plus(identificationConfiguration.getMinAuthenticatedSessionDuration());
-        authentication.authenticate(newSessionId, validUntil);
-
-        authenticationAdapter.updateWithChangedSessionValidUntilIdentifiedByReferenceAndFormerState(authentication, oldSessionId, RESPONDED);
+        var now = Instant.now();
+        Instant validUntil = now.plus(identificationConfiguration.getMinAuthenticatedSessionDuration());
+        return transitioned(authenticationAdapter.authenticateIdentifiedByReference(referenceId, sessionId, newSessionId, validUntil, now),
+                RESPONDED, "referenceId");
     }
 
     public void extendAuthenticationValidity(Authentication authentication) {
@@ -172,15 +173,17 @@ public class AuthenticationService {
      */
     public void terminateAuthentication(String sessionId) {
         validateSessionIdExists(sessionId);
-        var authentication = authenticationAdapter.findBySessionId(sessionId);
-        if (authentication == null) {
-            throw new AuthenticationNotFoundException("no authentication found for sessionId");
-        }
-        validateAuthenticationIsNotTimedout(authentication, Duration.ofSeconds(2));
-        validateAuthenticationState(authentication, AUTHENTICATED);
-        var formerState = authentication.getAuthenticationState();
-        authentication.terminate();
-        authenticationAdapter.removeIdentifiedBySessionAndFormerState(sessionId, formerState);
+        var validAt = Instant.now().plus(Duration.ofSeconds(2));
+        transitioned(authenticationAdapter.terminateIdentifiedBySession(sessionId, validAt), AUTHENTICATED, "sessionId");
+    }
+
+    /**
+     * the adapter transitions an Authentication only if it is in the former state and still valid,
+     * there is no separate read to tell a missing, timed out or already advanced Authentication apart.
+     */
+    private static Authentication transitioned(Optional<Authentication> authentication, AuthenticationState formerState, String key) {
+        return authentication.orElseThrow(() -> new AuthenticationNotFoundException(
+                String.format("no valid authentication in state %s found for %s", formerState.name(), key)));
     }
 
     private void validateSessionIdExists(String sessionId) {
@@ -4,7 +4,6 @@
  */
 package de.bdr.revocation.identification.core;
 
-import de.bdr.revocation.identification.core.model.Authentication;
 import de.bdr.revocation.identification.core.model.ResponseData;
 
 public interface EidAuth {
@@ -16,9 +15,8 @@ public interface EidAuth {
      * @param samlResponse   from SAML
      * @param sigAlg         the Signature algorithm
      * @param signature      the Signature
-     * @param authentication the Authentication that contains the SAML identifier (to be compared with SAML response)
      * @return extracted data from samlResponse
      */
-    ResponseData validateSamlResponseAndExtractPseudonym(String relayState, String samlResponse, String sigAlg, String signature, Authentication authentication);
+    ResponseData validateSamlResponseAndExtractPseudonym(String relayState, String samlResponse, String sigAlg, String signature);
 
 }
@@ -5,14 +5,12 @@
 package de.bdr.revocation.identification.core;
 
 import de.bdr.revocation.identification.core.configuration.MultiSamlConfiguration;
-import de.bdr.revocation.identification.core.exception.AuthenticationStateException;
 import de.bdr.revocation.identification.core.exception.CryptoConfigException;
 import de.bdr.revocation.identification.core.exception.EidWrappingException;
 import de.bdr.revocation.identification.core.exception.IdentificationError;
 import de.bdr.revocation.identification.core.exception.MissingAuthDataException;
 import de.bdr.revocation.identification.core.exception.SamlCryptoConfigException;
 import de.bdr.revocation.identification.core.exception.SamlResponseValidationFailedException;
-import de.bdr.revocation.identification.core.model.Authentication;
 import de.bdr.revocation.identification.core.model.ResponseData;
 import de.governikus.panstar.sdk.saml.configuration.SamlConfiguration;
 import de.governikus.panstar.sdk.saml.exception.SamlAuthenticationException;
@@ -138,20 +136,16 @@ public class EidAuthAdapter implements EidAuth {
 
     @Override
     public ResponseData validateSamlResponseAndExtractPseudonym(String relayState, String samlResponse, String sigAlg,
-                                                                String signature,
-                                                                Authentication authentication) {
+                                                                String signature) {
         ProcessedSamlResult processed =
                 validateAndExtractAttributes(samlResponse, relayState, sigAlg, signature);
-        return mapEidResponse(relayState, authentication, processed);
+        return mapEidResponse(processed);
     }
 
-    ResponseData mapEidResponse(String relayState, Authentication authentication, ProcessedSamlResult processed) {
+    ResponseData mapEidResponse(ProcessedSamlResult processed) {
         if (processed == null) {
             throw new MissingAuthDataException("the SAML Response did not include the attributes");
         }
-        if (!relayState.equals(authentication.getSamlId())) {
-            throw new AuthenticationStateException("SAML ID from Authentication did not match the relayState");
-        }
         return new ResponseData(Base64.getUrlEncoder().encodeToString(processed.getPersonalData().getRestrictedID().getID()));
     }
 }
@@ -25,6 +25,8 @@ public class AmqpConfiguration {
     public static final String ISSUANCE_QUEUE = "revocation-service.issuance-provided";
     public static final String DL_QUEUE = "revocation-service.issuance-provided.dlq";
     public static final String ISSUANCE_ROUTING_KEY = "provideIssuanceInformation";
+    public static final String ISSUANCE_BATCH_QUEUE = "revocation-service.issuance-batch-provided";
+    public static final String ISSUANCE_BATCH_ROUTING_KEY = "provideIssuanceInformationBatch";
 
     @Bean
     public DirectExchange directExchange() {
@@ -49,6 +51,19 @@ public class AmqpConfiguration {
         return BindingBuilder.bind(issuanceQueue).to(directExchange).with(ISSUANCE_ROUTING_KEY);
     }
 
+    @Bean
+    public Queue issuanceBatchQueue() {
+        return QueueBuilder.durable(ISSUANCE_BATCH_QUEUE).quorum()
+                .withArgument("x-dead-letter-exchange", "")
+                .deadLetterRoutingKey(DL_QUEUE)
+                .build();
+    }
+
+    @Bean
+    public Binding issuanceBatchBinding(Queue issuanceBatchQueue, DirectExchange directExchange) {
+        return BindingBuilder.bind(issuanceBatchQueue).to(directExchange).with(ISSUANCE_BATCH_ROUTING_KEY);
+    }
+
     @Bean
     public MessageConverter jsonMessageConverter() {
         return new Jackson2JsonMessageConverter();
@@ -5,6 +5,7 @@
 package de.bdr.revocation.issuance.adapter.in.amqp;
 
 import de.bdr.revocation.issuance.app.domain.Issuance;
+import de.bdr.revocation.issuance.app.domain.IssuanceBatch;
 import de.bdr.revocation.issuance.app.service.BusinessException;
 import de.bdr.revocation.issuance.app.service.IssuanceService;
 import de.bdr.revocation.issuance.app.service.RevocationServerException;
@@ -34,4 +35,15 @@ public class IssuanceMessageListener {
         log.info("Received issuance: {} with messageId {}", issuance, message.getMessageProperties().getMessageId());
         issuanceService.saveIssuance(issuance);
     }
+
+    /**
+     * RabbitMQ listen on queue {@value AmqpConfiguration#ISSUANCE_BATCH_QUEUE}. Receive and process batches of issuance-messages.
+     */
+    @RabbitListener(id = "issuanceBatchMessageListener", queues = AmqpConfiguration.ISSUANCE_BATCH_QUEUE, messageConverter = "jsonMessageConverter")
+    @Retryable(maxAttemptsExpression = "${issuance.retry.max-attempts:3}",
+            backoff = @Backoff(delayExpression = "${issuance.retry.delay:100}"), retryFor = RevocationServerException.class)
+    public void receiveBatchMessage(Message message, @Payload @Valid IssuanceBatch batch) throws BusinessException {
+        log.info("Received {} issuances with messageId {}", batch.getIssuances().size(), message.getMessageProperties().getMessageId());
+        issuanceService.saveIssuances(batch.getIssuances());
+    }
 }
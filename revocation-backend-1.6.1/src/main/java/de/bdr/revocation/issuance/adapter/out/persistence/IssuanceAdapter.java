@@ -22,7 +22,16 @@ public class IssuanceAdapter {
 
     @Transactional
     public void save(final Issuance issuance) {
-        IssuanceEntity entity = issuanceRepository.findByPseudonymAndListIdAndListIndex(issuance.getPseudonym(), issuance.getListID(), issuance.getIndex())
+        issuanceRepository.save(toEntity(issuance));
+    }
+
+    @Transactional
+    public void saveAll(final List<Issuance> issuances) {
+        issuanceRepository.saveAll(issuances.stream().map(this::toEntity).toList());
+    }
+
+    private IssuanceEntity toEntity(final Issuance issuance) {
+        return issuanceRepository.findByPseudonymAndListIdAndListIndex(issuance.getPseudonym(), issuance.getListID(), issuance.getIndex())
                 .map(foundEntity -> {
                     log.warn("IssuanceEntity for {} will be updated", issuance.getPseudonym());
                     foundEntity.setExpirationTime(issuance.getExpirationTime());
@@ -31,7 +40,6 @@ public class IssuanceAdapter {
                     log.debug("IssuanceEntity for {} will be inserted", issuance.getPseudonym());
                     return mapper.toEntity(issuance);
                 });
-        issuanceRepository.save(entity);
     }
 
     public IssuanceCount count(final String pseudonym) {
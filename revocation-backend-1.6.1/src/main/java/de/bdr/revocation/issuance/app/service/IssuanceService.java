@@ -9,6 +9,7 @@ import de.bdr.revocation.issuance.adapter.out.persistence.IssuanceAdapter;
 import de.bdr.revocation.issuance.adapter.out.rest.StatusListServiceAdapter;
 import de.bdr.revocation.issuance.app.domain.Issuance;
 import de.bdr.revocation.issuance.app.domain.IssuanceCount;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import lombok.RequiredArgsConstructor;
@@ -38,6 +39,36 @@ public class IssuanceService {
         }
     }
 
+    /**
+     * Saves all issuances in one transaction. If that violates a constraint, the issuances are saved one by one, so
+     * that a single broken issuance does not prevent the others from being saved.
+     */
+    public void saveIssuances(final List<Issuance> issuances) throws BusinessException {
+        try {
+            issuanceAdapter.saveAll(issuances);
+        } catch (DataIntegrityViolationException e) {
+            log.warn("Error saving {} issuances at once, saving them one by one", issuances.size(), e);
+            saveOneByOne(issuances);
+        } catch (RuntimeException e) {
+            log.error(ERROR_SAVING_ISSUANCE_MSG, e);
+            throw new RevocationServerException(ERROR_SAVING_ISSUANCE_MSG, e);
+        }
+    }
+
+    private void saveOneByOne(final List<Issuance> issuances) throws BusinessException {
+        BusinessException failure = null;
+        for (var issuance : issuances) {
+            try {
+                saveIssuance(issuance);
+            } catch (BusinessException e) {
+                failure = e;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
     public IssuanceCount countIssuance(final String xSessionID) {
         String pseudonym = validateSessionAndGetPseudonym(xSessionID);
         return issuanceAdapter.count(pseudonym);
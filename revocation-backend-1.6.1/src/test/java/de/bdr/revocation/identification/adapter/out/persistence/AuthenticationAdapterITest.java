@@ -0,0 +1,187 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.MD.
+ */
+package de.bdr.revocation.identification.adapter.out.persistence;
+
+import de.bdr.revocation.identification.core.model.Authentication;
+import de.bdr.revocation.identification.core.model.AuthenticationState;
+import de.bdr.revocation.issuance.IntegrationTest;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class AuthenticationAdapterITest extends IntegrationTest {
+
+    private static final String PSEUDONYM = "TestPseudonym";
+
+    @Autowired
+    private AuthenticationAdapter out;
+
+    @Autowired
+    private AuthenticationRepository repository;
+
+    private final List<String> tokenIds = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        tokenIds.forEach(tokenId -> repository.findByTokenId(tokenId).ifPresent(repository::delete));
+        tokenIds.clear();
+    }
+
+    @Test
+    void given_valid_authentication_when_transitioned_then_each_transition_applies_once() {
+        var tokenId = initialize(Duration.ofMinutes(5));
+        var samlId = randomId();
+        var referenceId = randomId();
+        var now = Instant.now();
+
+        assertThat(out.startIdentifiedByToken(tokenId, samlId, now)).hasValueSatisfying(auth -> {
+            assertThat(auth.getAuthenticationState()).isEqualTo(AuthenticationState.STARTED);
+            assertThat(auth.getSamlId()).isEqualTo(samlId);
+        });
+        assertThat(out.respondIdentifiedBySaml(samlId, PSEUDONYM, referenceId, now)).hasValueSatisfying(auth -> {
+            assertThat(auth.getAuthenticationState()).isEqualTo(AuthenticationState.RESPONDED);
+            assertThat(auth.getReferenceId()).isEqualTo(referenceId);
+        });
+
+        var sessionId = randomId();
+        var validUntil = now.plus(Duration.ofMinutes(15));
+        assertThat(out.authenticateIdentifiedByReference(referenceId, tokenId, sessionId, validUntil, now)).hasValueSatisfying(auth -> {
+            assertThat(auth.getAuthenticationState()).isEqualTo(AuthenticationState.AUTHENTICATED);
+            assertThat(auth.getSessionId()).isEqualTo(sessionId);
+            assertThat(auth.getPseudonym()).isEqualTo(PSEUDONYM);
+        });
+        assertThat(repository.findBySessionId(sessionId)).hasValueSatisfying(entity ->
+                assertThat(entity.getValidUntil()).isCloseTo(validUntil, within(1, ChronoUnit.MILLIS)));
+
+        assertThat(out.terminateIdentifiedBySession(sessionId, now)).hasValueSatisfying(auth ->
+                assertThat(auth.getAuthenticationState()).isEqualTo(AuthenticationState.TERMINATED));
+        assertThat(repository.findByTokenId(tokenId)).isEmpty();
+    }
+
+    @Test
+    void given_authentication_in_other_state_when_transitioned_then_nothing_changes() {
+        var tokenId = initialize(Duration.ofMinutes(5));
+        var samlId = randomId();
+        var referenceId = randomId();
+        var now = Instant.now();
+        var validUntil = now.plus(Duration.ofMinutes(15));
+
+        assertThat(out.respondIdentifiedBySaml(samlId, PSEUDONYM, referenceId, now)).isEmpty();
+        assertThat(out.authenticateIdentifiedByReference(referenceId, tokenId, randomId(), validUntil, now)).isEmpty();
+        assertThat(out.terminateIdentifiedBySession(tokenId, now)).isEmpty();
+
+        assertThat(out.startIdentifiedByToken(tokenId, samlId, now)).isPresent();
+        assertThat(out.startIdentifiedByToken(tokenId, randomId(), now)).isEmpty();
+
+        assertThat(out.respondIdentifiedBySaml(samlId, PSEUDONYM, referenceId, now)).isPresent();
+        assertThat(out.respondIdentifiedBySaml(samlId, PSEUDONYM, randomId(), now)).isEmpty();
+        assertThat(out.terminateIdentifiedBySession(tokenId, now)).isEmpty();
+        // the referenceId is only finished together with the sessionId it belongs to
+        assertThat(out.authenticateIdentifiedByReference(referenceId, randomId(), randomId(), validUntil, now)).isEmpty();
+
+        assertThat(repository.findByTokenId(tokenId)).hasValueSatisfying(entity -> {
+            assertThat(entity.getAuthenticationState()).isEqualTo(AuthenticationState.RESPONDED);
+            assertThat(entity.getReferenceId()).isEqualTo(referenceId);
+        });
+    }
+
+    @Test
+    void given_expired_authentication_when_transitioned_then_nothing_changes() {
+        var tokenId = initialize(Duration.ofMinutes(5));
+        var samlId = randomId();
+        var referenceId = randomId();
+        var now = Instant.now();
+        var later = now.plus(Duration.ofMinutes(10));
+
+        assertThat(out.startIdentifiedByToken(tokenId, samlId, later)).isEmpty();
+        assertThat(out.startIdentifiedByToken(tokenId, samlId, now)).isPresent();
+        assertThat(out.respondIdentifiedBySaml(samlId, PSEUDONYM, referenceId, later)).isEmpty();
+        assertThat(out.respondIdentifiedBySaml(samlId, PSEUDONYM, referenceId, now)).isPresent();
+        assertThat(out.authenticateIdentifiedByReference(referenceId, tokenId, randomId(), later.plus(Duration.ofMinutes(15)), later)).isEmpty();
+
+        var sessionId = randomId();
+        assertThat(out.authenticateIdentifiedByReference(referenceId, tokenId, sessionId, now.plus(Duration.ofMinutes(5)), now)).isPresent();
+        assertThat(out.terminateIdentifiedBySession(sessionId, later)).isEmpty();
+        assertThat(repository.findByTokenId(tokenId)).hasValueSatisfying(entity ->
+                assertThat(entity.getAuthenticationState()).isEqualTo(AuthenticationState.AUTHENTICATED));
+    }
+
+    @Test
+    void given_saml_response_submitted_concurrently_when_respond_then_only_one_succeeds() throws InterruptedException {
+        var tokenId = initialize(Duration.ofMinutes(5));
+        var samlId = randomId();
+        assertThat(out.startIdentifiedByToken(tokenId, samlId, Instant.now())).isPresent();
+
+        var responded = concurrently(() -> out.respondIdentifiedBySaml(samlId, PSEUDONYM, randomId(), Instant.now()).isPresent());
+
+        assertThat(responded).isEqualTo(1);
+        assertThat(repository.findByTokenId(tokenId)).hasValueSatisfying(entity ->
+                assertThat(entity.getAuthenticationState()).isEqualTo(AuthenticationState.RESPONDED));
+    }
+
+    @Test
+    void given_login_finished_concurrently_when_authenticate_then_only_one_succeeds() throws InterruptedException {
+        var tokenId = initialize(Duration.ofMinutes(5));
+        var samlId = randomId();
+        var referenceId = randomId();
+        assertThat(out.startIdentifiedByToken(tokenId, samlId, Instant.now())).isPresent();
+        assertThat(out.respondIdentifiedBySaml(samlId, PSEUDONYM, referenceId, Instant.now())).isPresent();
+        var validUntil = Instant.now().plus(Duration.ofMinutes(15));
+
+        var authenticated = concurrently(() ->
+                out.authenticateIdentifiedByReference(referenceId, tokenId, randomId(), validUntil, Instant.now()).isPresent());
+
+        assertThat(authenticated).isEqualTo(1);
+        assertThat(repository.findByTokenId(tokenId)).hasValueSatisfying(entity ->
+                assertThat(entity.getAuthenticationState()).isEqualTo(AuthenticationState.AUTHENTICATED));
+    }
+
+    /** @return how many of four concurrent runs of the transition succeeded */
+    private int concurrently(BooleanSupplier transition) throws InterruptedException {
+        var succeeded = new AtomicInteger();
+        var start = new CountDownLatch(1);
+
+        try (var executor = Executors.newFixedThreadPool(4)) {
+            for (int i = 0; i < 4; i++) {
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                        if (transition.getAsBoolean()) {
+                            succeeded.incrementAndGet();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                });
+            }
+            start.countDown();
+        }
+        return succeeded.get();
+    }
+
+    private String initialize(Duration validity) {
+        var tokenId = randomId();
+        tokenIds.add(tokenId);
+        out.createWithSessionAndToken(Authentication.initialize(tokenId, tokenId, Instant.now().plus(validity)));
+        return tokenId;
+    }
+
+    private static String randomId() {
+        return UUID.randomUUID().toString().replace("-", "");
+    }
+}
@@ -29,7 +29,6 @@ import static de.bdr.revocation.identification.core.model.AuthenticationState.TE
 import static de.bdr.revocation.identification.core.model.AuthenticationState.TIMEOUT;
 import static de.bdr.revocation.identification.core.model.ModelTestData.defaultAuthentication;
 import static org.assertj.core.api.Assertions.assertThat;
-import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.times;
@@ -120,158 +119,93 @@ class AuthenticationAdapterTest {
     }
 
     @Test
-    void given_update_saml_returns_no_change_then_throws_exception() {
-        var auth = defaultAuthentication().authenticationState(STARTED).build();
-        var tokenId = auth.getTokenId();
-        when(repo.updateSamlIdByTokenIdAndAuthenticationState(
-                auth.getAuthenticationState(),
-                auth.getSamlId(),
-                tokenId,
-                INITIALIZED)
-        ).thenReturn(0);
-        assertThrows(RuntimeException.class, () -> out.updateWithSamlIdentifiedByTokenAndFormerState(auth, INITIALIZED));
-    }
+    void given_start_changes_a_row_then_returns_started_authentication() {
+        var validAt = Instant.now();
+        var entity = defaultAuthenticationEntity().authenticationState(STARTED).build();
+        when(repo.startByTokenId(entity.getTokenId(), entity.getSamlId(), validAt)).thenReturn(Optional.of(entity));
 
-    @Test
-    void given_update_saml_returns_one_change_then_does_not_throw_exception() {
-        var auth = defaultAuthentication().authenticationState(STARTED).build();
-        var tokenId = auth.getTokenId();
-        when(repo.updateSamlIdByTokenIdAndAuthenticationState(
-                auth.getAuthenticationState(),
-                auth.getSamlId(),
-                tokenId,
-                INITIALIZED)
-        ).thenReturn(1);
-        assertDoesNotThrow(() -> out.updateWithSamlIdentifiedByTokenAndFormerState(auth, INITIALIZED));
-    }
+        var result = out.startIdentifiedByToken(entity.getTokenId(), entity.getSamlId(), validAt);
 
-    @Test
-    void given_update_saml_returns_more_than_one_change_then_throws_exception() {
-        var auth = defaultAuthentication().authenticationState(STARTED).build();
-        var tokenId = auth.getTokenId();
-        when(repo.updateSamlIdByTokenIdAndAuthenticationState(
-                auth.getAuthenticationState(),
-                auth.getSamlId(),
-                tokenId,
-                INITIALIZED)
-        ).thenReturn(2);
-        assertThrows(RuntimeException.class, () -> out.updateWithSamlIdentifiedByTokenAndFormerState(auth, INITIALIZED));
+        assertThat(result).hasValueSatisfying(auth -> {
+            assertThat(auth.getAuthenticationState()).isEqualTo(STARTED);
+            assertThat(auth.getSamlId()).isEqualTo(entity.getSamlId());
+        });
     }
 
     @Test
-    void given_update_reference_returns_no_change_then_throws_exception() {
-        var auth = defaultAuthentication().authenticationState(RESPONDED).build();
-        var samlId = auth.getSamlId();
-        when(repo.updateReferenceIdBySamlIdAndAuthenticationState(
-                auth.getAuthenticationState(),
-                auth.getPseudonym(),
-                auth.getReferenceId(),
-                samlId,
-                STARTED)
-        ).thenReturn(0);
-        assertThrows(RuntimeException.class, () -> out.updateWithReferenceIdIdentifiedBySamlAndFormerState(auth, STARTED));
-    }
+    void given_start_changes_no_row_then_returns_empty() {
+        var validAt = Instant.now();
+        when(repo.startByTokenId("TestTokenId", "TestSamlId", validAt)).thenReturn(Optional.empty());
 
-    @Test
-    void given_update_reference_returns_one_change_then_does_not_throw_exception() {
-        var auth = defaultAuthentication().authenticationState(RESPONDED).build();
-        var samlId = auth.getSamlId();
-        when(repo.updateReferenceIdBySamlIdAndAuthenticationState(
-                auth.getAuthenticationState(),
-                auth.getPseudonym(),
-                auth.getReferenceId(),
-                samlId,
-                STARTED)
-        ).thenReturn(1);
-        assertDoesNotThrow(() -> out.updateWithReferenceIdIdentifiedBySamlAndFormerState(auth, STARTED));
+        assertThat(out.startIdentifiedByToken("TestTokenId", "TestSamlId", validAt)).isEmpty();
     }
 
     @Test
-    void given_update_reference_returns_more_than_one_change_then_throws_exception() {
-        var auth = defaultAuthentication().authenticationState(RESPONDED).build();
-        var samlId = auth.getSamlId();
-        when(repo.updateReferenceIdBySamlIdAndAuthenticationState(
-                auth.getAuthenticationState(),
-                auth.getPseudonym(),
-                auth.getReferenceId(),
-                samlId,
-                STARTED)
-        ).thenReturn(2);
-        assertThrows(RuntimeException.class, () -> out.updateWithReferenceIdIdentifiedBySamlAndFormerState(auth, STARTED));
+    void given_respond_changes_a_row_then_returns_responded_authentication() {
+        var validAt = Instant.now();
+        var entity = defaultAuthenticationEntity().authenticationState(RESPONDED).build();
+        when(repo.respondBySamlId(entity.getSamlId(), entity.getPseudonym(), entity.getReferenceId(), validAt))
+                .thenReturn(Optional.of(entity));
+
+        var result = out.respondIdentifiedBySaml(entity.getSamlId(), entity.getPseudonym(), entity.getReferenceId(), validAt);
+
+        assertThat(result).hasValueSatisfying(auth -> {
+            assertThat(auth.getAuthenticationState()).isEqualTo(RESPONDED);
+            assertThat(auth.getReferenceId()).isEqualTo(entity.getReferenceId());
+        });
     }
 
     @Test
-    void given_update_changed_session_returns_no_change_then_throws_exception() {
-        var oldSessionId = "oldSessionId";
-        var oldReferenceId = "oldReferenceId";
-        var auth = defaultAuthentication()
-                .authenticationState(AUTHENTICATED)
-                .sessionId(oldSessionId)
-                .referenceId(oldReferenceId)
-                .build();
-
-        when(repo.updateChangedSessionValidUntilByReferenceAndFormerState(auth.getAuthenticationState(), auth.getSessionId(), auth.getValidUntil(),
-                oldSessionId, RESPONDED, oldReferenceId)
-        ).thenReturn(0);
-        assertThrows(RuntimeException.class, () -> out.updateWithChangedSessionValidUntilIdentifiedByReferenceAndFormerState(auth, oldSessionId, RESPONDED));
+    void given_respond_changes_no_row_then_returns_empty() {
+        var validAt = Instant.now();
+        when(repo.respondBySamlId("TestSamlId", "TestPseudonym", "TestReferenceId", validAt)).thenReturn(Optional.empty());
+
+        assertThat(out.respondIdentifiedBySaml("TestSamlId", "TestPseudonym", "TestReferenceId", validAt)).isEmpty();
     }
 
     @Test
-    void given_update_changed_session_returns_one_change_then_does_not_throw_exception() {
-        var oldSessionId = "oldSessionId";
-        var oldReferenceId = "oldReferenceId";
-        var auth = defaultAuthentication()
-                .authenticationState(AUTHENTICATED)
-                .sessionId(oldSessionId)
-                .referenceId(oldReferenceId)
-                .build();
-
-        when(repo.updateChangedSessionValidUntilByReferenceAndFormerState(
-                auth.getAuthenticationState(), auth.getSessionId(), auth.getValidUntil(),
-                oldSessionId, RESPONDED, oldReferenceId)
-        ).thenReturn(1);
-        assertDoesNotThrow(() -> out.updateWithChangedSessionValidUntilIdentifiedByReferenceAndFormerState(auth, oldSessionId, RESPONDED));
+    void given_authenticate_changes_a_row_then_returns_authenticated_authentication() {
+        var validAt = Instant.now();
+        var validUntil = validAt.plusSeconds(300);
+        var entity = defaultAuthenticationEntity().authenticationState(AUTHENTICATED).sessionId("NewSessionId").build();
+        when(repo.authenticateByReferenceId(entity.getReferenceId(), "TestSessionId", "NewSessionId", validUntil, validAt))
+                .thenReturn(Optional.of(entity));
+
+        var result = out.authenticateIdentifiedByReference(entity.getReferenceId(), "TestSessionId", "NewSessionId", validUntil, validAt);
+
+        assertThat(result).hasValueSatisfying(auth -> {
+            assertThat(auth.getAuthenticationState()).isEqualTo(AUTHENTICATED);
+            assertThat(auth.getSessionId()).isEqualTo("NewSessionId");
+        });
     }
 
     @Test
-    void given_update_changed_session_returns_more_than_one_change_then_throws_exception() {
+    void given_authenticate_changes_no_row_then_returns_empty() {
+        var validAt = Instant.now();
+        var validUntil = validAt.plusSeconds(300);
+        when(repo.authenticateByReferenceId("TestReferenceId", "TestSessionId", "NewSessionId", validUntil, validAt))
+                .thenReturn(Optional.empty());
 
-        var oldSessionId = "oldSessionId";
-        var oldReferenceId = "oldReferenceId";
-        var auth = defaultAuthentication()
-                .authenticationState(AUTHENTICATED)
-                .referenceId(oldReferenceId)
-                .sessionId(oldSessionId)
-                .build();
-        when(repo.updateChangedSessionValidUntilByReferenceAndFormerState(
-                AUTHENTICATED, auth.getSessionId(), auth.getValidUntil(),
-                oldSessionId, RESPONDED, oldReferenceId)
-        ).thenReturn(2);
-        assertThrows(RuntimeException.class, () -> out.updateWithChangedSessionValidUntilIdentifiedByReferenceAndFormerState(auth, oldSessionId, RESPONDED));
+        assertThat(out.authenticateIdentifiedByReference("TestReferenceId", "TestSessionId", "NewSessionId", validUntil, validAt)).isEmpty();
     }
 
     @Test
-    void given_remove_identified_by_session_and_state_returns_no_delete_then_throws_exception() {
-        var auth = defaultAuthentication().authenticationState(TERMINATED).build();
-        var sessionId = auth.getSessionId();
-        when(repo.deleteBySessionIdAndAuthenticationState(sessionId, AUTHENTICATED)).thenReturn(0);
-        assertThrows(RuntimeException.class, () -> out.removeIdentifiedBySessionAndFormerState(sessionId, AUTHENTICATED));
-    }
+    void given_terminate_deletes_a_row_then_returns_terminated_authentication() {
+        var validAt = Instant.now();
+        var entity = defaultAuthenticationEntity().authenticationState(AUTHENTICATED).build();
+        when(repo.deleteAuthenticatedBySessionId(entity.getSessionId(), validAt)).thenReturn(Optional.of(entity));
 
-    @Test
-    void given_remove_identified_by_session_and_state_returns_one_delete_then_does_not_throw_exception() {
-        var auth = defaultAuthentication().authenticationState(TERMINATED).build();
-        var sessionId = auth.getSessionId();
-        when(repo.deleteBySessionIdAndAuthenticationState(sessionId, AUTHENTICATED)).thenReturn(1);
-        assertDoesNotThrow(() -> out.removeIdentifiedBySessionAndFormerState(sessionId, AUTHENTICATED));
+        var result = out.terminateIdentifiedBySession(entity.getSessionId(), validAt);
+
+        assertThat(result).hasValueSatisfying(auth -> assertThat(auth.getAuthenticationState()).isEqualTo(TERMINATED));
     }
 
     @Test
-    void given_remove_identified_by_session_and_state_returns_more_than_one_delete_then_throws_exception() {
-        var auth = defaultAuthentication().authenticationState(TERMINATED).build();
-        var sessionId = auth.getSessionId();
-        when(repo.deleteBySessionIdAndAuthenticationState(sessionId, AUTHENTICATED)).thenReturn(2);
-        assertThrows(RuntimeException.class, () -> out.removeIdentifiedBySessionAndFormerState(sessionId, AUTHENTICATED));
+    void given_terminate_deletes_no_row_then_returns_empty() {
+        var validAt = Instant.now();
+        when(repo.deleteAuthenticatedBySessionId("TestSessionId", validAt)).thenReturn(Optional.empty());
+
+        assertThat(out.terminateIdentifiedBySession("TestSessionId", validAt)).isEmpty();
     }
 
     @Test
@@ -8,13 +8,13 @@ import de.bdr.revocation.identification.adapter.out.persistence.AuthenticationAd
 import de.bdr.revocation.identification.config.IdentificationConfiguration;
 import de.bdr.revocation.identification.core.exception.AuthenticationNotFoundException;
 import de.bdr.revocation.identification.core.exception.AuthenticationStateException;
-import de.bdr.revocation.identification.core.exception.IllegalTransitionException;
 import de.bdr.revocation.identification.core.model.Authentication;
 import de.bdr.revocation.identification.core.model.AuthenticationState;
 import de.bdr.revocation.identification.core.model.ResponseData;
 import de.bdr.revocation.issuance.IntegrationTest;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.Optional;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
@@ -63,6 +63,12 @@ class AuthenticationServiceITest extends IntegrationTest {
     @Captor
     ArgumentCaptor<Authentication> authenticationArgumentCaptor;
 
+    @Captor
+    ArgumentCaptor<String> samlIdCaptor;
+
+    @Captor
+    ArgumentCaptor<Instant> validAtCaptor;
+
     @Mock
     Authentication authMock;
 
@@ -86,30 +92,30 @@ class AuthenticationServiceITest extends IntegrationTest {
 
     @Test
     void given_tokenId_when_createSamlRedirectBindingUrl_then_call_store_and_autent() {
-        when(authMock.getAuthenticationState())
-                .thenReturn(AuthenticationState.INITIALIZED);
-        when(authMock.getValidUntil())
-                .thenReturn(getFutureTime());
-        when(authenticationAdapter.findByTokenId(TOKEN_ID))
-                .thenReturn(authMock);
+        when(authenticationAdapter.startIdentifiedByToken(eq(TOKEN_ID), anyString(), any()))
+                .thenReturn(Optional.of(authMock));
         String autentResult = "autentResult";
         when(autentMock.createSamlRedirectBindingUrl(anyString())).thenReturn(autentResult);
+        var before = Instant.now();
 
-        this.out.createSamlRedirectBindingUrl(TOKEN_ID);
+        var result = this.out.createSamlRedirectBindingUrl(TOKEN_ID);
 
-        verify(autentMock, times(1)).createSamlRedirectBindingUrl(anyString());
-        verify(authenticationAdapter, times(1)).findByTokenId(TOKEN_ID);
-        verify(authenticationAdapter, times(1)).updateWithSamlIdentifiedByTokenAndFormerState(authMock, AuthenticationState.INITIALIZED);
-        verify(authMock, times(1)).start(anyString());
+        assertEquals(autentResult, result);
+        verify(autentMock, times(1)).createSamlRedirectBindingUrl(samlIdCaptor.capture());
+        verify(authenticationAdapter, times(1))
+                .startIdentifiedByToken(eq(TOKEN_ID), eq(samlIdCaptor.getValue()), validAtCaptor.capture());
+        assertThat(validAtCaptor.getValue()).isBetween(before, Instant.now());
+        verify(authenticationAdapter, never()).findByTokenId(any());
     }
 
     @Test
-    void given_tokenId_not_in_store_when_createSamlRedirectBindingUrl_then_exception() {
-        when(authenticationAdapter.findByTokenId(TOKEN_ID))
-                .thenReturn(null);
+    void given_no_valid_initialized_authentication_when_createSamlRedirectBindingUrl_then_exception() {
+        when(authenticationAdapter.startIdentifiedByToken(eq(TOKEN_ID), anyString(), any()))
+                .thenReturn(Optional.empty());
 
         assertThrows(AuthenticationNotFoundException.class,
                 () -> this.out.createSamlRedirectBindingUrl(TOKEN_ID));
+        verify(autentMock, never()).createSamlRedirectBindingUrl(any());
     }
 
     @Test
@@ -122,85 +128,58 @@ class AuthenticationServiceITest extends IntegrationTest {
                 () -> this.out.createSamlRedirectBindingUrl(tokenId));
     }
 
-    @Test
-    void given_tokenId_already_Authenticated_when_createSamlRedirectBindingUrl_then_exception() {
-        when(authMock.getAuthenticationState())
-                .thenReturn(AuthenticationState.AUTHENTICATED);
-        when(authenticationAdapter.findByTokenId(TOKEN_ID))
-                .thenReturn(authMock);
-
-        assertThrows(AuthenticationStateException.class,
-                () -> this.out.createSamlRedirectBindingUrl(TOKEN_ID));
-    }
-
-    @Test
-    void given_tokenId_validUntil_in_past_when_createSamlRedirectBindingUrl_then_exception() {
-        when(authMock.getAuthenticationState())
-                .thenReturn(AuthenticationState.INITIALIZED);
-        when(authMock.getValidUntil())
-                .thenReturn(TIME_PAST);
-        when(authenticationAdapter.findByTokenId(TOKEN_ID))
-                .thenReturn(authMock);
-
-        assertThrows(AuthenticationStateException.class,
-                () -> this.out.createSamlRedirectBindingUrl(TOKEN_ID));
-    }
-
     @Test
     void given_relayState_when_receiveSamlResponse_then_validate_call_store_and_return_referenceId() {
-        when(authMock.getAuthenticationState())
-                .thenReturn(AuthenticationState.STARTED);
-        when(authMock.getValidUntil())
-                .thenReturn(getFutureTime());
-        when(authenticationAdapter.findBySamlId(RELAY_STATE))
-                .thenReturn(authMock);
-        var responseData = new ResponseData(PSEUDONYM);
-        when(autentMock.validateSamlResponseAndExtractPseudonym(RELAY_STATE, SAML_RESPONSE, SIG_ALG, SIGNATURE, authMock))
-                .thenReturn(responseData);
+        when(authenticationAdapter.lockStartedIdentifiedBySaml(eq(RELAY_STATE), any()))
+                .thenReturn(Optional.of(authMock));
+        when(autentMock.validateSamlResponseAndExtractPseudonym(RELAY_STATE, SAML_RESPONSE, SIG_ALG, SIGNATURE))
+                .thenReturn(RESPONSE_DATA);
+        when(authenticationAdapter.respondIdentifiedBySaml(eq(RELAY_STATE), eq(PSEUDONYM), anyString(), any()))
+                .thenReturn(Optional.of(authMock));
 
         var result = out.receiveSamlResponse(RELAY_STATE, SAML_RESPONSE, SIG_ALG, SIGNATURE);
 
         assertNotNull(result, "referenceId");
-        verify(authenticationAdapter, times(1)).findBySamlId(RELAY_STATE);
-        verify(authMock, times(1)).respond(eq(PSEUDONYM), anyString());
-        verify(authenticationAdapter, times(1))
-                .updateWithReferenceIdIdentifiedBySamlAndFormerState(authMock, AuthenticationState.STARTED);
+        verify(authenticationAdapter, times(1)).respondIdentifiedBySaml(eq(RELAY_STATE), eq(PSEUDONYM), eq(result), any());
+        verify(authenticationAdapter, never()).findBySamlId(any());
     }
 
     @Test
-    void given_auth_empty_when_receiveSamlResponse_then_AuthenticationNotFoundException() {
+    void given_no_valid_started_authentication_when_receiveSamlResponse_then_AuthenticationNotFoundException_without_validation() {
+        when(authenticationAdapter.lockStartedIdentifiedBySaml(eq(RELAY_STATE), any()))
+                .thenReturn(Optional.empty());
+
         assertThrows(AuthenticationNotFoundException.class,
-                () -> this.out.receiveSamlResponse("", "", "", ""));
+                () -> this.out.receiveSamlResponse(RELAY_STATE, SAML_RESPONSE, SIG_ALG, SIGNATURE));
+        verify(autentMock, never()).validateSamlResponseAndExtractPseudonym(any(), any(), any(), any());
+        verify(authenticationAdapter, never()).respondIdentifiedBySaml(any(), any(), any(), any());
     }
 
     @Test
-    void given_wrong_authState_when_receiveSamlResponse_then_AuthenticationStateException() {
-        when(authMock.getAuthenticationState())
-                .thenReturn(AuthenticationState.INITIALIZED);
-        when(authMock.getValidUntil())
-                .thenReturn(getFutureTime());
-        when(authenticationAdapter.findBySamlId(RELAY_STATE))
-                .thenReturn(authMock);
-        when(autentMock.validateSamlResponseAndExtractPseudonym(RELAY_STATE, SAML_RESPONSE, SIG_ALG, SIGNATURE, authMock))
-                .thenReturn(RESPONSE_DATA);
+    void given_invalid_saml_response_when_receiveSamlResponse_then_no_transition() {
+        when(authenticationAdapter.lockStartedIdentifiedBySaml(eq(RELAY_STATE), any()))
+                .thenReturn(Optional.of(authMock));
+        when(autentMock.validateSamlResponseAndExtractPseudonym(RELAY_STATE, SAML_RESPONSE, SIG_ALG, SIGNATURE))
+                .thenThrow(new IllegalStateException("invalid signature"));
 
-        assertThrows(AuthenticationStateException.class,
+        assertThrows(IllegalStateException.class,
                 () -> this.out.receiveSamlResponse(RELAY_STATE, SAML_RESPONSE, SIG_ALG, SIGNATURE));
+        verify(authenticationAdapter, never()).respondIdentifiedBySaml(any(), any(), any(), any());
     }
 
     @Test
-    void given_authStage_timeout_when_receiveSamlResponse_then_AuthenticationStateException() {
-        when(authMock.getAuthenticationState())
-                .thenReturn(AuthenticationState.STARTED);
-        when(authMock.getValidUntil())
-                .thenReturn(TIME_PAST);
-        when(authenticationAdapter.findBySamlId(RELAY_STATE))
-                .thenReturn(authMock);
-        when(autentMock.validateSamlResponseAndExtractPseudonym(RELAY_STATE, SAML_RESPONSE, SIG_ALG, SIGNATURE, authMock))
+    void given_response_received_twice_when_receiveSamlResponse_then_only_first_is_validated() {
+        when(authenticationAdapter.lockStartedIdentifiedBySaml(eq(RELAY_STATE), any()))
+                .thenReturn(Optional.of(authMock), Optional.empty());
+        when(autentMock.validateSamlResponseAndExtractPseudonym(RELAY_STATE, SAML_RESPONSE, SIG_ALG, SIGNATURE))
                 .thenReturn(RESPONSE_DATA);
+        when(authenticationAdapter.respondIdentifiedBySaml(eq(RELAY_STATE), eq(PSEUDONYM), anyString(), any()))
+                .thenReturn(Optional.of(authMock));
 
-        assertThrows(AuthenticationStateException.class,
+        assertNotNull(out.receiveSamlResponse(RELAY_STATE, SAML_RESPONSE, SIG_ALG, SIGNATURE));
+        assertThrows(AuthenticationNotFoundException.class,
                 () -> this.out.receiveSamlResponse(RELAY_STATE, SAML_RESPONSE, SIG_ALG, SIGNATURE));
+        verify(autentMock, times(1)).validateSamlResponseAndExtractPseudonym(RELAY_STATE, SAML_RESPONSE, SIG_ALG, SIGNATURE);
     }
 
     @Test
@@ -288,95 +267,77 @@ class AuthenticationServiceITest extends IntegrationTest {
     }
 
     @Test
-    void given_authState_responded_when_finishAuthentication_then_storedWithNewSessionId() {
-        var realAuth = Authentication.restoreResponded(SESSION_ID, TOKEN_ID, SAML_ID, REFERENCE_ID, PSEUDONYM, getFutureTime(), CREATED);
-
-        out.finishAuthentication(realAuth);
-
-        assertNotEquals(SESSION_ID, realAuth.getSessionId());
-        verify(authenticationAdapter, times(1))
-                .updateWithChangedSessionValidUntilIdentifiedByReferenceAndFormerState(realAuth, SESSION_ID, RESPONDED);
+    void given_authState_responded_when_finishAuthentication_then_authenticatedWithNewSessionId() {
+        var authenticated = Authentication.restoreAuthenticated(SESSION_ID, TOKEN_ID, SAML_ID, REFERENCE_ID, PSEUDONYM, getFutureTime(), CREATED);
+        var newSessionIdCaptor = ArgumentCaptor.forClass(String.class);
+        var validUntilCaptor = ArgumentCaptor.forClass(Instant.class);
+        when(authenticationAdapter.authenticateIdentifiedByReference(eq(REFERENCE_ID), eq(SESSION_ID), newSessionIdCaptor.capture(),
+                validUntilCaptor.capture(), validAtCaptor.capture())).thenReturn(Optional.of(authenticated));
+
+        assertEquals(authenticated, out.finishAuthentication(SESSION_ID, REFERENCE_ID));
+
+        assertNotEquals(SESSION_ID, newSessionIdCaptor.getValue());
+        assertEquals(authenticationConfiguration.getMinAuthenticatedSessionDuration(),
+                Duration.between(validAtCaptor.getValue(), validUntilCaptor.getValue()));
+        verify(authenticationAdapter, never()).findBySessionId(any());
     }
 
     @Test
-    void given_wrong_authState_when_finishAuthentication_then_IllegalTransitionException() {
-        var realAuth = Authentication.initialize(SESSION_ID, TOKEN_ID, getFutureTime());
-
-        assertThrows(IllegalTransitionException.class,
-                () -> out.finishAuthentication(realAuth));
-    }
+    void given_no_valid_responded_authentication_when_finishAuthentication_then_AuthenticationNotFoundException() {
+        when(authenticationAdapter.authenticateIdentifiedByReference(eq(REFERENCE_ID), eq(SESSION_ID), anyString(), any(), any()))
+                .thenReturn(Optional.empty());
 
-    @Test
-    void given_sessionId_null_when_terminateAuthentication_then_AuthenticationNotFoundException() {
         assertThrows(AuthenticationNotFoundException.class,
-                () -> out.terminateAuthentication(null));
-        verify(authenticationAdapter, times(0))
-                .removeIdentifiedBySessionAndFormerState(null, AuthenticationState.STARTED);
+                () -> out.finishAuthentication(SESSION_ID, REFERENCE_ID));
     }
 
     @Test
-    void given_auth_null_when_terminateAuthentication_then_AuthenticationNotFoundException() {
-        when(authenticationAdapter.findBySessionId(SESSION_ID)).thenReturn(null);
+    void given_login_finished_twice_when_finishAuthentication_then_only_first_succeeds() {
+        var authenticated = Authentication.restoreAuthenticated(SESSION_ID, TOKEN_ID, SAML_ID, REFERENCE_ID, PSEUDONYM, getFutureTime(), CREATED);
+        when(authenticationAdapter.authenticateIdentifiedByReference(eq(REFERENCE_ID), eq(SESSION_ID), anyString(), any(), any()))
+                .thenReturn(Optional.of(authenticated), Optional.empty());
 
+        assertNotNull(out.finishAuthentication(SESSION_ID, REFERENCE_ID));
         assertThrows(AuthenticationNotFoundException.class,
-                () -> out.terminateAuthentication(SESSION_ID));
-        verify(authenticationAdapter, times(1)).findBySessionId(SESSION_ID);
-        verify(authenticationAdapter, times(0))
-                .removeIdentifiedBySessionAndFormerState(SESSION_ID, AuthenticationState.STARTED);
+                () -> out.finishAuthentication(SESSION_ID, REFERENCE_ID));
     }
 
     @Test
-    void given_authState_timeout_when_terminateAuthentication_then_exception() {
-        when(authenticationAdapter.findBySessionId(SESSION_ID)).thenReturn(authMock);
-        when(authMock.getAuthenticationState()).thenReturn(AuthenticationState.TIMEOUT);
-
-        assertThrows(AuthenticationStateException.class,
-                () -> out.terminateAuthentication(SESSION_ID));
-
-        verify(authenticationAdapter, times(1)).findBySessionId(SESSION_ID);
-        verify(authenticationAdapter, times(0))
-                .removeIdentifiedBySessionAndFormerState(SESSION_ID, AuthenticationState.TIMEOUT);
+    void given_sessionId_or_referenceId_null_when_finishAuthentication_then_AuthenticationNotFoundException() {
+        assertThrows(AuthenticationNotFoundException.class, () -> out.finishAuthentication(null, REFERENCE_ID));
+        assertThrows(AuthenticationNotFoundException.class, () -> out.finishAuthentication(SESSION_ID, null));
+        verify(authenticationAdapter, never()).authenticateIdentifiedByReference(any(), any(), any(), any(), any());
     }
 
     @Test
-    @DisplayName("given wrong authState when terminateAuthentication then AuthenticationStateException")
-    void terminateAuthentication_fail002() {
-        when(authenticationAdapter.findBySessionId(SESSION_ID)).thenReturn(authMock);
-        when(authMock.getAuthenticationState()).thenReturn(AuthenticationState.INITIALIZED);
-        when(authMock.getValidUntil()).thenReturn(getFutureTime());
-
-        assertThrows(AuthenticationStateException.class,
-                () -> out.terminateAuthentication(SESSION_ID));
-
-        verify(authenticationAdapter, times(0))
-                .removeIdentifiedBySessionAndFormerState(SESSION_ID, AuthenticationState.INITIALIZED);
+    void given_sessionId_null_when_terminateAuthentication_then_AuthenticationNotFoundException() {
+        assertThrows(AuthenticationNotFoundException.class,
+                () -> out.terminateAuthentication(null));
+        verify(authenticationAdapter, never()).terminateIdentifiedBySession(any(), any());
     }
 
     @Test
-    @DisplayName("given valid until timed out when terminateAuthentication then AuthenticationStateException")
-    void terminateAuthentication_fail003() {
-        when(authenticationAdapter.findBySessionId(SESSION_ID)).thenReturn(authMock);
-        when(authMock.getAuthenticationState()).thenReturn(AuthenticationState.AUTHENTICATED);
-        when(authMock.getValidUntil()).thenReturn(TIME_PAST);
+    @DisplayName("given no valid authenticated authentication when terminateAuthentication then AuthenticationNotFoundException")
+    void terminateAuthentication_fail001() {
+        when(authenticationAdapter.terminateIdentifiedBySession(eq(SESSION_ID), any())).thenReturn(Optional.empty());
 
-        assertThrows(AuthenticationStateException.class,
+        assertThrows(AuthenticationNotFoundException.class,
                 () -> out.terminateAuthentication(SESSION_ID));
-
-        verify(authenticationAdapter, times(0))
-                .removeIdentifiedBySessionAndFormerState(SESSION_ID, AuthenticationState.INITIALIZED);
+        verify(authenticationAdapter, never()).findBySessionId(any());
     }
 
     @Test
-    @DisplayName("given authState authenticated when terminateAuthentication then terminated and removed")
+    @DisplayName("given authState authenticated when terminateAuthentication then removed if valid for two more seconds")
     void terminateAuthentication_ok001() {
         var realAuth = Authentication.restoreAuthenticated(SESSION_ID, TOKEN_ID, SAML_ID, REFERENCE_ID, PSEUDONYM, getFutureTime(), CREATED);
-
-        when(authenticationAdapter.findBySessionId(SESSION_ID)).thenReturn(realAuth);
+        realAuth.terminate();
+        when(authenticationAdapter.terminateIdentifiedBySession(eq(SESSION_ID), any())).thenReturn(Optional.of(realAuth));
+        var before = Instant.now();
 
         assertDoesNotThrow(() -> out.terminateAuthentication(SESSION_ID));
-        assertEquals(AuthenticationState.TERMINATED, realAuth.getAuthenticationState());
-        verify(authenticationAdapter, times(1))
-                .removeIdentifiedBySessionAndFormerState(SESSION_ID, AuthenticationState.AUTHENTICATED);
+
+        verify(authenticationAdapter, times(1)).terminateIdentifiedBySession(eq(SESSION_ID), validAtCaptor.capture());
+        assertThat(validAtCaptor.getValue()).isBetween(before.plusSeconds(2), Instant.now().plusSeconds(2));
     }
 
     @Test
@@ -7,7 +7,6 @@ package de.bdr.revocation.identification.core;
 import de.bdr.revocation.identification.core.configuration.MultiSamlConfiguration;
 import de.bdr.revocation.identification.core.exception.CryptoConfigException;
 import de.bdr.revocation.identification.core.exception.SamlResponseValidationFailedException;
-import de.bdr.revocation.identification.core.model.Authentication;
 import de.bund.bsi.eid240.PersonalDataType;
 import de.bund.bsi.eid240.RestrictedIDType;
 import de.governikus.panstar.sdk.saml.configuration.SamlConfiguration;
@@ -28,8 +27,6 @@ import org.mockito.MockedStatic;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
-import static de.bdr.revocation.identification.core.model.AuthenticationState.STARTED;
-import static de.bdr.revocation.identification.core.model.ModelTestData.defaultAuthentication;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
@@ -69,14 +66,11 @@ class EidAuthAdapterTest {
     @ParameterizedTest
     @ValueSource(ints = {0, 1, 2})
     void test_mapResponse_ok(int i) {
-        var relayState = "relayState";
-        de.bdr.revocation.identification.core.model.Authentication auth = Mockito.mock(Authentication.class);
-        Mockito.when(auth.getSamlId()).thenReturn(relayState);
         ProcessedSamlResult processed = Mockito.mock(ProcessedSamlResult.class);
         var personalData = personal(i);
         Mockito.when(processed.getPersonalData()).thenReturn(personalData);
 
-        var result = out.mapEidResponse(relayState, auth, processed);
+        var result = out.mapEidResponse(processed);
 
         Assertions.assertAll(
                 () -> Assertions.assertNotNull(result),
@@ -99,8 +93,6 @@ class EidAuthAdapterTest {
 
     @Test
     void when_no_certificate_is_valid_then_fail_with_exception() {
-        Authentication expectedAuthentication = defaultAuthentication().authenticationState(STARTED).build();
-
         try (MockedStatic<SAMLUtils> samlSdkHelper = Mockito.mockStatic(SAMLUtils.class)) {
             samlSdkHelper.when(() -> SAMLUtils
                             .checkQuerySignature(anyString(), any(), anyString(), anyString(), any(X509Certificate.class), eq(false)))
@@ -108,7 +100,7 @@ class EidAuthAdapterTest {
             var exception = assertThrows(SamlResponseValidationFailedException.class, () -> out.validateSamlResponseAndExtractPseudonym(
                     "TestSamlId",
                     "TestSamlResponse",
-                    "http://www.w3.org/2001/04/xmldsig-more#rsa-sha256", "signature", expectedAuthentication));
+                    "http://www.w3.org/2001/04/xmldsig-more#rsa-sha256", "signature"));
 
             assertEquals("no certificate found that validates signature", exception.getMessage());
         }
@@ -6,8 +6,10 @@ package de.bdr.revocation.issuance.adapter.in.amqp;
 
 import de.bdr.revocation.issuance.TestUtils;
 import de.bdr.revocation.issuance.adapter.in.amqp.IssuanceMessageListener;
+import de.bdr.revocation.issuance.app.domain.IssuanceBatch;
 import de.bdr.revocation.issuance.app.service.BusinessException;
 import de.bdr.revocation.issuance.app.service.IssuanceService;
+import java.util.List;
 import java.util.Objects;
 import java.util.UUID;
 import lombok.val;
@@ -42,6 +44,20 @@ class IssuanceMessageListenerTest {
         Mockito.verify(issuanceService).saveIssuance(issuance);
     }
 
+    @Test
+    void shouldSaveIssuanceBatch() throws BusinessException {
+        // Given
+        val batch = new IssuanceBatch();
+        batch.setIssuances(List.of(TestUtils.createIssuance(), TestUtils.createIssuance()));
+        val message = getMessage(batch);
+
+        // When
+        listener.receiveBatchMessage(message, batch);
+
+        // Then
+        Mockito.verify(issuanceService).saveIssuances(batch.getIssuances());
+    }
+
     private static Message getMessage(Object payload) {
         var message = new Message(Objects.requireNonNull(SerializationUtils.serialize(payload)));
         message.getMessageProperties().setMessageId(UUID.randomUUID().toString());
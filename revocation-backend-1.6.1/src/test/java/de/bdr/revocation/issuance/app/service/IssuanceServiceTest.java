@@ -70,6 +70,38 @@ class IssuanceServiceTest {
         }
     }
 
+    @Nested
+    class SaveIssuances {
+
+        private final Issuance other = TestUtils.createIssuance();
+
+        @Test
+        void shouldSaveIssuancesAtOnce() throws BusinessException {
+            issuanceService.saveIssuances(List.of(issuance, other));
+
+            Mockito.verify(issuanceAdapter).saveAll(List.of(issuance, other));
+            Mockito.verifyNoMoreInteractions(issuanceAdapter);
+        }
+
+        @Test
+        void shouldHandleServerException() {
+            Mockito.doThrow(RuntimeException.class).when(issuanceAdapter).saveAll(List.of(issuance, other));
+
+            assertThrows(RevocationServerException.class, () -> issuanceService.saveIssuances(List.of(issuance, other)));
+            Mockito.verify(issuanceAdapter, Mockito.never()).save(issuance);
+        }
+
+        @Test
+        void shouldSaveOneByOneOnBusinessException() {
+            Mockito.doThrow(DataIntegrityViolationException.class).when(issuanceAdapter).saveAll(List.of(issuance, other));
+            Mockito.doThrow(DataIntegrityViolationException.class).when(issuanceAdapter).save(issuance);
+
+            assertThrows(BusinessException.class, () -> issuanceService.saveIssuances(List.of(issuance, other)));
+            Mockito.verify(issuanceAdapter).save(issuance);
+            Mockito.verify(issuanceAdapter).save(other);
+        }
+    }
+
     @Nested
     class CountIssuance {
 
@@ -20,8 +20,9 @@ dependencies {
     implementation("org.aspectj:aspectjrt")
     implementation("org.aspectj:aspectjweaver")
     implementation("org.postgresql:postgresql")
+    implementation("org.springframework.boot:spring-boot-starter-actuator")
 
-    runtimeOnly("org.springframework.boot:spring-boot-starter-actuator")
+    runtimeOnly("io.micrometer:micrometer-registry-prometheus")
     runtimeOnly(libs.logstash.logback.encoder)
 
     testAndDevelopmentOnly("org.springframework.boot:spring-boot-docker-compose")
@@ -0,0 +1,7 @@
+-- The free indices of a list are the positions index_cursor until size of the permutation keyed by
+-- index_key, list_indices only holds indices that were given back. Existing lists keep their free
+-- indices in list_indices, so their cursor starts at the end.
+ALTER TABLE lists ADD COLUMN index_key BYTEA;
+ALTER TABLE lists ADD COLUMN index_cursor INTEGER;
+UPDATE lists SET index_cursor = size;
+ALTER TABLE lists ALTER COLUMN index_cursor SET NOT NULL;
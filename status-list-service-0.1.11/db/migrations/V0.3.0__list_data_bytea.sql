@@ -0,0 +1,9 @@
+-- Stores the list data as bytes, so the service reads and updates it without bit strings.
+ALTER TABLE lists ADD COLUMN data_bytes BYTEA;
+UPDATE lists SET data_bytes = (
+    SELECT coalesce(decode(string_agg(lpad(to_hex(substring(data FROM i FOR 8)::bit(8)::integer), 2, '0'), '' ORDER BY i), 'hex'), '\x')
+    FROM generate_series(1, length(data), 8) AS i
+);
+ALTER TABLE lists DROP COLUMN data;
+ALTER TABLE lists RENAME COLUMN data_bytes TO data;
+ALTER TABLE lists ALTER COLUMN data SET NOT NULL;
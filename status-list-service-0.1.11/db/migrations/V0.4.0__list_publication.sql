@@ -0,0 +1,6 @@
+-- changed_at is the time of the first change of a list not yet written as token, expires_at the
+-- expiry of the last written tokens. Existing lists are written once to set expires_at.
+ALTER TABLE lists ADD COLUMN changed_at TIMESTAMP WITH TIME ZONE;
+ALTER TABLE lists ADD COLUMN expires_at TIMESTAMP WITH TIME ZONE;
+CREATE INDEX lists_pool_id_changed_at_idx ON lists (pool_id) WHERE changed_at IS NOT NULL;
+CREATE INDEX lists_pool_id_expires_at_idx ON lists (pool_id, expires_at);
@@ -16,6 +16,7 @@ import de.bdr.statuslist.util.sha256
 import java.nio.file.Files
 import java.nio.file.Path
 import java.time.Duration
+import java.util.zip.Deflater
 import org.bouncycastle.asn1.x509.Certificate
 import org.bouncycastle.asn1.x509.IssuerSerial
 import org.springframework.boot.context.properties.ConfigurationProperties
@@ -28,6 +29,8 @@ class AppConfiguration(
     val cacheDuration: Duration,
     val statusListPools: Map<String, StatusListPoolConfiguration>,
     val redis: RedisConnectionConfiguration = RedisConnectionConfiguration(),
+    val writerThreads: Int = 4,
+    val prefetchThreads: Int = 2,
 ) {
     companion object {
         private val POOL_ID_REGEX = Regex("[a-z0-9_-]+")
@@ -40,6 +43,8 @@ class AppConfiguration(
             Files.createDirectories(it)
         }
         statusListPools.keys.forEach { check(it.matches(POOL_ID_REGEX)) { "Invalid pool id $it" } }
+        check(writerThreads >= 1) { "writer-threads must be >= 1" }
+        check(prefetchThreads >= 1) { "prefetch-threads must be >= 1" }
     }
 }
 
@@ -63,6 +68,7 @@ class StatusListPoolConfiguration(
     val listLifetime: Duration,
     val aggregationId: String?,
     private val signer: SignerConfiguration,
+    val compression: CompressionConfiguration = CompressionConfiguration(),
 ) {
 
     companion object {
@@ -161,12 +167,31 @@ class PrefetchConfiguration(
     val threshold: Int,
     val capacity: Int,
     val onUnderflow: OnUnderflowBehavior = FAIL,
+    val maxDelay: Duration = Duration.ofSeconds(10),
 ) {
     init {
         check(threshold <= capacity) { "Prefetch threshold must be <= capacity" }
+        check(maxDelay.isPositive) { "prefetch.max-delay must be positive" }
     }
 }
 
+class CompressionConfiguration(
+    val level: Int = Deflater.BEST_COMPRESSION,
+    val strategy: CompressionStrategy = CompressionStrategy.DEFAULT,
+) {
+    init {
+        check(level in Deflater.NO_COMPRESSION..Deflater.BEST_COMPRESSION) {
+            "compression.level must be between 0 and 9"
+        }
+    }
+}
+
+enum class CompressionStrategy(val deflaterStrategy: Int) {
+    DEFAULT(Deflater.DEFAULT_STRATEGY),
+    FILTERED(Deflater.FILTERED),
+    HUFFMAN_ONLY(Deflater.HUFFMAN_ONLY),
+}
+
 enum class OnUnderflowBehavior {
     DELAY,
     FAIL,
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.md
+ */
+package de.bdr.statuslist.data
+
+import java.nio.ByteBuffer
+import java.security.SecureRandom
+import javax.crypto.Cipher
+import javax.crypto.spec.SecretKeySpec
+
+/**
+ * A keyed pseudo random permutation of the indices `0 until size` of a list.
+ *
+ * Instead of storing every free index of a list in shuffled order, a list only stores the key of
+ * its permutation and a cursor. The free indices are the images of the positions `cursor until
+ * size`, so taking `k` indices means advancing the cursor by `k` and mapping the positions.
+ *
+ * The permutation is a balanced Feistel network with AES as round function over the smallest even
+ * power of two covering the list, indices outside the list are mapped again (cycle walking).
+ * Without the key, the next indices can not be derived from the ones already handed out.
+ */
+class IndexPermutation(val size: Int, val key: ByteArray) {
+
+    private val halfBits: Int
+    private val halfMask: Long
+
+    init {
+        require(size > 0) { "size must be > 0" }
+        require(key.size == KEY_LENGTH) { "key must have $KEY_LENGTH bytes" }
+        val bits = maxOf(2, Int.SIZE_BITS - Integer.numberOfLeadingZeros(size - 1))
+        halfBits = (bits + 1) / 2
+        halfMask = (1L shl halfBits) - 1
+    }
+
+    /** Returns the indices at the positions `from until to` of the permutation. */
+    fun indices(from: Int, to: Int): List<Int> {
+        require(from in 0..to && to <= size) { "positions $from until $to out of 0 until $size" }
+        if (from == to) return emptyList()
+        val cipher = Cipher.getInstance("AES/ECB/NoPadding")
+        cipher.init(Cipher.ENCRYPT_MODE, SecretKeySpec(key, "AES"))
+        val block = ByteBuffer.allocate(BLOCK_LENGTH)
+        val result = ArrayList<Int>(to - from)
+        for (position in from until to) {
+            var index = encrypt(cipher, block, position.toLong())
+            while (index >= size) {
+                index = encrypt(cipher, block, index)
+            }
+            result.add(index.toInt())
+        }
+        return result
+    }
+
+    // computed in Long, the domain of lists above 2^30 indices exceeds the positive Int range
+    private fun encrypt(cipher: Cipher, block: ByteBuffer, value: Long): Long {
+        var left = value ushr halfBits
+        var right = value and halfMask
+        for (round in 0 until ROUNDS) {
+            val next = left xor (round(cipher, block, round, right.toInt()).toLong() and halfMask)
+            left = right
+            right = next
+        }
+        return (left shl halfBits) or right
+    }
+
+    private fun round(cipher: Cipher, block: ByteBuffer, round: Int, value: Int): Int {
+        block.clear()
+        block.putInt(round).putInt(value).putLong(0)
+        val encrypted = cipher.doFinal(block.array())
+        return ByteBuffer.wrap(encrypted).getInt()
+    }
+
+    companion object {
+        const val KEY_LENGTH = 16
+        private const val BLOCK_LENGTH = 16
+        private const val ROUNDS = 4
+
+        private val random = SecureRandom()
+
+        fun random(size: Int): IndexPermutation {
+            val key = ByteArray(KEY_LENGTH)
+            random.nextBytes(key)
+            return IndexPermutation(size, key)
+        }
+    }
+}
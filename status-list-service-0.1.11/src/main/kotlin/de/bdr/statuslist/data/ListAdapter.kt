@@ -4,6 +4,8 @@
  */
 package de.bdr.statuslist.data
 
+import java.sql.Timestamp
+import java.time.Instant
 import java.util.UUID
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
 import org.springframework.dao.EmptyResultDataAccessException
@@ -21,25 +23,29 @@ class ListAdapter(private val jdbcTemplate: JdbcTemplate) {
         bits: Int,
         size: Int,
         version: Int,
-        data: String,
+        dataLength: Int,
+        indexKey: ByteArray,
+        indexCursor: Int,
     ) {
         jdbcTemplate.update(
-            "INSERT INTO lists(id, pool_id, base_uri, bits, size, version, data) VALUES (?, ?, ?, ?, ?, ?, cast(? AS varbit))",
+            "INSERT INTO lists(id, pool_id, base_uri, bits, size, version, data, index_key, index_cursor) VALUES (?, ?, ?, ?, ?, ?, decode(repeat('00', ?), 'hex'), ?, ?)",
             id,
             poolId,
             baseUri,
             bits,
             size,
             version,
-            data,
+            dataLength,
+            indexKey,
+            indexCursor,
         )
     }
 
-    fun findDataById(listId: UUID): String? {
+    fun findDataById(listId: UUID): ByteArray? {
         return try {
             jdbcTemplate.queryForObject(
                 "SELECT data FROM lists WHERE id = ?",
-                String::class.java,
+                ByteArray::class.java,
                 listId,
             )
         } catch (_: EmptyResultDataAccessException) {
@@ -80,28 +86,70 @@ class ListAdapter(private val jdbcTemplate: JdbcTemplate) {
     fun findAllListUrisWithIndices(poolId: Long): List<String> {
         return jdbcTemplate
             .queryForList(
-                "SELECT l.base_uri, l.id FROM lists l JOIN list_indices li on l.id = li.list_id WHERE pool_id = ? GROUP BY l.id ORDER BY count(l.id)",
+                "SELECT l.base_uri, l.id FROM lists l LEFT JOIN LATERAL (SELECT count(*) AS freed FROM list_indices WHERE list_id = l.id) li ON true WHERE l.pool_id = ? AND l.size - l.index_cursor + li.freed > 0 ORDER BY l.size - l.index_cursor + li.freed",
                 poolId,
             )
             .map { it["base_uri"] as String + it["id"] as UUID }
     }
 
-    fun updateDataAndVersion(
-        listId: UUID,
-        value: Int,
-        fromIndex: Int,
-        bits: Int,
-        versionDelta: Int,
-    ) {
+    fun findPendingListUris(poolId: Long, expiringBefore: Instant): List<String> {
+        return jdbcTemplate
+            .queryForList(
+                "SELECT base_uri, id FROM lists WHERE pool_id = ? AND changed_at IS NOT NULL UNION SELECT base_uri, id FROM lists WHERE pool_id = ? AND (expires_at IS NULL OR expires_at < ?)",
+                poolId,
+                poolId,
+                Timestamp.from(expiringBefore),
+            )
+            .map { it["base_uri"] as String + it["id"] as UUID }
+    }
+
+    /**
+     * Sets the token expiry of the list and clears its change time if it is still at `version`.
+     *
+     * @return the milliseconds since the cleared change time, null if none was cleared
+     */
+    fun markWritten(listId: UUID, version: Int, expires: Instant): Long? {
+        return try {
+            jdbcTemplate.queryForObject(
+                "UPDATE lists l SET expires_at = ?, changed_at = CASE WHEN l.version = ? THEN NULL ELSE l.changed_at END FROM (SELECT id, changed_at FROM lists WHERE id = ? FOR UPDATE) previous WHERE l.id = previous.id RETURNING CASE WHEN l.version = ? THEN (extract(EPOCH FROM now() - previous.changed_at) * 1000)::BIGINT END",
+                Long::class.javaObjectType,
+                Timestamp.from(expires),
+                version,
+                listId,
+                version,
+            )
+        } catch (_: EmptyResultDataAccessException) {
+            null
+        }
+    }
+
+    /**
+     * Replaces the bits of each byte not set in its keep mask with its value in one statement. A
+     * byte index must not occur twice. A change time already set is kept.
+     */
+    fun updateDataAndVersion(listId: UUID, updates: List<ByteUpdate>, versionDelta: Int) {
+        val data =
+            updates.fold("data") { data, _ -> "set_byte($data, ?, (get_byte(data, ?) & ?) | ?)" }
+        val args =
+            updates.flatMap<ByteUpdate, Any> {
+                listOf(it.byteIndex, it.byteIndex, it.keepMask, it.value)
+            } + versionDelta + listId
         jdbcTemplate.update(
-            "UPDATE lists SET data = overlay(data PLACING cast(? AS varbit) FROM ?), version = version + ? WHERE id = ?",
-            value.toString(2).padStart(bits, '0'),
-            fromIndex,
-            versionDelta,
-            listId,
+            "UPDATE lists SET data = $data, version = version + ?, changed_at = coalesce(changed_at, now()) WHERE id = ?",
+            *args.toTypedArray(),
         )
     }
 
+    data class ByteUpdate(val byteIndex: Int, val keepMask: Int, val value: Int) {
+        /** Applies `next` after this update. */
+        fun then(next: ByteUpdate) =
+            ByteUpdate(
+                byteIndex,
+                keepMask and next.keepMask,
+                (value and next.keepMask) or next.value,
+            )
+    }
+
     class ListAttributes(
         val id: UUID,
         val poolName: String,
@@ -6,9 +6,15 @@ package de.bdr.statuslist.data
 
 import java.util.UUID
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
+import org.springframework.dao.EmptyResultDataAccessException
 import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.jdbc.core.RowMapper
 import org.springframework.stereotype.Component
 
+/**
+ * Allocates the indices of a list. New indices are taken by advancing the cursor over the
+ * [IndexPermutation] of the list, `list_indices` only holds indices that were given back.
+ */
 @Component
 @ConditionalOnProperty("app.storage-type", havingValue = "postgres")
 class ListIndexAdapter(private val jdbcTemplate: JdbcTemplate) {
@@ -26,11 +32,44 @@ class ListIndexAdapter(private val jdbcTemplate: JdbcTemplate) {
         )
     }
 
+    /**
+     * Moves the cursor of the list up to `maxAmount` positions forward.
+     *
+     * @return the positions passed, null if the cursor already is at the end of the list
+     */
+    fun advanceCursor(listId: UUID, maxAmount: Int): CursorRange? {
+        return try {
+            jdbcTemplate.queryForObject(
+                "UPDATE lists l SET index_cursor = least(l.index_cursor + ?, l.size) FROM (SELECT id, index_cursor FROM lists WHERE id = ? FOR UPDATE) previous WHERE l.id = previous.id AND l.index_cursor < l.size RETURNING previous.index_cursor AS from_position, l.index_cursor AS to_position, l.size, l.index_key",
+                CursorRange.mapper,
+                maxAmount,
+                listId,
+            )
+        } catch (_: EmptyResultDataAccessException) {
+            null
+        }
+    }
+
     fun countIndices(listId: UUID): Int {
         return jdbcTemplate.queryForObject(
-            "SELECT count(*) FROM list_indices WHERE list_id = ?",
+            "SELECT l.size - l.index_cursor + (SELECT count(*) FROM list_indices WHERE list_id = l.id) FROM lists l WHERE l.id = ?",
             Int::class.java,
             listId,
         )
     }
+
+    class CursorRange(val from: Int, val to: Int, val size: Int, val indexKey: ByteArray) {
+        fun indices() = IndexPermutation(size, indexKey).indices(from, to)
+
+        companion object {
+            val mapper: RowMapper<CursorRange> = RowMapper { rs, _ ->
+                CursorRange(
+                    rs.getInt("from_position"),
+                    rs.getInt("to_position"),
+                    rs.getInt("size"),
+                    rs.getBytes("index_key"),
+                )
+            }
+        }
+    }
 }
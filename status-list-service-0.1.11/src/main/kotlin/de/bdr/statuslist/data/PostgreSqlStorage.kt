@@ -10,6 +10,8 @@ import de.bdr.statuslist.data.Storage.ListConfig
 import de.bdr.statuslist.stats.StatsService
 import de.bdr.statuslist.util.log
 import java.io.Closeable
+import java.time.Duration
+import java.time.Instant
 import java.util.UUID
 import java.util.concurrent.ConcurrentHashMap
 import org.postgresql.util.PSQLException
@@ -22,7 +24,7 @@ import org.springframework.transaction.support.TransactionSynchronizationManager
 
 private object Const {
     const val UUID_LENGTH = 36
-    const val POSTGRES_INDEX_OFFSET = 1
+    const val MAX_BYTE_UPDATES_PER_STATEMENT = 256
 }
 
 @Component
@@ -65,19 +67,24 @@ class PostgreSqlStorage(
 
         @TransactionalOutsideBean
         override fun create(
-            generatedIndices: kotlin.collections.List<Int>,
             list: ListConfig,
+            indexKey: ByteArray,
             immediatelyTaken: kotlin.collections.List<Int>,
         ) {
             val poolId =
                 poolAdapter.findPoolIdByName(list.poolId)
                     ?: error("pool ${list.poolId} not present")
-            val data = "0".repeat(list.size * list.bits)
-            listAdapter.createList(id, poolId, baseUri, list.bits, list.size, list.version, data)
-
-            if (generatedIndices.isNotEmpty()) {
-                listIndexAdapter.saveIndices(generatedIndices, id)
-            }
+            listAdapter.createList(
+                id,
+                poolId,
+                baseUri,
+                list.bits,
+                list.size,
+                list.version,
+                list.size * list.bits / Byte.SIZE_BITS,
+                indexKey,
+                immediatelyTaken.size,
+            )
 
             statsService.listCreated(list.poolId, listUri, list.size)
             if (immediatelyTaken.isNotEmpty()) {
@@ -93,11 +100,47 @@ class PostgreSqlStorage(
 
         @TransactionalOutsideBean(isolation = Isolation.REPEATABLE_READ)
         private fun updateStatusRetryable(list: ListConfig, value: Int, offsetInList: Int) {
-            val pgOffset = offsetInList + Const.POSTGRES_INDEX_OFFSET
-            listAdapter.updateDataAndVersion(id, value, pgOffset, list.bits, 1)
+            listAdapter.updateDataAndVersion(id, listOf(byteUpdate(list, offsetInList, value)), 1)
             statsService.statusUpdated(list.poolId, listUri)
         }
 
+        override fun updateStatuses(
+            list: ListConfig,
+            updates: kotlin.collections.List<Pair<Int, Int>>,
+        ) {
+            if (updates.isEmpty()) return
+            retryTemplate.execute<Unit, Throwable> { updateStatusesRetryable(list, updates) }
+        }
+
+        @TransactionalOutsideBean(isolation = Isolation.REPEATABLE_READ)
+        private fun updateStatusesRetryable(
+            list: ListConfig,
+            updates: kotlin.collections.List<Pair<Int, Int>>,
+        ) {
+            val byteUpdates = LinkedHashMap<Int, ListAdapter.ByteUpdate>()
+            updates.forEach { (offsetInList, value) ->
+                val update = byteUpdate(list, offsetInList, value)
+                byteUpdates.merge(update.byteIndex, update) { previous, next ->
+                    previous.then(next)
+                }
+            }
+            val chunks = byteUpdates.values.chunked(Const.MAX_BYTE_UPDATES_PER_STATEMENT)
+            chunks.forEachIndexed { i, chunk ->
+                listAdapter.updateDataAndVersion(id, chunk, if (i == 0) updates.size else 0)
+            }
+            statsService.statusesUpdated(list.poolId, listUri, updates.size)
+        }
+
+        /** `offsetInList` counts from the most significant bit of the first byte. */
+        private fun byteUpdate(list: ListConfig, offsetInList: Int, value: Int) =
+            (Byte.SIZE_BITS - list.bits - offsetInList % Byte.SIZE_BITS).let { shift ->
+                ListAdapter.ByteUpdate(
+                    offsetInList / Byte.SIZE_BITS,
+                    (1.shl(list.bits) - 1).shl(shift).inv() and 0xff,
+                    value.shl(shift),
+                )
+            }
+
         override fun config(allowCache: Boolean): ListConfig {
             return config(allowCache, listUri, listConfigCache)
         }
@@ -111,8 +154,12 @@ class PostgreSqlStorage(
 
         @TransactionalOutsideBean(readOnly = true)
         override fun data(): ByteArray {
-            val data = listAdapter.findDataById(id) ?: error("list $id not found")
-            return encodeToByteArray(data)
+            return listAdapter.findDataById(id) ?: error("list $id not found")
+        }
+
+        @TransactionalOutsideBean
+        override fun markWritten(version: Int, expires: Instant): Duration? {
+            return listAdapter.markWritten(id, version, expires)?.let { Duration.ofMillis(it) }
         }
 
         @TransactionalOutsideBean(readOnly = true)
@@ -134,7 +181,14 @@ class PostgreSqlStorage(
 
         @TransactionalOutsideBean(isolation = Isolation.REPEATABLE_READ)
         private fun takeRetryable(maxAmount: Int): kotlin.collections.List<Int> {
-            val taken = listIndexAdapter.takeIndices(id, maxAmount)
+            val freed = listIndexAdapter.takeIndices(id, maxAmount)
+            val taken =
+                if (freed.size < maxAmount) {
+                    val range = listIndexAdapter.advanceCursor(id, maxAmount - freed.size)
+                    freed + (range?.indices() ?: emptyList())
+                } else {
+                    freed
+                }
             statsService.indicesTaken(config().poolId, listUri, taken.size)
             return taken
         }
@@ -150,6 +204,11 @@ class PostgreSqlStorage(
         override fun isEmpty(): Boolean {
             return listIndexAdapter.countIndices(id) == 0
         }
+
+        @TransactionalOutsideBean(readOnly = true)
+        override fun countFreeIndices(): Int {
+            return listIndexAdapter.countIndices(id)
+        }
     }
 
     open inner class Pool(poolName: String) : Storage.Pool(poolName, config.publicUrl) {
@@ -191,6 +250,13 @@ class PostgreSqlStorage(
             return listAdapter.findAllListUris(poolId)
         }
 
+        @TransactionalOutsideBean(readOnly = true)
+        override fun pendingListUris(expiringBefore: Instant): Iterable<String> {
+            val poolId =
+                poolAdapter.findPoolIdByName(poolName) ?: error("pool $poolName does not exist")
+            return listAdapter.findPendingListUris(poolId, expiringBefore)
+        }
+
         override fun obtainPrecreationLock(): Closeable? {
             if (!TransactionSynchronizationManager.isActualTransactionActive()) {
                 throw NoTransactionException(
@@ -203,19 +269,4 @@ class PostgreSqlStorage(
             return if (locked) Closeable { /* nothing */ } else null
         }
     }
-
-    private fun encodeToByteArray(bitString: String): ByteArray {
-        check(bitString.length % 8 == 0) { "Invalid size of bit string" }
-        val bits = bitString.map { it.digitToInt() }
-        val results = ByteArray(bits.size / 8)
-        var byteValue = 0
-        for (i in bits.indices) {
-            byteValue = (byteValue shl 1) or bits[i]
-
-            if (i % 8 == 7) {
-                results[i / 8] = byteValue.toByte()
-            }
-        }
-        return results
-    }
 }
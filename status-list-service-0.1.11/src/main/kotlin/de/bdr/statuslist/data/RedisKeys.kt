@@ -15,6 +15,10 @@ object RedisKeys {
 
     fun poolAllLists(poolId: String) = "pool:lists:all:$poolId"
 
+    fun poolChangedLists(poolId: String) = "pool:lists:changed:$poolId"
+
+    fun poolListExpiry(poolId: String) = "pool:lists:expiry:$poolId"
+
     fun listData(uri: String) = "list:data:$uri"
 
     fun listConfig(uri: String) = "list:config:$uri"
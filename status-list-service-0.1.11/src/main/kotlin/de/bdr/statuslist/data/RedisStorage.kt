@@ -11,11 +11,17 @@ import de.bdr.statuslist.stats.StatsService
 import de.bdr.statuslist.util.log
 import jakarta.annotation.PostConstruct
 import java.io.Closeable
+import java.time.Duration
+import java.time.Instant
+import java.util.Base64
 import java.util.UUID
 import java.util.concurrent.ConcurrentHashMap
+import kotlin.math.min
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
+import org.springframework.core.io.ClassPathResource
 import org.springframework.data.redis.connection.BitFieldSubCommands
 import org.springframework.data.redis.core.RedisTemplate
+import org.springframework.data.redis.core.script.RedisScript
 import org.springframework.stereotype.Component
 
 @Component
@@ -48,19 +54,10 @@ class RedisStorage(
     inner class List(private val listUri: String) : Storage.List() {
 
         override fun create(
-            generatedIndices: kotlin.collections.List<Int>,
             list: ListConfig,
+            indexKey: ByteArray,
             immediatelyTaken: kotlin.collections.List<Int>,
         ) {
-            if (generatedIndices.isNotEmpty()) {
-                redis
-                    .opsForList()
-                    .rightPushAll(
-                        RedisKeys.listIndices(listUri),
-                        generatedIndices.map { it.toString() },
-                    )
-            }
-
             redis
                 .opsForValue()
                 .bitField(
@@ -80,11 +77,15 @@ class RedisStorage(
                         "poolId" to list.poolId,
                         "listId" to list.listId.toString(),
                         "version" to list.version.toString(),
+                        INDEX_KEY to Base64.getEncoder().encodeToString(indexKey),
+                        INDEX_CURSOR to immediatelyTaken.size.toString(),
                     ),
                 )
             redis.opsForSet().add(RedisKeys.poolAllLists(list.poolId), listUri)
+            // never written, so pending until the first write
+            redis.opsForZSet().add(RedisKeys.poolListExpiry(list.poolId), listUri, 0.0)
 
-            if (generatedIndices.isNotEmpty()) {
+            if (immediatelyTaken.size < list.size) {
                 redis.opsForList().rightPush(RedisKeys.poolCurrentLists(list.poolId), listUri)
             }
 
@@ -95,21 +96,45 @@ class RedisStorage(
         }
 
         override fun updateStatus(list: ListConfig, value: Int, offsetInList: Int) {
-            redis
-                .opsForValue()
-                .bitField(
-                    RedisKeys.listData(listUri),
-                    BitFieldSubCommands.create()
-                        .set(BitFieldSubCommands.BitFieldType.signed(list.bits))
-                        .valueAt(offsetInList.toLong())
-                        .to(value.toLong()),
-                )
-            redis
-                .opsForHash<String, String>()
-                .increment(RedisKeys.listConfig(listUri), "version", 1)
+            setStatuses(list, listOf(offsetInList to value))
             statsService.statusUpdated(list.poolId, listUri)
         }
 
+        override fun updateStatuses(
+            list: ListConfig,
+            updates: kotlin.collections.List<Pair<Int, Int>>,
+        ) {
+            if (updates.isEmpty()) return
+            setStatuses(list, updates)
+            statsService.statusesUpdated(list.poolId, listUri, updates.size)
+        }
+
+        /**
+         * Sets the statuses, increments the version and marks the list as changed in a single
+         * atomic script.
+         */
+        private fun setStatuses(
+            list: ListConfig,
+            updates: kotlin.collections.List<Pair<Int, Int>>,
+        ) {
+            val args = ArrayList<String>(2 + updates.size * 2)
+            args.add("u${list.bits}")
+            args.add(listUri)
+            updates.forEach { (offsetInList, value) ->
+                args.add(offsetInList.toString())
+                args.add(value.toString())
+            }
+            redis.execute(
+                UPDATE_STATUSES_SCRIPT,
+                listOf(
+                    RedisKeys.listData(listUri),
+                    RedisKeys.listConfig(listUri),
+                    RedisKeys.poolChangedLists(list.poolId),
+                ),
+                *args.toTypedArray(),
+            )
+        }
+
         override fun config(allowCache: Boolean): ListConfig {
             return config(allowCache, listUri, listConfigCache)
         }
@@ -130,6 +155,23 @@ class RedisStorage(
             byteRedis.opsForValue()[RedisKeys.listData(listUri)]
                 ?: error("No list data in redis for list $listUri")
 
+        override fun markWritten(version: Int, expires: Instant): Duration? {
+            val poolId = config().poolId
+            return redis
+                .execute(
+                    MARK_WRITTEN_SCRIPT,
+                    listOf(
+                        RedisKeys.listConfig(listUri),
+                        RedisKeys.poolChangedLists(poolId),
+                        RedisKeys.poolListExpiry(poolId),
+                    ),
+                    listUri,
+                    version.toString(),
+                    expires.toEpochMilli().toString(),
+                )
+                ?.let { Duration.ofMillis(it) }
+        }
+
         override fun poolId() = config().poolId
 
         override fun freeIndices(indices: kotlin.collections.List<Int>) {
@@ -140,27 +182,65 @@ class RedisStorage(
         }
 
         override fun take(maxAmount: Int): kotlin.collections.List<Int> {
-            val stringIndices =
+            val freed =
                 redis.opsForList().leftPop(RedisKeys.listIndices(listUri), maxAmount.toLong())
                     ?: emptyList()
-            if (stringIndices.size < maxAmount) {
+            val taken = freed.mapTo(ArrayList(maxAmount)) { it.toInt() }
+            if (taken.size < maxAmount) {
+                taken += advanceCursor(maxAmount - taken.size)
+            }
+            if (taken.size < maxAmount) {
                 poolId().let {
                     redis.opsForList().remove(RedisKeys.poolCurrentLists(it), 1, listUri)
                 }
             }
-            statsService.indicesTaken(config().poolId, listUri, stringIndices.size)
-            return stringIndices.map { it.toInt() }
+            statsService.indicesTaken(config().poolId, listUri, taken.size)
+            return taken
+        }
+
+        /**
+         * Takes indices from the [IndexPermutation] of the list. The cursor is advanced with an
+         * atomic increment, so it may pass the size of the list, positions beyond it are ignored.
+         */
+        private fun advanceCursor(maxAmount: Int): kotlin.collections.List<Int> {
+            val (indexKey, size, cursor) = indexState()
+            if (indexKey == null || cursor >= size) {
+                return emptyList()
+            }
+            val to =
+                redis
+                    .opsForHash<String, String>()
+                    .increment(RedisKeys.listConfig(listUri), INDEX_CURSOR, maxAmount.toLong())
+            val from = to - maxAmount
+            return IndexPermutation(size, Base64.getDecoder().decode(indexKey))
+                .indices(min(from, size.toLong()).toInt(), min(to, size.toLong()).toInt())
+        }
+
+        /** Lists created before the index permutation keep all their free indices in redis. */
+        private fun indexState(): Triple<String?, Int, Int> {
+            val (indexKey, size, cursor) =
+                redis
+                    .opsForHash<String, String>()
+                    .multiGet(
+                        RedisKeys.listConfig(listUri),
+                        listOf(INDEX_KEY, "size", INDEX_CURSOR),
+                    )
+            val listSize = size?.toIntOrNull() ?: error("Invalid size for list $listUri")
+            return Triple(indexKey, listSize, min(cursor?.toIntOrNull() ?: listSize, listSize))
+        }
+
+        override fun countFreeIndices(): Int {
+            val (_, size, cursor) = indexState()
+            val freed = redis.opsForList().size(RedisKeys.listIndices(listUri)) ?: 0L
+            return (size - cursor + freed).toInt()
         }
 
         override fun isFull(): Boolean {
-            val fullSize =
-                redis.opsForHash<String, String>()[RedisKeys.listConfig(listUri), "size"]?.toLong()
-            val actualSize = redis.opsForList().size(RedisKeys.listIndices(listUri))
-            return fullSize == actualSize
+            return countFreeIndices() == config().size
         }
 
         override fun isEmpty(): Boolean {
-            return redis.opsForList().size(RedisKeys.listIndices(listUri)) == 0L
+            return countFreeIndices() == 0
         }
     }
 
@@ -226,6 +306,20 @@ class RedisStorage(
             return redis.opsForSet().members(RedisKeys.poolAllLists(poolName)) ?: emptyList()
         }
 
+        override fun pendingListUris(expiringBefore: Instant): Iterable<String> {
+            val changed =
+                redis.opsForZSet().range(RedisKeys.poolChangedLists(poolName), 0, -1) ?: emptySet()
+            val expiring =
+                redis
+                    .opsForZSet()
+                    .rangeByScore(
+                        RedisKeys.poolListExpiry(poolName),
+                        Double.NEGATIVE_INFINITY,
+                        expiringBefore.toEpochMilli().toDouble(),
+                    ) ?: emptySet()
+            return changed + expiring
+        }
+
         override fun obtainPrecreationLock(): Closeable? {
             val poolConfig =
                 config.statusListPools[poolName] ?: error("Missing config for pool $poolName")
@@ -257,4 +351,18 @@ class RedisStorage(
             } as ByteArray
         )
     }
+
+    private companion object {
+        const val INDEX_KEY = "indexKey"
+        const val INDEX_CURSOR = "indexCursor"
+
+        val UPDATE_STATUSES_SCRIPT: RedisScript<Long> =
+            RedisScript.of(
+                ClassPathResource("redis/update-statuses.lua"),
+                Long::class.javaObjectType,
+            )
+
+        val MARK_WRITTEN_SCRIPT: RedisScript<Long> =
+            RedisScript.of(ClassPathResource("redis/mark-written.lua"), Long::class.javaObjectType)
+    }
 }
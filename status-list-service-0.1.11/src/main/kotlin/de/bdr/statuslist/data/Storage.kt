@@ -7,7 +7,8 @@ package de.bdr.statuslist.data
 import de.bdr.statuslist.config.TransactionalOutsideBean
 import de.bdr.statuslist.util.log
 import java.io.Closeable
-import java.security.SecureRandom
+import java.time.Duration
+import java.time.Instant
 import java.util.UUID
 import java.util.concurrent.ConcurrentHashMap
 import kotlin.math.min
@@ -15,6 +16,8 @@ import kotlin.math.min
 interface Storage {
     data class PoolConfig(val bits: Int, val size: Int, val creation: CreationStatus? = null)
 
+    data class StatusUpdate(val index: Int, val value: Int)
+
     data class ListConfig(
         val bits: Int,
         val size: Int,
@@ -28,25 +31,20 @@ interface Storage {
             check(takeImmediately == null || takeImmediately > 0) {
                 "takeImmediately must be > 0 or null"
             }
-            var generatedIndices = randomIndices(list.size)
-            val immediatelyTaken =
-                when (takeImmediately) {
-                    null -> emptyList()
-                    else -> {
-                        val allGenerated = generatedIndices
-                        val amountToTake = min(takeImmediately, allGenerated.size)
-                        generatedIndices = generatedIndices.drop(amountToTake)
-                        allGenerated.take(amountToTake)
-                    }
-                }
-            create(generatedIndices, list, immediatelyTaken)
+            val permutation = IndexPermutation.random(list.size)
+            val immediatelyTaken = permutation.indices(0, min(takeImmediately ?: 0, list.size))
+            create(list, permutation.key, immediatelyTaken)
 
             return immediatelyTaken
         }
 
+        /**
+         * Stores a new list. The free indices of the list are the ones of the [IndexPermutation]
+         * with `indexKey` that follow the `immediatelyTaken` ones.
+         */
         protected abstract fun create(
-            generatedIndices: kotlin.collections.List<Int>,
             list: ListConfig,
+            indexKey: ByteArray,
             immediatelyTaken: kotlin.collections.List<Int>,
         )
 
@@ -59,20 +57,36 @@ interface Storage {
          */
         fun updateStatus(index: Int, value: Int) {
             val list = config()
+            updateStatus(list, value, offsetInList(list, index, value))
+        }
 
-            if (index < 0 || index >= list.size) {
-                throw IndexOutOfBoundsException()
-            }
+        /**
+         * Sets all statuses of `updates` on the list at once, a later update of an index wins over
+         * an earlier one. Nothing is set if one of the updates is invalid.
+         *
+         * @throws IndexOutOfBoundsException if one of the indices is out of the size of the list
+         * @throws ValueOutOfRangeException if one of the values is out of the range allowed for
+         *   the list
+         */
+        fun updateStatuses(updates: kotlin.collections.List<StatusUpdate>) {
+            val list = config()
+            updateStatuses(list, updates.map { offsetInList(list, it.index, it.value) to it.value })
+        }
 
-            if (value < 0 || value >= 1.shl(list.bits)) {
-                throw ValueOutOfRangeException()
-            }
-            val offsetInList = calculateIndexOffset(list.bits, index)
-            updateStatus(list, value, offsetInList)
+        /** Checks `updates` like [updateStatuses] without setting them. */
+        fun checkStatuses(updates: kotlin.collections.List<StatusUpdate>) {
+            val list = config()
+            updates.forEach { offsetInList(list, it.index, it.value) }
         }
 
         protected abstract fun updateStatus(list: ListConfig, value: Int, offsetInList: Int)
 
+        /** @param updates pairs of the offset in the list and the value to set there */
+        protected abstract fun updateStatuses(
+            list: ListConfig,
+            updates: kotlin.collections.List<Pair<Int, Int>>,
+        )
+
         abstract fun config(allowCache: Boolean = true): ListConfig
 
         protected fun config(
@@ -90,25 +104,39 @@ interface Storage {
 
         abstract fun data(): ByteArray
 
+        /**
+         * Records that the tokens of the list were written for `version` and expire at `expires`.
+         * The list stays pending if it was changed after `version`.
+         *
+         * @return the time from the first unpublished change of the list until now, null if the
+         *   list was not changed since its tokens were last written
+         */
+        abstract fun markWritten(version: Int, expires: Instant): Duration?
+
         abstract fun poolId(): String
 
+        /** Gives back indices that were taken, but never used. */
         abstract fun freeIndices(indices: kotlin.collections.List<Int>)
 
+        /** Takes up to `maxAmount` free indices, given back ones first. */
         abstract fun take(maxAmount: Int): kotlin.collections.List<Int>
 
+        /** Returns the number of indices that can still be taken, given back ones included. */
+        abstract fun countFreeIndices(): Int
+
         abstract fun isFull(): Boolean
 
         abstract fun isEmpty(): Boolean
 
-        private val random = SecureRandom()
+        private fun offsetInList(list: ListConfig, index: Int, value: Int): Int {
+            if (index < 0 || index >= list.size) {
+                throw IndexOutOfBoundsException(index)
+            }
 
-        private fun randomIndices(size: Int): kotlin.collections.List<Int> {
-            val indices = ArrayList<Int>(size)
-            for (index in 0 until size) {
-                indices.add(index)
+            if (value < 0 || value >= 1.shl(list.bits)) {
+                throw ValueOutOfRangeException()
             }
-            indices.shuffle(random)
-            return indices
+            return calculateIndexOffset(list.bits, index)
         }
 
         private fun calculateIndexOffset(bits: Int, index: Int): Int {
@@ -152,7 +180,17 @@ interface Storage {
 
         abstract fun allListUris(): Iterable<String>
 
+        /**
+         * Returns the lists whose tokens have to be written: lists changed since their tokens were
+         * written, lists never written and lists with tokens expiring before `expiringBefore`.
+         */
+        abstract fun pendingListUris(expiringBefore: Instant): Iterable<String>
+
         abstract fun obtainPrecreationLock(): Closeable?
+
+        /** Returns the number of indices that can still be taken from the current lists. */
+        fun countFreeIndices(): Long =
+            currentLists().sumOf { listOf(it).countFreeIndices().toLong() }
     }
 
     enum class CreationStatus {
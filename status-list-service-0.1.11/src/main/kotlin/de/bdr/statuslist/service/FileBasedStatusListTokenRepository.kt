@@ -31,11 +31,15 @@ class FileBasedStatusListTokenRepository(val config: AppConfiguration) : StatusL
     }
 
     override fun metadata(listId: UUID): ListStorageMetadata {
+        return storedMetadata(listId) ?: ListStorageMetadata(listId, 0, Instant.now())
+    }
+
+    private fun storedMetadata(listId: UUID): ListStorageMetadata? {
         val file = StorageFiles.listStorageMetadata(config, listId)
         return try {
             ListStorageMetadata.parse(Files.readString(file))
         } catch (e: NoSuchFileException) {
-            ListStorageMetadata(listId, 0, Instant.now())
+            null
         }
     }
 
@@ -60,7 +64,9 @@ class FileBasedStatusListTokenRepository(val config: AppConfiguration) : StatusL
                 Files.readAttributes(file, BasicFileAttributes::class.java)
                     .lastModifiedTime()
                     .toInstant()
-            TokenData(Files.readAllBytes(file), created)
+            val data = Files.readAllBytes(file)
+            val metadata = storedMetadata(listId)
+            TokenData(data, created, metadata?.expires, metadata?.ttl)
         } catch (e: NoSuchFileException) {
             null
         }
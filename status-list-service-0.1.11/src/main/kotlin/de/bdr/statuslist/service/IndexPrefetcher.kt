@@ -11,71 +11,160 @@ import de.bdr.statuslist.config.TransactionalOutsideBean
 import de.bdr.statuslist.data.Storage
 import de.bdr.statuslist.stats.StatsService
 import de.bdr.statuslist.util.log
-import de.bdr.statuslist.util.measureRuntime
-import java.util.concurrent.Executors
-import java.util.concurrent.LinkedBlockingDeque
+import java.time.Duration
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ScheduledExecutorService
+import java.util.concurrent.ScheduledFuture
 import java.util.concurrent.TimeUnit.MILLISECONDS
 import java.util.concurrent.TimeUnit.SECONDS
+import java.util.concurrent.atomic.AtomicBoolean
 import java.util.concurrent.atomic.AtomicLong
+import java.util.concurrent.locks.ReentrantLock
+import kotlin.concurrent.withLock
 import kotlin.math.max
 
+/**
+ * Keeps a buffer of taken indices of a pool to reserve them without accessing the storage.
+ *
+ * A refill is started on the shared `scheduler` when a reservation lets the buffer drop below the
+ * threshold. With [DELAY], reservations that can not be served from the buffer wait in the order
+ * they arrived until the refill provides enough indices or until `prefetch.max-delay` has passed.
+ * The waits are expired on the `timeoutScheduler`, so a scheduler busy with slow storage access
+ * does not extend them.
+ */
 class IndexPrefetcher(
     private val poolId: String,
     private val appConfig: AppConfiguration,
     private val statsListWriter: StatusListWriter,
     private val storage: Storage,
     private val statsService: StatsService,
+    private val scheduler: ScheduledExecutorService,
+    private val timeoutScheduler: ScheduledExecutorService,
 ) {
 
+    companion object {
+        private val REFILL_RETRY_DELAY = Duration.ofSeconds(1)
+    }
+
     private val config =
         appConfig.statusListPools[poolId] ?: error("Missing pool $poolId in app configuration")
 
-    // using a single thread to avoid synchronization of needed/fetched access
-    private val executor = Executors.newSingleThreadScheduledExecutor()
+    private class Waiter(val amount: Int, val missing: Int) {
+        val future = CompletableFuture<List<Reference>>()
+        val since: Long = System.nanoTime()
+        var timeout: ScheduledFuture<*>? = null
+
+        fun waited(): Duration = Duration.ofNanos(System.nanoTime() - since)
+    }
+
+    // guards availableReferences and waiters, the storage is never accessed while holding it
+    private val lock = ReentrantLock()
+
+    /** Contains references that are guaranteed to be persisted in the storage */
+    private val availableReferences = ArrayDeque<Reference>()
+
+    /** Reservations waiting for the refill, served in order */
+    private val waiters = ArrayDeque<Waiter>()
 
-    // used to track prefetch requirement
-    // access to those variables can be without synchronization because access is serialized through
-    // a single thread in executor
-    private var needed: Int = 0
-    private var fetched: Int = 0
+    // at most one refill per pool runs at a time
+    private val refilling = AtomicBoolean()
 
-    private val underflowLogExecutor = Executors.newSingleThreadScheduledExecutor()
     private val underflow = AtomicLong()
+    private val underflowLogScheduled = AtomicBoolean()
 
-    /** Contains references that are guaranteed to be persisted in redis */
-    private val availableReferences = LinkedBlockingDeque<Reference>()
+    private val precreation: ScheduledFuture<*>
 
-    init {
-        prefetch(config.prefetch.capacity)
+    // free indices of the current lists of the pool, counted by the precreation check
+    @Volatile private var freeIndices: Long? = null
 
-        executor.scheduleAtFixedRate(
-            { checkPrecreation() },
-            0,
-            config.precreation.checkDelay.toMillis(),
-            MILLISECONDS,
-        )
+    init {
+        fill()
 
-        underflowLogLoop()
+        precreation =
+            scheduler.scheduleWithFixedDelay(
+                { checkPrecreation() },
+                0,
+                config.precreation.checkDelay.toMillis(),
+                MILLISECONDS,
+            )
     }
 
-    private fun underflowLogLoop() {
-        val amount = underflow.getAndUpdate { 0 }
-        if (amount > 0) {
-            log.warn("Prefetch buffer underflown by $amount for pool $poolId")
-            underflowLogExecutor.schedule({ underflowLogLoop() }, 1, SECONDS)
-        } else {
-            underflowLogExecutor.schedule({ underflowLogLoop() }, 1, MILLISECONDS)
-        }
+    fun nextIndices(amount: Int): List<Reference> {
+        val result =
+            try {
+                reserve(amount).get()
+            } catch (e: ExecutionException) {
+                throw e.cause ?: e
+            }
+        reportReserved(result)
+        return result
     }
 
-    fun nextIndices(amount: Int): List<Reference> {
+    /**
+     * Reserves `amount` indices. The future fails with [PrefetchBufferUnderflowException] if the
+     * buffer has not enough indices and the pool fails on underflow, or if the indices did not
+     * become available within `prefetch.max-delay`.
+     */
+    fun reserve(amount: Int): CompletableFuture<List<Reference>> {
         check(amount > 0) { "amount must be positive" }
-        ensurePrefetch(amount)
-        return take(amount)
+        var available: List<Reference>? = null
+        var waiter: Waiter? = null
+        lock.withLock {
+            if (waiters.isEmpty() && availableReferences.size >= amount) {
+                available = takeAvailable(amount)
+            } else {
+                val ahead = waiters.sumOf { it.amount }
+                val missing = amount - (availableReferences.size - ahead).coerceIn(0, amount)
+                val newWaiter = Waiter(amount, missing)
+                if (config.prefetch.onUnderflow == DELAY) {
+                    waiters.addLast(newWaiter)
+                    newWaiter.timeout =
+                        timeoutScheduler.schedule(
+                            { expire(newWaiter) },
+                            config.prefetch.maxDelay.toMillis(),
+                            MILLISECONDS,
+                        )
+                }
+                waiter = newWaiter
+            }
+        }
+
+        available?.let {
+            if (availableIndices() < config.prefetch.threshold) triggerRefill()
+            return CompletableFuture.completedFuture(it)
+        }
+        val waiting = waiter!!
+        reportUnderflow(waiting.missing)
+        triggerRefill()
+        if (config.prefetch.onUnderflow == FAIL) {
+            statsService.indicesUnderflow(poolId, waiting.missing, FAIL, null)
+            waiting.future.completeExceptionally(PrefetchBufferUnderflowException())
+        }
+        return waiting.future
     }
 
+    /** Returns the number of indices that can be reserved without waiting. */
+    fun availableIndices() = lock.withLock { availableReferences.size }
+
+    /**
+     * Returns the free indices of the current lists of the pool as counted by the last precreation
+     * check, null before the first check.
+     */
+    fun freeIndices() = freeIndices
+
     fun shutdown() {
-        availableReferences
+        precreation.cancel(false)
+        val (references, waiting) =
+            lock.withLock {
+                val references = availableReferences.toList()
+                val waiting = waiters.toList()
+                availableReferences.clear()
+                waiters.clear()
+                references to waiting
+            }
+        waiting.forEach { it.future.completeExceptionally(PrefetchBufferUnderflowException()) }
+        references
             .groupBy { it.uri }
             .forEach { (listUri, references) ->
                 storage.newListOf(listUri).freeIndices(references.map { it.index })
@@ -83,50 +172,20 @@ class IndexPrefetcher(
             }
     }
 
-    private fun take(amount: Int): List<Reference> {
-        val result = ArrayList<Reference>(amount)
-        var needed = amount
+    private fun takeAvailable(amount: Int) = List(amount) { availableReferences.removeFirst() }
 
-        // try to fetch without blocking
-        while (needed > 0) {
-            result.add(availableReferences.poll() ?: break)
-            needed--
+    private fun reportUnderflow(amount: Int) {
+        underflow.addAndGet(amount.toLong())
+        if (underflowLogScheduled.compareAndSet(false, true)) {
+            timeoutScheduler.schedule({ logUnderflow() }, 1, SECONDS)
         }
+    }
 
-        if (needed == 0) {
-            reportReserved(result)
-            return result
-        }
-
-        // prefetch buffer underflown
-
-        underflow.updateAndGet { l -> l + needed }
-
-        when (config.prefetch.onUnderflow) {
-            FAIL -> {
-                result.forEach { availableReferences.add(it) }
-                throw PrefetchBufferUnderflowException()
-            }
-
-            DELAY -> {
-                // fetch remaining references with blocking
-                val underflow = needed
-                val duration =
-                    measureRuntime {
-                            while (needed > 0) {
-                                result.add(availableReferences.take())
-                                needed--
-                            }
-                        }
-                        .first
-
-                log.info(
-                    "Pool $poolId: Waiting for additional $underflow references took $duration."
-                )
-
-                reportReserved(result)
-                return result
-            }
+    private fun logUnderflow() {
+        underflowLogScheduled.set(false)
+        val amount = underflow.getAndSet(0)
+        if (amount > 0) {
+            log.warn("Prefetch buffer underflown by $amount for pool $poolId")
         }
     }
 
@@ -142,48 +201,103 @@ class IndexPrefetcher(
             }
     }
 
-    private fun ensurePrefetch(amount: Int) {
-        executor.execute {
-            needed += amount
-            log.trace("pool {}: fetched {}, needed {}", poolId, fetched, needed)
-            if (fetched - needed < config.prefetch.threshold) {
-                prefetch(config.prefetch.capacity - fetched + needed)
+    private fun expire(waiter: Waiter) {
+        val served =
+            lock.withLock {
+                if (!waiters.remove(waiter)) return
+                serveWaiters()
             }
+        complete(served)
+        log.info("Pool $poolId: No ${waiter.amount} references within ${waiter.waited()}.")
+        statsService.indicesUnderflow(poolId, waiter.missing, DELAY, waiter.waited())
+        waiter.future.completeExceptionally(PrefetchBufferUnderflowException())
+    }
+
+    /** Assigns available references to the waiters in order, must be called with the lock. */
+    private fun serveWaiters(): List<Pair<Waiter, List<Reference>>> {
+        val served = mutableListOf<Pair<Waiter, List<Reference>>>()
+        while (waiters.isNotEmpty() && availableReferences.size >= waiters.first().amount) {
+            val waiter = waiters.removeFirst()
+            served.add(waiter to takeAvailable(waiter.amount))
         }
+        return served
     }
 
-    private fun prefetch(needed: Int) {
-        log.debug("Prefetching $needed")
-        var remainingNeeded = needed
-        while (remainingNeeded > 0) {
-            val newFetched = prefetchFromCurrentList(remainingNeeded)
-            fetched += newFetched
-            remainingNeeded -= newFetched
+    private fun complete(served: List<Pair<Waiter, List<Reference>>>) {
+        served.forEach { (waiter, references) ->
+            waiter.timeout?.cancel(false)
+            val waited = waiter.waited()
+            log.info(
+                "Pool $poolId: Waiting for additional ${waiter.missing} references took $waited."
+            )
+            statsService.indicesUnderflow(poolId, waiter.missing, DELAY, waited)
+            waiter.future.complete(references)
         }
     }
 
-    private fun prefetchFromCurrentList(maximumAmount: Int): Int {
+    private fun triggerRefill() {
+        if (refilling.compareAndSet(false, true)) {
+            scheduler.execute { refill() }
+        }
+    }
+
+    private fun refill() {
+        val failed =
+            try {
+                fill()
+                false
+            } catch (e: Exception) {
+                log.error("Prefetching for pool $poolId failed", e)
+                true
+            } finally {
+                refilling.set(false)
+            }
+        val needed =
+            lock.withLock {
+                availableReferences.size < config.prefetch.threshold || waiters.isNotEmpty()
+            }
+        if (needed && failed) {
+            scheduler.schedule({ triggerRefill() }, REFILL_RETRY_DELAY.toMillis(), MILLISECONDS)
+        } else if (needed) {
+            triggerRefill()
+        }
+    }
+
+    /** Takes indices until the buffer holds its capacity plus the indices waited for. */
+    private fun fill() {
+        while (true) {
+            val missing =
+                lock.withLock {
+                    config.prefetch.capacity + waiters.sumOf { it.amount } -
+                        availableReferences.size
+                }
+            if (missing <= 0) return
+            log.debug("Prefetching $missing")
+            val (uri, taken) = prefetchFromCurrentList(missing)
+            val served =
+                lock.withLock {
+                    availableReferences.addAll(taken.map { Reference(uri, it) })
+                    serveWaiters()
+                }
+            if (taken.isNotEmpty()) {
+                log.info("Made {} indices available for pool {}", taken.size, poolId)
+            }
+            complete(served)
+        }
+    }
+
+    private fun prefetchFromCurrentList(maximumAmount: Int): Pair<String, List<Int>> {
         val usableLists = storage.newPoolOf(poolId).currentLists()
         return if (usableLists.isEmpty()) {
             val (uri, taken) = storage.newPoolOf(poolId).createList(maximumAmount)
             statsListWriter.writeListToken(uri)
-            addTakenReferences(uri, taken)
-            maximumAmount
+            uri to taken
         } else {
             val listUri = usableLists.first()
-            val taken = storage.newListOf(listUri).take(maximumAmount)
-            if (taken.isNotEmpty()) {
-                addTakenReferences(listUri, taken)
-            }
-            taken.size
+            listUri to storage.newListOf(listUri).take(maximumAmount)
         }
     }
 
-    private fun addTakenReferences(uri: String, taken: List<Int>) {
-        availableReferences.addAll(taken.map { Reference(uri, it) })
-        log.info("Made {} indices available for pool {}", taken.size, poolId)
-    }
-
     @TransactionalOutsideBean
     private fun checkPrecreation() {
         storage.newPoolOf(poolId).obtainPrecreationLock()?.use {
@@ -198,5 +312,10 @@ class IndexPrefetcher(
                 statsListWriter.writeListToken(uri)
             }
         }
+        try {
+            freeIndices = storage.newPoolOf(poolId).countFreeIndices()
+        } catch (e: Exception) {
+            log.warn("Counting the free indices of pool $poolId failed", e)
+        }
     }
 }
@@ -12,7 +12,13 @@ import java.time.Duration
 import java.time.Instant
 import java.util.UUID
 
-class ListStorageMetadata(val listId: UUID, val version: Int, val expires: Instant) {
+/** @param ttl the ttl of the written tokens, null for tokens written before it was recorded */
+class ListStorageMetadata(
+    val listId: UUID,
+    val version: Int,
+    val expires: Instant,
+    val ttl: Duration? = null,
+) {
 
     companion object {
 
@@ -9,6 +9,8 @@ import de.bdr.statuslist.data.Storage
 import de.bdr.statuslist.stats.StatsService
 import de.bdr.statuslist.util.log
 import de.bdr.statuslist.util.measureRuntime
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ScheduledThreadPoolExecutor
 import java.util.concurrent.atomic.AtomicBoolean
 import org.springframework.context.SmartLifecycle
 import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory
@@ -24,10 +26,26 @@ class StatusListService(
     private val statsService: StatsService,
 ) : SmartLifecycle {
 
-    private var indexPrefetchers = mutableMapOf<String, IndexPrefetcher>()
+    private val indexPrefetchers = ConcurrentHashMap<String, IndexPrefetcher>()
 
     private val running = AtomicBoolean()
 
+    // refills the prefetch buffers and checks the precreation of all pools
+    private val prefetchScheduler =
+        ScheduledThreadPoolExecutor(
+                config.prefetchThreads,
+                Thread.ofPlatform().name("index-prefetcher-", 0).daemon().factory(),
+            )
+            .apply { removeOnCancelPolicy = true }
+
+    // expires waiting reservations, never blocked by the storage work of the prefetch scheduler
+    private val timeoutScheduler =
+        ScheduledThreadPoolExecutor(
+                1,
+                Thread.ofPlatform().name("index-prefetcher-timeout-", 0).daemon().factory(),
+            )
+            .apply { removeOnCancelPolicy = true }
+
     override fun getPhase() = (lettuceConnectionFactory?.phase ?: 0) - 1
 
     override fun start() {
@@ -46,7 +64,15 @@ class StatusListService(
             }
             indexPrefetchers.put(
                 poolId,
-                IndexPrefetcher(poolId, config, statusListWriter, storage, statsService),
+                IndexPrefetcher(
+                    poolId,
+                    config,
+                    statusListWriter,
+                    storage,
+                    statsService,
+                    prefetchScheduler,
+                    timeoutScheduler,
+                ),
             )
         }
         running.set(true)
@@ -59,6 +85,8 @@ class StatusListService(
         log.info("Shutting down prefetchers...")
         val duration =
             measureRuntime { indexPrefetchers.values.forEach(IndexPrefetcher::shutdown) }.first
+        prefetchScheduler.shutdownNow()
+        timeoutScheduler.shutdownNow()
         log.info("Prefetchers shutdown in $duration")
     }
 
@@ -71,6 +99,15 @@ class StatusListService(
         return indexPrefetchers[poolId]?.nextIndices(amount) ?: error("No such pool $poolId")
     }
 
+    /** Returns the number of indices in the prefetch buffer of the pool, null if not started. */
+    fun prefetchedIndices(poolId: String): Int? = indexPrefetchers[poolId]?.availableIndices()
+
+    /**
+     * Returns the free indices of the current lists of the pool as counted by the last precreation
+     * check, null if not started or not counted yet.
+     */
+    fun freeIndices(poolId: String): Long? = indexPrefetchers[poolId]?.freeIndices()
+
     fun listsForAggregationId(aggregationId: String): List<String> {
         val poolId = aggregationIdService.poolIdByAggregationId(aggregationId)
         return storage.newPoolOf(poolId).allListUris().toList()
@@ -81,5 +118,27 @@ class StatusListService(
         log.trace("Status $uri#$index = $value")
     }
 
+    /**
+     * Checks the status updates of the list identified by `uri` without applying them.
+     *
+     * @throws IndexOutOfBoundsException if one of the indices is out of the size of the list
+     * @throws de.bdr.statuslist.data.ValueOutOfRangeException if one of the values is out of the
+     *   range allowed for the list
+     */
+    fun checkStatuses(uri: String, updates: List<Storage.StatusUpdate>) {
+        storage.newListOf(uri).checkStatuses(updates)
+    }
+
+    /**
+     * Applies status updates grouped by list uri. The updates of a list are applied together, the
+     * lists one after another.
+     */
+    fun updateStatuses(updates: Map<String, List<Storage.StatusUpdate>>) {
+        updates.forEach { (uri, listUpdates) ->
+            storage.newListOf(uri).updateStatuses(listUpdates)
+            log.trace("${listUpdates.size} statuses of $uri updated")
+        }
+    }
+
     fun poolId(listUri: String) = storage.newListOf(listUri).poolId()
 }
@@ -5,6 +5,7 @@
 package de.bdr.statuslist.service
 
 import java.io.Closeable
+import java.time.Duration
 import java.time.Instant
 import java.util.UUID
 
@@ -24,6 +25,15 @@ interface StatusListTokenSource {
     fun lastModified(listId: UUID, tokenFormat: TokenFormat): Instant
 }
 
-class TokenData(val data: ByteArray, val lastModified: Instant)
+/**
+ * @param expires the expiry of the token, null if unknown
+ * @param ttl the time the token may be cached, null if unknown
+ */
+class TokenData(
+    val data: ByteArray,
+    val lastModified: Instant,
+    val expires: Instant? = null,
+    val ttl: Duration? = null,
+)
 
 interface StatusListTokenRepository : StatusListTokenStorage, StatusListTokenSource
@@ -0,0 +1,18 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.md
+ */
+package de.bdr.statuslist.service
+
+import java.util.UUID
+
+/**
+ * Published after tokens of a list were written to the token storage.
+ *
+ * @param listId the list written, null if any list may have been written
+ * @param formats the formats written
+ */
+data class StatusListTokensWritten(
+    val listId: UUID?,
+    val formats: Set<TokenFormat> = TokenFormat.entries.toSet(),
+)
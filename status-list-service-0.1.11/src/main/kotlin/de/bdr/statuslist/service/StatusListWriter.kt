@@ -10,10 +10,16 @@ import de.bdr.openid4vc.statuslist.StatusListToken
 import de.bdr.statuslist.config.AppConfiguration
 import de.bdr.statuslist.config.StatusListPoolConfiguration
 import de.bdr.statuslist.data.Storage
+import de.bdr.statuslist.stats.StatsService
 import de.bdr.statuslist.util.measureRuntime
 import java.time.Duration
 import java.time.Instant
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
 import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.DisposableBean
+import org.springframework.context.ApplicationEventPublisher
 import org.springframework.context.annotation.Configuration
 import org.springframework.scheduling.annotation.EnableScheduling
 import org.springframework.scheduling.annotation.SchedulingConfigurer
@@ -27,10 +33,24 @@ class StatusListWriter(
     val storage: Storage,
     val aggregationIdService: AggregationIdService,
     val statusListTokenStorage: StatusListTokenStorage,
-) : SchedulingConfigurer {
+    val statsService: StatsService,
+    val eventPublisher: ApplicationEventPublisher,
+) : SchedulingConfigurer, DisposableBean {
 
     private val log = LoggerFactory.getLogger(StatusListWriter::class.java)
 
+    private val objectMapper = ObjectMapper()
+
+    // bounds the number of lists signed and written at the same time across all pools
+    private val executor =
+        Executors.newFixedThreadPool(
+            config.writerThreads,
+            Thread.ofPlatform().name("status-list-writer-", 0).daemon().factory(),
+        )
+
+    // pools whose lists were all checked since the start, later cycles only check pending lists
+    private val checkedPools = ConcurrentHashMap.newKeySet<String>()
+
     override fun configureTasks(taskRegistrar: ScheduledTaskRegistrar) {
         config.statusListPools.forEach { (poolId, poolConfig) ->
             taskRegistrar.scheduleFixedRateTask(
@@ -42,14 +62,57 @@ class StatusListWriter(
     fun writePoolTokens(poolId: String) {
         statusListTokenStorage.obtainPoolLock(poolId)?.use {
             log.trace("Writing JWTs for pool $poolId")
-            storage.newPoolOf(poolId).allListUris().forEach { writeListToken(it) }
+            val checkAll = poolId !in checkedPools
+            val (duration, lists) = measureRuntime { writeLists(poolId, checkAll) }
+            statsService.writeCycleCompleted(poolId, lists, duration)
+            if (checkAll) checkedPools.add(poolId)
         }
     }
 
+    /** @return the number of lists checked */
+    private fun writeLists(poolId: String, checkAll: Boolean): Int {
+        val writes =
+            listUrisToCheck(poolId, checkAll).map { uri -> executor.submit { writeListToken(uri) } }
+        // wait for all lists before releasing the lock, then report the first failure
+        val failures =
+            writes.mapNotNull {
+                try {
+                    it.get()
+                    null
+                } catch (e: ExecutionException) {
+                    e.cause ?: e
+                }
+            }
+        failures.firstOrNull()?.let { first ->
+            failures.drop(1).forEach { first.addSuppressed(it) }
+            throw first
+        }
+        return writes.size
+    }
+
+    /**
+     * The first cycle of a pool checks all lists, this writes the lists whose tokens got lost and
+     * registers the token expiry of lists written before it was tracked by the storage.
+     */
+    private fun listUrisToCheck(poolId: String, all: Boolean): Iterable<String> {
+        val pool = storage.newPoolOf(poolId)
+        if (all) {
+            return pool.allListUris()
+        }
+        val poolConfig =
+            config.statusListPools[poolId] ?: error("Missing pool configuration $poolId")
+        return pool.pendingListUris(Instant.now().plus(poolConfig.updateInterval.multipliedBy(2)))
+    }
+
+    override fun destroy() {
+        executor.shutdownNow()
+    }
+
     fun writeListToken(uri: String) {
         val (duration, listConfigAndUpdated) =
             measureRuntime {
-                val listConfig = storage.newListOf(uri).config(allowCache = false)
+                val list = storage.newListOf(uri)
+                val listConfig = list.config(allowCache = false)
                 val poolConfig =
                     config.statusListPools[listConfig.poolId]
                         ?: error("Missing pool configuration ${listConfig.poolId}")
@@ -58,9 +121,13 @@ class StatusListWriter(
                     metadata.isUpdated(listConfig.version) ||
                         metadata.mayExpireAfterTwo(poolConfig.updateInterval)
                 ) {
-                    writeListTokens(uri, poolConfig, listConfig)
+                    val expiresAt = writeListTokens(uri, poolConfig, listConfig)
+                    list.markWritten(listConfig.version, expiresAt)?.let {
+                        statsService.listPublished(listConfig.poolId, uri, it)
+                    }
                     Pair(listConfig, true)
                 } else {
+                    list.markWritten(listConfig.version, metadata.expires)
                     Pair(listConfig, false)
                 }
             }
@@ -82,47 +149,54 @@ class StatusListWriter(
         uri: String,
         poolConfig: StatusListPoolConfiguration,
         listConfig: Storage.ListConfig,
-    ) {
+    ): Instant {
         val data = storage.newListOf(uri).data()
 
         val expiresAt = Instant.now().plus(poolConfig.listLifetime)
         val statusListToken = createToken(uri, data, poolConfig, expiresAt, listConfig.poolId)
 
-        val statusListJwt =
-            statusListToken.asJwt(poolConfig.signerInstance) { header, _ ->
-                poolConfig.modifyJwsHeader(header)
+        val (jwtDuration, statusListJwt) =
+            measureRuntime {
+                statusListToken.asJwt(poolConfig.signerInstance) { header, _ ->
+                    poolConfig.modifyJwsHeader(header)
+                }
             }
-        val statusListCwt =
-            statusListToken.asCwt(poolConfig.signerInstance) { _, sign1 ->
-                poolConfig.modifyCwtHeader(sign1)
+        statsService.tokenSigned(listConfig.poolId, TokenFormat.JWT, jwtDuration)
+        val (cwtDuration, statusListCwt) =
+            measureRuntime {
+                statusListToken.asCwt(poolConfig.signerInstance) { _, sign1 ->
+                    poolConfig.modifyCwtHeader(sign1)
+                }
             }
+        statsService.tokenSigned(listConfig.poolId, TokenFormat.CWT, cwtDuration)
         val statusListCbor = statusListToken.statusList.toCborObject(statusListToken.aggregationUri)
         val statusListJson = statusListToken.statusList.toJsonObject(statusListToken.aggregationUri)
 
-        statusListTokenStorage.store(
-            listConfig.listId,
-            TokenFormat.JWT,
-            statusListJwt.serialize().toByteArray(),
-        )
-        statusListTokenStorage.store(
-            listConfig.listId,
-            TokenFormat.CWT,
-            statusListCwt.EncodeToBytes(),
-        )
-        statusListTokenStorage.store(
-            listConfig.listId,
+        store(listConfig, TokenFormat.JWT, statusListJwt.serialize().toByteArray())
+        store(listConfig, TokenFormat.CWT, statusListCwt.EncodeToBytes())
+        store(
+            listConfig,
             TokenFormat.JSON,
-            ObjectMapper().writeValueAsString(statusListJson).toByteArray(),
-        )
-        statusListTokenStorage.store(
-            listConfig.listId,
-            TokenFormat.CBOR,
-            statusListCbor.EncodeToBytes(),
+            objectMapper.writeValueAsString(statusListJson).toByteArray(),
         )
+        store(listConfig, TokenFormat.CBOR, statusListCbor.EncodeToBytes())
 
         statusListTokenStorage.storeMetadata(
-            ListStorageMetadata(listConfig.listId, listConfig.version, expiresAt)
+            ListStorageMetadata(
+                listConfig.listId,
+                listConfig.version,
+                expiresAt,
+                poolConfig.updateInterval,
+            )
         )
+        eventPublisher.publishEvent(StatusListTokensWritten(listConfig.listId))
+        return expiresAt
+    }
+
+    private fun store(listConfig: Storage.ListConfig, format: TokenFormat, token: ByteArray) {
+        val duration =
+            measureRuntime { statusListTokenStorage.store(listConfig.listId, format, token) }.first
+        statsService.tokenStored(listConfig.poolId, format, token.size, duration)
     }
 
     private fun createToken(
@@ -134,7 +208,14 @@ class StatusListWriter(
     ) =
         StatusListToken(
             statusListUri = uri,
-            statusList = StatusList(pool.size, pool.bits, list = data),
+            statusList =
+                StatusList(
+                    pool.size,
+                    pool.bits,
+                    list = data,
+                    compressionLevel = pool.compression.level,
+                    compressionStrategy = pool.compression.strategy.deflaterStrategy,
+                ),
             issuedAt = Instant.now(),
             expiresAt = expiresAt,
             issuerUri = pool.issuer,
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.md
+ */
+package de.bdr.statuslist.service
+
+import de.bdr.statuslist.config.AppConfiguration
+import java.nio.file.ClosedWatchServiceException
+import java.nio.file.FileSystems
+import java.nio.file.Path
+import java.nio.file.StandardWatchEventKinds.ENTRY_CREATE
+import java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY
+import java.nio.file.StandardWatchEventKinds.OVERFLOW
+import java.nio.file.WatchKey
+import java.util.UUID
+import org.slf4j.LoggerFactory
+import org.springframework.beans.factory.DisposableBean
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
+import org.springframework.context.ApplicationEventPublisher
+import org.springframework.stereotype.Component
+
+/**
+ * Publishes [StatusListTokensWritten] for tokens written to the storage directory by other
+ * processes, e.g. if writing and serving the status lists is split across instances.
+ *
+ * Tokens are moved into the token directories, so a created or modified file is a written token.
+ * If the watch service lost events, all lists are reported as written.
+ */
+@Component
+@ConditionalOnProperty("app.watch-storage-directory", havingValue = "true")
+class StorageDirectoryWatcher(
+    config: AppConfiguration,
+    private val eventPublisher: ApplicationEventPublisher,
+) : DisposableBean {
+
+    private val log = LoggerFactory.getLogger(StorageDirectoryWatcher::class.java)
+
+    private val watchService = FileSystems.getDefault().newWatchService()
+
+    private val formats: Map<WatchKey, TokenFormat> =
+        TokenFormat.entries.associateBy {
+            StorageFiles.statusListTokenDirectory(config, it)
+                .register(watchService, ENTRY_CREATE, ENTRY_MODIFY)
+        }
+
+    init {
+        Thread.ofPlatform().name("storage-directory-watcher").daemon().start { watch() }
+    }
+
+    private fun watch() {
+        while (true) {
+            val key =
+                try {
+                    watchService.take()
+                } catch (_: InterruptedException) {
+                    return
+                } catch (_: ClosedWatchServiceException) {
+                    return
+                }
+            val format = formats[key]
+            key.pollEvents().forEach { event ->
+                if (event.kind() == OVERFLOW) {
+                    publish(StatusListTokensWritten(null))
+                } else if (format != null) {
+                    listId(event.context() as Path)?.let {
+                        publish(StatusListTokensWritten(it, setOf(format)))
+                    }
+                }
+            }
+            key.reset()
+        }
+    }
+
+    /** Listeners run on the watcher thread, so their failures must not end it. */
+    private fun publish(event: StatusListTokensWritten) {
+        try {
+            eventPublisher.publishEvent(event)
+        } catch (e: Exception) {
+            log.error("Handling {} failed", event, e)
+        }
+    }
+
+    private fun listId(file: Path) =
+        try {
+            UUID.fromString(file.fileName.toString())
+        } catch (_: IllegalArgumentException) {
+            log.trace("Ignoring {} in the storage directory", file)
+            null
+        }
+
+    override fun destroy() {
+        watchService.close()
+    }
+}
@@ -18,6 +18,9 @@ object StorageFiles {
             config.storageDirectory.resolve("cbor"),
         )
 
+    fun statusListTokenDirectory(config: AppConfiguration, format: TokenFormat): Path =
+        config.storageDirectory.resolve(format.name.lowercase())
+
     fun poolLockfile(config: AppConfiguration, poolId: String) =
         config.storageDirectory.resolve("$poolId.lock")
 
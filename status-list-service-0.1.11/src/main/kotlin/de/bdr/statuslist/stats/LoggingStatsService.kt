@@ -4,6 +4,9 @@
  */
 package de.bdr.statuslist.stats
 
+import de.bdr.statuslist.config.OnUnderflowBehavior
+import de.bdr.statuslist.service.TokenFormat
+import java.time.Duration
 import org.slf4j.LoggerFactory
 import org.springframework.stereotype.Component
 
@@ -20,6 +23,10 @@ class LoggingStatsService : StatsService {
         log.info("Status updated (poolId: $poolId, listUri: $listUri)")
     }
 
+    override fun statusesUpdated(poolId: String, listUri: String, amount: Int) {
+        log.info("Statuses updated (poolId: $poolId, listUri: $listUri, amount: $amount)")
+    }
+
     override fun indicesReserved(poolId: String, listUri: String, amount: Int) {
         log.info("Indices reserved (poolId: $poolId, listUri: $listUri, amount: $amount)")
     }
@@ -28,6 +35,40 @@ class LoggingStatsService : StatsService {
         log.info("List cache event (listUri: $listUri, event: $event)")
     }
 
+    override fun listPublished(poolId: String, listUri: String, latency: Duration) {
+        log.info("List published (poolId: $poolId, listUri: $listUri, latency: $latency)")
+    }
+
+    override fun indicesUnderflow(
+        poolId: String,
+        amount: Int,
+        behavior: OnUnderflowBehavior,
+        waited: Duration?,
+    ) {
+        log.info(
+            "Indices underflow (poolId: $poolId, amount: $amount, behavior: $behavior, " +
+                "waited: $waited)"
+        )
+    }
+
+    override fun writeCycleCompleted(poolId: String, lists: Int, duration: Duration) {
+        log.debug("Write cycle completed (poolId: $poolId, lists: $lists, duration: $duration)")
+    }
+
+    override fun tokenSigned(poolId: String, format: TokenFormat, duration: Duration) {
+        log.debug("Token signed (poolId: $poolId, format: $format, duration: $duration)")
+    }
+
+    override fun tokenStored(poolId: String, format: TokenFormat, size: Int, duration: Duration) {
+        log.debug(
+            "Token stored (poolId: $poolId, format: $format, size: $size, duration: $duration)"
+        )
+    }
+
+    override fun tokenServed(format: TokenFormat, size: Int) {
+        log.trace("Token served (format: $format, size: $size)")
+    }
+
     override fun indicesFreed(poolId: String, listUri: String, amount: Int) {
         log.info("Indices freed (poolId: $poolId, listUri: $listUri, amount: $amount)")
     }
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.md
+ */
+package de.bdr.statuslist.stats
+
+import de.bdr.statuslist.config.OnUnderflowBehavior
+import de.bdr.statuslist.service.TokenFormat
+import io.micrometer.core.instrument.Counter
+import io.micrometer.core.instrument.DistributionSummary
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.Timer
+import java.time.Duration
+import org.springframework.context.annotation.Primary
+import org.springframework.stereotype.Component
+
+/**
+ * Records the statistics as Micrometer meters, they are exported on the prometheus endpoint of the
+ * management server. The events are logged by [LoggingStatsService] as well.
+ *
+ * The meters are listed in the README, see "Metrics".
+ */
+@Primary
+@Component
+class MicrometerStatsService(
+    private val registry: MeterRegistry,
+    private val logging: LoggingStatsService,
+) : StatsService {
+
+    override fun listCreated(poolId: String, listUri: String, size: Int) {
+        logging.listCreated(poolId, listUri, size)
+        counter("statuslist.lists.created", "pool", poolId).increment()
+    }
+
+    override fun statusUpdated(poolId: String, listUri: String) {
+        logging.statusUpdated(poolId, listUri)
+        counter("statuslist.statuses.updated", "pool", poolId).increment()
+    }
+
+    override fun statusesUpdated(poolId: String, listUri: String, amount: Int) {
+        logging.statusesUpdated(poolId, listUri, amount)
+        counter("statuslist.statuses.updated", "pool", poolId).increment(amount.toDouble())
+    }
+
+    override fun indicesFreed(poolId: String, listUri: String, amount: Int) {
+        logging.indicesFreed(poolId, listUri, amount)
+        indices(poolId, "freed").increment(amount.toDouble())
+    }
+
+    override fun indicesTaken(poolId: String, listUri: String, amount: Int) {
+        logging.indicesTaken(poolId, listUri, amount)
+        indices(poolId, "taken").increment(amount.toDouble())
+    }
+
+    override fun indicesReserved(poolId: String, listUri: String, amount: Int) {
+        logging.indicesReserved(poolId, listUri, amount)
+        indices(poolId, "reserved").increment(amount.toDouble())
+    }
+
+    override fun listCacheEvent(listUri: String, event: StatsService.ListCacheEvent) {
+        logging.listCacheEvent(listUri, event)
+        counter("statuslist.cache.events", "event", event.name).increment()
+    }
+
+    override fun listPublished(poolId: String, listUri: String, latency: Duration) {
+        logging.listPublished(poolId, listUri, latency)
+        Timer.builder("statuslist.list.publication.latency")
+            .description("Time from the first change of a list until its tokens are written")
+            .tag("pool", poolId)
+            .publishPercentileHistogram()
+            .register(registry)
+            .record(latency)
+    }
+
+    override fun indicesUnderflow(
+        poolId: String,
+        amount: Int,
+        behavior: OnUnderflowBehavior,
+        waited: Duration?,
+    ) {
+        logging.indicesUnderflow(poolId, amount, behavior, waited)
+        Counter.builder("statuslist.prefetch.underflow")
+            .description("Indices requested while the prefetch buffer was empty")
+            .tags("pool", poolId, "behavior", behavior.name)
+            .register(registry)
+            .increment(amount.toDouble())
+        waited?.let {
+            Timer.builder("statuslist.prefetch.underflow.wait")
+                .description("Time a reservation waited for indices after an underflow")
+                .tag("pool", poolId)
+                .register(registry)
+                .record(it)
+        }
+    }
+
+    override fun writeCycleCompleted(poolId: String, lists: Int, duration: Duration) {
+        logging.writeCycleCompleted(poolId, lists, duration)
+        Timer.builder("statuslist.write.cycle")
+            .description("Time to check and write the lists of a pool")
+            .tag("pool", poolId)
+            .publishPercentileHistogram()
+            .register(registry)
+            .record(duration)
+        DistributionSummary.builder("statuslist.write.cycle.lists")
+            .description("Lists checked in a write cycle")
+            .tag("pool", poolId)
+            .register(registry)
+            .record(lists.toDouble())
+    }
+
+    override fun tokenSigned(poolId: String, format: TokenFormat, duration: Duration) {
+        logging.tokenSigned(poolId, format, duration)
+        Timer.builder("statuslist.token.signing")
+            .description("Time to create and sign a token of a list")
+            .tags("pool", poolId, "format", format.name)
+            .register(registry)
+            .record(duration)
+    }
+
+    override fun tokenStored(poolId: String, format: TokenFormat, size: Int, duration: Duration) {
+        logging.tokenStored(poolId, format, size, duration)
+        Timer.builder("statuslist.token.storage")
+            .description("Time to write a token to the storage directory")
+            .tags("pool", poolId, "format", format.name)
+            .register(registry)
+            .record(duration)
+        DistributionSummary.builder("statuslist.token.size")
+            .description("Size of the written tokens")
+            .baseUnit("bytes")
+            .tags("pool", poolId, "format", format.name)
+            .register(registry)
+            .record(size.toDouble())
+    }
+
+    override fun tokenServed(format: TokenFormat, size: Int) {
+        logging.tokenServed(format, size)
+        Counter.builder("statuslist.served")
+            .description("Token bytes sent to clients")
+            .baseUnit("bytes")
+            .tag("format", format.name)
+            .register(registry)
+            .increment(size.toDouble())
+    }
+
+    private fun indices(poolId: String, event: String) =
+        counter("statuslist.indices", "pool", poolId, "event", event)
+
+    private fun counter(name: String, vararg tags: String) = registry.counter(name, *tags)
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.md
+ */
+package de.bdr.statuslist.stats
+
+import de.bdr.statuslist.config.AppConfiguration
+import de.bdr.statuslist.service.StatusListService
+import io.micrometer.core.instrument.Gauge
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.binder.MeterBinder
+import org.springframework.stereotype.Component
+
+/**
+ * Gauges of the fill level of the pools. They are read from the prefetchers when the metrics are
+ * scraped, the free indices are the ones counted by the last precreation check so a scrape does
+ * not access the storage.
+ */
+@Component
+class PoolMetrics(
+    private val config: AppConfiguration,
+    private val statusListService: StatusListService,
+) : MeterBinder {
+
+    override fun bindTo(registry: MeterRegistry) {
+        config.statusListPools.keys.forEach { poolId ->
+            Gauge.builder("statuslist.pool.free.indices") {
+                    statusListService.freeIndices(poolId) ?: Double.NaN
+                }
+                .description("Free indices in the current lists of the pool")
+                .tag("pool", poolId)
+                .register(registry)
+            Gauge.builder("statuslist.prefetch.depth") {
+                    statusListService.prefetchedIndices(poolId) ?: Double.NaN
+                }
+                .description("Indices available in the prefetch buffer of the pool")
+                .tag("pool", poolId)
+                .register(registry)
+        }
+    }
+}
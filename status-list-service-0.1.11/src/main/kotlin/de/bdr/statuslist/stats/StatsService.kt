@@ -4,12 +4,18 @@
  */
 package de.bdr.statuslist.stats
 
+import de.bdr.statuslist.config.OnUnderflowBehavior
+import de.bdr.statuslist.service.TokenFormat
+import java.time.Duration
+
 interface StatsService {
 
     fun listCreated(poolId: String, listUri: String, size: Int)
 
     fun statusUpdated(poolId: String, listUri: String)
 
+    fun statusesUpdated(poolId: String, listUri: String, amount: Int)
+
     fun indicesFreed(poolId: String, listUri: String, amount: Int)
 
     fun indicesTaken(poolId: String, listUri: String, amount: Int)
@@ -18,6 +24,35 @@ interface StatsService {
 
     fun listCacheEvent(listUri: String, event: ListCacheEvent)
 
+    /**
+     * The tokens of a changed list were written, `latency` is the time from the first change of
+     * the list until then.
+     */
+    fun listPublished(poolId: String, listUri: String, latency: Duration)
+
+    /**
+     * The prefetch buffer of a pool had `amount` indices less than requested. With
+     * [OnUnderflowBehavior.DELAY], `waited` is the time the request waited for them.
+     */
+    fun indicesUnderflow(
+        poolId: String,
+        amount: Int,
+        behavior: OnUnderflowBehavior,
+        waited: Duration?,
+    )
+
+    /** A write cycle of a pool checked `lists` lists and wrote the changed ones in `duration`. */
+    fun writeCycleCompleted(poolId: String, lists: Int, duration: Duration)
+
+    /** A token of a list was signed in `duration`. */
+    fun tokenSigned(poolId: String, format: TokenFormat, duration: Duration)
+
+    /** A token of `size` bytes was written to the token storage in `duration`. */
+    fun tokenStored(poolId: String, format: TokenFormat, size: Int, duration: Duration)
+
+    /** A token of `size` bytes was sent to a client. */
+    fun tokenServed(format: TokenFormat, size: Int)
+
     enum class ListCacheEvent {
         CACHE_MISS,
         CACHE_HIT,
@@ -6,6 +6,7 @@ package de.bdr.statuslist.web
 
 import de.bdr.statuslist.config.AppConfiguration
 import de.bdr.statuslist.config.StatusListPoolConfiguration
+import de.bdr.statuslist.data.Storage
 import de.bdr.statuslist.data.ValueOutOfRangeException
 import de.bdr.statuslist.service.PrefetchBufferUnderflowException
 import de.bdr.statuslist.service.StatusListService
@@ -15,6 +16,7 @@ import de.bdr.statuslist.web.api.model.ErrorResponse
 import de.bdr.statuslist.web.api.model.Reference
 import de.bdr.statuslist.web.api.model.References
 import de.bdr.statuslist.web.api.model.UpdateStatusRequest
+import de.bdr.statuslist.web.api.model.UpdateStatusesRequest
 import jakarta.validation.Valid
 import jakarta.validation.constraints.Min
 import org.springframework.http.HttpStatus.BAD_REQUEST
@@ -106,6 +108,53 @@ class InternalApiController(
         }
     }
 
+    override fun updateStatuses(
+        @Valid @RequestBody updateStatusesRequest: UpdateStatusesRequest,
+        @RequestHeader(required = false, value = "X-Api-Key") xApiKey: String?,
+    ): ResponseEntity<Unit> {
+        val updates =
+            updateStatusesRequest.updates.groupBy({ it.uri }) {
+                Storage.StatusUpdate(it.index, it.value)
+            }
+        val poolIds =
+            updates.keys.map { uri ->
+                try {
+                    service.poolId(uri)
+                } catch (e: IllegalStateException) {
+                    throw ErrorResponseException(
+                        BAD_REQUEST,
+                        ErrorResponse(ErrorCode.NO_SUCH_LIST.name, e.message ?: "No such list"),
+                    )
+                }
+            }
+        poolIds.distinct().forEach { authenticate(config(it), xApiKey) }
+
+        // nothing is applied unless all updates are valid
+        updates.forEach { (uri, listUpdates) ->
+            try {
+                service.checkStatuses(uri, listUpdates)
+            } catch (e: IndexOutOfBoundsException) {
+                throw ErrorResponseException(
+                    BAD_REQUEST,
+                    ErrorResponse(
+                        ErrorCode.INDEX_OUT_OF_BOUNDS.name,
+                        "Index out of bounds (uri=$uri, ${e.message})",
+                    ),
+                )
+            } catch (e: ValueOutOfRangeException) {
+                throw ErrorResponseException(
+                    BAD_REQUEST,
+                    ErrorResponse(
+                        ErrorCode.VALUE_OUT_OF_RANGE.name,
+                        "Value out of range (uri=$uri)",
+                    ),
+                )
+            }
+        }
+        service.updateStatuses(updates)
+        return ResponseEntity.noContent().build()
+    }
+
     private fun config(poolId: String) =
         config.statusListPools[poolId]
             ?: throw ErrorResponseException(
@@ -7,6 +7,7 @@ package de.bdr.statuslist.web
 import de.bdr.statuslist.config.AppConfiguration
 import de.bdr.statuslist.service.StatusListService
 import de.bdr.statuslist.service.StatusListTokenSource
+import de.bdr.statuslist.service.StatusListTokensWritten
 import de.bdr.statuslist.service.TokenFormat
 import de.bdr.statuslist.stats.StatsService
 import de.bdr.statuslist.stats.StatsService.ListCacheEvent.CACHE_HIT
@@ -17,13 +18,17 @@ import de.bdr.statuslist.web.api.model.ErrorResponse
 import de.bdr.statuslist.web.api.model.StatusLists
 import java.lang.ref.SoftReference
 import java.net.URI
+import java.time.Duration
 import java.time.Instant
 import java.util.UUID
 import java.util.concurrent.ConcurrentHashMap
 import java.util.concurrent.ConcurrentMap
 import java.util.concurrent.TimeUnit.HOURS
+import java.util.concurrent.atomic.AtomicBoolean
 import java.util.concurrent.atomic.AtomicReference
+import org.slf4j.LoggerFactory
 import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty
+import org.springframework.context.event.EventListener
 import org.springframework.http.CacheControl
 import org.springframework.http.HttpHeaders
 import org.springframework.http.HttpStatus
@@ -47,8 +52,11 @@ class StatusListController(
 
     companion object {
         private const val IF_MODIFIED_SINCE_NOT_SET = -1L
+        private val REVALIDATE_WITHOUT_TTL = Duration.ofSeconds(10)
     }
 
+    private val log = LoggerFactory.getLogger(StatusListController::class.java)
+
     private val cache: ConcurrentMap<CacheKey, SoftReference<CacheEntry>> = ConcurrentHashMap()
 
     @Scheduled(fixedRate = 1, timeUnit = HOURS)
@@ -131,62 +139,112 @@ class StatusListController(
                 )
             }
 
-        // a var is used to capture the CacheEntry instead of the result from compute to prevent
-        // immediate garbage collection after creating the SoftReference
-        var computedEntry: CacheEntry? = null
-        cache.compute(CacheKey(uuid, tokenFormat)) { key, currentValue ->
-            val entry = currentValue?.get()
-            if (currentValue == null || entry == null || !entry.isUpToDate()) {
-                if (currentValue != null && entry == null) {
-                    statsService.listCacheEvent(
-                        "${config.publicUrl}/$uuid",
-                        CACHE_SOFT_REFERENCE_CLEARED,
-                    )
-                }
-                statsService.listCacheEvent("${config.publicUrl}/$uuid", CACHE_MISS)
-                computedEntry = load(key)
-                computedEntry?.let { SoftReference(it) }
-            } else {
-                statsService.listCacheEvent("${config.publicUrl}/$uuid", CACHE_HIT)
-                entry.updateAccessed()
-                computedEntry = entry
-                currentValue
+        val entry =
+            cachedEntry(CacheKey(uuid, tokenFormat))
+                ?: throw ErrorResponseException(
+                    NOT_FOUND,
+                    ErrorResponse(ErrorCode.NO_SUCH_LIST.name, "No list with id $id"),
+                )
+
+        val responseHeaders = { responseHeaders: HttpHeaders ->
+            responseHeaders.eTag = entry.eTag
+            responseHeaders.setLastModified(entry.created)
+            responseHeaders.setCacheControl(entry.cacheControl(Instant.now()))
+            responseHeaders.contentType = tokenFormat.mediaType
+            responseHeaders.vary = listOf("Accept")
+        }
+
+        return if (modifiedAccordingToCacheHeaders(headers, entry)) {
+            statsService.tokenServed(tokenFormat, entry.data.size)
+            ResponseEntity.ok().headers(responseHeaders).body(entry.data)
+        } else {
+            ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(responseHeaders).build()
+        }
+    }
+
+    /**
+     * Returns the cached entry without touching the token source. Only a missing entry, or one due
+     * for revalidation because no notification arrived within its ttl, is loaded.
+     */
+    private fun cachedEntry(key: CacheKey): CacheEntry? {
+        val listUri = "${config.publicUrl}/${key.uuid}"
+        val reference = cache[key]
+        val entry = reference?.get()
+        if (entry == null) {
+            if (reference != null) {
+                statsService.listCacheEvent(listUri, CACHE_SOFT_REFERENCE_CLEARED)
             }
+            statsService.listCacheEvent(listUri, CACHE_MISS)
+            return reload(key)
+        }
+        entry.updateAccessed()
+        if (entry.startRevalidation(Instant.now())) {
+            statsService.listCacheEvent(listUri, CACHE_MISS)
+            return revalidate(key, entry)
         }
+        statsService.listCacheEvent(listUri, CACHE_HIT)
+        return entry
+    }
 
-        val computedEntryVal = computedEntry
+    /**
+     * Reloads a stale entry. If loading fails the stale entry is served and the next caller
+     * revalidates again.
+     */
+    private fun revalidate(key: CacheKey, stale: CacheEntry): CacheEntry? {
+        return try {
+            reload(key)
+        } catch (e: Exception) {
+            log.warn("Revalidating {} failed, serving the stale token", key, e)
+            stale
+        } finally {
+            stale.endRevalidation()
+        }
+    }
 
-        if (computedEntryVal == null) {
-            throw ErrorResponseException(
-                NOT_FOUND,
-                ErrorResponse(ErrorCode.NO_SUCH_LIST.name, "No list with id $id"),
-            )
-        } else {
-            val eTag = computedEntryVal.created.toEpochMilli().toString()
-
-            val responseHeaders = { responseHeaders: HttpHeaders ->
-                responseHeaders.eTag = """"$eTag""""
-                responseHeaders.setLastModified(computedEntryVal.created)
-                responseHeaders.setCacheControl(CacheControl.noCache())
-                responseHeaders.contentType = tokenFormat.mediaType
-                responseHeaders.vary = listOf("Accept")
+    /** Reloads the cached formats of lists whose tokens were written. */
+    @EventListener
+    fun tokensWritten(event: StatusListTokensWritten) {
+        val keys =
+            if (event.listId == null) {
+                cache.keys.toList()
+            } else {
+                event.formats.map { CacheKey(event.listId, it) }.filter { cache.containsKey(it) }
             }
+        keys.forEach { reload(it) }
+    }
 
-            return if (modifiedAccordingToCacheHeaders(headers, eTag, computedEntryVal)) {
-                ResponseEntity.ok().headers(responseHeaders).body(computedEntryVal.data)
+    /**
+     * Loads the token and caches it, unless a newer one got cached meanwhile.
+     *
+     * @return the cached entry, null if there is no token
+     */
+    private fun reload(key: CacheKey): CacheEntry? {
+        val loaded = load(key)
+        if (loaded == null) {
+            cache.remove(key)
+            return null
+        }
+        // a var is used to capture the CacheEntry instead of the result from compute to prevent
+        // immediate garbage collection after creating the SoftReference
+        var cachedEntry: CacheEntry = loaded
+        cache.compute(key) { _, currentValue ->
+            val current = currentValue?.get()
+            if (current != null && current.created.isAfter(loaded.created)) {
+                cachedEntry = current
+                currentValue
             } else {
-                ResponseEntity.status(HttpStatus.NOT_MODIFIED).headers(responseHeaders).build()
+                SoftReference(loaded)
             }
         }
+        return cachedEntry
     }
 
     private fun modifiedAccordingToCacheHeaders(
         headers: HttpHeaders,
-        eTag: String,
         cacheEntry: CacheEntry,
     ): Boolean {
         return if (headers.ifNoneMatch.isNotEmpty()) {
-            headers.ifNoneMatch.none { it == eTag }
+            headers.ifNoneMatch.none { it == cacheEntry.eTag }
         } else if (headers.ifModifiedSince != IF_MODIFIED_SINCE_NOT_SET) {
             cacheEntry.created.isAfter(Instant.ofEpochMilli(headers.ifModifiedSince))
         } else {
@@ -198,9 +256,11 @@ class StatusListController(
         val data = statusListTokenSource.load(cacheKey.uuid, cacheKey.format)
         return data?.let {
             CacheEntry(
-                cacheKey,
                 it.data,
                 it.lastModified,
+                it.expires,
+                it.ttl,
+                loaded = Instant.now(),
                 accessed = AtomicReference(Instant.now()),
             )
         }
@@ -208,15 +268,52 @@ class StatusListController(
 
     data class CacheKey(val uuid: UUID, val format: TokenFormat)
 
+    /**
+     * A loaded token, [data] is never modified.
+     *
+     * @param expires the expiry of the token, null if unknown
+     * @param ttl the time the token may be cached, null if unknown
+     */
     private inner class CacheEntry(
-        val key: CacheKey,
         val data: ByteArray,
         val created: Instant,
+        val expires: Instant?,
+        val ttl: Duration?,
+        val loaded: Instant,
         val accessed: AtomicReference<Instant>,
     ) {
 
-        fun isUpToDate(): Boolean {
-            return !created.isBefore(statusListTokenSource.lastModified(key.uuid, key.format))
+        val eTag = "\"${created.toEpochMilli()}\""
+
+        private val revalidating = AtomicBoolean()
+
+        /**
+         * Written tokens are reloaded on notification. As a fallback for lost notifications, an
+         * entry is reloaded once its ttl passed since loading, only by the first caller.
+         */
+        fun startRevalidation(now: Instant): Boolean {
+            val revalidateAt = loaded.plus(ttl ?: REVALIDATE_WITHOUT_TTL)
+            return now.isAfter(revalidateAt) && revalidating.compareAndSet(false, true)
+        }
+
+        fun endRevalidation() {
+            revalidating.set(false)
+        }
+
+        /**
+         * Caches may use the token for its ttl and serve it stale while revalidating until it
+         * expires.
+         */
+        fun cacheControl(now: Instant): CacheControl {
+            if (expires == null || ttl == null) {
+                return CacheControl.noCache()
+            }
+            val validFor = Duration.between(now, expires)
+            if (!validFor.isPositive) {
+                return CacheControl.noCache()
+            }
+            val maxAge = minOf(ttl, validFor)
+            return CacheControl.maxAge(maxAge).staleWhileRevalidate(validFor.minus(maxAge))
         }
 
         fun hasBeenUsedRecently(): Boolean {
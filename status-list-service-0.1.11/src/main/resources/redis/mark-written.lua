@@ -0,0 +1,22 @@
+-- Records the expiry of the written tokens of a list and removes the list from the changed lists
+-- of its pool, unless it was changed after the written version.
+--
+-- KEYS[1]: the list config
+-- KEYS[2]: the changed lists of the pool
+-- KEYS[3]: the token expiry of the lists of the pool
+-- ARGV[1]: the list uri
+-- ARGV[2]: the written version
+-- ARGV[3]: the expiry of the written tokens in milliseconds since the epoch
+--
+-- Returns the milliseconds since the first unpublished change or nil if there was none.
+redis.call('ZADD', KEYS[3], ARGV[3], ARGV[1])
+if redis.call('HGET', KEYS[1], 'version') ~= ARGV[2] then
+    return nil
+end
+local changed = redis.call('ZSCORE', KEYS[2], ARGV[1])
+if not changed then
+    return nil
+end
+redis.call('ZREM', KEYS[2], ARGV[1])
+local time = redis.call('TIME')
+return math.max(0, time[1] * 1000 + math.floor(time[2] / 1000) - tonumber(changed))
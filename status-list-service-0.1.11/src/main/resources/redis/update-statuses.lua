@@ -0,0 +1,23 @@
+-- Sets statuses of a list and increments its version by the number of updates in one step. The
+-- list is added to the changed lists of its pool with the time of its first unpublished change.
+--
+-- KEYS[1]: the list data
+-- KEYS[2]: the list config
+-- KEYS[3]: the changed lists of the pool
+-- ARGV[1]: the bitfield type of a status, e.g. u2
+-- ARGV[2]: the list uri
+-- ARGV[3..]: pairs of the bit offset of a status and its value
+local chunk = 256
+for first = 3, #ARGV, chunk * 2 do
+    local command = { 'BITFIELD', KEYS[1] }
+    for i = first, math.min(first + chunk * 2 - 1, #ARGV), 2 do
+        table.insert(command, 'SET')
+        table.insert(command, ARGV[1])
+        table.insert(command, ARGV[i])
+        table.insert(command, ARGV[i + 1])
+    end
+    redis.call(unpack(command))
+end
+local time = redis.call('TIME')
+redis.call('ZADD', KEYS[3], 'NX', time[1] * 1000 + math.floor(time[2] / 1000), ARGV[2])
+return redis.call('HINCRBY', KEYS[2], 'version', (#ARGV - 2) / 2)
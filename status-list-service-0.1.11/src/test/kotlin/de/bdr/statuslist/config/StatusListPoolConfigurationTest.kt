@@ -13,6 +13,7 @@ import java.time.Duration
 import java.util.UUID
 import org.junit.jupiter.api.Test
 import org.junit.jupiter.api.assertDoesNotThrow
+import org.junit.jupiter.api.assertThrows
 
 class StatusListPoolConfigurationTest {
     private fun statusListPoolConfiguration(keystore: String, password: String) =
@@ -74,6 +75,13 @@ class StatusListPoolConfigurationTest {
         assertDoesNotThrow { subject.modifyJwsHeader(builder) }
     }
 
+    @Test
+    fun `Should reject compression levels out of range`() {
+        assertThrows<IllegalStateException> { CompressionConfiguration(level = -1) }
+        assertThrows<IllegalStateException> { CompressionConfiguration(level = 10) }
+        assertDoesNotThrow { CompressionConfiguration(level = 0, CompressionStrategy.HUFFMAN_ONLY) }
+    }
+
     private fun sign1Message(signer: Signer): Sign1Message {
         val sign1Message = Sign1Message()
         sign1Message.SetContent("test")
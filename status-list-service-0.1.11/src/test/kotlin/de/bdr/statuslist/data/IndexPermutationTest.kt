@@ -0,0 +1,82 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.md
+ */
+package de.bdr.statuslist.data
+
+import assertk.assertFailure
+import assertk.assertThat
+import assertk.assertions.containsExactly
+import assertk.assertions.hasSize
+import assertk.assertions.isEqualTo
+import assertk.assertions.isInstanceOf
+import assertk.assertions.isNotEqualTo
+import assertk.assertions.isTrue
+import org.junit.jupiter.api.Test
+
+class IndexPermutationTest {
+
+    @Test
+    fun `should contain every index exactly once`() {
+        listOf(1, 2, 3, 16, 17, 1000, 131072).forEach { size ->
+            val indices = IndexPermutation.random(size).indices(0, size)
+
+            assertThat(indices).hasSize(size)
+            assertThat(indices.toSortedSet()).isEqualTo((0 until size).toSortedSet())
+        }
+    }
+
+    @Test
+    fun `should map positions independent of the batches they are taken in`() {
+        val permutation = IndexPermutation.random(1000)
+
+        val batched = (0 until 1000 step 7).flatMap { permutation.indices(it, minOf(it + 7, 1000)) }
+
+        assertThat(batched).isEqualTo(permutation.indices(0, 1000))
+    }
+
+    @Test
+    fun `should be reproducible from the key`() {
+        val permutation = IndexPermutation.random(1000)
+
+        val restored = IndexPermutation(1000, permutation.key.copyOf())
+
+        assertThat(restored.indices(100, 200)).isEqualTo(permutation.indices(100, 200))
+    }
+
+    @Test
+    fun `should shuffle the indices`() {
+        val first = IndexPermutation.random(1000).indices(0, 1000)
+        val second = IndexPermutation.random(1000).indices(0, 1000)
+
+        assertThat(first).isNotEqualTo((0 until 1000).toList())
+        assertThat(first).isNotEqualTo(second)
+    }
+
+    @Test
+    fun `should map positions of lists above 2^30 indices into the list`() {
+        listOf((1 shl 30) + 1, Int.MAX_VALUE).forEach { size ->
+            val permutation = IndexPermutation.random(size)
+
+            val indices = permutation.indices(size - 1000, size)
+
+            assertThat(indices.toSet()).hasSize(1000)
+            assertThat(indices.all { it in 0 until size }).isTrue()
+        }
+    }
+
+    @Test
+    fun `should return no indices for an empty range`() {
+        assertThat(IndexPermutation.random(16).indices(16, 16)).containsExactly()
+    }
+
+    @Test
+    fun `should reject positions out of the list`() {
+        val permutation = IndexPermutation.random(16)
+
+        assertFailure { permutation.indices(10, 17) }.isInstanceOf(IllegalArgumentException::class)
+        assertFailure { permutation.indices(5, 4) }.isInstanceOf(IllegalArgumentException::class)
+        assertFailure { IndexPermutation(16, ByteArray(8)) }
+            .isInstanceOf(IllegalArgumentException::class)
+    }
+}
@@ -66,8 +66,6 @@ class PostgreSqlStorageIT {
 
     @SpykBean private lateinit var listAdapter: ListAdapter
 
-    @SpykBean private lateinit var listIndexAdapter: ListIndexAdapter
-
     @AfterEach
     fun tearDown() {
         clearAllMocks()
@@ -171,7 +169,7 @@ class PostgreSqlStorageIT {
 
         val list = initList()
 
-        every { listAdapter.updateDataAndVersion(any(), any(), any(), any(), any()) }
+        every { listAdapter.updateDataAndVersion(any(), any(), any()) }
             .throws(
                 CannotAcquireLockException("", PSQLException("", PSQLState.SERIALIZATION_FAILURE))
             )
@@ -179,7 +177,7 @@ class PostgreSqlStorageIT {
 
         list.updateStatus(3, 1)
 
-        verify(exactly = 2) { listAdapter.updateDataAndVersion(any(), any(), any(), any(), any()) }
+        verify(exactly = 2) { listAdapter.updateDataAndVersion(any(), any(), any()) }
     }
 
     @Test
@@ -191,12 +189,35 @@ class PostgreSqlStorageIT {
         pool.createOrVerifyPool(Storage.PoolConfig(1, 128))
         val initialSize = pool.allListUris().toList().size
 
-        every { listIndexAdapter.saveIndices(any(), any()) }.throws(IllegalArgumentException())
+        every {
+            listAdapter.createList(any(), any(), any(), any(), any(), any(), any(), any(), any())
+        } answers
+            {
+                callOriginal()
+                throw IllegalArgumentException()
+            }
 
         assertFailure { pool.createList() }.isInstanceOf(IllegalArgumentException::class)
         assertThat(pool.allListUris().toList().size).isEqualTo(initialSize)
     }
 
+    @Test
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    fun `should take every index of a list exactly once`() {
+        val pool = storage.newPoolOf("take-all")
+        pool.createOrVerifyPool(Storage.PoolConfig(1, 128))
+        val (listUri, immediatelyTaken) = pool.createList(10)
+        val list = storage.newListOf(listUri)
+
+        val taken = immediatelyTaken + list.take(50)
+        list.freeIndices(taken.takeLast(5))
+        val all = taken.dropLast(5) + list.take(100) + list.take(100)
+
+        assertThat(all.sorted()).isEqualTo((0 until 128).toList())
+        assertThat(list.isEmpty()).isTrue()
+        assertThat(pool.currentLists().contains(listUri)).isFalse()
+    }
+
     private fun initList(): Storage.List {
         val pool = storage.newPoolOf("test")
         pool.createOrVerifyPool(Storage.PoolConfig(1, 128))
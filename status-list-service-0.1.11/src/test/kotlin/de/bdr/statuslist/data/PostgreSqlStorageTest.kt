@@ -9,10 +9,13 @@ import assertk.assertFailure
 import assertk.assertThat
 import assertk.assertions.containsExactly
 import assertk.assertions.hasSize
+import assertk.assertions.isEmpty
 import assertk.assertions.isEqualTo
 import assertk.assertions.isInstanceOf
+import assertk.assertions.isNull
 import assertk.assertions.matches
 import de.bdr.statuslist.config.AppConfiguration
+import de.bdr.statuslist.data.ListAdapter.ByteUpdate
 import de.bdr.statuslist.stats.StatsService
 import io.mockk.Runs
 import io.mockk.every
@@ -20,6 +23,8 @@ import io.mockk.impl.annotations.MockK
 import io.mockk.just
 import io.mockk.mockk
 import io.mockk.verify
+import java.time.Duration
+import java.time.Instant
 import java.util.UUID
 import org.junit.jupiter.api.BeforeEach
 import org.junit.jupiter.api.Test
@@ -41,9 +46,11 @@ class PostgreSqlStorageTest {
         every { statsService.statusUpdated(any(), any()) } just Runs
         every { config.publicUrl } returns "http://test.example"
         every { poolAdapter.createPool(any(), any(), any()) } just Runs
-        every { listAdapter.createList(any(), any(), any(), any(), any(), any(), any()) } just Runs
-        every { listIndexAdapter.saveIndices(any(), any()) } just Runs
-        every { listAdapter.updateDataAndVersion(any(), any(), any(), any(), any()) } just Runs
+        every {
+            listAdapter.createList(any(), any(), any(), any(), any(), any(), any(), any(), any())
+        } just Runs
+        every { listAdapter.updateDataAndVersion(any(), any(), any()) } just Runs
+        every { statsService.statusesUpdated(any(), any(), any()) } just Runs
     }
 
     @Test
@@ -90,9 +97,19 @@ class PostgreSqlStorageTest {
 
         assertThat(indices).hasSize(0)
         verify {
-            listAdapter.createList(uuid, 1, "http://test.example/", 1, 16, 1, "0000000000000000")
+            listAdapter.createList(
+                uuid,
+                1,
+                "http://test.example/",
+                1,
+                16,
+                1,
+                2,
+                match { it.size == 16 },
+                0,
+            )
         }
-        verify { listIndexAdapter.saveIndices(match { it.size == 16 }, eq(uuid)) }
+        verify(exactly = 0) { listIndexAdapter.saveIndices(any(), any()) }
         verify { statsService.listCreated("test-pool", listUri, 16) }
     }
 
@@ -107,7 +124,17 @@ class PostgreSqlStorageTest {
 
         assertThat(indices).hasSize(16)
         verify {
-            listAdapter.createList(uuid, 1, "http://test.example/", 1, 16, 1, "0000000000000000")
+            listAdapter.createList(
+                uuid,
+                1,
+                "http://test.example/",
+                1,
+                16,
+                1,
+                2,
+                match { it.size == 16 },
+                16,
+            )
         }
         verify(exactly = 0) { listIndexAdapter.saveIndices(any(), any()) }
         verify { statsService.listCreated("test-pool", listUri, 16) }
@@ -125,9 +152,19 @@ class PostgreSqlStorageTest {
 
         assertThat(indices).hasSize(8)
         verify {
-            listAdapter.createList(uuid, 1, "http://test.example/", 1, 16, 1, "0000000000000000")
+            listAdapter.createList(
+                uuid,
+                1,
+                "http://test.example/",
+                1,
+                16,
+                1,
+                2,
+                match { it.size == 16 },
+                8,
+            )
         }
-        verify { listIndexAdapter.saveIndices(match { it.size == 8 }, eq(uuid)) }
+        verify(exactly = 0) { listIndexAdapter.saveIndices(any(), any()) }
         verify { statsService.listCreated("test-pool", listUri, 16) }
         verify { statsService.indicesTaken("test-pool", listUri, 8) }
     }
@@ -143,7 +180,17 @@ class PostgreSqlStorageTest {
 
         assertThat(indices).hasSize(16)
         verify {
-            listAdapter.createList(uuid, 1, "http://test.example/", 1, 16, 1, "0000000000000000")
+            listAdapter.createList(
+                uuid,
+                1,
+                "http://test.example/",
+                1,
+                16,
+                1,
+                2,
+                match { it.size == 16 },
+                16,
+            )
         }
         verify(exactly = 0) { listIndexAdapter.saveIndices(any(), any()) }
         verify { statsService.listCreated("test-pool", listUri, 16) }
@@ -166,7 +213,9 @@ class PostgreSqlStorageTest {
             }
             assertThat(second).hasSize(0)
         }
-        verify { listAdapter.createList(any(), any(), any(), any(), any(), any(), any()) }
+        verify {
+            listAdapter.createList(any(), any(), any(), any(), any(), any(), any(), any(), any())
+        }
         verify { statsService.listCreated(any(), any(), any()) }
     }
 
@@ -186,11 +235,44 @@ class PostgreSqlStorageTest {
             }
             assertThat(second).hasSize(16)
         }
-        verify { listAdapter.createList(any(), any(), any(), any(), any(), any(), any()) }
-        verify { listIndexAdapter.saveIndices(match { it.size == 16 }, any()) }
+        verify {
+            listAdapter.createList(any(), any(), any(), any(), any(), any(), any(), any(), any())
+        }
         verify { statsService.listCreated(any(), any(), any()) }
     }
 
+    @Test
+    fun `should take given back indices first`() {
+        val uuid = UUID.randomUUID()
+        val listUri = "http://test.example/$uuid"
+        val list = storage.newListOf(listUri)
+        val permutation = IndexPermutation.random(16)
+        every { listAdapter.findListAttributesById(uuid) } returns
+            ListAdapter.ListAttributes(uuid, "test-pool", "http://test.example/", 1, 16, 1)
+        every { listIndexAdapter.takeIndices(uuid, 4) } returns listOf(3, 7)
+        every { listIndexAdapter.advanceCursor(uuid, 2) } returns
+            ListIndexAdapter.CursorRange(5, 7, 16, permutation.key)
+
+        val indices = list.take(4)
+
+        assertThat(indices).containsExactly(3, 7, *permutation.indices(5, 7).toTypedArray())
+        verify { statsService.indicesTaken("test-pool", listUri, 4) }
+    }
+
+    @Test
+    fun `should take nothing from exhausted list`() {
+        val uuid = UUID.randomUUID()
+        val listUri = "http://test.example/$uuid"
+        val list = storage.newListOf(listUri)
+        every { listAdapter.findListAttributesById(uuid) } returns
+            ListAdapter.ListAttributes(uuid, "test-pool", "http://test.example/", 1, 16, 1)
+        every { listIndexAdapter.takeIndices(uuid, 4) } returns emptyList()
+        every { listIndexAdapter.advanceCursor(uuid, 4) } returns null
+
+        assertThat(list.take(4)).isEmpty()
+        verify { statsService.indicesTaken("test-pool", listUri, 0) }
+    }
+
     @Test
     fun `should update status`() {
         val uuid = UUID.randomUUID()
@@ -201,10 +283,91 @@ class PostgreSqlStorageTest {
 
         list.updateStatus(12, 1)
 
-        verify { listAdapter.updateDataAndVersion(uuid, 1, 31, 2, 1) }
+        verify {
+            listAdapter.updateDataAndVersion(uuid, listOf(ByteUpdate(3, 0b11111100, 1)), 1)
+        }
         verify { statsService.statusUpdated("test-pool", listUri) }
     }
 
+    @Test
+    fun `should update status within byte`() {
+        val uuid = UUID.randomUUID()
+        val list = storage.newListOf("http://test.example/$uuid")
+        every { listAdapter.findListAttributesById(uuid) } returns
+            ListAdapter.ListAttributes(uuid, "test-pool", "http://test.example/", 2, 16, 1)
+
+        list.updateStatus(13, 3)
+        list.updateStatus(15, 2)
+
+        verify {
+            listAdapter.updateDataAndVersion(uuid, listOf(ByteUpdate(3, 0b11110011, 0b00001100)), 1)
+        }
+        verify {
+            listAdapter.updateDataAndVersion(uuid, listOf(ByteUpdate(3, 0b00111111, 0b10000000)), 1)
+        }
+    }
+
+    @Test
+    fun `should update statuses of a byte in one update`() {
+        val uuid = UUID.randomUUID()
+        val listUri = "http://test.example/$uuid"
+        val list = storage.newListOf(listUri)
+        every { listAdapter.findListAttributesById(uuid) } returns
+            ListAdapter.ListAttributes(uuid, "test-pool", "http://test.example/", 2, 16, 1)
+
+        list.updateStatuses(
+            listOf(
+                Storage.StatusUpdate(13, 3),
+                Storage.StatusUpdate(0, 1),
+                Storage.StatusUpdate(15, 2),
+                Storage.StatusUpdate(13, 1),
+            )
+        )
+
+        verify {
+            listAdapter.updateDataAndVersion(
+                uuid,
+                listOf(ByteUpdate(3, 0b00110011, 0b10000100), ByteUpdate(0, 0b11111100, 1)),
+                4,
+            )
+        }
+        verify { statsService.statusesUpdated("test-pool", listUri, 4) }
+    }
+
+    @Test
+    fun `should split large status updates into statements`() {
+        val uuid = UUID.randomUUID()
+        val list = storage.newListOf("http://test.example/$uuid")
+        every { listAdapter.findListAttributesById(uuid) } returns
+            ListAdapter.ListAttributes(uuid, "test-pool", "http://test.example/", 8, 1000, 1)
+
+        list.updateStatuses((0 until 600).map { Storage.StatusUpdate(it, 1) })
+
+        verify { listAdapter.updateDataAndVersion(uuid, match { it.size == 256 }, 600) }
+        verify { listAdapter.updateDataAndVersion(uuid, match { it.size == 256 }, 0) }
+        verify { listAdapter.updateDataAndVersion(uuid, match { it.size == 88 }, 0) }
+    }
+
+    @Test
+    fun `should not update any status if one update is invalid`() {
+        val uuid = UUID.randomUUID()
+        val list = storage.newListOf("http://test.example/$uuid")
+        every { listAdapter.findListAttributesById(uuid) } returns
+            ListAdapter.ListAttributes(uuid, "test-pool", "http://test.example/", 2, 16, 1)
+
+        assertFailure {
+                list.updateStatuses(
+                    listOf(Storage.StatusUpdate(1, 1), Storage.StatusUpdate(16, 1))
+                )
+            }
+            .isInstanceOf(IndexOutOfBoundsException::class)
+        assertFailure {
+                list.updateStatuses(listOf(Storage.StatusUpdate(1, 1), Storage.StatusUpdate(2, 4)))
+            }
+            .isInstanceOf(ValueOutOfRangeException::class)
+        verify(exactly = 0) { listAdapter.updateDataAndVersion(any(), any(), any()) }
+    }
+
     @Test
     fun `should throw exception on index out of bounds`() {
         val uuid = UUID.randomUUID()
@@ -226,33 +389,48 @@ class PostgreSqlStorageTest {
     }
 
     @Test
-    fun `should return bitString(8) as byteArray`() {
+    fun `should mark list as written`() {
         val uuid = UUID.randomUUID()
         val list = storage.newListOf("http://test.example/$uuid")
+        val expires = Instant.now()
+        every { listAdapter.markWritten(uuid, 3, expires) } returns 1500L
 
-        mapOf("00000000" to 0, "00000001" to 1, "00000010" to 2, "10000001" to -127).forEach {
-            every { listAdapter.findDataById(uuid) } returns it.key
+        assertThat(list.markWritten(3, expires)).isEqualTo(Duration.ofMillis(1500))
+    }
 
-            val data = list.data()
+    @Test
+    fun `should not report a latency if the list was not changed`() {
+        val uuid = UUID.randomUUID()
+        val list = storage.newListOf("http://test.example/$uuid")
+        val expires = Instant.now()
+        every { listAdapter.markWritten(uuid, 3, expires) } returns null
 
-            assertThat(data).all {
-                hasSize(1)
-                containsExactly(it.value.toByte())
-            }
-        }
+        assertThat(list.markWritten(3, expires)).isNull()
+    }
+
+    @Test
+    fun `should return pending lists of pool`() {
+        val expiringBefore = Instant.now()
+        every { poolAdapter.findPoolIdByName("test-pool") } returns 7L
+        every { listAdapter.findPendingListUris(7L, expiringBefore) } returns
+            listOf("http://test.example/1")
+
+        val pending = storage.newPoolOf("test-pool").pendingListUris(expiringBefore)
+
+        assertThat(pending.toList()).containsExactly("http://test.example/1")
     }
 
     @Test
-    fun `should return bitString(16) as byteArray`() {
+    fun `should return data as stored`() {
         val uuid = UUID.randomUUID()
         val list = storage.newListOf("http://test.example/$uuid")
-        every { listAdapter.findDataById(uuid) } returns "0000001000000001"
+        every { listAdapter.findDataById(uuid) } returns byteArrayOf(2, 1, -127)
 
         val data = list.data()
 
         assertThat(data).all {
-            hasSize(2)
-            containsExactly(2.toByte(), 1.toByte())
+            hasSize(3)
+            containsExactly(2.toByte(), 1.toByte(), (-127).toByte())
         }
     }
 }
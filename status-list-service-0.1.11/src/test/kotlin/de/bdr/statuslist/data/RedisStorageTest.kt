@@ -7,9 +7,12 @@ package de.bdr.statuslist.data
 import assertk.all
 import assertk.assertFailure
 import assertk.assertThat
+import assertk.assertions.containsExactly
 import assertk.assertions.hasSize
 import assertk.assertions.isEqualTo
+import assertk.assertions.isFalse
 import assertk.assertions.isInstanceOf
+import assertk.assertions.isTrue
 import assertk.assertions.matches
 import de.bdr.statuslist.config.AppConfiguration
 import de.bdr.statuslist.stats.StatsService
@@ -19,6 +22,9 @@ import io.mockk.impl.annotations.MockK
 import io.mockk.just
 import io.mockk.mockk
 import io.mockk.verify
+import java.time.Duration
+import java.time.Instant
+import java.util.Base64
 import java.util.UUID
 import org.junit.jupiter.api.BeforeEach
 import org.junit.jupiter.api.Test
@@ -27,6 +33,8 @@ import org.springframework.data.redis.core.ListOperations
 import org.springframework.data.redis.core.RedisTemplate
 import org.springframework.data.redis.core.SetOperations
 import org.springframework.data.redis.core.ValueOperations
+import org.springframework.data.redis.core.ZSetOperations
+import org.springframework.data.redis.core.script.RedisScript
 
 class RedisStorageTest {
     @MockK private val config: AppConfiguration = mockk()
@@ -37,6 +45,7 @@ class RedisStorageTest {
     @MockK private val listOperations: ListOperations<String, String> = mockk()
     @MockK private val valueOperations: ValueOperations<String, String> = mockk()
     @MockK private val setOperations: SetOperations<String, String> = mockk()
+    @MockK private val zSetOperations: ZSetOperations<String, String> = mockk()
 
     private val storage = RedisStorage(config, redis, byteRedis, statsService)
 
@@ -46,6 +55,8 @@ class RedisStorageTest {
         every { redis.opsForValue() } returns valueOperations
         every { redis.opsForHash<String, String>() } returns hashOperations
         every { redis.opsForSet() } returns setOperations
+        every { redis.opsForZSet() } returns zSetOperations
+        every { zSetOperations.add(any(), any(), any()) } returns true
         every { hashOperations.putIfAbsent(any(), any(), any()) } returns true
         every { hashOperations.putAll(any(), any()) } just Runs
         every { listOperations.rightPushAll(any(), any<List<String>>()) } returns null
@@ -55,6 +66,10 @@ class RedisStorageTest {
         every { statsService.listCreated(any(), any(), any()) } just Runs
         every { statsService.indicesTaken(any(), any(), any()) } just Runs
         every { statsService.statusUpdated(any(), any()) } just Runs
+        every { statsService.statusesUpdated(any(), any(), any()) } just Runs
+        every {
+            redis.execute(any<RedisScript<Long>>(), any<List<String>>(), *anyVararg<Any>())
+        } returns 1L
         every { config.publicUrl } returns "http://test.example"
     }
 
@@ -97,10 +112,11 @@ class RedisStorageTest {
         val indices = list.create(Storage.ListConfig(1, 16, "test-pool", uuid))
 
         assertThat(indices).hasSize(0)
-        verify { listOperations.rightPushAll(eq("list:indices:$listUri"), any<List<String>>()) }
+        verify(exactly = 0) { listOperations.rightPushAll(any(), any<List<String>>()) }
         verify { valueOperations.bitField(eq("list:data:$listUri"), any()) }
         verify { hashOperations.putAll(eq("list:config:$listUri"), any()) }
         verify { setOperations.add("pool:lists:all:test-pool", listUri) }
+        verify { zSetOperations.add("pool:lists:expiry:test-pool", listUri, 0.0) }
         verify { listOperations.rightPush("pool:lists:current:test-pool", listUri) }
         verify { statsService.listCreated("test-pool", listUri, 16) }
     }
@@ -128,7 +144,15 @@ class RedisStorageTest {
         val indices = list.create(Storage.ListConfig(1, 16, "test-pool", uuid), 8)
 
         assertThat(indices).hasSize(8)
-        verify { listOperations.rightPushAll(eq("list:indices:$listUri"), any<List<String>>()) }
+        verify {
+            hashOperations.putAll(
+                eq("list:config:$listUri"),
+                match<Map<String, String>> {
+                    it["indexCursor"] == "8" && it["indexKey"]!!.length == 24
+                },
+            )
+        }
+        verify(exactly = 0) { listOperations.rightPushAll(any(), any<List<String>>()) }
         verify { valueOperations.bitField(eq("list:data:$listUri"), any()) }
         verify { hashOperations.putAll(eq("list:config:$listUri"), any()) }
         verify { setOperations.add("pool:lists:all:test-pool", listUri) }
@@ -186,17 +210,77 @@ class RedisStorageTest {
             }
             assertThat(second).hasSize(16)
         }
-        verify {
-            listOperations.rightPushAll(
-                match { it.startsWith("list:indices:") },
-                any<List<String>>(),
-            )
-        }
+        verify(exactly = 0) { listOperations.rightPushAll(any(), any<List<String>>()) }
         verify { setOperations.add("pool:lists:all:test-pool", indices.first) }
         verify { statsService.listCreated(any(), any(), any()) }
         verify { statsService.indicesTaken(any(), any(), 16) }
     }
 
+    @Test
+    fun `should take given back indices first`() {
+        val uuid = UUID.randomUUID()
+        val listUri = "http://test.example/$uuid"
+        val list = storage.newListOf(listUri)
+        val permutation = IndexPermutation.random(16)
+        every { listOperations.leftPop("list:indices:$listUri", 4) } returns listOf("3", "7")
+        every {
+            hashOperations.multiGet(
+                "list:config:$listUri",
+                listOf("indexKey", "size", "indexCursor"),
+            )
+        } returns listOf(Base64.getEncoder().encodeToString(permutation.key), "16", "5")
+        every { hashOperations.increment("list:config:$listUri", "indexCursor", 2) } returns 7
+        every { hashOperations.entries("list:config:$listUri") } returns listConfig(uuid)
+
+        val indices = list.take(4)
+
+        assertThat(indices).containsExactly(3, 7, *permutation.indices(5, 7).toTypedArray())
+        verify(exactly = 0) { listOperations.remove(any(), any(), any()) }
+        verify { statsService.indicesTaken("test-pool", listUri, 4) }
+    }
+
+    @Test
+    fun `should take remaining indices and remove list from current lists`() {
+        val uuid = UUID.randomUUID()
+        val listUri = "http://test.example/$uuid"
+        val list = storage.newListOf(listUri)
+        val permutation = IndexPermutation.random(16)
+        every { listOperations.leftPop("list:indices:$listUri", 4) } returns emptyList()
+        every {
+            hashOperations.multiGet(
+                "list:config:$listUri",
+                listOf("indexKey", "size", "indexCursor"),
+            )
+        } returns listOf(Base64.getEncoder().encodeToString(permutation.key), "16", "14")
+        every { hashOperations.increment("list:config:$listUri", "indexCursor", 4) } returns 18
+        every { hashOperations.entries("list:config:$listUri") } returns listConfig(uuid)
+        every { listOperations.remove(any(), any(), any()) } returns 1
+
+        val indices = list.take(4)
+
+        assertThat(indices).isEqualTo(permutation.indices(14, 16))
+        verify { listOperations.remove("pool:lists:current:test-pool", 1, listUri) }
+        verify { statsService.indicesTaken("test-pool", listUri, 2) }
+    }
+
+    @Test
+    fun `should count indices of list created without index permutation`() {
+        val uuid = UUID.randomUUID()
+        val listUri = "http://test.example/$uuid"
+        val list = storage.newListOf(listUri)
+        every {
+            hashOperations.multiGet(
+                "list:config:$listUri",
+                listOf("indexKey", "size", "indexCursor"),
+            )
+        } returns listOf(null, "16", null)
+        every { hashOperations.entries("list:config:$listUri") } returns listConfig(uuid)
+        every { listOperations.size("list:indices:$listUri") } returns 16
+
+        assertThat(list.isFull()).isTrue()
+        assertThat(list.isEmpty()).isFalse()
+    }
+
     @Test
     fun `should update status`() {
         val uuid = UUID.randomUUID()
@@ -210,14 +294,54 @@ class RedisStorageTest {
                 "listId" to "$uuid",
                 "version" to "1",
             )
-        every { hashOperations.increment(any(), any(), any<Long>()) } returns 1
         list.updateStatus(12, 1)
 
-        verify { valueOperations.bitField(eq("list:data:$listUri"), any()) }
-        verify { hashOperations.increment("list:config:$listUri", "version", 1) }
+        verify {
+            redis.execute(
+                any<RedisScript<Long>>(),
+                listOf(
+                    "list:data:$listUri",
+                    "list:config:$listUri",
+                    "pool:lists:changed:test-pool",
+                ),
+                "u2",
+                listUri,
+                "30",
+                "1",
+            )
+        }
+        verify(exactly = 0) { hashOperations.increment(any(), any(), any<Long>()) }
         verify { statsService.statusUpdated("test-pool", listUri) }
     }
 
+    @Test
+    fun `should update statuses in one script call`() {
+        val uuid = UUID.randomUUID()
+        val listUri = "http://test.example/$uuid"
+        val list = storage.newListOf(listUri)
+        every { hashOperations.entries("list:config:$listUri") } returns listConfig(uuid)
+
+        list.updateStatuses(listOf(Storage.StatusUpdate(0, 1), Storage.StatusUpdate(9, 1)))
+
+        verify(exactly = 1) {
+            redis.execute(
+                any<RedisScript<Long>>(),
+                listOf(
+                    "list:data:$listUri",
+                    "list:config:$listUri",
+                    "pool:lists:changed:test-pool",
+                ),
+                "u1",
+                listUri,
+                "7",
+                "1",
+                "14",
+                "1",
+            )
+        }
+        verify { statsService.statusesUpdated("test-pool", listUri, 2) }
+    }
+
     @Test
     fun `should throw exception on index out of bounds`() {
         val uuid = UUID.randomUUID()
@@ -249,4 +373,64 @@ class RedisStorageTest {
             )
         assertFailure { list.updateStatus(12, 4) }.isInstanceOf(ValueOutOfRangeException::class)
     }
+
+    @Test
+    fun `should mark list as written in one script call`() {
+        val uuid = UUID.randomUUID()
+        val listUri = "http://test.example/$uuid"
+        val list = storage.newListOf(listUri)
+        every { hashOperations.entries("list:config:$listUri") } returns listConfig(uuid)
+        every {
+            redis.execute(any<RedisScript<Long>>(), any<List<String>>(), *anyVararg<Any>())
+        } returns 1500L
+
+        val latency = list.markWritten(3, Instant.ofEpochMilli(1_000_000))
+
+        assertThat(latency).isEqualTo(Duration.ofMillis(1500))
+        verify {
+            redis.execute(
+                any<RedisScript<Long>>(),
+                listOf(
+                    "list:config:$listUri",
+                    "pool:lists:changed:test-pool",
+                    "pool:lists:expiry:test-pool",
+                ),
+                listUri,
+                "3",
+                "1000000",
+            )
+        }
+    }
+
+    @Test
+    fun `should return changed and expiring lists as pending`() {
+        every { zSetOperations.range("pool:lists:changed:test-pool", 0, -1) } returns
+            setOf("http://test.example/1", "http://test.example/2")
+        every {
+            zSetOperations.rangeByScore(
+                "pool:lists:expiry:test-pool",
+                Double.NEGATIVE_INFINITY,
+                2_000_000.0,
+            )
+        } returns setOf("http://test.example/2", "http://test.example/3")
+
+        val pending =
+            storage.newPoolOf("test-pool").pendingListUris(Instant.ofEpochMilli(2_000_000))
+
+        assertThat(pending.toList())
+            .containsExactly(
+                "http://test.example/1",
+                "http://test.example/2",
+                "http://test.example/3",
+            )
+    }
+
+    private fun listConfig(uuid: UUID) =
+        mapOf(
+            "bits" to "1",
+            "size" to "16",
+            "poolId" to "test-pool",
+            "listId" to "$uuid",
+            "version" to "1",
+        )
 }
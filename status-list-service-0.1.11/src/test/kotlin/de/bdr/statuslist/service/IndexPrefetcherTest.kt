@@ -0,0 +1,233 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.md
+ */
+package de.bdr.statuslist.service
+
+import assertk.assertFailure
+import assertk.assertThat
+import assertk.assertions.containsExactly
+import assertk.assertions.hasSize
+import assertk.assertions.isEqualTo
+import assertk.assertions.isFalse
+import assertk.assertions.isGreaterThanOrEqualTo
+import assertk.assertions.isInstanceOf
+import assertk.assertions.isTrue
+import de.bdr.statuslist.config.AppConfiguration
+import de.bdr.statuslist.config.OnUnderflowBehavior
+import de.bdr.statuslist.config.PrecreationConfiguration
+import de.bdr.statuslist.config.PrefetchConfiguration
+import de.bdr.statuslist.config.SignerConfiguration
+import de.bdr.statuslist.config.StatusListPoolConfiguration
+import de.bdr.statuslist.data.Storage
+import de.bdr.statuslist.stats.StatsService
+import io.mockk.Runs
+import io.mockk.every
+import io.mockk.just
+import io.mockk.mockk
+import io.mockk.verify
+import java.time.Duration
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ScheduledThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+import org.awaitility.kotlin.await
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+
+class IndexPrefetcherTest {
+
+    private val storage: Storage = mockk()
+    private val pool: Storage.Pool = mockk()
+    private val list: Storage.List = mockk()
+    private val statsService: StatsService = mockk(relaxed = true)
+    private val scheduler = ScheduledThreadPoolExecutor(2)
+    private val timeoutScheduler = ScheduledThreadPoolExecutor(1)
+
+    /** The amounts the slow storage hands out, one per take, a take waits until one is there. */
+    private val supply = LinkedBlockingQueue<Int>()
+    private val takes = CopyOnWriteArrayList<Int>()
+    private val nextIndex = AtomicInteger()
+
+    private lateinit var prefetcher: IndexPrefetcher
+
+    @BeforeEach
+    fun setUp() {
+        every { storage.newPoolOf("test-pool") } returns pool
+        every { storage.newListOf("http://test/list") } returns list
+        every { pool.currentLists() } returns listOf("http://test/list")
+        every { pool.obtainPrecreationLock() } returns null
+        every { pool.countFreeIndices() } returns 120L
+        every { list.poolId() } returns "test-pool"
+        every { list.freeIndices(any()) } just Runs
+        every { list.take(any()) } answers
+            {
+                val requested = firstArg<Int>()
+                takes.add(requested)
+                val supplied = supply.poll(5, TimeUnit.SECONDS) ?: 0
+                List(minOf(requested, supplied)) { nextIndex.getAndIncrement() }
+            }
+    }
+
+    @AfterEach
+    fun tearDown() {
+        scheduler.shutdownNow()
+        timeoutScheduler.shutdownNow()
+    }
+
+    @Test
+    fun `should refill only when a reservation crosses the threshold`() {
+        start(OnUnderflowBehavior.FAIL)
+
+        prefetcher.nextIndices(3)
+        assertThat(takes).containsExactly(8)
+
+        supply.add(5)
+        prefetcher.nextIndices(2)
+
+        await.atMost(5, TimeUnit.SECONDS).untilAsserted {
+            assertThat(prefetcher.availableIndices()).isEqualTo(8)
+        }
+        assertThat(takes).containsExactly(8, 5)
+    }
+
+    @Test
+    fun `should fail reservations at once if the pool fails on underflow`() {
+        start(OnUnderflowBehavior.FAIL)
+        prefetcher.nextIndices(8)
+
+        val reservation = prefetcher.reserve(1)
+
+        assertThat(reservation.isCompletedExceptionally).isTrue()
+        assertFailure { prefetcher.nextIndices(1) }
+            .isInstanceOf(PrefetchBufferUnderflowException::class)
+        verify { statsService.indicesUnderflow("test-pool", 1, OnUnderflowBehavior.FAIL, null) }
+    }
+
+    @Test
+    fun `should serve waiting reservations in the order they arrived`() {
+        start(OnUnderflowBehavior.DELAY)
+        prefetcher.nextIndices(8)
+        val completed = CopyOnWriteArrayList<String>()
+
+        val first = prefetcher.reserve(5).whenComplete { _, _ -> completed.add("first") }
+        val second = prefetcher.reserve(1).whenComplete { _, _ -> completed.add("second") }
+        supply.add(3)
+
+        await.atMost(5, TimeUnit.SECONDS).untilAsserted {
+            assertThat(prefetcher.availableIndices()).isEqualTo(3)
+        }
+        assertThat(first.isDone).isFalse()
+        assertThat(second.isDone).isFalse()
+
+        supply.add(100)
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).hasSize(5)
+        assertThat(second.get(5, TimeUnit.SECONDS)).hasSize(1)
+        assertThat(completed).containsExactly("first", "second")
+        assertThat((first.get() + second.get()).toSet()).hasSize(6)
+    }
+
+    @Test
+    fun `should fail waiting reservations after the maximum delay`() {
+        start(OnUnderflowBehavior.DELAY, maxDelay = Duration.ofMillis(200))
+        prefetcher.nextIndices(8)
+        val start = System.nanoTime()
+
+        assertFailure { prefetcher.nextIndices(2) }
+            .isInstanceOf(PrefetchBufferUnderflowException::class)
+
+        assertThat(Duration.ofNanos(System.nanoTime() - start))
+            .isGreaterThanOrEqualTo(Duration.ofMillis(200))
+        verify {
+            statsService.indicesUnderflow("test-pool", 2, OnUnderflowBehavior.DELAY, any())
+        }
+
+        supply.add(8)
+        await.atMost(5, TimeUnit.SECONDS).untilAsserted {
+            assertThat(prefetcher.availableIndices()).isEqualTo(8)
+        }
+    }
+
+    @Test
+    fun `should fail waiting reservations after the maximum delay while the scheduler is busy`() {
+        start(OnUnderflowBehavior.DELAY, maxDelay = Duration.ofMillis(200))
+        prefetcher.nextIndices(8)
+        // the refill waits for the storage on one thread, the other one is blocked here
+        val busy = CountDownLatch(1)
+        val blocked = CountDownLatch(1)
+        scheduler.execute {
+            blocked.countDown()
+            busy.await()
+        }
+        assertThat(blocked.await(5, TimeUnit.SECONDS)).isTrue()
+
+        val reservation = prefetcher.reserve(2)
+
+        await.atMost(2, TimeUnit.SECONDS).until { reservation.isCompletedExceptionally }
+        assertThat(reservation.exceptionNow()).isInstanceOf(PrefetchBufferUnderflowException::class)
+        busy.countDown()
+    }
+
+    @Test
+    fun `should count the free indices on the precreation check only`() {
+        start(OnUnderflowBehavior.FAIL)
+
+        await.atMost(5, TimeUnit.SECONDS).untilAsserted {
+            assertThat(prefetcher.freeIndices()).isEqualTo(120L)
+        }
+        repeat(3) { prefetcher.freeIndices() }
+
+        verify(exactly = 1) { pool.countFreeIndices() }
+    }
+
+    private fun start(behavior: OnUnderflowBehavior, maxDelay: Duration = Duration.ofSeconds(5)) {
+        supply.add(8)
+        prefetcher =
+            IndexPrefetcher(
+                "test-pool",
+                config(behavior, maxDelay),
+                mockk(relaxed = true),
+                storage,
+                statsService,
+                scheduler,
+                timeoutScheduler,
+            )
+    }
+
+    private fun config(behavior: OnUnderflowBehavior, maxDelay: Duration) =
+        AppConfiguration(
+            publicUrl = "http://localhost:8080",
+            storageDirectory = "status-lists",
+            cacheDuration = Duration.parse("PT24H"),
+            statusListPools =
+                mapOf(
+                    "test-pool" to
+                        StatusListPoolConfiguration(
+                            apiKey = "apikey",
+                            size = 128,
+                            bits = 1,
+                            issuer = "issuer",
+                            precreation = PrecreationConfiguration(Duration.ofMinutes(10), 1),
+                            prefetch =
+                                PrefetchConfiguration(
+                                    threshold = 4,
+                                    capacity = 8,
+                                    onUnderflow = behavior,
+                                    maxDelay = maxDelay,
+                                ),
+                            updateInterval = Duration.ofMinutes(1),
+                            listLifetime = Duration.ofHours(1),
+                            aggregationId = null,
+                            signer =
+                                SignerConfiguration(
+                                    "classpath:/keys/pid_issuer_single_chain.p12",
+                                    "test",
+                                ),
+                        )
+                ),
+        )
+}
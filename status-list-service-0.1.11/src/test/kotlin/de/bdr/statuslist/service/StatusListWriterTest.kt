@@ -0,0 +1,168 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.md
+ */
+package de.bdr.statuslist.service
+
+import de.bdr.statuslist.config.AppConfiguration
+import de.bdr.statuslist.config.PrecreationConfiguration
+import de.bdr.statuslist.config.PrefetchConfiguration
+import de.bdr.statuslist.config.SignerConfiguration
+import de.bdr.statuslist.config.StatusListPoolConfiguration
+import de.bdr.statuslist.data.Storage
+import de.bdr.statuslist.stats.StatsService
+import io.mockk.Runs
+import io.mockk.every
+import io.mockk.impl.annotations.MockK
+import io.mockk.just
+import io.mockk.mockk
+import io.mockk.verify
+import java.io.Closeable
+import java.time.Duration
+import java.time.Instant
+import java.util.UUID
+import org.junit.jupiter.api.AfterEach
+import org.junit.jupiter.api.BeforeEach
+import org.junit.jupiter.api.Test
+import org.springframework.context.ApplicationEventPublisher
+
+class StatusListWriterTest {
+
+    @MockK private val storage: Storage = mockk()
+    @MockK private val pool: Storage.Pool = mockk()
+    @MockK private val aggregationIdService: AggregationIdService = mockk()
+    @MockK private val tokenStorage: StatusListTokenStorage = mockk()
+    @MockK private val statsService: StatsService = mockk()
+    @MockK private val eventPublisher: ApplicationEventPublisher = mockk(relaxed = true)
+
+    private val config =
+        AppConfiguration(
+            publicUrl = "http://localhost:8080",
+            storageDirectory = "status-lists",
+            cacheDuration = Duration.parse("PT24H"),
+            statusListPools =
+                mapOf(
+                    "test-pool" to
+                        StatusListPoolConfiguration(
+                            apiKey = "apikey",
+                            size = 16,
+                            bits = 1,
+                            issuer = "issuer",
+                            precreation = PrecreationConfiguration(Duration.ofSeconds(10), 1),
+                            prefetch = PrefetchConfiguration(threshold = 4, capacity = 8),
+                            updateInterval = Duration.ofMinutes(1),
+                            listLifetime = Duration.ofHours(1),
+                            aggregationId = null,
+                            signer =
+                                SignerConfiguration(
+                                    "classpath:/keys/pid_issuer_single_chain.p12",
+                                    "test",
+                                ),
+                        )
+                ),
+        )
+
+    private val writer =
+        StatusListWriter(
+            config,
+            storage,
+            aggregationIdService,
+            tokenStorage,
+            statsService,
+            eventPublisher,
+        )
+
+    private val unchanged = list("unchanged", version = 2)
+    private val changed = list("changed", version = 5)
+
+    @BeforeEach
+    fun setUp() {
+        every { storage.newPoolOf("test-pool") } returns pool
+        every { pool.allListUris() } returns listOf("http://test/unchanged", "http://test/changed")
+        every { pool.pendingListUris(any()) } returns listOf("http://test/changed")
+        every { tokenStorage.obtainPoolLock("test-pool") } returns Closeable {}
+        every { tokenStorage.store(any(), any(), any()) } just Runs
+        every { tokenStorage.storeMetadata(any()) } just Runs
+        every { aggregationIdService.aggregationIdByPoolId("test-pool") } returns "aggregation"
+        every { statsService.listPublished(any(), any(), any()) } just Runs
+        every { statsService.writeCycleCompleted(any(), any(), any()) } just Runs
+        every { statsService.tokenSigned(any(), any(), any()) } just Runs
+        every { statsService.tokenStored(any(), any(), any(), any()) } just Runs
+    }
+
+    @AfterEach
+    fun tearDown() {
+        writer.destroy()
+    }
+
+    @Test
+    fun `should check all lists in the first cycle and only pending lists later`() {
+        writer.writePoolTokens("test-pool")
+        writer.writePoolTokens("test-pool")
+
+        verify(exactly = 1) { pool.allListUris() }
+        verify(exactly = 1) { pool.pendingListUris(any()) }
+        verify(exactly = 1) { unchanged.config(false) }
+        verify(exactly = 2) { changed.config(false) }
+    }
+
+    @Test
+    fun `should write changed lists and report the publication latency`() {
+        val changedListId = changed.config().listId
+
+        writer.writePoolTokens("test-pool")
+
+        verify(exactly = 0) { unchanged.data() }
+        verify { unchanged.markWritten(2, any()) }
+        verify { changed.data() }
+        verify { tokenStorage.store(changedListId, TokenFormat.JWT, any()) }
+        verify { changed.markWritten(5, any()) }
+        verify(exactly = 1) { eventPublisher.publishEvent(StatusListTokensWritten(changedListId)) }
+        verify(exactly = 1) {
+            statsService.listPublished("test-pool", "http://test/changed", Duration.ofMillis(250))
+        }
+    }
+
+    @Test
+    fun `should report the write cycle, signing and storage of tokens`() {
+        writer.writePoolTokens("test-pool")
+
+        verify(exactly = 1) { statsService.writeCycleCompleted("test-pool", 2, any()) }
+        verify(exactly = 1) { statsService.tokenSigned("test-pool", TokenFormat.JWT, any()) }
+        verify(exactly = 1) { statsService.tokenSigned("test-pool", TokenFormat.CWT, any()) }
+        TokenFormat.entries.forEach { format ->
+            verify(exactly = 1) { statsService.tokenStored("test-pool", format, any(), any()) }
+        }
+    }
+
+    @Test
+    fun `should only look for lists expiring within two update intervals`() {
+        writer.writePoolTokens("test-pool")
+        val before = Instant.now()
+
+        writer.writePoolTokens("test-pool")
+
+        verify {
+            pool.pendingListUris(
+                match {
+                    !it.isBefore(before.plus(Duration.ofMinutes(2))) &&
+                        it.isBefore(Instant.now().plus(Duration.ofMinutes(2)).plusMillis(1))
+                }
+            )
+        }
+    }
+
+    private fun list(name: String, version: Int): Storage.List {
+        val listId = UUID.randomUUID()
+        val listConfig = Storage.ListConfig(1, 16, "test-pool", listId, version)
+        val list = mockk<Storage.List>()
+        every { list.config(any()) } returns listConfig
+        every { list.data() } returns ByteArray(2)
+        every { list.markWritten(any(), any()) } returns null
+        every { list.markWritten(5, any()) } returns Duration.ofMillis(250)
+        every { storage.newListOf("http://test/$name") } returns list
+        every { tokenStorage.metadata(listId) } returns
+            ListStorageMetadata(listId, 2, Instant.now().plus(Duration.ofHours(1)))
+        return list
+    }
+}
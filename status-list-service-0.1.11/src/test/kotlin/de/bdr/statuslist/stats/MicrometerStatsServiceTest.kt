@@ -0,0 +1,114 @@
+/*
+ * Copyright 2024 Bundesdruckerei GmbH
+ * For the license see the accompanying file LICENSE.md
+ */
+package de.bdr.statuslist.stats
+
+import assertk.assertThat
+import assertk.assertions.isEqualTo
+import assertk.assertions.isTrue
+import de.bdr.statuslist.config.AppConfiguration
+import de.bdr.statuslist.config.OnUnderflowBehavior
+import de.bdr.statuslist.service.StatusListService
+import de.bdr.statuslist.service.TokenFormat
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import io.mockk.every
+import io.mockk.mockk
+import java.time.Duration
+import java.util.concurrent.TimeUnit.MILLISECONDS
+import org.junit.jupiter.api.Test
+
+class MicrometerStatsServiceTest {
+
+    private val registry = SimpleMeterRegistry()
+
+    private val statsService = MicrometerStatsService(registry, LoggingStatsService())
+
+    @Test
+    fun `should count underflows per behavior and time the delays`() {
+        statsService.indicesUnderflow("pool", 3, OnUnderflowBehavior.FAIL, null)
+        statsService.indicesUnderflow("pool", 2, OnUnderflowBehavior.DELAY, Duration.ofMillis(40))
+
+        assertThat(underflow("FAIL")).isEqualTo(3.0)
+        assertThat(underflow("DELAY")).isEqualTo(2.0)
+        val wait = registry.get("statuslist.prefetch.underflow.wait").tag("pool", "pool").timer()
+        assertThat(wait.count()).isEqualTo(1L)
+        assertThat(wait.totalTime(MILLISECONDS)).isEqualTo(40.0)
+    }
+
+    @Test
+    fun `should time write cycles, signing and storage calls`() {
+        statsService.writeCycleCompleted("pool", 4, Duration.ofMillis(120))
+        statsService.tokenSigned("pool", TokenFormat.JWT, Duration.ofMillis(3))
+        statsService.tokenStored("pool", TokenFormat.CBOR, 2048, Duration.ofMillis(2))
+        statsService.tokenStored("pool", TokenFormat.CBOR, 1024, Duration.ofMillis(1))
+
+        val cycle = registry.get("statuslist.write.cycle").tag("pool", "pool").timer()
+        assertThat(cycle.totalTime(MILLISECONDS)).isEqualTo(120.0)
+        val signing = registry.get("statuslist.token.signing").tag("format", "JWT").timer()
+        assertThat(signing.count()).isEqualTo(1L)
+        val storage = registry.get("statuslist.token.storage").tag("format", "CBOR").timer()
+        assertThat(storage.count()).isEqualTo(2L)
+        val size = registry.get("statuslist.token.size").tag("format", "CBOR").summary()
+        assertThat(size.totalAmount()).isEqualTo(3072.0)
+    }
+
+    @Test
+    fun `should count served bytes per format`() {
+        statsService.tokenServed(TokenFormat.JWT, 100)
+        statsService.tokenServed(TokenFormat.JWT, 50)
+        statsService.tokenServed(TokenFormat.CWT, 70)
+
+        assertThat(registry.get("statuslist.served").tag("format", "JWT").counter().count())
+            .isEqualTo(150.0)
+        assertThat(registry.get("statuslist.served").tag("format", "CWT").counter().count())
+            .isEqualTo(70.0)
+    }
+
+    @Test
+    fun `should record the publication latency per pool`() {
+        statsService.listPublished("pool", "http://test/list", Duration.ofMillis(800))
+
+        val latency =
+            registry.get("statuslist.list.publication.latency").tag("pool", "pool").timer()
+        assertThat(latency.count()).isEqualTo(1L)
+        assertThat(latency.totalTime(MILLISECONDS)).isEqualTo(800.0)
+    }
+
+    @Test
+    fun `should read pool gauges when they are scraped`() {
+        val config = mockk<AppConfiguration>()
+        val statusListService = mockk<StatusListService>()
+        every { config.statusListPools } returns mapOf("pool" to mockk())
+        every { statusListService.freeIndices("pool") } returns 96L andThen 64L
+        every { statusListService.prefetchedIndices("pool") } returns 16
+
+        PoolMetrics(config, statusListService).bindTo(registry)
+
+        val free = registry.get("statuslist.pool.free.indices").tag("pool", "pool").gauge()
+        assertThat(free.value()).isEqualTo(96.0)
+        assertThat(free.value()).isEqualTo(64.0)
+        assertThat(registry.get("statuslist.prefetch.depth").gauge().value()).isEqualTo(16.0)
+    }
+
+    @Test
+    fun `should report no free indices before they are counted`() {
+        val config = mockk<AppConfiguration>()
+        val statusListService = mockk<StatusListService>()
+        every { config.statusListPools } returns mapOf("pool" to mockk())
+        every { statusListService.freeIndices("pool") } returns null
+        every { statusListService.prefetchedIndices("pool") } returns null
+
+        PoolMetrics(config, statusListService).bindTo(registry)
+
+        val free = registry.get("statuslist.pool.free.indices").tag("pool", "pool").gauge()
+        assertThat(free.value().isNaN()).isTrue()
+    }
+
+    private fun underflow(behavior: String) =
+        registry
+            .get("statuslist.prefetch.underflow")
+            .tags("pool", "pool", "behavior", behavior)
+            .counter()
+            .count()
+}
@@ -10,9 +10,11 @@ import de.bdr.statuslist.config.PrecreationConfiguration
 import de.bdr.statuslist.config.PrefetchConfiguration
 import de.bdr.statuslist.config.SignerConfiguration
 import de.bdr.statuslist.config.StatusListPoolConfiguration
+import de.bdr.statuslist.data.Storage.StatusUpdate
 import de.bdr.statuslist.service.Reference
 import de.bdr.statuslist.service.StatusListService
 import io.mockk.every
+import io.mockk.verify
 import java.time.Duration
 import org.junit.jupiter.api.Test
 import org.springframework.beans.factory.annotation.Autowired
@@ -121,6 +123,75 @@ class InternalApiControllerTest(@Autowired val mockMvc: MockMvc) {
             .andExpect(MockMvcResultMatchers.status().isNoContent)
     }
 
+    @Test
+    fun `should update statuses grouped by list`() {
+        every { statusListService.poolId(any()) } returns poolId
+        every { appConfiguration.statusListPools[poolId] } returns
+            statusListPoolConfiguration(
+                apiKey,
+                "classpath:/keys/pid_issuer_single_chain.p12",
+                "test",
+            )
+
+        mockMvc
+            .perform(
+                MockMvcRequestBuilders.patch("/status-lists/update-bulk")
+                    .header("x-api-key", apiKey)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(
+                        """
+                        {"updates": [
+                        {"uri": "uri1", "index": 1, "value": 1},
+                        {"uri": "uri2", "index": 2, "value": 1},
+                        {"uri": "uri1", "index": 3, "value": 0}]}
+                    """
+                            .trimIndent()
+                    )
+            )
+            .andExpect(MockMvcResultMatchers.status().isNoContent)
+
+        verify {
+            statusListService.updateStatuses(
+                mapOf(
+                    "uri1" to listOf(StatusUpdate(1, 1), StatusUpdate(3, 0)),
+                    "uri2" to listOf(StatusUpdate(2, 1)),
+                )
+            )
+        }
+    }
+
+    @Test
+    fun `should update no status if one update is invalid`() {
+        every { statusListService.poolId(any()) } returns poolId
+        every { appConfiguration.statusListPools[poolId] } returns
+            statusListPoolConfiguration(
+                apiKey,
+                "classpath:/keys/pid_issuer_single_chain.p12",
+                "test",
+            )
+        every { statusListService.checkStatuses("uri2", any()) } throws
+            IndexOutOfBoundsException(200)
+
+        mockMvc
+            .perform(
+                MockMvcRequestBuilders.patch("/status-lists/update-bulk")
+                    .header("x-api-key", apiKey)
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(
+                        """
+                        {"updates": [
+                        {"uri": "uri1", "index": 1, "value": 1},
+                        {"uri": "uri2", "index": 200, "value": 1}]}
+                    """
+                            .trimIndent()
+                    )
+            )
+            .andExpect(MockMvcResultMatchers.status().isBadRequest)
+            .andExpect(MockMvcResultMatchers.jsonPath("code").value("INDEX_OUT_OF_BOUNDS"))
+
+        verify(exactly = 0) { statusListService.updateStatuses(any()) }
+    }
+
     @Test
     fun `should get bad request on less than one reference`() {
         val amount = 0
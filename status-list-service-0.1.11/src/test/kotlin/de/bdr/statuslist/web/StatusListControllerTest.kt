@@ -8,13 +8,17 @@ import com.ninjasquad.springmockk.MockkBean
 import de.bdr.statuslist.config.AppConfiguration
 import de.bdr.statuslist.service.StatusListService
 import de.bdr.statuslist.service.StatusListTokenSource
+import de.bdr.statuslist.service.StatusListTokensWritten
 import de.bdr.statuslist.service.TokenData
 import de.bdr.statuslist.service.TokenFormat
 import de.bdr.statuslist.stats.StatsService
 import io.mockk.every
+import io.mockk.verify
+import java.time.Duration
 import java.time.Instant
 import java.util.UUID
 import org.hamcrest.Matchers.endsWith
+import org.hamcrest.Matchers.matchesPattern
 import org.hamcrest.Matchers.startsWith
 import org.hamcrest.text.IsEmptyString
 import org.junit.jupiter.api.Test
@@ -30,7 +34,10 @@ import org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPat
 import org.springframework.test.web.servlet.result.MockMvcResultMatchers.status
 
 @WebMvcTest(StatusListController::class)
-class StatusListControllerTest(@Autowired val mockMvc: MockMvc) {
+class StatusListControllerTest(
+    @Autowired val mockMvc: MockMvc,
+    @Autowired val controller: StatusListController,
+) {
     @MockkBean lateinit var appConfiguration: AppConfiguration
     @MockkBean(relaxed = true) lateinit var statusListTokenSource: StatusListTokenSource
     @MockkBean(relaxed = true) lateinit var statusListService: StatusListService
@@ -123,6 +130,110 @@ class StatusListControllerTest(@Autowired val mockMvc: MockMvc) {
         //  .andDo(MockMvcResultHandlers.print())
     }
 
+    @Test
+    fun `should serve cached status list without touching the token source`() {
+        every { appConfiguration.publicUrl } returns appUrl
+        every { statusListTokenSource.load(listId, TokenFormat.JSON) } returns
+            TokenData(statusListJson.toByteArray(), Instant.now())
+
+        repeat(3) {
+            mockMvc
+                .perform(MockMvcRequestBuilders.get("/$listId").accept(contentTypeJson))
+                .andExpect(status().isOk)
+        }
+
+        verify(exactly = 1) { statusListTokenSource.load(listId, TokenFormat.JSON) }
+        verify(exactly = 0) { statusListTokenSource.lastModified(any(), any()) }
+    }
+
+    @Test
+    fun `should reload cached status list when its tokens are written`() {
+        val lastModified = Instant.now()
+        every { appConfiguration.publicUrl } returns appUrl
+        every { statusListTokenSource.load(listId, TokenFormat.JWT) } returns
+            TokenData("old".toByteArray(), lastModified)
+        mockMvc
+            .perform(MockMvcRequestBuilders.get("/$listId").accept(contentTypeJwt))
+            .andExpect(content().string("old"))
+
+        every { statusListTokenSource.load(listId, TokenFormat.JWT) } returns
+            TokenData(statusListJwt.toByteArray(), lastModified.plusSeconds(1))
+        controller.tokensWritten(StatusListTokensWritten(listId))
+
+        mockMvc
+            .perform(MockMvcRequestBuilders.get("/$listId").accept(contentTypeJwt))
+            .andExpect(content().string(statusListJwt))
+        verify(exactly = 0) { statusListTokenSource.load(listId, TokenFormat.JSON) }
+    }
+
+    @Test
+    fun `should serve stale status list when revalidation fails and retry on the next request`() {
+        val lastModified = Instant.now()
+        val ttl = Duration.ofMillis(1)
+        every { appConfiguration.publicUrl } returns appUrl
+        every { statusListTokenSource.load(listId, TokenFormat.JWT) } returns
+            TokenData("old".toByteArray(), lastModified, ttl = ttl) andThenThrows
+            IllegalStateException("storage unavailable") andThen
+            TokenData(statusListJwt.toByteArray(), lastModified.plusSeconds(1), ttl = ttl)
+        mockMvc
+            .perform(MockMvcRequestBuilders.get("/$listId").accept(contentTypeJwt))
+            .andExpect(content().string("old"))
+
+        Thread.sleep(5)
+        mockMvc
+            .perform(MockMvcRequestBuilders.get("/$listId").accept(contentTypeJwt))
+            .andExpect(status().isOk)
+            .andExpect(content().string("old"))
+
+        Thread.sleep(5)
+        mockMvc
+            .perform(MockMvcRequestBuilders.get("/$listId").accept(contentTypeJwt))
+            .andExpect(content().string(statusListJwt))
+        verify(exactly = 3) { statusListTokenSource.load(listId, TokenFormat.JWT) }
+    }
+
+    @Test
+    fun `should derive cache control from ttl and expiry`() {
+        val lastModified = Instant.now()
+        every { appConfiguration.publicUrl } returns appUrl
+        every { statusListTokenSource.load(listId, TokenFormat.JSON) } returns
+            TokenData(
+                statusListJson.toByteArray(),
+                lastModified,
+                expires = lastModified.plusSeconds(90),
+                ttl = Duration.ofSeconds(60),
+            )
+
+        mockMvc
+            .perform(MockMvcRequestBuilders.get("/$listId").accept(contentTypeJson))
+            .andExpect(status().isOk)
+            .andExpect(
+                header()
+                    .string(
+                        HttpHeaders.CACHE_CONTROL,
+                        matchesPattern("max-age=60, stale-while-revalidate=(29|30)"),
+                    )
+            )
+    }
+
+    @Test
+    fun `should not let expired status lists be cached`() {
+        val lastModified = Instant.now().minusSeconds(120)
+        every { appConfiguration.publicUrl } returns appUrl
+        every { statusListTokenSource.load(listId, TokenFormat.JSON) } returns
+            TokenData(
+                statusListJson.toByteArray(),
+                lastModified,
+                expires = lastModified.plusSeconds(90),
+                ttl = Duration.ofSeconds(60),
+            )
+
+        mockMvc
+            .perform(MockMvcRequestBuilders.get("/$listId").accept(contentTypeJson))
+            .andExpect(status().isOk)
+            .andExpect(header().string(HttpHeaders.CACHE_CONTROL, "no-cache"))
+    }
+
     @Test
     fun `should return aggregation`() {
         mockMvc